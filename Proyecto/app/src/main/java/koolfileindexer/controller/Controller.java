@@ -11,16 +11,19 @@ import java.util.ArrayList;
 import koolfileindexer.common.Constants;
 import koolfileindexer.common.model.ErrorMessage;
 import koolfileindexer.common.model.File;
-import koolfileindexer.common.model.GenericList;
 import koolfileindexer.common.model.Search;
 import koolfileindexer.common.protocol.Request;
 import koolfileindexer.common.protocol.Response;
-import koolfileindexer.common.protocol.v1.Socket;
+import koolfileindexer.common.protocol.v2.Codec;
+import koolfileindexer.common.protocol.v2.Connection;
 import koolfileindexer.common.utils.Result;
 
 public class Controller {
 
     public Set<String> excludedFolders;
+    // Una sola conexión para todos los requests; se abre al primero y se
+    // vuelve a abrir si el indexador la cerró
+    private Connection connection;
 
     public Controller() {
         this.excludedFolders = new HashSet<>();
@@ -52,31 +55,28 @@ public class Controller {
         }
 
         try {
-            Socket socket = Socket.connect(
-                    Constants.PROTOCOL_HEADER,
-                    Constants.PROTOCOL_TRAILER);
-
-            socket.sendRequest(
+            // En modo stream el indexador escribe cada archivo en cuanto sale de
+            // la BD y aquí se agrega a la lista sin armar la respuesta completa
+            List<File> files = new ArrayList<>();
+            Result<String, ErrorMessage> result = this.getConnection().streamBinary(
                     new Request(
                             "search",
                             new Search(
                                     keywords.toArray(String[]::new),
                                     tags.toArray(String[]::new),
-                                    filters.toArray(String[]::new))));
-            Response res = socket.getResponse();
-
-            Result<GenericList<File>, ErrorMessage> files = res.getData(
-                    GenericList.stringFactory(File.stringFactory()));
+                                    filters.toArray(String[]::new),
+                                    null,
+                                    null,
+                                    true)),
+                    File.binaryFactory(), files::add).get();
 
-            socket.close();
-
-            return switch (files) {
-                case Result.Success<GenericList<File>, ErrorMessage> s -> {
-                    System.out.println("I have " + s.value().size());
-                    yield s.value();
+            return switch (result) {
+                case Result.Success<String, ErrorMessage> s -> {
+                    System.out.println("I have " + files.size());
+                    yield files;
                 }
 
-                case Result.Error<GenericList<File>, ErrorMessage> e -> {
+                case Result.Error<String, ErrorMessage> e -> {
                     System.out.println("Got Error: " + e.error().getErrorMessage());
                     yield new ArrayList<>();
                 }
@@ -130,12 +130,10 @@ public class Controller {
 
     public void setKeyword(File file, String keyword) {
         try {
-            Socket socket = Controller.getSocket();
-            socket.sendRequest(
+            Response res = this.getConnection().send(
                     new Request("addKeyword", "keyword: " + keyword + Constants.LINE_SEPARATOR + "file-path: " + file
-                            .getPath() + Constants.LINE_SEPARATOR));
-
-            Response res = socket.getResponse();
+                            .getPath() + Constants.LINE_SEPARATOR))
+                    .get();
             Result<String, ErrorMessage> result = res.getData(source -> {
                 return source;
             });
@@ -155,12 +153,10 @@ public class Controller {
 
     public void setTag(File file, String tag) {
         try {
-            Socket socket = Controller.getSocket();
-            socket.sendRequest(
+            Response res = this.getConnection().send(
                     new Request("addTag", "tag: " + tag + Constants.LINE_SEPARATOR + "file-path: " + file
-                            .getPath() + Constants.LINE_SEPARATOR));
-
-            Response res = socket.getResponse();
+                            .getPath() + Constants.LINE_SEPARATOR))
+                    .get();
             Result<String, ErrorMessage> result = res.getData(source -> {
                 return source;
             });
@@ -178,7 +174,10 @@ public class Controller {
         }
     }
 
-    private static Socket getSocket() throws SocketException, IOException {
-        return Socket.connect(Constants.PROTOCOL_HEADER, Constants.PROTOCOL_TRAILER);
+    private synchronized Connection getConnection() throws SocketException, IOException {
+        if (this.connection == null || !this.connection.isOpen()) {
+            this.connection = Connection.connect(Codec.BINARY);
+        }
+        return this.connection;
     }
 }
@@ -8,4 +8,6 @@ public class Constants {
     public static final String LINE_SEPARATOR = "\r\n";
     public static final String PROTOCOL_HEADER = "koolfileindexer v1" + LINE_SEPARATOR;
     public static final String PROTOCOL_TRAILER = "end v1" + LINE_SEPARATOR;
+    // v2 no tiene trailer: después del header todo viaja en frames con largo
+    public static final String PROTOCOL_V2_HEADER = "koolfileindexer v2" + LINE_SEPARATOR;
 }
@@ -0,0 +1,127 @@
+package koolfileindexer.common.codec;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import koolfileindexer.common.exceptions.InvalidFormatException;
+
+/**
+ * Lee lo escrito por un {@link BinaryWriter}. Los strings se decodifican
+ * directamente desde el buffer, sin pasar por texto intermedio.
+ *
+ * Como el diccionario del writer, el del reader se conserva al pasar a otro
+ * buffer con {@link #wrap(ByteBuffer)}.
+ */
+public final class BinaryReader {
+
+    private ByteBuffer buffer;
+    private final ArrayList<String> dictionary = new ArrayList<>();
+
+    public BinaryReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /** Sigue leyendo desde otro buffer con el mismo diccionario. */
+    public BinaryReader wrap(ByteBuffer buffer) {
+        this.buffer = buffer;
+        return this;
+    }
+
+    public int remaining() {
+        return this.buffer.remaining();
+    }
+
+    public long readVarint() throws InvalidFormatException {
+        try {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = this.buffer.get();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new InvalidFormatException("varint");
+        }
+        throw new InvalidFormatException("varint");
+    }
+
+    public boolean readBoolean() throws InvalidFormatException {
+        try {
+            return this.buffer.get() != 0;
+        } catch (BufferUnderflowException e) {
+            throw new InvalidFormatException("boolean");
+        }
+    }
+
+    public Integer readNullableInt() throws InvalidFormatException {
+        long value = this.readVarint();
+        if (value == 0) {
+            return null;
+        }
+        long zigzag = value - 1;
+        return (int) ((zigzag >>> 1) ^ -(zigzag & 1));
+    }
+
+    public String readString() throws InvalidFormatException {
+        long length = this.readVarint();
+        if (length == 0) {
+            return null;
+        }
+        return this.readUtf8(length - 1);
+    }
+
+    public String readDictionaryString() throws InvalidFormatException {
+        long value = this.readVarint();
+        if (value == 0) {
+            return null;
+        }
+        if ((value & 1) == 1) {
+            long index = value >>> 1;
+            if (index >= this.dictionary.size()) {
+                throw new InvalidFormatException("dictionary reference " + index);
+            }
+            return this.dictionary.get((int) index);
+        }
+        String string = this.readUtf8((value >>> 1) - 1);
+        this.dictionary.add(string);
+        return string;
+    }
+
+    public String[] readStringArray() throws InvalidFormatException {
+        long length = this.readVarint();
+        if (length == 0) {
+            return null;
+        }
+        // Cada string ocupa al menos un byte
+        if (length - 1 > this.remaining()) {
+            throw new InvalidFormatException("string array");
+        }
+        String[] values = new String[(int) (length - 1)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = this.readString();
+        }
+        return values;
+    }
+
+    private String readUtf8(long length) throws InvalidFormatException {
+        if (length < 0 || length > this.buffer.remaining()) {
+            throw new InvalidFormatException("string of " + length + " bytes");
+        }
+        int n = (int) length;
+        String string;
+        if (this.buffer.hasArray()) {
+            string = new String(this.buffer.array(), this.buffer.arrayOffset() + this.buffer.position(), n,
+                    StandardCharsets.UTF_8);
+            this.buffer.position(this.buffer.position() + n);
+        } else {
+            byte[] bytes = new byte[n];
+            this.buffer.get(bytes);
+            string = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return string;
+    }
+}
@@ -0,0 +1,165 @@
+package koolfileindexer.common.codec;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+/**
+ * Escribe valores en un ByteBuffer que crece solo:
+ * - enteros como varint (7 bits por byte, el bit alto indica que sigue otro),
+ * - strings como varint con el largo + 1 (0 es null) y los bytes UTF-8,
+ * - strings de diccionario (extensiones, directorios, etiquetas) como una
+ * referencia a la primera vez que se escribieron.
+ *
+ * El diccionario dura lo que dura el writer, así que en una respuesta en
+ * streaming se reutiliza el mismo writer para todos los ítems
+ * ({@link #clear()} vacía el buffer pero conserva el diccionario).
+ */
+public final class BinaryWriter {
+
+    private ByteBuffer buffer;
+    private final HashMap<String, Integer> dictionary = new HashMap<>();
+
+    public BinaryWriter() {
+        this(4 * 1024);
+    }
+
+    public BinaryWriter(int initialCapacity) {
+        this.buffer = ByteBuffer.allocate(initialCapacity);
+    }
+
+    public void writeVarint(long value) {
+        this.ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            this.buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        this.buffer.put((byte) value);
+    }
+
+    public void writeBoolean(boolean value) {
+        this.ensure(1);
+        this.buffer.put((byte) (value ? 1 : 0));
+    }
+
+    /** Entero con signo que puede ser null (zigzag + 1; 0 es null). */
+    public void writeNullableInt(Integer value) {
+        if (value == null) {
+            this.writeVarint(0);
+            return;
+        }
+        long zigzag = ((long) value << 1) ^ (value >> 31);
+        this.writeVarint(zigzag + 1);
+    }
+
+    public void writeString(String value) {
+        if (value == null) {
+            this.writeVarint(0);
+            return;
+        }
+        int length = utf8Length(value);
+        this.writeVarint(length + 1L);
+        this.writeUtf8(value, length);
+    }
+
+    /**
+     * String que suele repetirse: la primera vez se escribe entera
+     * ((largo + 1) << 1) y las siguientes como (índice << 1) | 1.
+     */
+    public void writeDictionaryString(String value) {
+        if (value == null) {
+            this.writeVarint(0);
+            return;
+        }
+        Integer index = this.dictionary.get(value);
+        if (index != null) {
+            this.writeVarint(((long) index << 1) | 1);
+            return;
+        }
+        this.dictionary.put(value, this.dictionary.size());
+        int length = utf8Length(value);
+        this.writeVarint((length + 1L) << 1);
+        this.writeUtf8(value, length);
+    }
+
+    public void writeStringArray(String[] values) {
+        if (values == null) {
+            this.writeVarint(0);
+            return;
+        }
+        this.writeVarint(values.length + 1L);
+        for (String value : values) {
+            this.writeString(value);
+        }
+    }
+
+    /** Bytes escritos hasta ahora, listos para leer (comparte el contenido). */
+    public ByteBuffer toByteBuffer() {
+        return this.buffer.duplicate().flip();
+    }
+
+    public int size() {
+        return this.buffer.position();
+    }
+
+    /** Vacía el buffer y conserva el diccionario. */
+    public void clear() {
+        this.buffer.clear();
+    }
+
+    private void writeUtf8(String value, int length) {
+        this.ensure(length);
+        int n = value.length();
+        for (int i = 0; i < n; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                this.buffer.put((byte) c);
+            } else if (c < 0x800) {
+                this.buffer.put((byte) (0xC0 | (c >> 6)));
+                this.buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                this.buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                this.buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                this.buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                this.buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                // Surrogate suelto: igual que String.getBytes
+                this.buffer.put((byte) '?');
+            } else {
+                this.buffer.put((byte) (0xE0 | (c >> 12)));
+                this.buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                this.buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    private static int utf8Length(String value) {
+        int n = value.length();
+        int length = n;
+        for (int i = 0; i < n; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                length += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 2; // 4 bytes por los 2 chars
+                i++;
+            } else if (!Character.isSurrogate(c)) {
+                length += 2;
+            }
+        }
+        return length;
+    }
+
+    private void ensure(int bytes) {
+        if (this.buffer.remaining() >= bytes) {
+            return;
+        }
+        int capacity = Math.max(this.buffer.capacity() * 2, this.buffer.position() + bytes);
+        ByteBuffer bigger = ByteBuffer.allocate(capacity);
+        bigger.put(this.buffer.flip());
+        this.buffer = bigger;
+    }
+}
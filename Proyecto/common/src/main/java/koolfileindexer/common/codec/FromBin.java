@@ -0,0 +1,9 @@
+package koolfileindexer.common.codec;
+
+import koolfileindexer.common.exceptions.InvalidFormatException;
+
+/** Contraparte binaria de {@link koolfileindexer.common.utils.FromStr}. */
+@FunctionalInterface
+public interface FromBin<T> {
+    public T from(BinaryReader in) throws InvalidFormatException;
+}
@@ -0,0 +1,6 @@
+package koolfileindexer.common.codec;
+
+/** Contraparte binaria de {@link koolfileindexer.common.utils.IntoStr}. */
+public interface IntoBin {
+    public void intoBinary(BinaryWriter out);
+}
@@ -18,7 +18,7 @@ public class ServerAPIExample {
         // en este caso se simula encontrar dos archivos
         // luego se responde con ok
         server.registerAction("search", (Request req) -> {
-            Search s = req.build(Search.stringFactory());
+            Search s = req.build(Search.stringFactory(), Search.binaryFactory());
             String[] keywords = s.getKeywords();
             File f = new File(keywords[0], "txt", "/home", "Today", 255, keywords);
             GenericList<File> list = new GenericList<>();
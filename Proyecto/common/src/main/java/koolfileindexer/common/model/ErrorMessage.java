@@ -1,11 +1,14 @@
 package koolfileindexer.common.model;
 
 import koolfileindexer.common.Constants;
+import koolfileindexer.common.codec.BinaryWriter;
+import koolfileindexer.common.codec.FromBin;
+import koolfileindexer.common.codec.IntoBin;
 import koolfileindexer.common.exceptions.InvalidFormatException;
 import koolfileindexer.common.utils.FromStr;
 import koolfileindexer.common.utils.IntoStr;
 
-public class ErrorMessage implements IntoStr {
+public class ErrorMessage implements IntoStr, IntoBin {
     private String errorMessage;
 
     public ErrorMessage(String errorMessage) {
@@ -34,6 +37,15 @@ public class ErrorMessage implements IntoStr {
         };
     }
 
+    public static FromBin<ErrorMessage> binaryFactory() {
+        return in -> new ErrorMessage(in.readString());
+    }
+
+    @Override
+    public void intoBinary(BinaryWriter out) {
+        out.writeString(this.errorMessage);
+    }
+
     @Override
     public String intoString() {
         String result = "";
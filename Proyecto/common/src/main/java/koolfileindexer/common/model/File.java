@@ -1,12 +1,15 @@
 package koolfileindexer.common.model;
 
 import koolfileindexer.common.Constants;
+import koolfileindexer.common.codec.BinaryWriter;
+import koolfileindexer.common.codec.FromBin;
+import koolfileindexer.common.codec.IntoBin;
 import koolfileindexer.common.exceptions.InvalidFormatException;
 import koolfileindexer.common.utils.FromStr;
 import koolfileindexer.common.utils.IntoStr;
 import koolfileindexer.common.utils.StringVisitor;
 
-public class File implements IntoStr {
+public class File implements IntoStr, IntoBin {
 
     private String name;
     private String extension;
@@ -57,7 +60,7 @@ public class File implements IntoStr {
     public static FromStr<File> stringFactory() {
         return source -> {
             try {
-                String[] lines = source.split(Constants.LINE_SEPARATOR);
+                String[] lines = StringVisitor.splitLines(source);
 
                 String name = StringVisitor.visitString(lines[0], "name");
                 String extension = StringVisitor.visitString(lines[1], "extension");
@@ -92,18 +95,65 @@ public class File implements IntoStr {
         };
     }
 
+    /**
+     * Binario: la extensión, el directorio y las etiquetas van por
+     * diccionario porque se repiten entre los archivos de una respuesta.
+     */
+    public static FromBin<File> binaryFactory() {
+        return in -> {
+            String name = in.readString();
+            String extension = in.readDictionaryString();
+            String directory = in.readDictionaryString();
+            String fileName = in.readString();
+            String path = directory == null ? fileName : directory + fileName;
+            String modifiedDate = in.readString();
+            Integer size = in.readNullableInt();
+            long tagsLength = in.readVarint();
+            // Cada etiqueta ocupa al menos un byte
+            if (tagsLength > in.remaining()) {
+                throw new InvalidFormatException(File.class);
+            }
+            String[] tags = new String[(int) tagsLength];
+            for (int i = 0; i < tags.length; i++) {
+                tags[i] = in.readDictionaryString();
+            }
+            return new File(name, extension, path, modifiedDate, size, tags);
+        };
+    }
+
+    @Override
+    public void intoBinary(BinaryWriter out) {
+        out.writeString(this.name);
+        out.writeDictionaryString(this.extension);
+        int separator = this.path == null ? -1 : Math.max(this.path.lastIndexOf('/'), this.path.lastIndexOf('\\'));
+        if (separator < 0) {
+            out.writeDictionaryString(null);
+            out.writeString(this.path);
+        } else {
+            out.writeDictionaryString(this.path.substring(0, separator + 1));
+            out.writeString(this.path.substring(separator + 1));
+        }
+        out.writeString(this.modifiedDate);
+        out.writeNullableInt(this.size);
+        String[] tags = this.tags == null ? new String[0] : this.tags;
+        out.writeVarint(tags.length);
+        for (String tag : tags) {
+            out.writeDictionaryString(tag);
+        }
+    }
+
     @Override
     public String intoString() {
-        String result = "";
-        result += "name: " + this.name + Constants.LINE_SEPARATOR;
-        result += "extension: " + this.extension + Constants.LINE_SEPARATOR;
-        result += "path: " + this.path + Constants.LINE_SEPARATOR;
-        result += "modified-date: " + this.modifiedDate + Constants.LINE_SEPARATOR;
-        result += "size: " + this.size + Constants.LINE_SEPARATOR;
-        result += "tags-length: " + this.tags.length + Constants.LINE_SEPARATOR;
+        StringBuilder result = new StringBuilder(128);
+        result.append("name: ").append(this.name).append(Constants.LINE_SEPARATOR);
+        result.append("extension: ").append(this.extension).append(Constants.LINE_SEPARATOR);
+        result.append("path: ").append(this.path).append(Constants.LINE_SEPARATOR);
+        result.append("modified-date: ").append(this.modifiedDate).append(Constants.LINE_SEPARATOR);
+        result.append("size: ").append(this.size).append(Constants.LINE_SEPARATOR);
+        result.append("tags-length: ").append(this.tags.length).append(Constants.LINE_SEPARATOR);
         for (String tag : this.tags) {
-            result += "tag: " + tag + Constants.LINE_SEPARATOR;
+            result.append("tag: ").append(tag).append(Constants.LINE_SEPARATOR);
         }
-        return result;
+        return result.toString();
     }
 }
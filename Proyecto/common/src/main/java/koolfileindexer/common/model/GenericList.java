@@ -3,99 +3,201 @@ package koolfileindexer.common.model;
 import java.util.ArrayList;
 
 import koolfileindexer.common.Constants;
+import koolfileindexer.common.codec.BinaryWriter;
+import koolfileindexer.common.codec.FromBin;
+import koolfileindexer.common.codec.IntoBin;
 import koolfileindexer.common.exceptions.InvalidFormatException;
 import koolfileindexer.common.utils.FromStr;
 import koolfileindexer.common.utils.IntoStr;
 
-public class GenericList<T extends IntoStr> extends ArrayList<T> implements IntoStr {
+/**
+ * Lista de ítems en texto. Cada ítem va precedido por la cantidad de líneas
+ * que ocupa, igual que en las respuestas en streaming:
+ * items: {number_of_items}
+ * item: {number_of_lines}
+ * {lines}
+ * ...
+ *
+ * Así se decodifica en una sola pasada. El formato anterior (los ítems
+ * seguidos, sin "item:") se sigue leyendo probando t.from() con cada vez más
+ * líneas.
+ */
+public class GenericList<T extends IntoStr> extends ArrayList<T> implements IntoStr, IntoBin {
+
+    private static final String ITEM_PREFIX = "item: ";
 
     public static <T extends IntoStr> FromStr<GenericList<T>> stringFactory(FromStr<T> t) {
         return source -> {
             try {
-                GenericList<T> list = new GenericList<>();
-                String[] lines = source.split(Constants.LINE_SEPARATOR);
-                Integer size = Integer.parseInt(lines[0].split(": ")[1]);
+                int position = nextLine(source, 0);
+                Integer size = Integer.parseInt(line(source, 0, position).split(": ")[1]);
+                if (size > 0 && !source.startsWith(ITEM_PREFIX, position)) {
+                    return fromLegacy(source.split(Constants.LINE_SEPARATOR), size, t);
+                }
 
-                int lineIndex = 1;
+                // El tamaño viene del otro lado: no se reserva más de lo razonable
+                GenericList<T> list = new GenericList<>(Math.min(size, 1 << 16));
                 for (int i = 0; i < size; i++) {
-                    // Find the start of the next item's string representation
-                    // Assume each item's string starts with a known prefix (e.g., for File: "name:
-                    // ")
-                    // and ends before the next item's prefix or end of lines
-                    // We'll use the IntoStr format: each item is a block of lines
-                    // We'll try to find the next item by looking for the next known prefix or by
-                    // counting lines
-                    // For generic, we assume each item is separated and occupies a fixed number of
-                    // lines or is parseable by t.from()
-                    // We'll collect lines until we've gathered enough for t.from()
-                    // For simplicity, we'll collect lines until we've reached the start of the next
-                    // item or end
-                    // Here, we assume each item is separated and occupies a block of lines, so we
-                    // try to find the block
-                    // We'll use a heuristic: for the last item, take all remaining lines
-                    int start = lineIndex;
-                    int end = lines.length;
-                    if (i < size - 1) {
-                        // Try to find the start of the next item by looking for a known prefix
-                        // For now, we assume each item is separated by a fixed number of lines
-                        // We'll try to parse incrementally until t.from() succeeds
-                        // We'll try increasing the number of lines until parsing succeeds
-                        boolean parsed = false;
-                        for (int j = start + 1; j <= lines.length; j++) {
-                            StringBuilder candidate = new StringBuilder();
-                            for (int k = start; k < j; k++) {
-                                candidate.append(lines[k]);
-                                if (k < j - 1) {
-                                    candidate.append(Constants.LINE_SEPARATOR);
-                                }
-                            }
-                            try {
-                                candidate.append(Constants.LINE_SEPARATOR);
-
-                                T item = t.from(candidate.toString());
-                                list.add(item);
-                                lineIndex = j;
-                                parsed = true;
-                                break;
-                            } catch (Exception ex) {
-                                // keep trying
-                            }
-                        }
-                        if (!parsed) {
-                            throw new InvalidFormatException((new GenericList<T>()).getClass());
+                    int next = nextLine(source, position);
+                    if (!source.startsWith(ITEM_PREFIX, position)) {
+                        throw new InvalidFormatException(GenericList.class);
+                    }
+                    int lines = Integer.parseInt(line(source, position, next).substring(ITEM_PREFIX.length()));
+                    int start = next;
+                    position = next;
+                    for (int j = 0; j < lines; j++) {
+                        // Un largo mayor que lo que queda no puede tomar el resto como ítem
+                        if (position >= source.length()) {
+                            throw new InvalidFormatException(GenericList.class);
                         }
-                    } else {
-                        // Last item: take all remaining lines
-                        StringBuilder candidate = new StringBuilder();
-                        for (int k = start; k < end; k++) {
-                            candidate.append(lines[k]);
-                            if (k < end - 1)
-                                candidate.append(Constants.LINE_SEPARATOR);
+                        position = nextLine(source, position);
+                    }
+                    list.add(t.from(source.substring(start, position)));
+                }
+                return list;
+            } catch (Exception e) {
+                throw new InvalidFormatException((new GenericList<T>()).getClass());
+            }
+        };
+    }
+
+    public GenericList() {
+        super();
+    }
+
+    private GenericList(int initialCapacity) {
+        super(initialCapacity);
+    }
+
+    /** Posición donde empieza la línea siguiente a la que empieza en from. */
+    private static int nextLine(String source, int from) {
+        int end = source.indexOf(Constants.LINE_SEPARATOR, from);
+        return end < 0 ? source.length() : end + Constants.LINE_SEPARATOR.length();
+    }
+
+    /** La línea entre start y next, sin el separador. */
+    private static String line(String source, int start, int next) {
+        int end = next - Constants.LINE_SEPARATOR.length();
+        if (end >= start && source.startsWith(Constants.LINE_SEPARATOR, end)) {
+            return source.substring(start, end);
+        }
+        return source.substring(start, next);
+    }
+
+    private static <T extends IntoStr> GenericList<T> fromLegacy(String[] lines, int size, FromStr<T> t)
+            throws Exception {
+        GenericList<T> list = new GenericList<>();
+        int lineIndex = 1;
+        for (int i = 0; i < size; i++) {
+            // Find the start of the next item's string representation
+            // Assume each item's string starts with a known prefix (e.g., for File: "name:
+            // ")
+            // and ends before the next item's prefix or end of lines
+            // We'll use the IntoStr format: each item is a block of lines
+            // We'll try to find the next item by looking for the next known prefix or by
+            // counting lines
+            // For generic, we assume each item is separated and occupies a fixed number of
+            // lines or is parseable by t.from()
+            // We'll collect lines until we've gathered enough for t.from()
+            // For simplicity, we'll collect lines until we've reached the start of the next
+            // item or end
+            // Here, we assume each item is separated and occupies a block of lines, so we
+            // try to find the block
+            // We'll use a heuristic: for the last item, take all remaining lines
+            int start = lineIndex;
+            int end = lines.length;
+            if (i < size - 1) {
+                // Try to find the start of the next item by looking for a known prefix
+                // For now, we assume each item is separated by a fixed number of lines
+                // We'll try to parse incrementally until t.from() succeeds
+                // We'll try increasing the number of lines until parsing succeeds
+                boolean parsed = false;
+                for (int j = start + 1; j <= lines.length; j++) {
+                    StringBuilder candidate = new StringBuilder();
+                    for (int k = start; k < j; k++) {
+                        candidate.append(lines[k]);
+                        if (k < j - 1) {
+                            candidate.append(Constants.LINE_SEPARATOR);
                         }
+                    }
+                    try {
+                        candidate.append(Constants.LINE_SEPARATOR);
+
                         T item = t.from(candidate.toString());
                         list.add(item);
-                        lineIndex = end;
+                        lineIndex = j;
+                        parsed = true;
+                        break;
+                    } catch (Exception ex) {
+                        // keep trying
                     }
                 }
+                if (!parsed) {
+                    throw new InvalidFormatException((new GenericList<T>()).getClass());
+                }
+            } else {
+                // Last item: take all remaining lines
+                StringBuilder candidate = new StringBuilder();
+                for (int k = start; k < end; k++) {
+                    candidate.append(lines[k]);
+                    if (k < end - 1)
+                        candidate.append(Constants.LINE_SEPARATOR);
+                }
+                T item = t.from(candidate.toString());
+                list.add(item);
+                lineIndex = end;
+            }
+        }
 
-                return list;
-            } catch (Exception e) {
-                throw new InvalidFormatException((new GenericList<T>()).getClass());
+        return list;
+    }
+
+    public static <T extends IntoStr> FromBin<GenericList<T>> binaryFactory(FromBin<T> t) {
+        return in -> {
+            long size = in.readVarint();
+            // Cada ítem ocupa al menos un byte
+            if (size > in.remaining()) {
+                throw new InvalidFormatException(GenericList.class);
             }
+            GenericList<T> list = new GenericList<>((int) Math.min(size, 1 << 16));
+            for (long i = 0; i < size; i++) {
+                list.add(t.from(in));
+            }
+            return list;
         };
     }
 
+    /** Los ítems tienen que implementar {@link IntoBin}. */
     @Override
-    public String intoString() {
-        String result = "";
+    public void intoBinary(BinaryWriter out) {
+        out.writeVarint(this.size());
+        for (T t : this) {
+            ((IntoBin) t).intoBinary(out);
+        }
+    }
 
-        result += "items: " + this.size() + Constants.LINE_SEPARATOR;
+    @Override
+    public String intoString() {
+        StringBuilder result = new StringBuilder();
+        result.append("items: ").append(this.size()).append(Constants.LINE_SEPARATOR);
 
         for (T t : this) {
-            result += t.intoString();
+            String[] lines = t.intoString().split(Constants.LINE_SEPARATOR);
+            int count = 0;
+            for (String line : lines) {
+                if (!line.isEmpty()) {
+                    count++;
+                }
+            }
+            result.append(ITEM_PREFIX).append(count).append(Constants.LINE_SEPARATOR);
+            for (String line : lines) {
+                if (!line.isEmpty()) {
+                    result.append(line).append(Constants.LINE_SEPARATOR);
+                }
+            }
         }
 
-        return result;
+        return result.toString();
     }
 
 }
@@ -0,0 +1,79 @@
+package koolfileindexer.common.model;
+
+import koolfileindexer.common.Constants;
+import koolfileindexer.common.codec.BinaryWriter;
+import koolfileindexer.common.codec.FromBin;
+import koolfileindexer.common.codec.IntoBin;
+import koolfileindexer.common.exceptions.InvalidFormatException;
+import koolfileindexer.common.utils.FromStr;
+import koolfileindexer.common.utils.IntoStr;
+
+/**
+ * Una página de resultados y el cursor para pedir la siguiente (null si no
+ * hay más).
+ */
+public class Page<T extends IntoStr> implements IntoStr, IntoBin {
+    private final GenericList<T> items;
+    private final String nextCursor;
+
+    public Page(GenericList<T> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public GenericList<T> getItems() {
+        return items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    /**
+     * Expects format:
+     * next-cursor: {cursor o vacío}
+     * items: {number_of_items}
+     * ...
+     */
+    public static <T extends IntoStr> FromStr<Page<T>> stringFactory(FromStr<T> t) {
+        return source -> {
+            try {
+                String[] lines = source.split(Constants.LINE_SEPARATOR, 2);
+                String[] property = lines[0].split(": ", 2);
+                if (!property[0].equals("next-cursor")) {
+                    throw new InvalidFormatException(Page.class);
+                }
+                String nextCursor = property.length > 1 && !property[1].isEmpty() ? property[1] : null;
+                GenericList<T> items = GenericList.stringFactory(t).from(lines[1]);
+                return new Page<>(items, nextCursor);
+            } catch (Exception e) {
+                throw new InvalidFormatException(Page.class);
+            }
+        };
+    }
+
+    public static <T extends IntoStr> FromBin<Page<T>> binaryFactory(FromBin<T> t) {
+        return in -> {
+            String nextCursor = in.readString();
+            return new Page<>(GenericList.binaryFactory(t).from(in), nextCursor);
+        };
+    }
+
+    @Override
+    public void intoBinary(BinaryWriter out) {
+        out.writeString(this.nextCursor);
+        this.items.intoBinary(out);
+    }
+
+    @Override
+    public String intoString() {
+        String result = "";
+        result += "next-cursor: " + (this.nextCursor == null ? "" : this.nextCursor) + Constants.LINE_SEPARATOR;
+        result += this.items.intoString();
+        return result;
+    }
+}
@@ -1,19 +1,53 @@
 package koolfileindexer.common.model;
 
 import koolfileindexer.common.Constants;
+import koolfileindexer.common.codec.BinaryWriter;
+import koolfileindexer.common.codec.FromBin;
+import koolfileindexer.common.codec.IntoBin;
 import koolfileindexer.common.exceptions.InvalidFormatException;
 import koolfileindexer.common.utils.FromStr;
 import koolfileindexer.common.utils.IntoStr;
 
-public class Search implements IntoStr {
+public class Search implements IntoStr, IntoBin {
     private final String[] keywords;
     private final String[] tags;
     private final String[] filters;
+    // Paginación opcional: sin límite se responde todo en una GenericList
+    private final Integer limit;
+    private final String cursor;
+    private final boolean stream;
+    // Directorio cuyo subárbol completo se busca; null para buscar en todo
+    private final String under;
 
     public Search(String[] keywords, String[] tags, String[] filters) {
+        this(keywords, tags, filters, null, null, false);
+    }
+
+    /**
+     * @param limit  máximo de resultados por página, o null para todos
+     * @param cursor token devuelto como next-cursor por la página anterior, o
+     *               null para la primera
+     * @param stream si true la respuesta llega ítem por ítem (ver
+     *               {@link koolfileindexer.common.protocol.Response#stream})
+     */
+    public Search(String[] keywords, String[] tags, String[] filters, Integer limit, String cursor,
+            boolean stream) {
+        this(keywords, tags, filters, limit, cursor, stream, null);
+    }
+
+    /**
+     * @param under directorio bajo el cual buscar, a cualquier profundidad
+     *              ("*.log" bajo /var/app), o null para buscar en todo
+     */
+    public Search(String[] keywords, String[] tags, String[] filters, Integer limit, String cursor,
+            boolean stream, String under) {
         this.keywords = keywords;
         this.tags = tags;
         this.filters = filters;
+        this.limit = limit;
+        this.cursor = cursor;
+        this.stream = stream;
+        this.under = under;
     }
 
     public String[] getKeywords() {
@@ -28,6 +62,27 @@ public class Search implements IntoStr {
         return filters;
     }
 
+    public Integer getLimit() {
+        return limit;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public boolean isStream() {
+        return stream;
+    }
+
+    public String getUnder() {
+        return under;
+    }
+
+    /** true si el cliente espera una Page o un stream en vez de una GenericList. */
+    public boolean isPaged() {
+        return limit != null || cursor != null || stream;
+    }
+
     /**
      * Expects format:
      * keywords: {numner_of_keywords}
@@ -38,6 +93,10 @@ public class Search implements IntoStr {
      * keyword: {keyword3}
      * tag: {tag1}
      * filter: {filter}
+     * limit: {limit} (opcional)
+     * cursor: {cursor} (opcional)
+     * stream: {true|false} (opcional)
+     * under: {directorio} (opcional)
      * 
      * @return
      */
@@ -64,13 +123,59 @@ public class Search implements IntoStr {
                     filters[i] = lines[keywordsLength + tagsLength + 3 + i].split(": ", 2)[1];
                 }
 
-                return new Search(keywords, tags, filters);
+                // Las líneas de paginación son opcionales para aceptar clientes anteriores
+                Integer limit = null;
+                String cursor = null;
+                boolean stream = false;
+                String under = null;
+                for (int i = keywordsLength + tagsLength + filtersLength + 3; i < lines.length; i++) {
+                    String[] property = lines[i].split(": ", 2);
+                    String value = property.length > 1 ? property[1] : "";
+                    switch (property[0]) {
+                        case "limit" -> limit = Integer.parseInt(value);
+                        case "cursor" -> cursor = value.isEmpty() ? null : value;
+                        case "stream" -> stream = Boolean.parseBoolean(value);
+                        case "under" -> under = value.isEmpty() ? null : value;
+                        default -> {
+                        }
+                    }
+                }
+
+                return new Search(keywords, tags, filters, limit, cursor, stream, under);
             } catch (Exception e) {
                 throw new InvalidFormatException(Search.class);
             }
         };
     }
 
+    public static FromBin<Search> binaryFactory() {
+        return in -> {
+            String[] keywords = in.readStringArray();
+            String[] tags = in.readStringArray();
+            String[] filters = in.readStringArray();
+            Integer limit = in.readNullableInt();
+            String cursor = in.readString();
+            boolean stream = in.readBoolean();
+            // Va al final y es opcional: los clientes anteriores no lo envían
+            String under = in.remaining() > 0 ? in.readString() : null;
+            return new Search(keywords == null ? new String[0] : keywords, tags == null ? new String[0] : tags,
+                    filters == null ? new String[0] : filters, limit, cursor, stream, under);
+        };
+    }
+
+    @Override
+    public void intoBinary(BinaryWriter out) {
+        out.writeStringArray(this.keywords);
+        out.writeStringArray(this.tags);
+        out.writeStringArray(this.filters);
+        out.writeNullableInt(this.limit);
+        out.writeString(this.cursor);
+        out.writeBoolean(this.stream);
+        if (this.under != null) {
+            out.writeString(this.under);
+        }
+    }
+
     @Override
     public String intoString() {
         String result = "";
@@ -86,6 +191,18 @@ public class Search implements IntoStr {
         for (String filter : this.filters) {
             result += "filter: " + filter + Constants.LINE_SEPARATOR;
         }
+        if (this.limit != null) {
+            result += "limit: " + this.limit + Constants.LINE_SEPARATOR;
+        }
+        if (this.cursor != null) {
+            result += "cursor: " + this.cursor + Constants.LINE_SEPARATOR;
+        }
+        if (this.stream) {
+            result += "stream: true" + Constants.LINE_SEPARATOR;
+        }
+        if (this.under != null) {
+            result += "under: " + this.under + Constants.LINE_SEPARATOR;
+        }
         return result;
     }
 }
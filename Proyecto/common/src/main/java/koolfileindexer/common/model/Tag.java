@@ -1,11 +1,14 @@
 package koolfileindexer.common.model;
 
 import koolfileindexer.common.Constants;
+import koolfileindexer.common.codec.BinaryWriter;
+import koolfileindexer.common.codec.FromBin;
+import koolfileindexer.common.codec.IntoBin;
 import koolfileindexer.common.exceptions.InvalidFormatException;
 import koolfileindexer.common.utils.FromStr;
 import koolfileindexer.common.utils.IntoStr;
 
-public class Tag implements IntoStr {
+public class Tag implements IntoStr, IntoBin {
 
     private String name;
 
@@ -35,6 +38,15 @@ public class Tag implements IntoStr {
         };
     }
 
+    public static FromBin<Tag> binaryFactory() {
+        return in -> new Tag(in.readDictionaryString());
+    }
+
+    @Override
+    public void intoBinary(BinaryWriter out) {
+        out.writeDictionaryString(this.name);
+    }
+
     @Override
     public String intoString() {
         String result = "";
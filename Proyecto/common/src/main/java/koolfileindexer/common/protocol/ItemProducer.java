@@ -0,0 +1,14 @@
+package koolfileindexer.common.protocol;
+
+/**
+ * Genera los ítems de una respuesta en streaming.
+ */
+@FunctionalInterface
+public interface ItemProducer {
+    /**
+     * Escribe los ítems en el sink a medida que se obtienen.
+     *
+     * @return el cursor de la página siguiente, o null si no hay más
+     */
+    String produce(ItemSink sink) throws Exception;
+}
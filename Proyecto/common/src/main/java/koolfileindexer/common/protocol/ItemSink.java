@@ -0,0 +1,14 @@
+package koolfileindexer.common.protocol;
+
+import java.io.IOException;
+
+import koolfileindexer.common.utils.IntoStr;
+
+/**
+ * Destino de los ítems de una respuesta en streaming; cada write los envía
+ * al socket sin acumularlos.
+ */
+@FunctionalInterface
+public interface ItemSink {
+    void write(IntoStr item) throws IOException;
+}
@@ -1,22 +1,44 @@
 package koolfileindexer.common.protocol;
 
 import koolfileindexer.common.Constants;
+import koolfileindexer.common.codec.BinaryReader;
+import koolfileindexer.common.codec.FromBin;
 import koolfileindexer.common.exceptions.InvalidFormatException;
 import koolfileindexer.common.utils.FromStr;
 import koolfileindexer.common.utils.IntoStr;
 
 public class Request implements IntoStr {
     private final String method;
-    private final String data;
+    // Con un objeto el texto se arma recién cuando se pide, así una sesión
+    // binaria no lo genera nunca
+    private String data;
+    private final IntoStr value;
+    private final BinaryReader binaryData;
 
     public Request(String method, String data) {
         this.method = method;
         this.data = data;
+        this.value = null;
+        this.binaryData = null;
     }
 
     public Request(String method, IntoStr data) {
         this.method = method;
-        this.data = data.intoString();
+        this.data = null;
+        this.value = data;
+        this.binaryData = null;
+    }
+
+    private Request(String method, BinaryReader binaryData) {
+        this.method = method;
+        this.data = "";
+        this.value = null;
+        this.binaryData = binaryData;
+    }
+
+    /** Request recibido con el codec binario; el reader queda al inicio de los datos. */
+    public static Request fromBinary(String method, BinaryReader data) {
+        return new Request(method, data);
     }
 
     public static FromStr<Request> stringFactory() {
@@ -35,18 +57,41 @@ public class Request implements IntoStr {
     }
 
     public String getRawData() {
-        return data;
+        if (this.data == null) {
+            this.data = this.value.intoString();
+        }
+        return this.data;
+    }
+
+    /** El objeto con el que se creó el request, o null si se creó con texto. */
+    public IntoStr getValue() {
+        return value;
+    }
+
+    public boolean isBinary() {
+        return this.binaryData != null;
     }
 
     public <T> T build(FromStr<T> factory) throws InvalidFormatException {
-        return factory.from(this.data);
+        if (this.isBinary()) {
+            throw new InvalidFormatException("text (request was sent with the binary codec)");
+        }
+        return factory.from(this.getRawData());
+    }
+
+    /** Decodifica con el codec que haya usado el cliente. */
+    public <T> T build(FromStr<T> text, FromBin<T> binary) throws InvalidFormatException {
+        if (this.isBinary()) {
+            return binary.from(this.binaryData);
+        }
+        return text.from(this.getRawData());
     }
 
     @Override
     public String intoString() {
         String result = "";
         result += this.method + Constants.LINE_SEPARATOR;
-        result += this.data + Constants.LINE_SEPARATOR;
+        result += this.getRawData() + Constants.LINE_SEPARATOR;
         return result;
     }
 }
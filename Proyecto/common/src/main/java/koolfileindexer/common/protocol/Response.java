@@ -1,6 +1,8 @@
 package koolfileindexer.common.protocol;
 
 import koolfileindexer.common.Constants;
+import koolfileindexer.common.codec.BinaryReader;
+import koolfileindexer.common.codec.FromBin;
 import koolfileindexer.common.exceptions.InvalidFormatException;
 import koolfileindexer.common.model.ErrorMessage;
 import koolfileindexer.common.utils.FromStr;
@@ -15,15 +17,51 @@ public class Response implements IntoStr {
     }
 
     private final ResultEnum result;
-    private final String data;
+    // Con un objeto el texto se arma recién cuando se pide, así una sesión
+    // binaria no lo genera nunca
+    private String data;
+    private final IntoStr value;
+    private final BinaryReader binaryData;
+    private final ItemProducer producer;
     private final FromStr<ErrorMessage> factory = ErrorMessage.stringFactory();
 
     public Response(ResultEnum result, String data) {
         this.result = result;
+        this.data = normalize(data);
+        this.value = null;
+        this.binaryData = null;
+        this.producer = null;
+    }
+
+    private Response(ResultEnum result, IntoStr value) {
+        this.result = result;
+        this.data = null;
+        this.value = value;
+        this.binaryData = null;
+        this.producer = null;
+    }
+
+    private Response(ResultEnum result, BinaryReader binaryData) {
+        this.result = result;
+        this.data = "";
+        this.value = null;
+        this.binaryData = binaryData;
+        this.producer = null;
+    }
+
+    private Response(ItemProducer producer) {
+        this.result = ResultEnum.Ok;
+        this.data = "";
+        this.value = null;
+        this.binaryData = null;
+        this.producer = producer;
+    }
+
+    private static String normalize(String data) {
         if (data.endsWith(Constants.LINE_SEPARATOR)) {
             data += Constants.LINE_SEPARATOR;
         }
-        this.data = data;
+        return data;
     }
 
     public static Response ok(String data) {
@@ -31,7 +69,32 @@ public class Response implements IntoStr {
     }
 
     public static Response ok(IntoStr data) {
-        return new Response(ResultEnum.Ok, data.intoString());
+        return new Response(ResultEnum.Ok, data);
+    }
+
+    /** Response recibida con el codec binario; el reader queda al inicio de los datos. */
+    public static Response fromBinary(boolean ok, BinaryReader data) {
+        return new Response(ok ? ResultEnum.Ok : ResultEnum.Err, data);
+    }
+
+    /**
+     * Respuesta que se escribe ítem por ítem mientras el producer los genera,
+     * sin construir el texto completo. Formato tras "ok":
+     * item: {número de líneas}
+     * {líneas del ítem}
+     * ...
+     * next-cursor: {cursor o vacío} | error: {mensaje}
+     */
+    public static Response stream(ItemProducer producer) {
+        return new Response(producer);
+    }
+
+    public boolean isStream() {
+        return this.producer != null;
+    }
+
+    public ItemProducer getProducer() {
+        return producer;
     }
 
     public static Response err(String data) {
@@ -39,7 +102,23 @@ public class Response implements IntoStr {
     }
 
     public static Response err(IntoStr data) {
-        return new Response(ResultEnum.Err, data.intoString());
+        return new Response(ResultEnum.Err, data);
+    }
+
+    /** El objeto con el que se creó la respuesta, o null si se creó con texto. */
+    public IntoStr getValue() {
+        return value;
+    }
+
+    public boolean isBinary() {
+        return this.binaryData != null;
+    }
+
+    private String text() {
+        if (this.data == null) {
+            this.data = normalize(this.value.intoString());
+        }
+        return this.data;
     }
 
     public boolean isError() {
@@ -51,10 +130,33 @@ public class Response implements IntoStr {
     }
 
     public <T> Result<T, ErrorMessage> getData(FromStr<T> factory) throws InvalidFormatException {
+        if (isBinary()) {
+            if (isError()) {
+                return Result.error(ErrorMessage.binaryFactory().from(this.binaryData));
+            }
+            throw new InvalidFormatException("text (response was sent with the binary codec)");
+        }
+        if (isError()) {
+            return Result.error(this.factory.from(this.text()));
+        }
+        return Result.success(factory.from(this.text()));
+    }
+
+    /**
+     * Como {@link #getData(FromStr)} para el codec binario. Los errores
+     * pueden llegar en texto aun en una sesión binaria.
+     */
+    public <T> Result<T, ErrorMessage> getBinaryData(FromBin<T> factory) throws InvalidFormatException {
+        if (!isBinary()) {
+            if (isError()) {
+                return Result.error(this.factory.from(this.text()));
+            }
+            throw new InvalidFormatException("binary (response was sent as text)");
+        }
         if (isError()) {
-            return Result.error(this.factory.from(this.data));
+            return Result.error(ErrorMessage.binaryFactory().from(this.binaryData));
         }
-        return Result.success(factory.from(this.data));
+        return Result.success(factory.from(this.binaryData));
     }
 
     public static FromStr<Response> stringFactory() {
@@ -79,7 +181,7 @@ public class Response implements IntoStr {
         } else {
             result += "err" + Constants.LINE_SEPARATOR;
         }
-        result += this.data + Constants.LINE_SEPARATOR;
+        result += this.text() + Constants.LINE_SEPARATOR;
         return result;
     }
 }
@@ -0,0 +1,316 @@
+package koolfileindexer.common.protocol.v1;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+import jnr.unixsocket.UnixSocketChannel;
+import koolfileindexer.common.Constants;
+import koolfileindexer.common.exceptions.InvalidProtocolException;
+import koolfileindexer.common.protocol.Request;
+import koolfileindexer.common.protocol.Response;
+import koolfileindexer.common.protocol.v2.Handshake;
+import koolfileindexer.common.protocol.v2.ServerSession;
+import koolfileindexer.common.utils.ServerFunction;
+
+/**
+ * Modo event loop del {@link SocketServer}: un solo hilo con un Selector
+ * acepta las conexiones y lee sin bloquear; los requests completos se
+ * atienden en el pool de workers y las respuestas vuelven por una
+ * {@link Outbox} que el mismo hilo manda cuando el socket acepta escrituras.
+ * Un cliente lento o callado no ocupa un worker mientras no haya mandado un
+ * request entero.
+ *
+ * Las sesiones v2 (con o sin mux) se atienden enteras acá. Un cliente v1 lee
+ * líneas hasta el trailer con streams bloqueantes, así que una vez reconocido
+ * su header la conexión vuelve a modo bloqueante y pasa al pool como en el
+ * modo de siempre.
+ */
+final class EventLoop implements Closeable {
+
+    interface Acceptor {
+        /** @return la conexión aceptada, o null si no había ninguna pendiente */
+        SelectableChannel accept() throws IOException;
+    }
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_HEADER_LENGTH = 256;
+    private static final byte[] PROTOCOL_V2_PREFIX = Constants.PROTOCOL_V2_HEADER
+            .substring(0, Constants.PROTOCOL_V2_HEADER.length() - Constants.LINE_SEPARATOR.length())
+            .getBytes(StandardCharsets.US_ASCII);
+
+    /** Estado de una conexión; solo lo toca el hilo del event loop. */
+    private final class Client {
+        final SelectableChannel channel;
+        final SelectionKey key;
+        final Outbox outbox;
+        // En modo escritura entre lecturas: lo recibido que todavía no forma
+        // un header o un frame completo
+        ByteBuffer input = ByteBuffer.allocate(1024);
+        ServerSession session;
+        // false cuando la sesión no espera más requests (v2 sin mux)
+        boolean reading = true;
+        boolean readPaused;
+
+        Client(SelectableChannel channel) throws IOException {
+            this.channel = channel;
+            this.key = channel.register(selector, SelectionKey.OP_READ, this);
+            this.outbox = new Outbox(() -> later(() -> this.interest(SelectionKey.OP_WRITE, true)));
+        }
+
+        void interest(int op, boolean on) {
+            if (!this.key.isValid()) {
+                return;
+            }
+            int ops = this.key.interestOps();
+            this.key.interestOps(on ? ops | op : ops & ~op);
+        }
+    }
+
+    private final Selector selector;
+    private final SelectableChannel server;
+    private final Acceptor acceptor;
+    private final Executor workers;
+    private final ServerFunction<Request, Response> dispatch;
+    // Cambios de interest ops pedidos desde los workers; los aplica el event loop
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final List<Client> toBlocking = new ArrayList<>();
+    private final Set<Client> clients = ConcurrentHashMap.newKeySet();
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+    EventLoop(SelectableChannel server, Acceptor acceptor, Executor workers,
+            ServerFunction<Request, Response> dispatch) throws IOException {
+        this.selector = server.provider().openSelector();
+        this.server = server;
+        this.acceptor = acceptor;
+        this.workers = workers;
+        this.dispatch = dispatch;
+        server.configureBlocking(false);
+        server.register(this.selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /** Espera eventos y los atiende; se llama en bucle desde un solo hilo. */
+    void poll() throws IOException {
+        try {
+            this.select();
+        } catch (ClosedSelectorException e) {
+            // close() desde otro hilo
+            throw new ClosedChannelException();
+        }
+    }
+
+    private void select() throws IOException {
+        this.selector.select();
+        Runnable task;
+        while ((task = this.tasks.poll()) != null) {
+            task.run();
+        }
+        Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            if (!key.isValid()) {
+                continue;
+            }
+            if (key.isAcceptable()) {
+                this.acceptAll();
+                continue;
+            }
+            Client client = (Client) key.attachment();
+            try {
+                if (key.isWritable()) {
+                    this.write(client);
+                }
+                if (key.isValid() && key.isReadable()) {
+                    this.read(client);
+                }
+            } catch (IOException | InvalidProtocolException e) {
+                System.err.println(e.getMessage());
+                this.close(client);
+            }
+        }
+        if (!this.toBlocking.isEmpty()) {
+            this.handOffV1();
+        }
+    }
+
+    /** Puede llamarse desde otro hilo: el poll en curso termina con ClosedChannelException. */
+    @Override
+    public void close() throws IOException {
+        this.selector.close();
+        for (Client client : this.clients) {
+            this.close(client);
+        }
+        this.server.close();
+    }
+
+    private void later(Runnable task) {
+        this.tasks.add(task);
+        this.selector.wakeup();
+    }
+
+    private void acceptAll() {
+        while (true) {
+            SelectableChannel channel;
+            try {
+                channel = this.acceptor.accept();
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+                return;
+            }
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.configureBlocking(false);
+                this.clients.add(new Client(channel));
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private void read(Client client) throws IOException, InvalidProtocolException {
+        this.readBuffer.clear();
+        int n = ((ByteChannel) client.channel).read(this.readBuffer);
+        if (n < 0) {
+            this.close(client);
+            return;
+        }
+        this.readBuffer.flip();
+        if (client.input.remaining() < n) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(client.input.capacity() * 2, client.input.position() + n));
+            client.input.flip();
+            client.input = bigger.put(client.input);
+        }
+        client.input.put(this.readBuffer);
+
+        client.input.flip();
+        try {
+            if (client.session == null && !this.handshake(client)) {
+                return;
+            }
+            if (client.session != null && !client.session.consume(client.input)) {
+                // Sin mux no se espera nada más: la conexión se cierra al responder
+                client.reading = false;
+                client.interest(SelectionKey.OP_READ, false);
+            }
+        } finally {
+            client.input.compact();
+        }
+        if (client.reading && client.outbox.pending() > Outbox.HIGH_WATER) {
+            // No se leen más requests hasta que el cliente lea sus respuestas
+            client.readPaused = true;
+            client.interest(SelectionKey.OP_READ, false);
+        }
+    }
+
+    /**
+     * Busca el fin de la línea de header en input (en modo lectura).
+     *
+     * @return true si quedó una sesión v2 lista para leer frames
+     */
+    private boolean handshake(Client client) throws InvalidProtocolException {
+        ByteBuffer input = client.input;
+        int end = -1;
+        for (int i = input.position(); i < input.limit() && i - input.position() < MAX_HEADER_LENGTH; i++) {
+            if (input.get(i) == '\n') {
+                end = i + 1;
+                break;
+            }
+        }
+        if (end < 0) {
+            if (input.remaining() >= MAX_HEADER_LENGTH) {
+                throw new InvalidProtocolException("InvalidProtocolError: header too long or incomplete");
+            }
+            return false;
+        }
+        byte[] line = new byte[end - input.position()];
+        input.get(line);
+        if (line.length > PROTOCOL_V2_PREFIX.length
+                && Arrays.equals(line, 0, PROTOCOL_V2_PREFIX.length, PROTOCOL_V2_PREFIX, 0,
+                        PROTOCOL_V2_PREFIX.length)) {
+            Handshake handshake = Handshake.parse(new String(line, StandardCharsets.US_ASCII));
+            client.session = new ServerSession(client.outbox, handshake, this.dispatch, this.workers);
+            return true;
+        }
+        // v1: se le devuelve lo leído al Socket, que también valida el header
+        input.position(input.position() - line.length);
+        client.key.cancel();
+        this.toBlocking.add(client);
+        return false;
+    }
+
+    private void write(Client client) throws IOException {
+        if (!client.outbox.drainTo((ByteChannel) client.channel)) {
+            return;
+        }
+        // Entre drainTo y acá un worker puede haber escrito más y cerrado:
+        // isFinished lo mira con el lock de la Outbox
+        if (client.outbox.isFinished()) {
+            this.close(client);
+            return;
+        }
+        client.interest(SelectionKey.OP_WRITE, false);
+        if (client.reading && client.readPaused && client.outbox.pending() <= Outbox.LOW_WATER) {
+            client.readPaused = false;
+            client.interest(SelectionKey.OP_READ, true);
+        }
+    }
+
+    /**
+     * Pasa al pool las conexiones v1. Un canal solo vuelve a ser bloqueante
+     * cuando el selector termina de soltar su key, de ahí el selectNow.
+     */
+    private void handOffV1() throws IOException {
+        this.selector.selectNow();
+        for (Client client : this.toBlocking) {
+            try {
+                if (!(client.channel instanceof UnixSocketChannel channel)) {
+                    throw new IOException("v1 needs a UnixSocketChannel");
+                }
+                channel.configureBlocking(true);
+                ByteBuffer input = client.input.flip();
+                byte[] consumed = new byte[input.remaining()];
+                input.get(consumed);
+                this.clients.remove(client);
+                this.workers.execute(new Socket(channel.socket(), Constants.PROTOCOL_HEADER,
+                        Constants.PROTOCOL_TRAILER, this.dispatch, consumed));
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+                this.close(client);
+            }
+        }
+        this.toBlocking.clear();
+    }
+
+    private void close(Client client) {
+        this.clients.remove(client);
+        client.key.cancel();
+        client.outbox.abort();
+        try {
+            client.channel.close();
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+}
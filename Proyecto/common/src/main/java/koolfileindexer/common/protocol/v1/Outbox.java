@@ -0,0 +1,124 @@
+package koolfileindexer.common.protocol.v1;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+
+/**
+ * Salida de una conexión del {@link EventLoop}: los workers escriben acá (un
+ * FrameChannel de v2 la usa como canal) y el event loop la vacía en el socket
+ * cuando se puede escribir sin bloquear.
+ *
+ * Si el cliente lee más lento de lo que el worker produce, write bloquea al
+ * worker cuando hay más de HIGH_WATER bytes pendientes, hasta que bajan de
+ * LOW_WATER. close no corta la conexión: la cierra el event loop después de
+ * mandar lo pendiente.
+ */
+final class Outbox implements WritableByteChannel {
+
+    static final int HIGH_WATER = 1024 * 1024;
+    static final int LOW_WATER = 256 * 1024;
+
+    private final ArrayDeque<ByteBuffer> queue = new ArrayDeque<>();
+    // Se llama cuando la cola deja de estar vacía, para que el event loop
+    // vuelva a esperar OP_WRITE
+    private final Runnable wantWrite;
+    private int pending;
+    private boolean closing;
+    private boolean aborted;
+
+    Outbox(Runnable wantWrite) {
+        this.wantWrite = wantWrite;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        int n = src.remaining();
+        boolean wasEmpty;
+        synchronized (this) {
+            if (this.aborted || this.closing) {
+                throw new ClosedChannelException();
+            }
+            wasEmpty = this.queue.isEmpty();
+            ByteBuffer copy = ByteBuffer.allocate(n);
+            copy.put(src).flip();
+            this.queue.add(copy);
+            this.pending += n;
+        }
+        if (wasEmpty) {
+            this.wantWrite.run();
+        }
+        synchronized (this) {
+            try {
+                while (this.pending > HIGH_WATER && !this.aborted) {
+                    this.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for a slow client");
+            }
+            if (this.aborted) {
+                throw new ClosedChannelException();
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return !this.aborted && !this.closing;
+    }
+
+    /** La conexión se cierra cuando el event loop termina de mandar lo pendiente. */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (this.closing || this.aborted) {
+                return;
+            }
+            this.closing = true;
+        }
+        this.wantWrite.run();
+    }
+
+    /** El cliente se fue: se descarta lo pendiente y los workers dejan de escribir. */
+    synchronized void abort() {
+        this.aborted = true;
+        this.queue.clear();
+        this.pending = 0;
+        this.notifyAll();
+    }
+
+    synchronized int pending() {
+        return this.pending;
+    }
+
+    /** Se pidió cerrar y ya no queda nada por mandar. */
+    synchronized boolean isFinished() {
+        return this.closing && this.queue.isEmpty();
+    }
+
+    /**
+     * Escribe en el socket lo que acepte sin bloquear.
+     *
+     * @return true si la cola quedó vacía
+     */
+    synchronized boolean drainTo(WritableByteChannel channel) throws IOException {
+        while (!this.queue.isEmpty()) {
+            ByteBuffer head = this.queue.peek();
+            int written = channel.write(head);
+            this.pending -= written;
+            if (head.hasRemaining()) {
+                break;
+            }
+            this.queue.poll();
+        }
+        if (this.pending <= LOW_WATER) {
+            this.notifyAll();
+        }
+        return this.queue.isEmpty();
+    }
+}
@@ -1,11 +1,18 @@
 package koolfileindexer.common.protocol.v1;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import jnr.unixsocket.UnixSocket;
 import jnr.unixsocket.UnixSocketAddress;
@@ -13,8 +20,12 @@ import jnr.unixsocket.UnixSocketChannel;
 import koolfileindexer.common.Constants;
 import koolfileindexer.common.exceptions.InvalidFormatException;
 import koolfileindexer.common.exceptions.InvalidProtocolException;
+import koolfileindexer.common.model.ErrorMessage;
 import koolfileindexer.common.protocol.Request;
 import koolfileindexer.common.protocol.Response;
+import koolfileindexer.common.utils.FromStr;
+import koolfileindexer.common.utils.IntoStr;
+import koolfileindexer.common.utils.Result;
 import koolfileindexer.common.utils.ServerFunction;
 
 public class Socket implements Runnable {
@@ -23,25 +34,43 @@ public class Socket implements Runnable {
     private final String PROTOCOL_HEADER;
     private final String PROTOCOL_TRAILER;
     private final Optional<ServerFunction<Request, Response>> server;
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    // Bytes que el SocketServer ya leyó para reconocer la versión
+    private final byte[] consumed;
+    private InputStream input;
+    private final ByteArrayOutputStream lineBuffer = new ByteArrayOutputStream(128);
 
     private Socket(UnixSocket socket, String protocolHeader, String protocolTrailer) {
         this.innerSocket = socket;
         this.PROTOCOL_HEADER = protocolHeader;
         this.PROTOCOL_TRAILER = protocolTrailer;
         this.server = Optional.empty();
+        this.consumed = new byte[0];
     }
 
     public Socket(UnixSocket socket, String protocolHeader, String protocolTrailer,
             ServerFunction<Request, Response> server) {
+        this(socket, protocolHeader, protocolTrailer, server, new byte[0]);
+    }
+
+    /** Para el SocketServer, que ya leyó los primeros bytes del request. */
+    Socket(UnixSocket socket, String protocolHeader, String protocolTrailer,
+            ServerFunction<Request, Response> server, byte[] consumed) {
         this.innerSocket = socket;
         this.PROTOCOL_HEADER = protocolHeader;
         this.PROTOCOL_TRAILER = protocolTrailer;
         this.server = Optional.of(server);
+        this.consumed = consumed;
     }
 
     public static Socket connect(String protocolHeader, String protocolTrailer)
             throws IOException, SocketException {
-        UnixSocketAddress address = new UnixSocketAddress(new File(Constants.SOCKET_PATH));
+        return connect(Constants.SOCKET_PATH, protocolHeader, protocolTrailer);
+    }
+
+    public static Socket connect(String socketPath, String protocolHeader, String protocolTrailer)
+            throws IOException, SocketException {
+        UnixSocketAddress address = new UnixSocketAddress(new File(socketPath));
         UnixSocketChannel channel = UnixSocketChannel.open(address);
         return new Socket(channel.socket(), protocolHeader, protocolTrailer);
     }
@@ -50,38 +79,52 @@ public class Socket implements Runnable {
         this.innerSocket.close();
     }
 
+    /** Arma el mensaje completo y lo escribe en una sola llamada. */
     private void write(String data) throws IOException {
-        OutputStream outputStream = this.innerSocket.getOutputStream();
-        outputStream.write(this.PROTOCOL_HEADER.getBytes());
+        StringBuilder message = new StringBuilder(
+                this.PROTOCOL_HEADER.length() + data.length() + this.PROTOCOL_TRAILER.length());
+        message.append(this.PROTOCOL_HEADER);
         for (String line : data.split(Constants.LINE_SEPARATOR)) {
             if (!line.isEmpty()) {
-                outputStream.write((line + Constants.LINE_SEPARATOR).getBytes());
+                message.append(line).append(Constants.LINE_SEPARATOR);
             }
         }
-        outputStream.write(this.PROTOCOL_TRAILER.getBytes());
+        message.append(this.PROTOCOL_TRAILER);
+        OutputStream outputStream = this.innerSocket.getOutputStream();
+        outputStream.write(message.toString().getBytes(StandardCharsets.UTF_8));
         outputStream.flush();
     }
 
+    private InputStream input() throws IOException {
+        if (this.input == null) {
+            InputStream stream = this.innerSocket.getInputStream();
+            if (this.consumed.length > 0) {
+                stream = new SequenceInputStream(new ByteArrayInputStream(this.consumed), stream);
+            }
+            this.input = new BufferedInputStream(stream, STREAM_BUFFER_SIZE);
+        }
+        return this.input;
+    }
+
     private String readLine(InputStream reader) throws IOException, InvalidProtocolException {
-        StringBuilder sb = new StringBuilder();
+        this.lineBuffer.reset();
         int previous = -1;
         int current;
 
         while ((current = reader.read()) != -1) {
+            this.lineBuffer.write(current);
             if (previous == '\r' && current == '\n') {
-                sb.append((char) current);
                 break;
             }
-            sb.append((char) current);
             previous = current;
         }
 
-        return sb.toString();
+        return this.lineBuffer.toString(StandardCharsets.UTF_8);
     }
 
     private String read() throws IOException, InvalidProtocolException {
-        InputStream reader = this.innerSocket.getInputStream();
-        String lines = "";
+        InputStream reader = this.input();
+        StringBuilder lines = new StringBuilder();
         String line = this.readLine(reader);
         if (!this.PROTOCOL_HEADER.equals(line)) {
             throw new InvalidProtocolException();
@@ -89,11 +132,11 @@ public class Socket implements Runnable {
         line = this.readLine(reader);
         int t = 0;
         while (!this.PROTOCOL_TRAILER.equals(line) && t <= Constants.MAX_NUMBER_OF_LINES_ALLOWED) {
-            lines += line;
+            lines.append(line);
             line = this.readLine(reader);
             t++;
         }
-        return lines;
+        return lines.toString();
     }
 
     public Request getRequest() throws IOException, InvalidProtocolException, InvalidFormatException {
@@ -109,9 +152,101 @@ public class Socket implements Runnable {
     }
 
     public void sendResponse(Response response) throws IOException {
+        if (response.isStream()) {
+            this.writeStream(response);
+            return;
+        }
         this.write(response.intoString());
     }
 
+    /**
+     * Escribe una respuesta en streaming: cada ítem sale al socket cuando el
+     * buffer se llena, así que la memoria no depende de cuántos ítems haya.
+     * Un fallo del producer después de empezar se informa con una línea
+     * "error: ..." antes del trailer.
+     */
+    private void writeStream(Response response) throws IOException {
+        OutputStream outputStream = new BufferedOutputStream(this.innerSocket.getOutputStream(),
+                STREAM_BUFFER_SIZE);
+        outputStream.write(this.PROTOCOL_HEADER.getBytes(StandardCharsets.UTF_8));
+        outputStream.write(("ok" + Constants.LINE_SEPARATOR).getBytes(StandardCharsets.UTF_8));
+        String ending;
+        try {
+            String nextCursor = response.getProducer().produce(item -> writeItem(outputStream, item));
+            ending = "next-cursor: " + (nextCursor == null ? "" : nextCursor);
+        } catch (IOException e) {
+            // El cliente se fue; no hay a quién avisar
+            throw e;
+        } catch (Exception e) {
+            ending = "error: " + e.getMessage();
+        }
+        outputStream.write((ending + Constants.LINE_SEPARATOR).getBytes(StandardCharsets.UTF_8));
+        outputStream.write(this.PROTOCOL_TRAILER.getBytes(StandardCharsets.UTF_8));
+        outputStream.flush();
+    }
+
+    private static void writeItem(OutputStream outputStream, IntoStr item) throws IOException {
+        String[] lines = item.intoString().split(Constants.LINE_SEPARATOR);
+        int count = 0;
+        for (String line : lines) {
+            if (!line.isEmpty()) {
+                count++;
+            }
+        }
+        outputStream.write(("item: " + count + Constants.LINE_SEPARATOR).getBytes(StandardCharsets.UTF_8));
+        for (String line : lines) {
+            if (!line.isEmpty()) {
+                outputStream.write((line + Constants.LINE_SEPARATOR).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    /**
+     * Lee una respuesta enviada con {@link Response#stream}, entregando cada
+     * ítem al consumer a medida que llega.
+     *
+     * @return el cursor de la página siguiente (null si no hay más), o el error
+     */
+    public <T> Result<String, ErrorMessage> getStreamedItems(FromStr<T> factory, Consumer<T> consumer)
+            throws IOException, InvalidProtocolException, InvalidFormatException {
+        InputStream reader = this.input();
+        if (!this.PROTOCOL_HEADER.equals(this.readLine(reader))) {
+            throw new InvalidProtocolException();
+        }
+        String status = this.readLine(reader);
+        if (!status.equals("ok" + Constants.LINE_SEPARATOR)) {
+            StringBuilder lines = new StringBuilder();
+            String line = this.readLine(reader);
+            while (!line.isEmpty() && !this.PROTOCOL_TRAILER.equals(line)) {
+                lines.append(line);
+                line = this.readLine(reader);
+            }
+            return Result.error(ErrorMessage.stringFactory().from(lines.toString()));
+        }
+
+        Result<String, ErrorMessage> result = Result.success(null);
+        String line = this.readLine(reader);
+        while (!line.isEmpty() && !this.PROTOCOL_TRAILER.equals(line)) {
+            String[] property = line.substring(0, line.length() - Constants.LINE_SEPARATOR.length()).split(": ", 2);
+            String value = property.length > 1 ? property[1] : "";
+            switch (property[0]) {
+                case "item" -> {
+                    int count = Integer.parseInt(value);
+                    StringBuilder item = new StringBuilder();
+                    for (int i = 0; i < count; i++) {
+                        item.append(this.readLine(reader));
+                    }
+                    consumer.accept(factory.from(item.toString()));
+                }
+                case "next-cursor" -> result = Result.success(value.isEmpty() ? null : value);
+                case "error" -> result = Result.error(new ErrorMessage(value));
+                default -> throw new InvalidProtocolException();
+            }
+            line = this.readLine(reader);
+        }
+        return result;
+    }
+
     public void sendRequest(Request request) throws IOException {
         this.write(request.intoString());
     }
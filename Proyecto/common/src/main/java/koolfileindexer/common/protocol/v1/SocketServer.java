@@ -2,56 +2,242 @@ package koolfileindexer.common.protocol.v1;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 import jnr.unixsocket.UnixServerSocket;
+import jnr.unixsocket.UnixServerSocketChannel;
 import jnr.unixsocket.UnixSocket;
 import jnr.unixsocket.UnixSocketAddress;
 import koolfileindexer.common.Constants;
+import koolfileindexer.common.exceptions.InvalidProtocolException;
 import koolfileindexer.common.exceptions.MethodNotFoundException;
+import koolfileindexer.common.protocol.ItemProducer;
 import koolfileindexer.common.protocol.Request;
 import koolfileindexer.common.protocol.Response;
+import koolfileindexer.common.protocol.v2.Handshake;
 import koolfileindexer.common.utils.ServerFunction;
 
 public class SocketServer {
 
+    /**
+     * BLOCKING: un hilo del pool por conexión, que lee bloqueando.
+     * EVENT_LOOP: un Selector lee todas las conexiones y el pool solo atiende
+     * requests completos (ver {@link EventLoop}).
+     */
+    public enum Mode {
+        BLOCKING,
+        EVENT_LOOP
+    }
+
+    /**
+     * PLATFORM: un pool fijo de threadPoolSize hilos.
+     * VIRTUAL: un hilo virtual por tarea; threadPoolSize pasa a ser cuántos
+     * requests se despachan a la vez (un Semaphore que se toma durante el
+     * handler y, en una respuesta en streaming, mientras corre su producer,
+     * que es cuando se consulta la BD), así un request que espera a la BD no
+     * ocupa un hilo del sistema. Conviene con EVENT_LOOP: en BLOCKING la
+     * lectura del socket es una llamada nativa de jnr y deja al hilo virtual
+     * pegado a su carrier.
+     */
+    public enum Threads {
+        PLATFORM,
+        VIRTUAL
+    }
+
     private UnixServerSocket innerSocket;
+    private EventLoop eventLoop;
+    // Solo con Threads.VIRTUAL: tope de handlers corriendo a la vez
+    private Semaphore permits;
     private HashMap<String, ServerFunction<Request, Response>> methods;
     private ExecutorService threadPool;
     private static final String PROTOCOL_HEADER = "koolfileindexer v1\r\n";
     private static final String PROTOCOL_TRAILER = "end v1\r\n";
+    // Sin el separador: después pueden venir parámetros (";codec=binary")
+    private static final byte[] PROTOCOL_V2_PREFIX = Constants.PROTOCOL_V2_HEADER
+            .substring(0, Constants.PROTOCOL_V2_HEADER.length() - Constants.LINE_SEPARATOR.length())
+            .getBytes(StandardCharsets.US_ASCII);
+    private static final int MAX_HEADER_LENGTH = 256;
 
-    private SocketServer(UnixServerSocket socket, Integer threadPoolSize) {
+    SocketServer(UnixServerSocket socket, Integer threadPoolSize, Threads threads) {
         this.innerSocket = socket;
         this.methods = new HashMap<>();
-        this.threadPool = Executors.newFixedThreadPool(threadPoolSize);
+        if (threads == Threads.VIRTUAL) {
+            this.threadPool = Executors.newVirtualThreadPerTaskExecutor();
+            this.permits = new Semaphore(threadPoolSize, true);
+        } else {
+            this.threadPool = Executors.newFixedThreadPool(threadPoolSize);
+        }
     }
 
     public static SocketServer createServer(Integer threadPoolSize) throws SocketException, IOException {
-        File path = new File(Constants.SOCKET_PATH);
+        return createServer(Constants.SOCKET_PATH, threadPoolSize);
+    }
+
+    public static SocketServer createServer(Integer threadPoolSize, Mode mode) throws SocketException, IOException {
+        return createServer(Constants.SOCKET_PATH, threadPoolSize, mode);
+    }
+
+    public static SocketServer createServer(String socketPath, Integer threadPoolSize)
+            throws SocketException, IOException {
+        return createServer(socketPath, threadPoolSize, Mode.BLOCKING);
+    }
+
+    public static SocketServer createServer(String socketPath, Integer threadPoolSize, Mode mode)
+            throws SocketException, IOException {
+        return createServer(socketPath, threadPoolSize, mode, Threads.PLATFORM);
+    }
+
+    public static SocketServer createServer(String socketPath, Integer threadPoolSize, Mode mode, Threads threads)
+            throws SocketException, IOException {
+        File path = new File(socketPath);
         path.deleteOnExit();
         UnixSocketAddress address = new UnixSocketAddress(path);
+        if (mode == Mode.EVENT_LOOP) {
+            UnixServerSocketChannel channel = UnixServerSocketChannel.open();
+            channel.socket().bind(address);
+            SocketServer server = new SocketServer(null, threadPoolSize, threads);
+            server.eventLoop = new EventLoop(channel, channel::accept, server::execute, server::dispatch);
+            return server;
+        }
         UnixServerSocket socket = new UnixServerSocket();
         socket.bind(address);
-        return new SocketServer(socket, threadPoolSize);
+        return new SocketServer(socket, threadPoolSize, threads);
     }
 
+    /**
+     * Espera la siguiente conexión y la pasa al pool. En modo EVENT_LOOP
+     * atiende una vuelta del selector (conexiones nuevas, lecturas y
+     * escrituras); en los dos casos se llama en bucle desde un solo hilo.
+     */
     public void accept() throws IOException {
+        if (this.eventLoop != null) {
+            this.eventLoop.poll();
+            return;
+        }
         UnixSocket socket = this.innerSocket.accept();
-        Socket s = new Socket(socket, PROTOCOL_HEADER, PROTOCOL_TRAILER, (Request req) -> {
-            String method = req.getMethod();
-            ServerFunction<Request, Response> function = this.methods.get(method);
-            if (function == null) {
-                throw new MethodNotFoundException(method);
+        // La versión se reconoce en el pool para no frenar el bucle de accept
+        this.execute(() -> this.serve(socket));
+    }
+
+    /** Corre una conexión o un request en el pool. */
+    private void execute(Runnable task) {
+        this.threadPool.execute(task);
+    }
+
+    /**
+     * Lee el header y atiende la conexión con el protocolo que corresponda:
+     * v2 (frames sobre el canal, con el codec pedido) o v1. Se leen tantos
+     * bytes como tiene el header v1; un header v2 con parámetros se completa
+     * hasta el fin de línea.
+     */
+    private void serve(UnixSocket socket) {
+        Runnable connection;
+        try {
+            InputStream input = socket.getInputStream();
+            byte[] header = readHeader(input, PROTOCOL_HEADER.length());
+            if (header.length > PROTOCOL_V2_PREFIX.length
+                    && Arrays.equals(header, 0, PROTOCOL_V2_PREFIX.length, PROTOCOL_V2_PREFIX, 0,
+                            PROTOCOL_V2_PREFIX.length)) {
+                Handshake handshake = Handshake.parse(completeLine(input, header));
+                connection = new koolfileindexer.common.protocol.v2.Socket(socket.getChannel(), handshake,
+                        this::dispatch, this::execute);
+                if (handshake.multiplexed()) {
+                    // Una conexión multiplexada vive lo que el cliente quiera: la
+                    // lectura va en un hilo propio para no ocupar el pool, que
+                    // queda para atender sus requests
+                    Thread reader = new Thread(connection, "kfi-mux-connection");
+                    reader.setDaemon(true);
+                    reader.start();
+                    return;
+                }
+            } else {
+                // Un header que no es v1 lo rechaza el mismo Socket v1
+                connection = new Socket(socket, PROTOCOL_HEADER, PROTOCOL_TRAILER, this::dispatch, header);
             }
+        } catch (IOException | InvalidProtocolException e) {
+            System.err.println(e.getMessage());
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+            return;
+        }
+        connection.run();
+    }
+
+    private static String completeLine(InputStream input, byte[] start) throws IOException, InvalidProtocolException {
+        StringBuilder line = new StringBuilder(new String(start, StandardCharsets.US_ASCII));
+        while (line.charAt(line.length() - 1) != '\n') {
+            int b = input.read();
+            if (b < 0 || line.length() >= MAX_HEADER_LENGTH) {
+                throw new InvalidProtocolException("InvalidProtocolError: header too long or incomplete");
+            }
+            line.append((char) b);
+        }
+        return line.toString();
+    }
+
+    private static byte[] readHeader(InputStream input, int length) throws IOException {
+        byte[] header = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int n = input.read(header, read, length - read);
+            if (n < 0) {
+                return Arrays.copyOf(header, read);
+            }
+            read += n;
+        }
+        return header;
+    }
+
+    /**
+     * Llama al handler del método. Con hilos virtuales espera antes un
+     * permiso; lo espera el hilo virtual del request, no quien llama al
+     * execute (el bucle de accept o el event loop).
+     *
+     * Una respuesta en streaming hace su trabajo recién cuando se escribe, así
+     * que su producer vuelve a tomar un permiso y lo suelta al terminar. Se
+     * toma dentro del producer para no perderlo si nunca llega a correr
+     * (el cliente se fue antes de la cabecera).
+     */
+    Response dispatch(Request req) throws Exception {
+        String method = req.getMethod();
+        ServerFunction<Request, Response> function = this.methods.get(method);
+        if (function == null) {
+            throw new MethodNotFoundException(method);
+        }
+        if (this.permits == null) {
             return function.apply(req);
+        }
+        Response response;
+        this.permits.acquire();
+        try {
+            response = function.apply(req);
+        } finally {
+            this.permits.release();
+        }
+        if (response == null || !response.isStream()) {
+            return response;
+        }
+        ItemProducer producer = response.getProducer();
+        Semaphore permits = this.permits;
+        return Response.stream(sink -> {
+            permits.acquire();
+            try {
+                return producer.produce(sink);
+            } finally {
+                permits.release();
+            }
         });
-        this.threadPool.submit(s);
     }
 
     public void registerAction(String methodName, ServerFunction<Request, Response> method) {
@@ -72,6 +258,16 @@ public class SocketServer {
      * Cierra el servidor y libera sus recursos
      */
     public void close() throws IOException {
+        if (this.eventLoop != null) {
+            try {
+                this.eventLoop.close();
+            } catch (IOException e) {
+                System.err.println("Error al cerrar el socket: " + e.getMessage());
+            } finally {
+                this.eventLoop = null;
+            }
+        }
+
         if (this.innerSocket != null) {
             try {
                 // UnixServerSocket no tiene método close(), necesitamos acceder al canal
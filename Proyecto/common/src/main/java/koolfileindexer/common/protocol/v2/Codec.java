@@ -0,0 +1,37 @@
+package koolfileindexer.common.protocol.v2;
+
+import koolfileindexer.common.exceptions.InvalidProtocolException;
+
+/**
+ * Codec de los payloads de una sesión v2. Se negocia en el header (ver
+ * {@link Handshake}): "koolfileindexer v2" es texto (el mismo que v1) y
+ * "koolfileindexer v2;codec=binary" es el codec binario de
+ * {@link koolfileindexer.common.codec}.
+ *
+ * Aun en una sesión binaria los payloads que no implementan IntoBin (p. ej. un
+ * Response.ok(String)) viajan como texto; el tipo de frame lo indica.
+ */
+public enum Codec {
+    TEXT(null),
+    BINARY("binary");
+
+    private final String parameter;
+
+    Codec(String parameter) {
+        this.parameter = parameter;
+    }
+
+    /** Valor de "codec=" en el header, o null para el codec por defecto. */
+    String parameter() {
+        return this.parameter;
+    }
+
+    static Codec fromParameter(String name) throws InvalidProtocolException {
+        for (Codec candidate : values()) {
+            if (name.equals(candidate.parameter)) {
+                return candidate;
+            }
+        }
+        throw new InvalidProtocolException("InvalidProtocolError: unknown codec " + name);
+    }
+}
@@ -0,0 +1,213 @@
+package koolfileindexer.common.protocol.v2;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.ByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import jnr.unixsocket.UnixSocketAddress;
+import jnr.unixsocket.UnixSocketChannel;
+import koolfileindexer.common.Constants;
+import koolfileindexer.common.codec.FromBin;
+import koolfileindexer.common.exceptions.InvalidProtocolException;
+import koolfileindexer.common.model.ErrorMessage;
+import koolfileindexer.common.protocol.Request;
+import koolfileindexer.common.protocol.Response;
+import koolfileindexer.common.protocol.v2.FrameChannel.Frame;
+import koolfileindexer.common.utils.FromStr;
+import koolfileindexer.common.utils.Result;
+
+/**
+ * Conexión v2 multiplexada (";mux=1" en el header): queda abierta entre
+ * requests y varios requests pueden estar en curso a la vez, cada uno con su
+ * id. Se puede usar desde varios hilos.
+ *
+ * Un hilo propio lee los frames y se los pasa al request que corresponde; los
+ * consumers de un stream corren en ese hilo, así que no deben bloquearse. Si
+ * la conexión se cae, los requests pendientes terminan con la IOException y
+ * {@link #isOpen()} pasa a false.
+ */
+public class Connection implements Closeable {
+
+    /** Un request en curso; accept devuelve true con el último frame. */
+    private interface Pending {
+        boolean accept(Frame frame) throws Exception;
+
+        void fail(Exception e);
+    }
+
+    private final FrameChannel frames;
+    private final Codec codec;
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final ConcurrentHashMap<Integer, Pending> pending = new ConcurrentHashMap<>();
+    private volatile boolean open = true;
+
+    private Connection(FrameChannel frames, Codec codec) {
+        this.frames = frames;
+        this.codec = codec;
+        Thread reader = new Thread(this::read, "kfi-connection");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    public static Connection connect() throws IOException {
+        return connect(Constants.SOCKET_PATH, Codec.TEXT);
+    }
+
+    public static Connection connect(Codec codec) throws IOException {
+        return connect(Constants.SOCKET_PATH, codec);
+    }
+
+    public static Connection connect(String socketPath, Codec codec) throws IOException {
+        UnixSocketAddress address = new UnixSocketAddress(new File(socketPath));
+        return open(UnixSocketChannel.open(address), codec);
+    }
+
+    /** Inicia una sesión multiplexada sobre un canal ya conectado. */
+    public static Connection open(ByteChannel channel, Codec codec) throws IOException {
+        FrameChannel frames = new FrameChannel(channel, true);
+        frames.writeRaw(new Handshake(codec, true).header().getBytes(StandardCharsets.US_ASCII));
+        return new Connection(frames, codec);
+    }
+
+    public Codec getCodec() {
+        return codec;
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    public CompletableFuture<Response> send(Request request) {
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        this.send(request, new Pending() {
+            @Override
+            public boolean accept(Frame frame) throws Exception {
+                if (!Messages.isMessage(frame)) {
+                    throw new InvalidProtocolException();
+                }
+                future.complete(Messages.toResponse(frame));
+                return true;
+            }
+
+            @Override
+            public void fail(Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Envía un request cuya respuesta es un {@link Response#stream}; cada ítem
+     * va al consumer a medida que llega.
+     *
+     * @return se completa con el cursor de la página siguiente (null si no hay
+     *         más) o el error
+     */
+    public <T> CompletableFuture<Result<String, ErrorMessage>> stream(Request request, FromStr<T> factory,
+            Consumer<T> consumer) {
+        return this.stream(request, Messages.ITEM, Messages.textItems(factory, consumer));
+    }
+
+    /** Como {@link #stream} para ítems enviados con el codec binario. */
+    public <T> CompletableFuture<Result<String, ErrorMessage>> streamBinary(Request request, FromBin<T> factory,
+            Consumer<T> consumer) {
+        return this.stream(request, Messages.BINARY_ITEM, Messages.binaryItems(factory, consumer));
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.open = false;
+        this.frames.close();
+    }
+
+    private CompletableFuture<Result<String, ErrorMessage>> stream(Request request, byte itemType,
+            Messages.ItemHandler handler) {
+        CompletableFuture<Result<String, ErrorMessage>> future = new CompletableFuture<>();
+        this.send(request, new Pending() {
+            @Override
+            public boolean accept(Frame frame) throws Exception {
+                Result<String, ErrorMessage> result = Messages.streamFrame(frame, itemType, handler);
+                if (result == null) {
+                    return false;
+                }
+                future.complete(result);
+                return true;
+            }
+
+            @Override
+            public void fail(Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private void send(Request request, Pending handler) {
+        if (!this.open) {
+            handler.fail(new IOException("Connection closed"));
+            return;
+        }
+        // Se registra antes de escribir: la respuesta puede llegar antes de
+        // que writeRequest vuelva
+        int id = this.nextId.incrementAndGet();
+        this.pending.put(id, handler);
+        try {
+            Messages.writeRequest(this.frames, this.codec, id, request);
+        } catch (IOException e) {
+            this.pending.remove(id);
+            handler.fail(e);
+            try {
+                this.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void read() {
+        Exception cause = new EOFException("Connection closed by the server");
+        try {
+            while (true) {
+                Frame frame = this.frames.read();
+                if (frame == null) {
+                    break;
+                }
+                Pending handler = this.pending.get(frame.id());
+                if (handler == null) {
+                    continue; // un request que ya falló; se descarta el resto
+                }
+                try {
+                    if (handler.accept(frame)) {
+                        this.pending.remove(frame.id());
+                    }
+                } catch (Exception e) {
+                    this.pending.remove(frame.id());
+                    handler.fail(e);
+                }
+            }
+        } catch (Exception e) {
+            cause = e;
+        } finally {
+            this.open = false;
+            try {
+                this.frames.close();
+            } catch (IOException ignored) {
+            }
+            // Un send concurrente puede registrar después de esto, pero ya ve
+            // open en false o falla al escribir en el canal cerrado
+            for (Integer id : this.pending.keySet()) {
+                Pending handler = this.pending.remove(id);
+                if (handler != null) {
+                    handler.fail(cause);
+                }
+            }
+        }
+    }
+}
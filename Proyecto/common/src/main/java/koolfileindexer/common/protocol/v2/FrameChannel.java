@@ -0,0 +1,228 @@
+package koolfileindexer.common.protocol.v2;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import koolfileindexer.common.exceptions.InvalidProtocolException;
+
+/**
+ * Lee y escribe frames sobre un canal: 4 bytes con el largo del payload (big
+ * endian), 1 byte con el tipo, en una sesión multiplexada 4 bytes con el id
+ * del request, y el payload (texto UTF-8 o, con el codec binario, lo escrito
+ * por un {@link koolfileindexer.common.codec.BinaryWriter}).
+ *
+ * Todo pasa por dos ByteBuffers directos, así que cada llamada al canal mueve
+ * hasta BUFFER_SIZE bytes en vez de uno. Las escrituras se acumulan hasta
+ * {@link #flush()} o hasta que el buffer se llena.
+ *
+ * Las escrituras son seguras entre hilos (cada frame entra entero al buffer);
+ * las lecturas las hace un solo hilo. Uno creado con {@link #writeOnly} sólo
+ * escribe: quien lee los frames los saca con {@link #decode}.
+ */
+public final class FrameChannel implements Closeable {
+
+    /** Un frame más grande se considera basura en el canal. */
+    public static final int MAX_FRAME_SIZE = 256 * 1024 * 1024;
+    private static final int HEADER_SIZE = Integer.BYTES + 1;
+    private static final int MULTIPLEXED_HEADER_SIZE = HEADER_SIZE + Integer.BYTES;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** id es 0 fuera de una sesión multiplexada. */
+    public record Frame(byte type, int id, byte[] payload) {
+
+        public String text() {
+            return new String(this.payload, StandardCharsets.UTF_8);
+        }
+
+        /** El payload para leerlo con un BinaryReader (sin copiarlo). */
+        public ByteBuffer buffer() {
+            return ByteBuffer.wrap(this.payload);
+        }
+    }
+
+    // null si sólo escribe
+    private final ReadableByteChannel source;
+    private final WritableByteChannel sink;
+    private final boolean multiplexed;
+    private final int headerSize;
+    // Entre llamadas input está en modo lectura (position..limit pendiente) y
+    // output en modo escritura
+    private final ByteBuffer input = ByteBuffer.allocateDirect(BUFFER_SIZE).flip();
+    private final ByteBuffer output = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    public FrameChannel(ByteChannel channel) {
+        this(channel, false);
+    }
+
+    public FrameChannel(ByteChannel channel, boolean multiplexed) {
+        this(channel, channel, multiplexed);
+    }
+
+    private FrameChannel(ReadableByteChannel source, WritableByteChannel sink, boolean multiplexed) {
+        this.source = source;
+        this.sink = sink;
+        this.multiplexed = multiplexed;
+        this.headerSize = multiplexed ? MULTIPLEXED_HEADER_SIZE : HEADER_SIZE;
+    }
+
+    /** Un FrameChannel que sólo escribe en sink; {@link #read()} falla. */
+    public static FrameChannel writeOnly(WritableByteChannel sink, boolean multiplexed) {
+        return new FrameChannel(null, sink, multiplexed);
+    }
+
+    public boolean isMultiplexed() {
+        return multiplexed;
+    }
+
+    /** Agrega bytes sin framing (el header de la sesión) al buffer de salida. */
+    public synchronized void writeRaw(byte[] bytes) throws IOException {
+        this.put(bytes);
+    }
+
+    public void write(byte type, String payload) throws IOException {
+        this.write(type, 0, payload);
+    }
+
+    public void write(byte type, ByteBuffer payload) throws IOException {
+        this.write(type, 0, payload);
+    }
+
+    public void write(byte type, int id, String payload) throws IOException {
+        this.write(type, id, ByteBuffer.wrap(payload.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Escribe los bytes entre position y limit del payload. El id se ignora si
+     * la sesión no es multiplexada.
+     */
+    public synchronized void write(byte type, int id, ByteBuffer payload) throws IOException {
+        if (this.output.remaining() < this.headerSize) {
+            this.drain();
+        }
+        this.output.putInt(payload.remaining()).put(type);
+        if (this.multiplexed) {
+            this.output.putInt(id);
+        }
+        this.put(payload);
+    }
+
+    public synchronized void flush() throws IOException {
+        this.drain();
+    }
+
+    /**
+     * @return el siguiente frame, o null si el otro lado cerró el canal entre
+     *         frames
+     */
+    public Frame read() throws IOException, InvalidProtocolException {
+        if (this.source == null) {
+            throw new IllegalStateException("FrameChannel is write only");
+        }
+        if (!this.fill(this.headerSize)) {
+            if (this.input.hasRemaining()) {
+                throw new EOFException("Connection closed inside a frame header");
+            }
+            return null;
+        }
+        int length = this.input.getInt();
+        byte type = this.input.get();
+        int id = this.multiplexed ? this.input.getInt() : 0;
+        if (length < 0 || length > MAX_FRAME_SIZE) {
+            throw new InvalidProtocolException("InvalidProtocolError: frame of " + length + " bytes");
+        }
+
+        byte[] bytes = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            if (!this.input.hasRemaining() && !this.fill(1)) {
+                throw new EOFException("Connection closed inside a frame");
+            }
+            int n = Math.min(this.input.remaining(), length - offset);
+            this.input.get(bytes, offset, n);
+            offset += n;
+        }
+        return new Frame(type, id, bytes);
+    }
+
+    /**
+     * Saca un frame completo de input (en modo lectura) sin leer del canal,
+     * para quien lee sin bloquear (el SocketServer en modo event loop).
+     *
+     * @return el frame, o null si todavía no llegó entero (input queda igual)
+     */
+    public static Frame decode(ByteBuffer input, boolean multiplexed) throws InvalidProtocolException {
+        int headerSize = multiplexed ? MULTIPLEXED_HEADER_SIZE : HEADER_SIZE;
+        if (input.remaining() < headerSize) {
+            return null;
+        }
+        int start = input.position();
+        int length = input.getInt(start);
+        if (length < 0 || length > MAX_FRAME_SIZE) {
+            throw new InvalidProtocolException("InvalidProtocolError: frame of " + length + " bytes");
+        }
+        if (input.remaining() - headerSize < length) {
+            return null;
+        }
+        byte type = input.get(start + Integer.BYTES);
+        int id = multiplexed ? input.getInt(start + HEADER_SIZE) : 0;
+        byte[] bytes = new byte[length];
+        input.position(start + headerSize);
+        input.get(bytes);
+        return new Frame(type, id, bytes);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.sink.close();
+    }
+
+    private void put(byte[] bytes) throws IOException {
+        this.put(ByteBuffer.wrap(bytes));
+    }
+
+    private void put(ByteBuffer bytes) throws IOException {
+        bytes = bytes.duplicate();
+        while (bytes.hasRemaining()) {
+            if (!this.output.hasRemaining()) {
+                this.drain();
+            }
+            int n = Math.min(this.output.remaining(), bytes.remaining());
+            int limit = bytes.limit();
+            bytes.limit(bytes.position() + n);
+            this.output.put(bytes);
+            bytes.limit(limit);
+        }
+    }
+
+    private void drain() throws IOException {
+        this.output.flip();
+        while (this.output.hasRemaining()) {
+            this.sink.write(this.output);
+        }
+        this.output.clear();
+    }
+
+    /** Lee hasta tener al menos n bytes pendientes; false si el canal se cerró antes. */
+    private boolean fill(int n) throws IOException {
+        if (this.input.remaining() >= n) {
+            return true;
+        }
+        this.input.compact();
+        try {
+            while (this.input.position() < n) {
+                if (this.source.read(this.input) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            this.input.flip();
+        }
+    }
+}
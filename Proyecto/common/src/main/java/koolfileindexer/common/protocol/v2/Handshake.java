@@ -0,0 +1,61 @@
+package koolfileindexer.common.protocol.v2;
+
+import koolfileindexer.common.Constants;
+import koolfileindexer.common.exceptions.InvalidProtocolException;
+
+/**
+ * Línea de header con la que un cliente abre una sesión v2:
+ * "koolfileindexer v2", opcionalmente seguida de parámetros
+ * (";codec=binary", ";mux=1").
+ *
+ * Sin mux la conexión atiende un solo request y se cierra. Con mux queda
+ * abierta: cada frame lleva el id del request al que pertenece y el cliente
+ * puede tener varios requests en curso (ver {@link Connection}).
+ */
+public record Handshake(Codec codec, boolean multiplexed) {
+
+    static final String HEADER_PREFIX = Constants.PROTOCOL_V2_HEADER.substring(0,
+            Constants.PROTOCOL_V2_HEADER.length() - Constants.LINE_SEPARATOR.length());
+    private static final String CODEC_PARAMETER = "codec=";
+    private static final String MUX_PARAMETER = "mux=";
+
+    public Handshake(Codec codec) {
+        this(codec, false);
+    }
+
+    public String header() {
+        StringBuilder sb = new StringBuilder(HEADER_PREFIX);
+        if (this.codec.parameter() != null) {
+            sb.append(';').append(CODEC_PARAMETER).append(this.codec.parameter());
+        }
+        if (this.multiplexed) {
+            sb.append(';').append(MUX_PARAMETER).append('1');
+        }
+        return sb.append(Constants.LINE_SEPARATOR).toString();
+    }
+
+    /** Lee una línea de header v2 (con o sin separador final). */
+    public static Handshake parse(String line) throws InvalidProtocolException {
+        if (line.endsWith(Constants.LINE_SEPARATOR)) {
+            line = line.substring(0, line.length() - Constants.LINE_SEPARATOR.length());
+        }
+        if (!line.startsWith(HEADER_PREFIX)) {
+            throw new InvalidProtocolException("InvalidProtocolError: Is this kfi v2?");
+        }
+        String[] parameters = line.substring(HEADER_PREFIX.length()).split(";");
+        if (!parameters[0].isEmpty()) {
+            throw new InvalidProtocolException("InvalidProtocolError: Is this kfi v2?");
+        }
+        Codec codec = Codec.TEXT;
+        boolean multiplexed = false;
+        for (int i = 1; i < parameters.length; i++) {
+            if (parameters[i].startsWith(CODEC_PARAMETER)) {
+                codec = Codec.fromParameter(parameters[i].substring(CODEC_PARAMETER.length()));
+            } else if (parameters[i].startsWith(MUX_PARAMETER)) {
+                multiplexed = parameters[i].substring(MUX_PARAMETER.length()).equals("1");
+            }
+            // El resto son parámetros que esta versión no conoce
+        }
+        return new Handshake(codec, multiplexed);
+    }
+}
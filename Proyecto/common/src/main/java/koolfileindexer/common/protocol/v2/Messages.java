@@ -0,0 +1,174 @@
+package koolfileindexer.common.protocol.v2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+
+import koolfileindexer.common.Constants;
+import koolfileindexer.common.codec.BinaryReader;
+import koolfileindexer.common.codec.BinaryWriter;
+import koolfileindexer.common.codec.FromBin;
+import koolfileindexer.common.codec.IntoBin;
+import koolfileindexer.common.exceptions.InvalidFormatException;
+import koolfileindexer.common.exceptions.InvalidProtocolException;
+import koolfileindexer.common.model.ErrorMessage;
+import koolfileindexer.common.protocol.Request;
+import koolfileindexer.common.protocol.Response;
+import koolfileindexer.common.protocol.v2.FrameChannel.Frame;
+import koolfileindexer.common.utils.FromStr;
+import koolfileindexer.common.utils.IntoStr;
+import koolfileindexer.common.utils.Result;
+
+/**
+ * Cómo se escriben requests y responses en frames; lo comparten
+ * {@link Socket} (un request por conexión) y {@link Connection}
+ * (multiplexada). El id solo se escribe si el FrameChannel es multiplexado.
+ */
+final class Messages {
+
+    static final byte MESSAGE = 0;
+    static final byte ITEM = 1;
+    static final byte END = 2;
+    // Payload de un BinaryWriter: request = método + valor, response = ok + valor
+    static final byte BINARY_MESSAGE = 3;
+    static final byte BINARY_ITEM = 4;
+
+    private Messages() {
+    }
+
+    interface ItemHandler {
+        void accept(Frame frame) throws InvalidFormatException;
+    }
+
+    static <T> ItemHandler textItems(FromStr<T> factory, Consumer<T> consumer) {
+        return frame -> consumer.accept(factory.from(frame.text()));
+    }
+
+    /** Un reader para todo el stream: el diccionario vale para la respuesta completa. */
+    static <T> ItemHandler binaryItems(FromBin<T> factory, Consumer<T> consumer) {
+        BinaryReader reader = new BinaryReader(ByteBuffer.allocate(0));
+        return frame -> consumer.accept(factory.from(reader.wrap(frame.buffer())));
+    }
+
+    static boolean isMessage(Frame frame) {
+        return frame.type() == MESSAGE || frame.type() == BINARY_MESSAGE;
+    }
+
+    static void writeRequest(FrameChannel frames, Codec codec, int id, Request request) throws IOException {
+        if (codec == Codec.BINARY && request.getValue() instanceof IntoBin value) {
+            BinaryWriter writer = new BinaryWriter();
+            writer.writeString(request.getMethod());
+            value.intoBinary(writer);
+            frames.write(BINARY_MESSAGE, id, writer.toByteBuffer());
+        } else {
+            frames.write(MESSAGE, id, lines(request.intoString()));
+        }
+        frames.flush();
+    }
+
+    static Request toRequest(Frame frame) throws InvalidFormatException {
+        if (frame.type() == BINARY_MESSAGE) {
+            BinaryReader reader = new BinaryReader(frame.buffer());
+            return Request.fromBinary(reader.readString(), reader);
+        }
+        return Request.stringFactory().from(frame.text());
+    }
+
+    static void writeResponse(FrameChannel frames, Codec codec, int id, Response response) throws IOException {
+        if (!response.isStream()) {
+            if (codec == Codec.BINARY && response.getValue() instanceof IntoBin value) {
+                BinaryWriter writer = new BinaryWriter();
+                writer.writeBoolean(response.isOk());
+                value.intoBinary(writer);
+                frames.write(BINARY_MESSAGE, id, writer.toByteBuffer());
+            } else {
+                frames.write(MESSAGE, id, lines(response.intoString()));
+            }
+            frames.flush();
+            return;
+        }
+
+        // Un solo writer para todos los ítems: el diccionario vale para la
+        // respuesta completa
+        BinaryWriter writer = codec == Codec.BINARY ? new BinaryWriter() : null;
+        String ending;
+        try {
+            String nextCursor = response.getProducer().produce(item -> writeItem(frames, writer, id, item));
+            ending = "next-cursor: " + (nextCursor == null ? "" : nextCursor);
+        } catch (IOException e) {
+            // El cliente se fue; no hay a quién avisar
+            throw e;
+        } catch (Exception e) {
+            ending = "error: " + e.getMessage();
+        }
+        frames.write(END, id, ending + Constants.LINE_SEPARATOR);
+        frames.flush();
+    }
+
+    static Response toResponse(Frame frame) throws InvalidFormatException {
+        if (frame.type() == BINARY_MESSAGE) {
+            BinaryReader reader = new BinaryReader(frame.buffer());
+            return Response.fromBinary(reader.readBoolean(), reader);
+        }
+        return Response.stringFactory().from(frame.text());
+    }
+
+    /**
+     * Procesa un frame de una respuesta en streaming: los ítems van al handler
+     * y el frame que la termina da el resultado.
+     *
+     * @return el cursor de la página siguiente o el error, o null si la
+     *         respuesta sigue
+     */
+    static Result<String, ErrorMessage> streamFrame(Frame frame, byte itemType, ItemHandler handler)
+            throws InvalidProtocolException, InvalidFormatException {
+        if (frame.type() == itemType) {
+            handler.accept(frame);
+            return null;
+        }
+        switch (frame.type()) {
+            case END -> {
+                String[] property = frame.text().trim().split(": ?", 2);
+                String value = property.length > 1 ? property[1] : "";
+                if (property[0].equals("error")) {
+                    return Result.error(new ErrorMessage(value));
+                }
+                return Result.success(value.isEmpty() ? null : value);
+            }
+            case MESSAGE, BINARY_MESSAGE -> {
+                // El servidor no llegó a hacer streaming (p. ej. un error)
+                Response response = toResponse(frame);
+                if (response.isError()) {
+                    return response.getData(source -> source);
+                }
+                throw new InvalidProtocolException("InvalidProtocolError: expected a streamed response");
+            }
+            default -> throw new InvalidProtocolException("InvalidProtocolError: unexpected frame " + frame.type());
+        }
+    }
+
+    private static void writeItem(FrameChannel frames, BinaryWriter writer, int id, IntoStr item)
+            throws IOException {
+        if (writer != null && item instanceof IntoBin value) {
+            writer.clear();
+            value.intoBinary(writer);
+            frames.write(BINARY_ITEM, id, writer.toByteBuffer());
+        } else {
+            frames.write(ITEM, id, lines(item.intoString()));
+        }
+    }
+
+    /**
+     * Deja el texto como lo recibe un lector v1: sin líneas vacías y cada
+     * línea terminada en separador.
+     */
+    private static String lines(String data) {
+        StringBuilder sb = new StringBuilder(data.length() + Constants.LINE_SEPARATOR.length());
+        for (String line : data.split(Constants.LINE_SEPARATOR)) {
+            if (!line.isEmpty()) {
+                sb.append(line).append(Constants.LINE_SEPARATOR);
+            }
+        }
+        return sb.toString();
+    }
+}
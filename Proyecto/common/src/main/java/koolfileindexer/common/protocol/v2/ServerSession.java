@@ -0,0 +1,90 @@
+package koolfileindexer.common.protocol.v2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.Executor;
+
+import koolfileindexer.common.exceptions.InvalidProtocolException;
+import koolfileindexer.common.model.ErrorMessage;
+import koolfileindexer.common.protocol.Request;
+import koolfileindexer.common.protocol.Response;
+import koolfileindexer.common.protocol.v2.FrameChannel.Frame;
+import koolfileindexer.common.utils.ServerFunction;
+
+/**
+ * Lado servidor de una sesión v2 ya negociada, separado de cómo se leen los
+ * frames: {@link Socket} los lee bloqueando y el SocketServer en modo event
+ * loop le pasa los bytes que van llegando con {@link #consume}.
+ *
+ * Cada request se atiende en el executor y su respuesta sale por el canal de
+ * salida con el mismo id. Como el cliente espera una respuesta por request,
+ * los errores también se le responden. Sin mux la sesión termina con el
+ * primer request y el canal se cierra después de responder.
+ */
+public class ServerSession {
+
+    private final FrameChannel frames;
+    private final Codec codec;
+    private final ServerFunction<Request, Response> server;
+    private final Executor executor;
+    private boolean finished;
+
+    public ServerSession(WritableByteChannel output, Handshake handshake, ServerFunction<Request, Response> server,
+            Executor executor) {
+        this(FrameChannel.writeOnly(output, handshake.multiplexed()), handshake.codec(), server, executor);
+    }
+
+    ServerSession(FrameChannel frames, Codec codec, ServerFunction<Request, Response> server, Executor executor) {
+        this.frames = frames;
+        this.codec = codec;
+        this.server = server;
+        this.executor = executor;
+    }
+
+    /**
+     * Atiende los frames completos que haya en input (en modo lectura); lo
+     * que falta de un frame queda en input para la próxima llamada.
+     *
+     * @return false si la sesión ya no espera más requests
+     */
+    public boolean consume(ByteBuffer input) throws InvalidProtocolException {
+        while (!this.finished) {
+            Frame frame = FrameChannel.decode(input, this.frames.isMultiplexed());
+            if (frame == null) {
+                break;
+            }
+            this.handle(frame);
+        }
+        return !this.finished;
+    }
+
+    void handle(Frame frame) {
+        boolean last = !this.frames.isMultiplexed();
+        this.finished = last;
+        this.executor.execute(() -> {
+            Response response = Messages.isMessage(frame)
+                    ? this.apply(frame)
+                    : Response.err(new ErrorMessage("unexpected frame " + frame.type()));
+            try {
+                Messages.writeResponse(this.frames, this.codec, frame.id(), response);
+                if (last) {
+                    this.frames.close();
+                }
+            } catch (ClosedChannelException e) {
+                // El cliente se fue antes de la respuesta; quien lee del canal ya se entera
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+            }
+        });
+    }
+
+    private Response apply(Frame frame) {
+        try {
+            return this.server.apply(Messages.toRequest(frame));
+        } catch (Exception e) {
+            return Response.err(new ErrorMessage(e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package koolfileindexer.common.protocol.v2;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.ByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+import jnr.unixsocket.UnixSocketAddress;
+import jnr.unixsocket.UnixSocketChannel;
+import koolfileindexer.common.Constants;
+import koolfileindexer.common.codec.FromBin;
+import koolfileindexer.common.exceptions.InvalidFormatException;
+import koolfileindexer.common.exceptions.InvalidProtocolException;
+import koolfileindexer.common.model.ErrorMessage;
+import koolfileindexer.common.protocol.Request;
+import koolfileindexer.common.protocol.Response;
+import koolfileindexer.common.protocol.v2.FrameChannel.Frame;
+import koolfileindexer.common.utils.FromStr;
+import koolfileindexer.common.utils.Result;
+import koolfileindexer.common.utils.ServerFunction;
+
+/**
+ * Misma API que {@link koolfileindexer.common.protocol.v1.Socket} pero con
+ * frames con el largo adelante (ver {@link FrameChannel}) en lugar de líneas entre
+ * header y trailer. El cliente escribe el header de su {@link Handshake} una
+ * vez al conectar; el SocketServer lo usa para distinguirlo de un cliente v1.
+ *
+ * Con el codec de texto los payloads son el mismo texto que en v1 (Request,
+ * Response, ítems). Con el binario, los valores que implementan IntoBin van
+ * en frames BINARY_*; el resto sigue en texto. Una respuesta en streaming es
+ * una serie de frames ITEM seguida de un frame END con "next-cursor: x" o
+ * "error: msg".
+ *
+ * Del lado cliente un Socket hace un solo request; para varios sobre la misma
+ * conexión está {@link Connection}. Del lado servidor, si el cliente pidió mux
+ * el Socket atiende requests hasta que el cliente cierra.
+ */
+public class Socket implements Runnable {
+
+    private final FrameChannel frames;
+    private final Codec codec;
+    private final Optional<ServerFunction<Request, Response>> server;
+    // Dónde se atienden los requests de una sesión multiplexada
+    private final Executor executor;
+
+    private Socket(FrameChannel frames, Codec codec, Optional<ServerFunction<Request, Response>> server,
+            Executor executor) {
+        this.frames = frames;
+        this.codec = codec;
+        this.server = server;
+        this.executor = executor;
+    }
+
+    /** Lado servidor: el header v2 ya se leyó del canal. */
+    public Socket(ByteChannel channel, ServerFunction<Request, Response> server) {
+        this(channel, Codec.TEXT, server);
+    }
+
+    /** Lado servidor, con el codec que pidió el cliente en el header. */
+    public Socket(ByteChannel channel, Codec codec, ServerFunction<Request, Response> server) {
+        this(new FrameChannel(channel), codec, Optional.of(server), null);
+    }
+
+    /**
+     * Lado servidor de una sesión que puede ser multiplexada: los requests se
+     * atienden en el executor y las respuestas salen en el orden en que
+     * terminan.
+     */
+    public Socket(ByteChannel channel, Handshake handshake, ServerFunction<Request, Response> server,
+            Executor executor) {
+        this(new FrameChannel(channel, handshake.multiplexed()), handshake.codec(), Optional.of(server), executor);
+    }
+
+    public static Socket connect() throws IOException {
+        return connect(Constants.SOCKET_PATH, Codec.TEXT);
+    }
+
+    public static Socket connect(Codec codec) throws IOException {
+        return connect(Constants.SOCKET_PATH, codec);
+    }
+
+    public static Socket connect(String socketPath) throws IOException {
+        return connect(socketPath, Codec.TEXT);
+    }
+
+    public static Socket connect(String socketPath, Codec codec) throws IOException {
+        UnixSocketAddress address = new UnixSocketAddress(new File(socketPath));
+        return open(UnixSocketChannel.open(address), codec);
+    }
+
+    public static Socket open(ByteChannel channel) throws IOException {
+        return open(channel, Codec.TEXT);
+    }
+
+    /**
+     * Inicia una sesión v2 sobre un canal ya conectado. El header sale junto
+     * con el primer request.
+     */
+    public static Socket open(ByteChannel channel, Codec codec) throws IOException {
+        FrameChannel frames = new FrameChannel(channel);
+        frames.writeRaw(new Handshake(codec).header().getBytes(StandardCharsets.US_ASCII));
+        return new Socket(frames, codec, Optional.empty(), null);
+    }
+
+    public Codec getCodec() {
+        return codec;
+    }
+
+    public void close() throws IOException {
+        this.frames.close();
+    }
+
+    public Request getRequest() throws IOException, InvalidProtocolException, InvalidFormatException {
+        return Messages.toRequest(this.readMessage());
+    }
+
+    public Response getResponse() throws IOException, InvalidProtocolException, InvalidFormatException {
+        return Messages.toResponse(this.readMessage());
+    }
+
+    public void sendRequest(Request request) throws IOException {
+        Messages.writeRequest(this.frames, this.codec, 0, request);
+    }
+
+    public void sendResponse(Response response) throws IOException {
+        Messages.writeResponse(this.frames, this.codec, 0, response);
+    }
+
+    /**
+     * Lee una respuesta enviada con {@link Response#stream}, entregando cada
+     * ítem al consumer a medida que llega.
+     *
+     * @return el cursor de la página siguiente (null si no hay más), o el error
+     */
+    public <T> Result<String, ErrorMessage> getStreamedItems(FromStr<T> factory, Consumer<T> consumer)
+            throws IOException, InvalidProtocolException, InvalidFormatException {
+        return this.readStream(Messages.ITEM, Messages.textItems(factory, consumer));
+    }
+
+    /** Como {@link #getStreamedItems} para ítems enviados con el codec binario. */
+    public <T> Result<String, ErrorMessage> getStreamedBinaryItems(FromBin<T> factory, Consumer<T> consumer)
+            throws IOException, InvalidProtocolException, InvalidFormatException {
+        return this.readStream(Messages.BINARY_ITEM, Messages.binaryItems(factory, consumer));
+    }
+
+    private Result<String, ErrorMessage> readStream(byte itemType, Messages.ItemHandler handler)
+            throws IOException, InvalidProtocolException, InvalidFormatException {
+        while (true) {
+            Frame frame = this.frames.read();
+            if (frame == null) {
+                throw new InvalidProtocolException("InvalidProtocolError: connection closed before the end");
+            }
+            Result<String, ErrorMessage> result = Messages.streamFrame(frame, itemType, handler);
+            if (result != null) {
+                return result;
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        if (this.server.isEmpty()) {
+            throw new RuntimeException("No server found... This is meant to be run by the server");
+        }
+        if (this.frames.isMultiplexed()) {
+            this.serveMultiplexed();
+            return;
+        }
+        try {
+            Request req = this.getRequest();
+            Response res = this.server.get().apply(req);
+            this.sendResponse(res);
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+        } finally {
+            try {
+                this.close();
+            } catch (IOException e) {
+                System.err.println("[PROTOCOLO] Error al cerrar el socket: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Lee requests hasta que el cliente cierra; la {@link ServerSession} los
+     * atiende en el executor.
+     */
+    private void serveMultiplexed() {
+        ServerSession session = new ServerSession(this.frames, this.codec, this.server.get(), this.executor);
+        try {
+            while (true) {
+                Frame frame = this.frames.read();
+                if (frame == null) {
+                    return;
+                }
+                session.handle(frame);
+            }
+        } catch (IOException | InvalidProtocolException e) {
+            System.err.println(e.getMessage());
+        } finally {
+            try {
+                this.close();
+            } catch (IOException e) {
+                System.err.println("[PROTOCOLO] Error al cerrar el socket: " + e.getMessage());
+            }
+        }
+    }
+
+    private Frame readMessage() throws IOException, InvalidProtocolException {
+        Frame frame = this.frames.read();
+        if (frame == null || !Messages.isMessage(frame)) {
+            throw new InvalidProtocolException();
+        }
+        return frame;
+    }
+}
@@ -1,19 +1,48 @@
 package koolfileindexer.common.utils;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import koolfileindexer.common.Constants;
 import koolfileindexer.common.exceptions.PropertyException;
 
 public class StringVisitor {
+    private static final String PROPERTY_SEPARATOR = ": ";
+
+    // Mismo resultado que line.split(": ")[0..1] pero sin pasar por regex:
+    // se decodifica una vez por propiedad de cada ítem de una lista
     public static String visitString(String line, String property) throws PropertyException {
-        String[] result = line.split(": ");
+        int separator = line.indexOf(PROPERTY_SEPARATOR);
+        String name = separator < 0 ? line : line.substring(0, separator);
 
-        if (!result[0].equals(property)) {
+        if (!name.equals(property)) {
             throw new PropertyException(property);
         }
 
-        if (result.length < 2) {
+        if (separator < 0) {
             return "";
         }
 
-        return result[1];
+        int start = separator + PROPERTY_SEPARATOR.length();
+        int end = line.indexOf(PROPERTY_SEPARATOR, start);
+        return line.substring(start, end < 0 ? line.length() : end);
+    }
+
+    /** Igual que source.split(Constants.LINE_SEPARATOR) pero sin regex. */
+    public static String[] splitLines(String source) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        int end;
+        while ((end = source.indexOf(Constants.LINE_SEPARATOR, start)) >= 0) {
+            lines.add(source.substring(start, end));
+            start = end + Constants.LINE_SEPARATOR.length();
+        }
+        lines.add(source.substring(start));
+        // split descarta las cadenas vacías del final
+        int size = lines.size();
+        while (size > 1 && lines.get(size - 1).isEmpty()) {
+            size--;
+        }
+        return lines.subList(0, size).toArray(new String[0]);
     }
 }
@@ -4,9 +4,11 @@ module common {
     requires org.jnrproject.ffi;
 
     exports koolfileindexer.common;
+    exports koolfileindexer.common.codec;
     exports koolfileindexer.common.exceptions;
     exports koolfileindexer.common.model;
     exports koolfileindexer.common.protocol;
     exports koolfileindexer.common.protocol.v1;
+    exports koolfileindexer.common.protocol.v2;
     exports koolfileindexer.common.utils;
 }
@@ -0,0 +1,238 @@
+package koolfileindexer.common.codec;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import koolfileindexer.common.exceptions.InvalidFormatException;
+import koolfileindexer.common.model.ErrorMessage;
+import koolfileindexer.common.model.File;
+import koolfileindexer.common.model.GenericList;
+import koolfileindexer.common.model.Page;
+import koolfileindexer.common.model.Search;
+import koolfileindexer.common.model.Tag;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryCodecTest {
+
+    private static byte[] codificar(IntoBin valor) {
+        BinaryWriter writer = new BinaryWriter(16);
+        valor.intoBinary(writer);
+        byte[] bytes = new byte[writer.size()];
+        writer.toByteBuffer().get(bytes);
+        return bytes;
+    }
+
+    private static <T> T decodificar(FromBin<T> factory, byte[] bytes) throws InvalidFormatException {
+        BinaryReader reader = new BinaryReader(ByteBuffer.wrap(bytes));
+        T valor = factory.from(reader);
+        assertEquals(0, reader.remaining(), "Debe consumir todo lo escrito");
+        return valor;
+    }
+
+    private static void assertMismoArchivo(File esperado, File obtenido) {
+        assertEquals(esperado.getName(), obtenido.getName());
+        assertEquals(esperado.getExtension(), obtenido.getExtension());
+        assertEquals(esperado.getPath(), obtenido.getPath());
+        assertEquals(esperado.getModifiedDate(), obtenido.getModifiedDate());
+        assertEquals(esperado.getSize(), obtenido.getSize());
+        assertArrayEquals(esperado.getTags(), obtenido.getTags());
+    }
+
+    /** Cortar lo codificado en cualquier punto debe dar InvalidFormatException, nunca otra excepción. */
+    private static void assertFallaTruncado(FromBin<?> factory, byte[] bytes) {
+        for (int largo = 0; largo < bytes.length; largo++) {
+            ByteBuffer cortado = ByteBuffer.wrap(bytes, 0, largo).slice();
+            int n = largo;
+            try {
+                factory.from(new BinaryReader(cortado));
+                fail("Se decodificó con " + n + " de " + bytes.length + " bytes");
+            } catch (InvalidFormatException e) {
+                // lo esperado
+            }
+        }
+    }
+
+    private static File archivo(String nombre, String extension, String ruta, Integer tamano, String... etiquetas) {
+        return new File(nombre, extension, ruta, "2024-05-01T10:30:00", tamano, etiquetas);
+    }
+
+    @Test
+    void escalares_idaYVuelta() throws Exception {
+        BinaryWriter writer = new BinaryWriter(1);
+        long[] varints = { 0, 1, 127, 128, 300, Integer.MAX_VALUE, Long.MAX_VALUE, -1 };
+        for (long v : varints) {
+            writer.writeVarint(v);
+        }
+        Integer[] enteros = { null, 0, 1, -1, Integer.MAX_VALUE, Integer.MIN_VALUE };
+        for (Integer v : enteros) {
+            writer.writeNullableInt(v);
+        }
+        String[] textos = { null, "", "año", "emoji 😀", "suelto \uD800 fin" };
+        for (String v : textos) {
+            writer.writeString(v);
+        }
+        writer.writeBoolean(true);
+        writer.writeStringArray(new String[] { "a", null, "" });
+        writer.writeStringArray(null);
+
+        BinaryReader reader = new BinaryReader(writer.toByteBuffer());
+        for (long v : varints) {
+            assertEquals(v, reader.readVarint());
+        }
+        for (Integer v : enteros) {
+            assertEquals(v, reader.readNullableInt());
+        }
+        assertNull(reader.readString());
+        assertEquals("", reader.readString());
+        assertEquals("año", reader.readString());
+        assertEquals("emoji 😀", reader.readString());
+        assertEquals("suelto ? fin", reader.readString(), "Igual que String.getBytes");
+        assertTrue(reader.readBoolean());
+        assertArrayEquals(new String[] { "a", null, "" }, reader.readStringArray());
+        assertNull(reader.readStringArray());
+        assertEquals(0, reader.remaining());
+    }
+
+    @Test
+    void diccionario_seConservaAlVaciarYAlCambiarDeBuffer() throws Exception {
+        BinaryWriter writer = new BinaryWriter();
+        writer.writeDictionaryString("pdf");
+        writer.writeDictionaryString("txt");
+        ByteBuffer primero = ByteBuffer.allocate(writer.size()).put(writer.toByteBuffer()).flip();
+        writer.clear();
+        writer.writeDictionaryString("txt");
+        writer.writeDictionaryString("pdf");
+        writer.writeDictionaryString(null);
+        ByteBuffer segundo = writer.toByteBuffer();
+        assertEquals(3, segundo.remaining(), "Las repetidas van como referencia de un byte");
+
+        BinaryReader reader = new BinaryReader(primero);
+        assertEquals("pdf", reader.readDictionaryString());
+        assertEquals("txt", reader.readDictionaryString());
+        reader.wrap(segundo);
+        assertEquals("txt", reader.readDictionaryString());
+        assertEquals("pdf", reader.readDictionaryString());
+        assertNull(reader.readDictionaryString());
+    }
+
+    @Test
+    void file_idaYVuelta() throws Exception {
+        File[] archivos = {
+                archivo("informe", "pdf", "/home/ana/informe.pdf", 1_024, "trabajo", "2024"),
+                archivo("sin-directorio", "txt", "sin-directorio.txt", 0),
+                archivo("windows", "doc", "C:\\Users\\ana\\windows.doc", -5, "ñandú"),
+                archivo(null, null, null, null),
+        };
+        for (File esperado : archivos) {
+            assertMismoArchivo(esperado, decodificar(File.binaryFactory(), codificar(esperado)));
+        }
+    }
+
+    @Test
+    void file_sinEtiquetasSeLeeComoArregloVacio() throws Exception {
+        File sinEtiquetas = new File("a", "txt", "/a.txt", "2024-05-01", 1, null);
+
+        assertArrayEquals(new String[0], decodificar(File.binaryFactory(), codificar(sinEtiquetas)).getTags());
+    }
+
+    @Test
+    void search_idaYVueltaConYSinCamposOpcionales() throws Exception {
+        Search completa = new Search(new String[] { "informe", "final" }, new String[] { "trabajo" },
+                new String[] { "extension=pdf" }, 50, "cursor-3", true, "/var/app");
+        Search simple = new Search(new String[0], new String[0], new String[0]);
+
+        Search leida = decodificar(Search.binaryFactory(), codificar(completa));
+        assertArrayEquals(completa.getKeywords(), leida.getKeywords());
+        assertArrayEquals(completa.getTags(), leida.getTags());
+        assertArrayEquals(completa.getFilters(), leida.getFilters());
+        assertEquals(Integer.valueOf(50), leida.getLimit());
+        assertEquals("cursor-3", leida.getCursor());
+        assertTrue(leida.isStream());
+        assertEquals("/var/app", leida.getUnder());
+
+        leida = decodificar(Search.binaryFactory(), codificar(simple));
+        assertEquals(0, leida.getKeywords().length);
+        assertNull(leida.getLimit());
+        assertNull(leida.getCursor());
+        assertFalse(leida.isStream());
+        assertNull(leida.getUnder(), "Sin under no se escribe nada, como un cliente anterior");
+    }
+
+    @Test
+    void tagYErrorMessage_idaYVuelta() throws Exception {
+        assertEquals("urgente", decodificar(Tag.binaryFactory(), codificar(new Tag("urgente"))).getName());
+        assertEquals("falló: ñ", decodificar(ErrorMessage.binaryFactory(),
+                codificar(new ErrorMessage("falló: ñ"))).getErrorMessage());
+    }
+
+    @Test
+    void listaYPagina_compartenElDiccionarioEntreItems() throws Exception {
+        GenericList<File> lista = new GenericList<>();
+        for (int i = 0; i < 20; i++) {
+            lista.add(archivo("f" + i, "pdf", "/datos/d" + (i % 2) + "/f" + i + ".pdf", i, "etiqueta"));
+        }
+
+        GenericList<File> leida = decodificar(GenericList.binaryFactory(File.binaryFactory()), codificar(lista));
+        assertEquals(lista.size(), leida.size());
+        for (int i = 0; i < lista.size(); i++) {
+            assertMismoArchivo(lista.get(i), leida.get(i));
+        }
+
+        Page<File> pagina = new Page<>(lista, "siguiente");
+        Page<File> paginaLeida = decodificar(Page.binaryFactory(File.binaryFactory()), codificar(pagina));
+        assertEquals("siguiente", paginaLeida.getNextCursor());
+        assertEquals(20, paginaLeida.getItems().size());
+        assertMismoArchivo(lista.get(19), paginaLeida.getItems().get(19));
+
+        Page<Tag> vacia = decodificar(Page.binaryFactory(Tag.binaryFactory()),
+                codificar(new Page<Tag>(new GenericList<>(), null)));
+        assertNull(vacia.getNextCursor());
+        assertTrue(vacia.getItems().isEmpty());
+    }
+
+    @Test
+    void entradaTruncada_fallaConInvalidFormat() {
+        GenericList<File> lista = new GenericList<>();
+        lista.add(archivo("informe", "pdf", "/home/ana/informe.pdf", 1_024, "trabajo"));
+        lista.add(archivo("otro", "pdf", "/home/ana/otro.pdf", 7, "trabajo"));
+
+        assertFallaTruncado(File.binaryFactory(), codificar(lista.get(0)));
+        assertFallaTruncado(GenericList.binaryFactory(File.binaryFactory()), codificar(lista));
+        assertFallaTruncado(Page.binaryFactory(File.binaryFactory()), codificar(new Page<>(lista, "c")));
+        assertFallaTruncado(Tag.binaryFactory(), codificar(new Tag("urgente")));
+        assertFallaTruncado(ErrorMessage.binaryFactory(), codificar(new ErrorMessage("error")));
+        assertFallaTruncado(Search.binaryFactory(), codificar(new Search(new String[] { "a" },
+                new String[] { "b" }, new String[0], 10, "x", false)));
+    }
+
+    @Test
+    void entradaMalformada_fallaConInvalidFormat() {
+        // Referencia a una entrada del diccionario que no existe
+        assertThrows(InvalidFormatException.class,
+                () -> new BinaryReader(ByteBuffer.wrap(new byte[] { 0x07 })).readDictionaryString());
+        // Varint de más de 10 bytes
+        byte[] varintLargo = new byte[11];
+        java.util.Arrays.fill(varintLargo, (byte) 0xFF);
+        assertThrows(InvalidFormatException.class, () -> new BinaryReader(ByteBuffer.wrap(varintLargo)).readVarint());
+        // Largos que no caben en lo que queda
+        assertThrows(InvalidFormatException.class,
+                () -> new BinaryReader(ByteBuffer.wrap(new byte[] { 0x7F, 'a' })).readString());
+        assertThrows(InvalidFormatException.class,
+                () -> new BinaryReader(ByteBuffer.wrap(new byte[] { 0x7F, 0x01 })).readStringArray());
+        assertThrows(InvalidFormatException.class, () -> GenericList.binaryFactory(Tag.binaryFactory())
+                .from(new BinaryReader(ByteBuffer.wrap(new byte[] { (byte) 0xFF, 0x7F }))));
+        // Un archivo que dice tener más etiquetas que bytes
+        BinaryWriter writer = new BinaryWriter();
+        writer.writeString("a");
+        writer.writeDictionaryString("txt");
+        writer.writeDictionaryString("/");
+        writer.writeString("a.txt");
+        writer.writeString("2024-05-01");
+        writer.writeNullableInt(1);
+        writer.writeVarint(1_000_000);
+        assertThrows(InvalidFormatException.class,
+                () -> File.binaryFactory().from(new BinaryReader(writer.toByteBuffer())));
+    }
+}
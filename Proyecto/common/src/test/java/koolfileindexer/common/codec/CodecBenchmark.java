@@ -0,0 +1,77 @@
+package koolfileindexer.common.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import koolfileindexer.common.model.File;
+import koolfileindexer.common.model.GenericList;
+import koolfileindexer.common.utils.FromStr;
+
+/**
+ * Benchmark manual (no se ejecuta con los tests): serializa y deserializa una
+ * GenericList de File con el formato de texto y con el codec binario, e
+ * informa tiempos y tamaños.
+ *
+ * Uso: java ... koolfileindexer.common.codec.CodecBenchmark [tamaños...]
+ */
+public class CodecBenchmark {
+
+    private interface Operacion {
+        long ejecutar() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] tamanos = { 10_000, 100_000 };
+        if (args.length > 0) {
+            tamanos = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                tamanos[i] = Integer.parseInt(args[i]);
+            }
+        }
+        FromStr<GenericList<File>> texto = GenericList.stringFactory(File.stringFactory());
+        FromBin<GenericList<File>> binario = GenericList.binaryFactory(File.binaryFactory());
+
+        for (int tamano : tamanos) {
+            GenericList<File> lista = new GenericList<>();
+            for (int i = 0; i < tamano; i++) {
+                String[] etiquetas = i % 10 == 0 ? new String[] { "trabajo", "2024" } : new String[0];
+                lista.add(new File("informe_" + i, i % 3 == 0 ? "pdf" : "txt",
+                        "/home/usuario/proyectos/d" + (i % 500) + "/informe_" + i + (i % 3 == 0 ? ".pdf" : ".txt"),
+                        "2024-01-01T10:00:00", i, etiquetas));
+            }
+            String comoTexto = lista.intoString();
+            BinaryWriter writer = new BinaryWriter();
+            lista.intoBinary(writer);
+            byte[] comoBinario = new byte[writer.size()];
+            writer.toByteBuffer().get(comoBinario);
+
+            System.out.printf("%,d archivos: texto %,d bytes, binario %,d bytes (%.0f%%)%n", tamano,
+                    comoTexto.getBytes(StandardCharsets.UTF_8).length, comoBinario.length,
+                    100.0 * comoBinario.length / comoTexto.getBytes(StandardCharsets.UTF_8).length);
+            medir("texto codificar", tamano, () -> lista.intoString().getBytes(StandardCharsets.UTF_8).length);
+            medir("binario codificar", tamano, () -> {
+                BinaryWriter w = new BinaryWriter();
+                lista.intoBinary(w);
+                return w.size();
+            });
+            medir("texto decodificar", tamano,
+                    () -> texto.from(new String(comoTexto.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8))
+                            .size());
+            medir("binario decodificar", tamano,
+                    () -> binario.from(new BinaryReader(ByteBuffer.wrap(comoBinario))).size());
+        }
+    }
+
+    private static void medir(String nombre, int tamano, Operacion operacion) throws Exception {
+        int repeticiones = Math.max(3, 2_000_000 / tamano);
+        for (int i = 0; i < repeticiones; i++) { // calentamiento del JIT
+            operacion.ejecutar();
+        }
+        long inicio = System.nanoTime();
+        for (int i = 0; i < repeticiones; i++) {
+            operacion.ejecutar();
+        }
+        double ms = (System.nanoTime() - inicio) / 1e6 / repeticiones;
+        System.out.printf("  %-20s %8.2f ms  %6.0f ns/archivo%n", nombre, ms, ms * 1e6 / tamano);
+    }
+}
@@ -0,0 +1,123 @@
+package koolfileindexer.common.model;
+
+import org.junit.jupiter.api.Test;
+
+import koolfileindexer.common.Constants;
+import koolfileindexer.common.exceptions.InvalidFormatException;
+import koolfileindexer.common.utils.FromStr;
+import koolfileindexer.common.utils.IntoStr;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GenericListTest {
+
+    private static final String SEP = Constants.LINE_SEPARATOR;
+
+    /** Ítem de varias líneas, algunas vacías o con forma de cabecera de la lista. */
+    private record Nota(String texto) implements IntoStr {
+        static FromStr<Nota> stringFactory() {
+            return source -> {
+                if (source.isEmpty()) {
+                    throw new InvalidFormatException(Nota.class);
+                }
+                return new Nota(source);
+            };
+        }
+
+        @Override
+        public String intoString() {
+            return texto;
+        }
+    }
+
+    private static File archivo(String nombre, String... etiquetas) {
+        return new File(nombre, "txt", "/datos/" + nombre + ".txt", "2024-05-01T10:30:00", 10, etiquetas);
+    }
+
+    private static GenericList<File> archivos(File... archivos) {
+        GenericList<File> lista = new GenericList<>();
+        for (File archivo : archivos) {
+            lista.add(archivo);
+        }
+        return lista;
+    }
+
+    @Test
+    void texto_idaYVueltaConItemsDeVariasLineas() throws Exception {
+        GenericList<File> lista = archivos(archivo("a", "uno", "dos", "tres"), archivo("b"), archivo("c", "x"));
+
+        String texto = lista.intoString();
+        assertTrue(texto.contains("item: 9" + SEP), "El largo cuenta las líneas del ítem");
+        GenericList<File> leida = GenericList.stringFactory(File.stringFactory()).from(texto);
+
+        assertEquals(3, leida.size());
+        assertEquals("a", leida.get(0).getName());
+        assertArrayEquals(new String[] { "uno", "dos", "tres" }, leida.get(0).getTags());
+        assertEquals(0, leida.get(1).getTags().length);
+        assertEquals("/datos/c.txt", leida.get(2).getPath());
+    }
+
+    @Test
+    void texto_lineasVaciasYCabecerasDentroDelItemNoLoCortan() throws Exception {
+        GenericList<Nota> lista = new GenericList<>();
+        lista.add(new Nota("primera" + SEP + SEP + "item: 5" + SEP + "items: 2" + SEP));
+        lista.add(new Nota("segunda"));
+
+        GenericList<Nota> leida = GenericList.stringFactory(Nota.stringFactory()).from(lista.intoString());
+
+        assertEquals(2, leida.size());
+        // Las líneas vacías no se envían
+        assertEquals("primera" + SEP + "item: 5" + SEP + "items: 2" + SEP, leida.get(0).texto());
+        assertEquals("segunda" + SEP, leida.get(1).texto());
+    }
+
+    @Test
+    void formatoAnterior_sinItemSeSigueLeyendo() throws Exception {
+        File a = archivo("a", "uno");
+        File b = archivo("b");
+        File c = archivo("c", "x", "y");
+        String anterior = "items: 3" + SEP + a.intoString() + b.intoString() + c.intoString();
+
+        GenericList<File> leida = GenericList.stringFactory(File.stringFactory()).from(anterior);
+
+        assertEquals(3, leida.size());
+        assertEquals("a", leida.get(0).getName());
+        assertArrayEquals(new String[] { "uno" }, leida.get(0).getTags());
+        assertEquals("b", leida.get(1).getName());
+        assertArrayEquals(new String[] { "x", "y" }, leida.get(2).getTags());
+
+        String etiquetas = "items: 2" + SEP + "tag: rojo" + SEP + "tag: azul" + SEP;
+        GenericList<Tag> tags = GenericList.stringFactory(Tag.stringFactory()).from(etiquetas);
+        assertEquals("rojo", tags.get(0).getName());
+        assertEquals("azul", tags.get(1).getName());
+    }
+
+    @Test
+    void listaVacia() throws Exception {
+        GenericList<File> vacia = new GenericList<>();
+
+        assertEquals("items: 0" + SEP, vacia.intoString());
+        assertTrue(GenericList.stringFactory(File.stringFactory()).from(vacia.intoString()).isEmpty());
+        assertTrue(GenericList.stringFactory(File.stringFactory()).from("items: 0").isEmpty());
+    }
+
+    @Test
+    void largosEquivocadosOEntradaMalformada_fallan() {
+        FromStr<GenericList<File>> factory = GenericList.stringFactory(File.stringFactory());
+        String item = archivo("a").intoString();
+
+        // Más líneas de las que quedan
+        assertThrows(InvalidFormatException.class,
+                () -> factory.from("items: 1" + SEP + "item: 20" + SEP + item));
+        // Menos líneas: el ítem queda incompleto
+        assertThrows(InvalidFormatException.class,
+                () -> factory.from("items: 1" + SEP + "item: 2" + SEP + item));
+        // Más ítems de los que hay
+        assertThrows(InvalidFormatException.class,
+                () -> factory.from("items: 2" + SEP + "item: 6" + SEP + item));
+        assertThrows(InvalidFormatException.class, () -> factory.from("items: muchos" + SEP));
+        assertThrows(InvalidFormatException.class, () -> factory.from("items: -1" + SEP));
+        assertThrows(InvalidFormatException.class, () -> factory.from("items: 1" + SEP + "item: x" + SEP + item));
+        assertThrows(InvalidFormatException.class, () -> factory.from(""));
+    }
+}
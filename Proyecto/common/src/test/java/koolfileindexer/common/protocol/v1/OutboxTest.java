@@ -0,0 +1,153 @@
+package koolfileindexer.common.protocol.v1;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutboxTest {
+
+    /** Socket que acepta hasta "capacidad" bytes por llamada, como uno sin bloqueo. */
+    private static final class SocketLento implements WritableByteChannel {
+        private final ByteArrayOutputStream recibido = new ByteArrayOutputStream();
+        private int capacidad;
+
+        SocketLento(int capacidad) {
+            this.capacidad = capacidad;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            int n = Math.min(this.capacidad, src.remaining());
+            byte[] bytes = new byte[n];
+            src.get(bytes);
+            this.recibido.write(bytes, 0, n);
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static ByteBuffer bytes(int largo, int semilla) {
+        ByteBuffer buffer = ByteBuffer.allocate(largo);
+        for (int i = 0; i < largo; i++) {
+            buffer.put((byte) (i + semilla));
+        }
+        return buffer.flip();
+    }
+
+    private static void esperarBloqueado(Thread hilo) throws InterruptedException {
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (hilo.getState() != Thread.State.WAITING && System.nanoTime() < limite) {
+            Thread.sleep(5);
+        }
+        assertEquals(Thread.State.WAITING, hilo.getState());
+    }
+
+    @Test
+    void drainTo_mandaEnOrdenLoQueElSocketAcepta() throws Exception {
+        AtomicInteger avisos = new AtomicInteger();
+        Outbox outbox = new Outbox(avisos::incrementAndGet);
+        outbox.write(bytes(10, 0));
+        outbox.write(bytes(10, 10));
+        assertEquals(1, avisos.get(), "Sólo avisa cuando la cola deja de estar vacía");
+        assertEquals(20, outbox.pending());
+
+        SocketLento socket = new SocketLento(7);
+        assertFalse(outbox.drainTo(socket));
+        assertEquals(13, outbox.pending());
+        socket.capacidad = 100;
+        assertTrue(outbox.drainTo(socket));
+        assertEquals(0, outbox.pending());
+        byte[] esperado = new byte[20];
+        for (int i = 0; i < 20; i++) {
+            esperado[i] = (byte) i;
+        }
+        assertArrayEquals(esperado, socket.recibido.toByteArray());
+
+        outbox.write(bytes(1, 0));
+        assertEquals(2, avisos.get());
+    }
+
+    @Test
+    void clienteLento_bloqueaAlWorkerHastaBajarDelUmbral() throws Exception {
+        Outbox outbox = new Outbox(() -> {
+        });
+        CompletableFuture<Integer> escrito = new CompletableFuture<>();
+        Thread worker = new Thread(() -> {
+            try {
+                escrito.complete(outbox.write(bytes(Outbox.HIGH_WATER + 1, 0)));
+            } catch (Exception e) {
+                escrito.completeExceptionally(e);
+            }
+        });
+        worker.start();
+        esperarBloqueado(worker);
+        assertFalse(escrito.isDone());
+
+        // Todavía por encima de LOW_WATER: sigue bloqueado
+        SocketLento socket = new SocketLento(Outbox.HIGH_WATER - Outbox.LOW_WATER);
+        outbox.drainTo(socket);
+        assertTrue(outbox.pending() > Outbox.LOW_WATER);
+        esperarBloqueado(worker);
+
+        socket.capacidad = Integer.MAX_VALUE;
+        assertTrue(outbox.drainTo(socket));
+        assertEquals(Integer.valueOf(Outbox.HIGH_WATER + 1), escrito.get(5, TimeUnit.SECONDS));
+        worker.join(5_000);
+    }
+
+    @Test
+    void abort_despiertaAlWorkerYRechazaEscrituras() throws Exception {
+        Outbox outbox = new Outbox(() -> {
+        });
+        CompletableFuture<Integer> escrito = new CompletableFuture<>();
+        Thread worker = new Thread(() -> {
+            try {
+                escrito.complete(outbox.write(bytes(Outbox.HIGH_WATER + 1, 0)));
+            } catch (Exception e) {
+                escrito.completeExceptionally(e);
+            }
+        });
+        worker.start();
+        esperarBloqueado(worker);
+
+        outbox.abort();
+
+        Exception e = assertThrows(Exception.class, () -> escrito.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(ClosedChannelException.class, e.getCause());
+        assertEquals(0, outbox.pending());
+        assertFalse(outbox.isOpen());
+        assertThrows(ClosedChannelException.class, () -> outbox.write(bytes(1, 0)));
+    }
+
+    @Test
+    void close_terminaDespuesDeMandarLoPendiente() throws Exception {
+        AtomicInteger avisos = new AtomicInteger();
+        Outbox outbox = new Outbox(avisos::incrementAndGet);
+        outbox.write(bytes(5, 0));
+        outbox.close();
+        outbox.close();
+
+        assertFalse(outbox.isOpen());
+        assertFalse(outbox.isFinished(), "Todavía queda algo por mandar");
+        assertThrows(ClosedChannelException.class, () -> outbox.write(bytes(1, 0)));
+        assertTrue(outbox.drainTo(new SocketLento(100)));
+        assertTrue(outbox.isFinished());
+        assertEquals(2, avisos.get(), "Uno al escribir y otro para que el event loop cierre");
+    }
+}
@@ -0,0 +1,71 @@
+package koolfileindexer.common.protocol.v1;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import koolfileindexer.common.protocol.Request;
+import koolfileindexer.common.protocol.Response;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SocketServerTest {
+
+    private static final int PERMISOS = 2;
+    private static final int BUSQUEDAS = 5;
+
+    @Test
+    void streaming_conHilosVirtualesRespetaElTopeMientrasCorreElProducer() throws Exception {
+        SocketServer server = new SocketServer(null, PERMISOS, SocketServer.Threads.VIRTUAL);
+        AtomicInteger enCurso = new AtomicInteger();
+        AtomicInteger maximo = new AtomicInteger();
+        CountDownLatch seguir = new CountDownLatch(1);
+        server.registerAction("buscar", req -> Response.stream(sink -> {
+            maximo.accumulateAndGet(enCurso.incrementAndGet(), Math::max);
+            try {
+                seguir.await();
+            } finally {
+                enCurso.decrementAndGet();
+            }
+            return null;
+        }));
+
+        // El handler sólo arma la respuesta: la consulta corre al escribirla
+        List<Response> respuestas = new ArrayList<>();
+        for (int i = 0; i < BUSQUEDAS; i++) {
+            respuestas.add(server.dispatch(new Request("buscar", "")));
+        }
+        List<Thread> escritores = new ArrayList<>();
+        AtomicInteger terminadas = new AtomicInteger();
+        for (Response respuesta : respuestas) {
+            escritores.add(Thread.ofVirtual().start(() -> {
+                try {
+                    respuesta.getProducer().produce(item -> {
+                    });
+                    terminadas.incrementAndGet();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+        }
+
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (enCurso.get() < PERMISOS && System.nanoTime() < limite) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        assertEquals(PERMISOS, enCurso.get(), "Los producers de más deben esperar un permiso");
+
+        seguir.countDown();
+        for (Thread escritor : escritores) {
+            escritor.join(5_000);
+        }
+        assertEquals(BUSQUEDAS, terminadas.get());
+        assertEquals(PERMISOS, maximo.get());
+        server.close();
+    }
+}
@@ -0,0 +1,151 @@
+package koolfileindexer.common.protocol.v2;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.Pipe;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import koolfileindexer.common.Constants;
+import koolfileindexer.common.model.ErrorMessage;
+import koolfileindexer.common.model.Tag;
+import koolfileindexer.common.protocol.Request;
+import koolfileindexer.common.protocol.Response;
+import koolfileindexer.common.protocol.v2.FrameChannel.Frame;
+import koolfileindexer.common.utils.Result;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionTest {
+
+    /** Un extremo de una conexión en memoria hecha con dos Pipe. */
+    private record Extremo(Pipe.SourceChannel entrada, Pipe.SinkChannel salida) implements ByteChannel {
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return this.entrada.read(dst);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return this.salida.write(src);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return this.entrada.isOpen() && this.salida.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.salida.close();
+            this.entrada.close();
+        }
+    }
+
+    private Connection connection;
+    private Extremo servidor;
+    private FrameChannel frames;
+
+    private void conectar() throws IOException {
+        Pipe haciaServidor = Pipe.open();
+        Pipe haciaCliente = Pipe.open();
+        this.servidor = new Extremo(haciaServidor.source(), haciaCliente.sink());
+        this.connection = Connection.open(new Extremo(haciaCliente.source(), haciaServidor.sink()), Codec.TEXT);
+    }
+
+    /** El header sale junto con el primer request; deja al servidor de la prueba después de él. */
+    private void leerHeader() throws IOException {
+        String esperado = new Handshake(Codec.TEXT, true).header();
+        ByteBuffer header = ByteBuffer.allocate(esperado.length());
+        while (header.hasRemaining()) {
+            this.servidor.read(header);
+        }
+        assertEquals(esperado, new String(header.array(), StandardCharsets.US_ASCII));
+        this.frames = new FrameChannel(this.servidor, true);
+    }
+
+    @AfterEach
+    void cerrar() throws IOException {
+        if (this.connection != null) {
+            this.connection.close();
+        }
+        if (this.servidor != null) {
+            this.servidor.close();
+        }
+    }
+
+    private void responder(byte tipo, int id, String texto) throws IOException {
+        this.frames.write(tipo, id, texto);
+    }
+
+    @Test
+    void streamsIntercalados_cadaItemVaASuRequest() throws Exception {
+        conectar();
+        List<Tag> primeros = new ArrayList<>();
+        List<Tag> segundos = new ArrayList<>();
+        CompletableFuture<Result<String, ErrorMessage>> primero = this.connection
+                .stream(new Request("tags", "a"), Tag.stringFactory(), primeros::add);
+        CompletableFuture<Result<String, ErrorMessage>> segundo = this.connection
+                .stream(new Request("tags", "b"), Tag.stringFactory(), segundos::add);
+        CompletableFuture<Response> simple = this.connection.send(new Request("ping", "x"));
+        leerHeader();
+
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Frame request = this.frames.read();
+            assertEquals(Messages.MESSAGE, request.type());
+            ids.add(request.id());
+        }
+        int a = ids.get(0);
+        int b = ids.get(1);
+        int c = ids.get(2);
+        assertEquals(3, ids.stream().distinct().count(), "Cada request lleva su propio id");
+
+        String sep = Constants.LINE_SEPARATOR;
+        responder(Messages.ITEM, a, "tag: a1" + sep);
+        responder(Messages.ITEM, b, "tag: b1" + sep);
+        responder(Messages.MESSAGE, c, "ok" + sep + "pong" + sep);
+        responder(Messages.ITEM, a, "tag: a2" + sep);
+        responder(Messages.END, b, "next-cursor: cursor-b" + sep);
+        responder(Messages.ITEM, a, "tag: a3" + sep);
+        responder(Messages.END, a, "next-cursor: " + sep);
+        this.frames.flush();
+
+        assertEquals(Result.success("cursor-b"), segundo.get(5, TimeUnit.SECONDS));
+        assertEquals(Result.success(null), primero.get(5, TimeUnit.SECONDS));
+        assertEquals(List.of("a1", "a2", "a3"), primeros.stream().map(Tag::getName).toList());
+        assertEquals(List.of("b1"), segundos.stream().map(Tag::getName).toList());
+        assertTrue(simple.get(5, TimeUnit.SECONDS).isOk());
+        assertTrue(this.connection.isOpen(), "La conexión queda abierta entre requests");
+    }
+
+    @Test
+    void servidorCierraAMitadDeStream_fallanLosPendientes() throws Exception {
+        conectar();
+        List<Tag> recibidos = new ArrayList<>();
+        CompletableFuture<Result<String, ErrorMessage>> stream = this.connection
+                .stream(new Request("tags", ""), Tag.stringFactory(), recibidos::add);
+        CompletableFuture<Response> otro = this.connection.send(new Request("ping", ""));
+        leerHeader();
+        Frame request = this.frames.read();
+        this.frames.read();
+
+        responder(Messages.ITEM, request.id(), "tag: uno" + Constants.LINE_SEPARATOR);
+        this.frames.flush();
+        this.servidor.close();
+
+        assertThrows(ExecutionException.class, () -> stream.get(5, TimeUnit.SECONDS));
+        assertThrows(ExecutionException.class, () -> otro.get(5, TimeUnit.SECONDS));
+        assertEquals(1, recibidos.size());
+        assertFalse(this.connection.isOpen());
+        assertTrue(this.connection.send(new Request("ping", "")).isCompletedExceptionally());
+    }
+}
@@ -0,0 +1,198 @@
+package koolfileindexer.common.protocol.v2;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import koolfileindexer.common.exceptions.InvalidProtocolException;
+import koolfileindexer.common.protocol.Request;
+import koolfileindexer.common.protocol.Response;
+import koolfileindexer.common.protocol.v2.FrameChannel.Frame;
+import koolfileindexer.common.utils.Result;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameChannelTest {
+
+    /** Canal en memoria que entrega lo escrito de a pocos bytes por read. */
+    private static final class CanalEnTrozos implements ByteChannel {
+        private final ByteArrayOutputStream escrito = new ByteArrayOutputStream();
+        private final int trozo;
+        private ByteBuffer pendiente;
+        private boolean abierto = true;
+
+        CanalEnTrozos(int trozo) {
+            this.trozo = trozo;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (this.pendiente == null) {
+                this.pendiente = ByteBuffer.wrap(this.escrito.toByteArray());
+            }
+            if (!this.pendiente.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(Math.min(this.trozo, dst.remaining()), this.pendiente.remaining());
+            for (int i = 0; i < n; i++) {
+                dst.put(this.pendiente.get());
+            }
+            return n;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            byte[] bytes = new byte[n];
+            src.get(bytes);
+            this.escrito.write(bytes, 0, n);
+            return n;
+        }
+
+        byte[] bytes() {
+            return this.escrito.toByteArray();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return this.abierto;
+        }
+
+        @Override
+        public void close() {
+            this.abierto = false;
+        }
+    }
+
+    private static byte[] relleno(int largo) {
+        byte[] bytes = new byte[largo];
+        for (int i = 0; i < largo; i++) {
+            bytes[i] = (byte) (i * 31);
+        }
+        return bytes;
+    }
+
+    @Test
+    void framesCortadosEntreLecturas_seRearmanEnteros() throws Exception {
+        for (boolean multiplexado : new boolean[] { false, true }) {
+            CanalEnTrozos canal = new CanalEnTrozos(3);
+            FrameChannel escritor = new FrameChannel(canal, multiplexado);
+            byte[] grande = relleno(200_000); // más que el buffer de lectura
+            escritor.write(Messages.MESSAGE, 7, "hola");
+            escritor.write(Messages.ITEM, 8, ByteBuffer.wrap(new byte[0]));
+            escritor.write(Messages.BINARY_ITEM, 9, ByteBuffer.wrap(grande));
+            escritor.write(Messages.END, 10, "ñandú");
+            escritor.flush();
+
+            FrameChannel lector = new FrameChannel(canal, multiplexado);
+            Frame primero = lector.read();
+            assertEquals(Messages.MESSAGE, primero.type());
+            assertEquals("hola", primero.text());
+            assertEquals(multiplexado ? 7 : 0, primero.id());
+            assertEquals(0, lector.read().payload().length);
+            Frame tercero = lector.read();
+            assertEquals(multiplexado ? 9 : 0, tercero.id());
+            assertArrayEquals(grande, tercero.payload());
+            assertEquals("ñandú", lector.read().text());
+            assertNull(lector.read(), "Cerrado entre frames no es un error");
+        }
+    }
+
+    @Test
+    void canalCerradoAMitadDeFrame_esEOF() throws Exception {
+        CanalEnTrozos canal = new CanalEnTrozos(1);
+        FrameChannel escritor = new FrameChannel(canal);
+        escritor.write(Messages.MESSAGE, "un payload");
+        escritor.flush();
+        byte[] completo = canal.bytes();
+
+        for (int largo : new int[] { 2, completo.length - 1 }) {
+            CanalEnTrozos cortado = new CanalEnTrozos(1);
+            cortado.write(ByteBuffer.wrap(completo, 0, largo));
+            assertThrows(EOFException.class, () -> new FrameChannel(cortado).read());
+        }
+    }
+
+    @Test
+    void largoInvalido_esErrorDeProtocolo() {
+        CanalEnTrozos canal = new CanalEnTrozos(64);
+        canal.write(ByteBuffer.allocate(5).putInt(FrameChannel.MAX_FRAME_SIZE + 1).put(Messages.MESSAGE).flip());
+
+        assertThrows(InvalidProtocolException.class, () -> new FrameChannel(canal).read());
+        ByteBuffer negativo = ByteBuffer.allocate(5).putInt(-1).put(Messages.MESSAGE).flip();
+        assertThrows(InvalidProtocolException.class, () -> FrameChannel.decode(negativo, false));
+    }
+
+    @Test
+    void decode_esperaElFrameEnteroSinConsumirNada() throws Exception {
+        CanalEnTrozos canal = new CanalEnTrozos(64);
+        FrameChannel escritor = new FrameChannel(canal, true);
+        escritor.write(Messages.MESSAGE, 1, "primero");
+        escritor.write(Messages.MESSAGE, 2, "segundo");
+        escritor.flush();
+        byte[] bytes = canal.bytes();
+
+        // Como el event loop: llega de a un byte y se compacta entre vueltas
+        ByteBuffer entrada = ByteBuffer.allocate(bytes.length);
+        List<Frame> frames = new ArrayList<>();
+        for (byte b : bytes) {
+            entrada.put(b).flip();
+            Frame frame;
+            while ((frame = FrameChannel.decode(entrada, true)) != null) {
+                frames.add(frame);
+            }
+            entrada.compact();
+        }
+
+        assertEquals(2, frames.size());
+        assertEquals(1, frames.get(0).id());
+        assertEquals("primero", frames.get(0).text());
+        assertEquals("segundo", frames.get(1).text());
+        assertEquals(0, entrada.position());
+    }
+
+    @Test
+    void sesionDelEventLoop_respondeRequestsQueLleganCortados() throws Exception {
+        CanalEnTrozos cliente = new CanalEnTrozos(64);
+        FrameChannel requests = new FrameChannel(cliente, true);
+        Messages.writeRequest(requests, Codec.TEXT, 1, new Request("eco", "uno"));
+        Messages.writeRequest(requests, Codec.TEXT, 2, new Request("eco", "dos"));
+        byte[] bytes = cliente.bytes();
+
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        WritableByteChannel respuestas = Channels.newChannel(salida);
+        ServerSession sesion = new ServerSession(respuestas, new Handshake(Codec.TEXT, true),
+                req -> Response.ok(req.getRawData()), Runnable::run);
+        ByteBuffer entrada = ByteBuffer.allocate(bytes.length);
+        for (int i = 0; i < bytes.length; i += 5) {
+            entrada.put(Arrays.copyOfRange(bytes, i, Math.min(i + 5, bytes.length))).flip();
+            assertTrue(sesion.consume(entrada), "Una sesión multiplexada sigue esperando requests");
+            entrada.compact();
+        }
+
+        CanalEnTrozos recibido = new CanalEnTrozos(64);
+        recibido.write(ByteBuffer.wrap(salida.toByteArray()));
+        FrameChannel lector = new FrameChannel(recibido, true);
+        Frame uno = lector.read();
+        Frame dos = lector.read();
+        assertEquals(1, uno.id());
+        assertEquals(Result.success("uno"), Messages.toResponse(uno).getData(String::trim));
+        assertEquals(2, dos.id());
+        assertEquals(Result.success("dos"), Messages.toResponse(dos).getData(String::trim));
+    }
+
+    @Test
+    void soloEscritura_noLee() {
+        FrameChannel frames = FrameChannel.writeOnly(Channels.newChannel(new ByteArrayOutputStream()), false);
+
+        assertThrows(IllegalStateException.class, frames::read);
+    }
+}
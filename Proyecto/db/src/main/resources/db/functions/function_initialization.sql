@@ -1,13 +1,63 @@
+-- Parte una ruta en directorio (hasta la última '/', incluida; '' si no
+-- tiene ninguna) y último componente: Directorio.dir_ruta y Archivo.arc_base
+CREATE OR REPLACE FUNCTION directorio_de(ruta VARCHAR)
+RETURNS VARCHAR AS $$
+  SELECT COALESCE(substring(ruta FROM '^.*/'), '')::VARCHAR
+$$ LANGUAGE sql IMMUTABLE;
+
+CREATE OR REPLACE FUNCTION base_de(ruta VARCHAR)
+RETURNS VARCHAR AS $$
+  SELECT substring(ruta FROM '[^/]*$')::VARCHAR
+$$ LANGUAGE sql IMMUTABLE;
+
+
+-- Id del directorio (ruta con la '/' final, como dir_ruta); si no existe lo
+-- crea junto con los ancestros que falten
+CREATE OR REPLACE FUNCTION obtener_directorio(ruta VARCHAR)
+RETURNS INT AS $$
+DECLARE
+  id_directorio INT;
+  id_padre INT;
+  profundidad INT := 0;
+BEGIN
+  SELECT dir_id INTO id_directorio FROM Directorio WHERE dir_ruta = ruta;
+  IF FOUND THEN
+    RETURN id_directorio;
+  END IF;
+
+  -- '/home/x/' cuelga de '/home/'; la raíz '/' ('' si la ruta no tiene '/') no tiene padre
+  IF length(ruta) > 1 THEN
+    id_padre := obtener_directorio(directorio_de(left(ruta, -1)));
+    SELECT dir_profundidad + 1 INTO profundidad FROM Directorio WHERE dir_id = id_padre;
+  END IF;
+
+  INSERT INTO Directorio (dir_padre_id, dir_nombre, dir_profundidad, dir_ruta)
+  VALUES (id_padre, base_de(left(ruta, -1)), profundidad, ruta)
+  ON CONFLICT (dir_ruta) DO NOTHING
+  RETURNING dir_id INTO id_directorio;
+
+  -- Otra sesión lo creó entre el SELECT y el INSERT
+  IF id_directorio IS NULL THEN
+    SELECT dir_id INTO id_directorio FROM Directorio WHERE dir_ruta = ruta;
+  END IF;
+  RETURN id_directorio;
+END;
+$$ LANGUAGE plpgsql;
+
+REVOKE ALL ON FUNCTION public.obtener_directorio(VARCHAR) FROM PUBLIC;
+
+
 DROP FUNCTION IF EXISTS sp_buscar_archivos_segun_extension(VARCHAR);
 
 CREATE OR REPLACE FUNCTION sp_buscar_archivos_segun_extension(extension_deseada VARCHAR)
 RETURNS TABLE(id INT, path VARCHAR, nombre VARCHAR, extension VARCHAR, tamano BIGINT, fecha_modificacion DATE, categoria VARCHAR) AS $$
 BEGIN
   RETURN QUERY
-    SELECT arc_id, arc_path, arc_nombre, ext_extension, arc_tamano, arc_fecha_modificacion, cat_nombre
+    SELECT arc_id, (dir_ruta || arc_base)::VARCHAR, arc_nombre, ext_extension, arc_tamano, arc_fecha_modificacion, cat_nombre
     FROM Extension
     JOIN Archivo ON ext_id = arc_ext_id
     JOIN Categoria ON arc_cat_id = cat_id
+    JOIN Directorio ON arc_dir_id = dir_id
     WHERE ext_extension = extension_deseada;
 END;
 $$ LANGUAGE plpgsql
@@ -23,11 +73,12 @@ CREATE OR REPLACE FUNCTION sp_buscar_archivos_segun_ubicacion(ubicacion_deseada
 RETURNS TABLE(id INT, path VARCHAR, nombre VARCHAR, extension VARCHAR, tamano BIGINT, fecha_modificacion DATE, categoria VARCHAR) AS $$
 BEGIN
   RETURN QUERY
-    SELECT arc_id, arc_path, arc_nombre, ext_extension, arc_tamano, arc_fecha_modificacion, cat_nombre
+    SELECT arc_id, (dir_ruta || arc_base)::VARCHAR, arc_nombre, ext_extension, arc_tamano, arc_fecha_modificacion, cat_nombre
     FROM Extension
     JOIN Archivo ON ext_id = arc_ext_id
     JOIN Categoria ON arc_cat_id = cat_id
-    WHERE arc_path = ubicacion_deseada;
+    JOIN Directorio ON arc_dir_id = dir_id
+    WHERE dir_ruta = directorio_de(ubicacion_deseada) AND arc_base = base_de(ubicacion_deseada);
 END;
 $$ LANGUAGE plpgsql
   SECURITY DEFINER;
@@ -36,16 +87,41 @@ REVOKE ALL ON FUNCTION public.sp_buscar_archivos_segun_ubicacion(VARCHAR) FROM P
 GRANT EXECUTE ON FUNCTION public.sp_buscar_archivos_segun_ubicacion(VARCHAR) TO kool_user;
 
 
+DROP FUNCTION IF EXISTS sp_buscar_archivos_bajo_directorio(VARCHAR);
+
+-- Todo el subárbol de directorio_deseado, a cualquier profundidad: un rango
+-- de idx_dir_ruta (varchar_pattern_ops) y, por cada directorio, sus archivos
+CREATE OR REPLACE FUNCTION sp_buscar_archivos_bajo_directorio(directorio_deseado VARCHAR)
+RETURNS TABLE(id INT, path VARCHAR, nombre VARCHAR, extension VARCHAR, tamano BIGINT, fecha_modificacion DATE, categoria VARCHAR) AS $$
+DECLARE
+  inicio VARCHAR := CASE WHEN right(directorio_deseado, 1) = '/' THEN directorio_deseado ELSE directorio_deseado || '/' END;
+BEGIN
+  RETURN QUERY
+    SELECT arc_id, (dir_ruta || arc_base)::VARCHAR, arc_nombre, ext_extension, arc_tamano, arc_fecha_modificacion, cat_nombre
+    FROM Directorio
+    JOIN Archivo ON arc_dir_id = dir_id
+    JOIN Extension ON ext_id = arc_ext_id
+    JOIN Categoria ON arc_cat_id = cat_id
+    WHERE dir_ruta ~>=~ inicio AND dir_ruta ~<~ left(inicio, -1) || '0';
+END;
+$$ LANGUAGE plpgsql
+  SECURITY DEFINER;
+
+REVOKE ALL ON FUNCTION public.sp_buscar_archivos_bajo_directorio(VARCHAR) FROM PUBLIC;
+GRANT EXECUTE ON FUNCTION public.sp_buscar_archivos_bajo_directorio(VARCHAR) TO kool_user;
+
+
 DROP FUNCTION IF EXISTS sp_buscar_archivos_segun_categoria(VARCHAR);
 
 CREATE OR REPLACE FUNCTION sp_buscar_archivos_segun_categoria(categoria_deseada VARCHAR)
 RETURNS TABLE(id INT, path VARCHAR, nombre VARCHAR, extension VARCHAR, tamano BIGINT, fecha_modificacion DATE, categoria VARCHAR) AS $$
 BEGIN
   RETURN QUERY
-    SELECT arc_id, arc_path, arc_nombre, ext_extension, arc_tamano, arc_fecha_modificacion, cat_nombre
+    SELECT arc_id, (dir_ruta || arc_base)::VARCHAR, arc_nombre, ext_extension, arc_tamano, arc_fecha_modificacion, cat_nombre
     FROM Categoria
     JOIN Archivo ON cat_id = arc_cat_id
     JOIN Extension ON arc_ext_id = ext_id
+    JOIN Directorio ON arc_dir_id = dir_id
     WHERE cat_nombre = categoria_deseada;
 END;
 $$ LANGUAGE plpgsql
@@ -61,12 +137,13 @@ CREATE OR REPLACE FUNCTION sp_buscar_archivos_segun_etiqueta(etiqueta_deseada VA
 RETURNS TABLE(id INT, path VARCHAR, nombre VARCHAR, extension VARCHAR, tamano BIGINT, fecha_modificacion DATE, categoria VARCHAR) AS $$
 BEGIN
   RETURN QUERY
-    SELECT arc_id, arc_path, arc_nombre, ext_extension, arc_tamano, arc_fecha_modificacion, cat_nombre
+    SELECT arc_id, (dir_ruta || arc_base)::VARCHAR, arc_nombre, ext_extension, arc_tamano, arc_fecha_modificacion, cat_nombre
     FROM Etiqueta
     JOIN Etiqueta_Archivo ON eti_id = etia_eti_id
     JOIN Archivo ON etia_arc_id = arc_id
     JOIN Extension ON arc_ext_id = ext_id
     JOIN Categoria ON arc_cat_id = cat_id
+    JOIN Directorio ON arc_dir_id = dir_id
     WHERE eti_nombre = etiqueta_deseada;
 END;
 $$ LANGUAGE plpgsql
@@ -82,12 +159,13 @@ CREATE OR REPLACE FUNCTION sp_buscar_archivos_con_minimo_una_palabra_clave_de_va
 RETURNS TABLE(id INT, path VARCHAR, nombre VARCHAR, extension VARCHAR, tamano BIGINT, fecha_modificacion DATE, categoria VARCHAR) AS $$
 BEGIN
   RETURN QUERY
-    SELECT arc_id, arc_path, arc_nombre, ext_extension, arc_tamano, arc_fecha_modificacion, cat_nombre
+    SELECT arc_id, (dir_ruta || arc_base)::VARCHAR, arc_nombre, ext_extension, arc_tamano, arc_fecha_modificacion, cat_nombre
     FROM Palabra_clave
     JOIN Archivo_Palabra_clave ON pal_id = arcp_pal_id
     JOIN Archivo ON arcp_arc_id = arc_id
     JOIN Extension ON arc_ext_id = ext_id
     JOIN Categoria ON arc_cat_id = cat_id
+    JOIN Directorio ON arc_dir_id = dir_id
     WHERE pal_palabra = ANY(palabras_deseadas);
 END;
 $$ LANGUAGE plpgsql
@@ -103,12 +181,13 @@ CREATE OR REPLACE FUNCTION sp_buscar_archivos_con_una_palabra_clave_dada(palabra
 RETURNS TABLE(id INT, path VARCHAR, nombre VARCHAR, extension VARCHAR, tamano BIGINT, fecha_modificacion DATE, categoria VARCHAR) AS $$
 BEGIN
   RETURN QUERY
-    SELECT arc_id, arc_path, arc_nombre, ext_extension, arc_tamano, arc_fecha_modificacion, cat_nombre
+    SELECT arc_id, (dir_ruta || arc_base)::VARCHAR, arc_nombre, ext_extension, arc_tamano, arc_fecha_modificacion, cat_nombre
     FROM Palabra_clave
     JOIN Archivo_Palabra_clave ON pal_id = arcp_pal_id
     JOIN Archivo ON arcp_arc_id = arc_id
     JOIN Extension ON arc_ext_id = ext_id
     JOIN Categoria ON arc_cat_id = cat_id
+    JOIN Directorio ON arc_dir_id = dir_id
     WHERE pal_palabra = palabra_deseada;
 END;
 $$ LANGUAGE plpgsql
@@ -124,10 +203,11 @@ CREATE OR REPLACE FUNCTION sp_buscar_archivos_segun_tamano(tamano_minimo BIGINT,
 RETURNS TABLE(id INT, path VARCHAR, nombre VARCHAR, extension VARCHAR, tamano BIGINT, fecha_modificacion DATE, categoria VARCHAR) AS $$
 BEGIN
   RETURN QUERY
-    SELECT arc_id, arc_path, arc_nombre, ext_extension, arc_tamano, arc_fecha_modificacion, cat_nombre
+    SELECT arc_id, (dir_ruta || arc_base)::VARCHAR, arc_nombre, ext_extension, arc_tamano, arc_fecha_modificacion, cat_nombre
     FROM Archivo
     JOIN Extension ON arc_ext_id = ext_id
     JOIN Categoria ON arc_cat_id = cat_id
+    JOIN Directorio ON arc_dir_id = dir_id
     WHERE arc_tamano BETWEEN tamano_minimo AND tamano_maximo;
 END;
 $$ LANGUAGE plpgsql
@@ -143,10 +223,11 @@ CREATE OR REPLACE FUNCTION sp_buscar_archivos_segun_nombre(patron VARCHAR)
 RETURNS TABLE(id INT, path VARCHAR, nombre VARCHAR, extension VARCHAR, tamano BIGINT, fecha_modificacion DATE, categoria VARCHAR) AS $$
 BEGIN
   RETURN QUERY
-    SELECT arc_id, arc_path, arc_nombre, ext_extension, arc_tamano, arc_fecha_modificacion, cat_nombre
+    SELECT arc_id, (dir_ruta || arc_base)::VARCHAR, arc_nombre, ext_extension, arc_tamano, arc_fecha_modificacion, cat_nombre
     FROM Archivo
     JOIN Extension ON arc_ext_id = ext_id
     JOIN Categoria ON arc_cat_id = cat_id
+    JOIN Directorio ON arc_dir_id = dir_id
     WHERE LOWER(arc_nombre) LIKE '%' || LOWER(patron) || '%';
 END;
 $$ LANGUAGE plpgsql
@@ -166,7 +247,9 @@ BEGIN
     SELECT arc_id
     FROM Archivo
     JOIN Extension ON arc_ext_id = ext_id
-    WHERE arc_path = ubicacion AND arc_nombre = nombre AND ext_extension = extension_archivo
+    JOIN Directorio ON arc_dir_id = dir_id
+    WHERE dir_ruta = directorio_de(ubicacion) AND arc_base = base_de(ubicacion)
+      AND arc_nombre = nombre AND ext_extension = extension_archivo
   );
 END;
 $$ LANGUAGE plpgsql
@@ -186,7 +269,9 @@ BEGIN
     SELECT arc_id
     FROM Archivo
     JOIN Extension ON arc_ext_id = ext_id
-    WHERE arc_path = ubicacion AND arc_nombre = nombre AND ext_extension = extension_archivo
+    JOIN Directorio ON arc_dir_id = dir_id
+    WHERE dir_ruta = directorio_de(ubicacion) AND arc_base = base_de(ubicacion)
+      AND arc_nombre = nombre AND ext_extension = extension_archivo
   ) AND arcp_pal_id IN (
 	SELECT pal_id
     FROM Palabra_clave
@@ -210,7 +295,9 @@ BEGIN
     SELECT arc_id
     FROM Archivo
     JOIN Extension ON arc_ext_id = ext_id
-    WHERE arc_path = ubicacion AND arc_nombre = nombre AND ext_extension = extension_archivo
+    JOIN Directorio ON arc_dir_id = dir_id
+    WHERE dir_ruta = directorio_de(ubicacion) AND arc_base = base_de(ubicacion)
+      AND arc_nombre = nombre AND ext_extension = extension_archivo
   ) AND etia_eti_id IN (
 	SELECT eti_id
     FROM Etiqueta
@@ -245,7 +332,9 @@ CREATE OR REPLACE FUNCTION sp_eliminar_archivos_en_ubicacion(ubicacion VARCHAR)
 RETURNS VOID AS $$
 BEGIN
   DELETE FROM Archivo
-  WHERE arc_path = ubicacion;
+  USING Directorio
+  WHERE arc_dir_id = dir_id
+    AND dir_ruta = directorio_de(ubicacion) AND arc_base = base_de(ubicacion);
 END;
 $$ LANGUAGE plpgsql
   SECURITY DEFINER;
@@ -254,6 +343,40 @@ REVOKE ALL ON FUNCTION public.sp_eliminar_archivos_en_ubicacion(VARCHAR) FROM PU
 GRANT EXECUTE ON FUNCTION public.sp_eliminar_archivos_en_ubicacion(VARCHAR) TO kool_user;
 
 
+DROP FUNCTION IF EXISTS sp_eliminar_archivos_bajo_directorio(VARCHAR);
+
+CREATE OR REPLACE FUNCTION sp_eliminar_archivos_bajo_directorio(directorio VARCHAR)
+RETURNS SETOF VARCHAR AS $$
+DECLARE
+  ruta VARCHAR;
+BEGIN
+  -- Lo que empieza con directorio || '/' es, comparando por bytes, el rango
+  -- [directorio || '/', directorio || '0') ('0' sigue a '/'): así se recorren
+  -- sólo los directorios del subárbol en idx_dir_ruta y sus archivos por
+  -- idx_arc_nombre_completo. A diferencia de LIKE, '_' y '%' en la ruta no
+  -- son comodines.
+  FOR ruta IN
+    DELETE FROM Archivo
+    USING Directorio
+    WHERE arc_dir_id = dir_id
+      AND dir_ruta ~>=~ (directorio || '/')
+      AND dir_ruta ~<~ (directorio || '0')
+    RETURNING dir_ruta || arc_base
+  LOOP
+    RETURN NEXT ruta;
+  END LOOP;
+
+  DELETE FROM Directorio
+  WHERE dir_ruta ~>=~ (directorio || '/')
+    AND dir_ruta ~<~ (directorio || '0');
+END;
+$$ LANGUAGE plpgsql
+  SECURITY DEFINER;
+
+REVOKE ALL ON FUNCTION public.sp_eliminar_archivos_bajo_directorio(VARCHAR) FROM PUBLIC;
+GRANT EXECUTE ON FUNCTION public.sp_eliminar_archivos_bajo_directorio(VARCHAR) TO kool_user;
+
+
 DROP FUNCTION IF EXISTS sp_crear_etiqueta(VARCHAR);
 
 CREATE OR REPLACE FUNCTION sp_crear_etiqueta(nombre VARCHAR)
@@ -285,7 +408,9 @@ BEGIN
   SELECT arc_id INTO id_archivo_asociar
   FROM Archivo
   JOIN Extension ON arc_ext_id = ext_id
-  WHERE arc_path = ubicacion AND arc_nombre = nombre AND ext_extension = extension_archivo;
+  JOIN Directorio ON arc_dir_id = dir_id
+  WHERE dir_ruta = directorio_de(ubicacion) AND arc_base = base_de(ubicacion)
+    AND arc_nombre = nombre AND ext_extension = extension_archivo;
 
   SELECT eti_id INTO id_etiqueta_asociar
   FROM Etiqueta
@@ -336,7 +461,9 @@ BEGIN
   SELECT arc_id INTO id_archivo_asociar
   FROM Archivo
   JOIN Extension ON arc_ext_id = ext_id
-  WHERE arc_path = ubicacion AND arc_nombre = nombre AND ext_extension = extension_archivo;
+  JOIN Directorio ON arc_dir_id = dir_id
+  WHERE dir_ruta = directorio_de(ubicacion) AND arc_base = base_de(ubicacion)
+    AND arc_nombre = nombre AND ext_extension = extension_archivo;
 
   SELECT pal_id INTO id_palabra_asociar
   FROM Palabra_clave WHERE pal_palabra = palabra;  
@@ -357,12 +484,77 @@ GRANT EXECUTE ON FUNCTION public.sp_asociar_palabra_clave_archivo(VARCHAR, VARCH
 
 DROP FUNCTION IF EXISTS sp_actualizar_nombre_ubicacion(VARCHAR, VARCHAR);
 
+-- Mueve lo que está en vieja_ubicacion: los archivos con esa ruta y, si es
+-- un directorio, todo su subárbol. Para el subárbol sólo se tocan filas de
+-- Directorio (la del directorio y la ruta materializada de sus
+-- subdirectorios); los archivos siguen apuntando al mismo dir_id. Si el
+-- destino ya existe se fusionan: un archivo del origen con el mismo nombre y
+-- extensión que uno del destino se borra y queda la fila del destino.
 CREATE OR REPLACE FUNCTION sp_actualizar_nombre_ubicacion(vieja_ubicacion VARCHAR, nueva_ubicacion VARCHAR)
 RETURNS VOID AS $$
+DECLARE
+  viejo VARCHAR := vieja_ubicacion || '/';
+  nuevo VARCHAR := nueva_ubicacion || '/';
+  id_directorio INT;
+  id_padre INT;
+  diferencia INT;
+  origen RECORD;
 BEGIN
-  UPDATE Archivo
-  SET arc_path = nueva_ubicacion
-  WHERE arc_path = vieja_ubicacion;
+  IF EXISTS (
+    SELECT 1 FROM Archivo
+    JOIN Directorio ON arc_dir_id = dir_id
+    WHERE dir_ruta = directorio_de(vieja_ubicacion) AND arc_base = base_de(vieja_ubicacion)
+  ) THEN
+    id_padre := obtener_directorio(directorio_de(nueva_ubicacion));
+    UPDATE Archivo
+    SET arc_dir_id = id_padre, arc_base = base_de(nueva_ubicacion)
+    FROM Directorio
+    WHERE arc_dir_id = dir_id
+      AND dir_ruta = directorio_de(vieja_ubicacion) AND arc_base = base_de(vieja_ubicacion);
+  END IF;
+
+  SELECT dir_id INTO id_directorio FROM Directorio WHERE dir_ruta = viejo;
+  IF id_directorio IS NULL OR viejo = nuevo THEN
+    RETURN;
+  END IF;
+  IF starts_with(nuevo, viejo) THEN
+    RAISE EXCEPTION 'No se puede mover % dentro de sí mismo', vieja_ubicacion;
+  END IF;
+
+  IF EXISTS (SELECT 1 FROM Directorio WHERE dir_ruta = nuevo) THEN
+    -- El destino ya existe: los archivos pasan a los directorios del destino
+    FOR origen IN
+      SELECT dir_id, dir_ruta FROM Directorio
+      WHERE dir_ruta ~>=~ viejo AND dir_ruta ~<~ (vieja_ubicacion || '0')
+      ORDER BY dir_profundidad
+    LOOP
+      id_padre := obtener_directorio(nuevo || substr(origen.dir_ruta, length(viejo) + 1));
+      -- Si no, el UPDATE violaría idx_arc_nombre_completo
+      DELETE FROM Archivo AS movido
+      USING Archivo AS existente
+      WHERE movido.arc_dir_id = origen.dir_id AND existente.arc_dir_id = id_padre
+        AND existente.arc_base = movido.arc_base AND existente.arc_nombre = movido.arc_nombre
+        AND existente.arc_ext_id = movido.arc_ext_id;
+      UPDATE Archivo SET arc_dir_id = id_padre WHERE arc_dir_id = origen.dir_id;
+    END LOOP;
+    -- Los subdirectorios caen por dir_padre_id
+    DELETE FROM Directorio WHERE dir_id = id_directorio;
+    RETURN;
+  END IF;
+
+  id_padre := obtener_directorio(directorio_de(nueva_ubicacion));
+  SELECT padre.dir_profundidad + 1 - movido.dir_profundidad INTO diferencia
+  FROM Directorio AS padre, Directorio AS movido
+  WHERE padre.dir_id = id_padre AND movido.dir_id = id_directorio;
+
+  UPDATE Directorio
+  SET dir_ruta = nuevo || substr(dir_ruta, length(viejo) + 1),
+      dir_profundidad = dir_profundidad + diferencia
+  WHERE dir_ruta ~>=~ viejo AND dir_ruta ~<~ (vieja_ubicacion || '0');
+
+  UPDATE Directorio
+  SET dir_padre_id = id_padre, dir_nombre = base_de(nueva_ubicacion)
+  WHERE dir_id = id_directorio;
 END;
 $$ LANGUAGE plpgsql
   SECURITY DEFINER;
@@ -371,6 +563,54 @@ REVOKE ALL ON FUNCTION public.sp_actualizar_nombre_ubicacion(VARCHAR, VARCHAR) F
 GRANT EXECUTE ON FUNCTION public.sp_actualizar_nombre_ubicacion(VARCHAR, VARCHAR) TO kool_user;
 
 
+DROP FUNCTION IF EXISTS sp_mover_archivo(VARCHAR, VARCHAR, VARCHAR, VARCHAR);
+
+-- Renombre o movimiento detectado por fileKey: la fila conserva su arc_id,
+-- etiquetas y palabras clave y sólo cambian ruta, nombre y extensión. Una
+-- fila que ya estaba en el destino es de un archivo que el movido reemplazó:
+-- se borra.
+CREATE OR REPLACE FUNCTION sp_mover_archivo(vieja_ubicacion VARCHAR, nueva_ubicacion VARCHAR, nuevo_nombre VARCHAR, nueva_extension VARCHAR)
+RETURNS INTEGER AS $$
+DECLARE
+  ids_archivos INT[];
+  id_directorio INT;
+BEGIN
+  SELECT array_agg(arc_id) INTO ids_archivos
+  FROM Archivo
+  JOIN Directorio ON arc_dir_id = dir_id
+  WHERE dir_ruta = directorio_de(vieja_ubicacion) AND arc_base = base_de(vieja_ubicacion);
+
+  IF ids_archivos IS NULL THEN
+    RETURN 0;
+  END IF;
+
+  PERFORM sp_crear_extension(nueva_extension);
+  id_directorio := obtener_directorio(directorio_de(nueva_ubicacion));
+
+  -- Si no, el UPDATE violaría idx_arc_nombre_completo
+  DELETE FROM Archivo
+  USING Extension
+  WHERE arc_dir_id = id_directorio AND arc_base = base_de(nueva_ubicacion)
+    AND arc_nombre = nuevo_nombre AND arc_ext_id = ext_id AND ext_extension = nueva_extension
+    AND arc_id <> ALL(ids_archivos);
+
+  UPDATE Archivo
+  SET arc_dir_id = id_directorio,
+      arc_base = base_de(nueva_ubicacion),
+      arc_nombre = nuevo_nombre,
+      arc_ext_id = ext_id
+  FROM Extension
+  WHERE ext_extension = nueva_extension AND arc_id = ANY(ids_archivos);
+
+  RETURN cardinality(ids_archivos);
+END;
+$$ LANGUAGE plpgsql
+  SECURITY DEFINER;
+
+REVOKE ALL ON FUNCTION public.sp_mover_archivo(VARCHAR, VARCHAR, VARCHAR, VARCHAR) FROM PUBLIC;
+GRANT EXECUTE ON FUNCTION public.sp_mover_archivo(VARCHAR, VARCHAR, VARCHAR, VARCHAR) TO kool_user;
+
+
 DROP FUNCTION IF EXISTS sp_actualizar_archivo_con_nueva_ubicacion(VARCHAR, VARCHAR, VARCHAR, VARCHAR);
 
 CREATE OR REPLACE FUNCTION sp_actualizar_archivo_con_nueva_ubicacion(vieja_ubicacion VARCHAR, nombre_archivo VARCHAR, extension_archivo VARCHAR, nueva_ubicacion VARCHAR)
@@ -381,10 +621,12 @@ BEGIN
   SELECT arc_id INTO id_archivo_actualizar
   FROM Archivo
   JOIN Extension ON arc_ext_id = ext_id
-  WHERE arc_path = vieja_ubicacion AND arc_nombre = nombre_archivo AND ext_extension = extension_archivo;
+  JOIN Directorio ON arc_dir_id = dir_id
+  WHERE dir_ruta = directorio_de(vieja_ubicacion) AND arc_base = base_de(vieja_ubicacion)
+    AND arc_nombre = nombre_archivo AND ext_extension = extension_archivo;
   
   UPDATE Archivo
-  SET arc_path = nueva_ubicacion
+  SET arc_dir_id = obtener_directorio(directorio_de(nueva_ubicacion)), arc_base = base_de(nueva_ubicacion)
   WHERE arc_id = id_archivo_actualizar;
 END;
 $$ LANGUAGE plpgsql
@@ -401,6 +643,7 @@ RETURNS VOID AS $$
 DECLARE
   id_extension INT;
   id_categoria INT;
+  id_directorio INT;
 BEGIN 
   PERFORM sp_crear_extension(extension_archivo);
   PERFORM sp_crear_categoria(nueva_categoria);
@@ -411,15 +654,18 @@ BEGIN
   SELECT cat_id INTO id_categoria
   FROM Categoria WHERE cat_nombre = nueva_categoria; 
 
-  INSERT INTO Archivo (arc_nombre, arc_tamano, arc_fecha_modificacion, arc_path, arc_ext_id, arc_cat_id)
-  SELECT nombre, tamano, fecha_modificacion, ubicacion, id_extension, id_categoria
+  id_directorio := obtener_directorio(directorio_de(ubicacion));
+
+  INSERT INTO Archivo (arc_nombre, arc_tamano, arc_fecha_modificacion, arc_dir_id, arc_base, arc_ext_id, arc_cat_id)
+  SELECT nombre, tamano, fecha_modificacion, id_directorio, base_de(ubicacion), id_extension, id_categoria
   WHERE NOT EXISTS (
     SELECT 1 FROM Archivo
     WHERE arc_id IN(
 		SELECT arc_id
         FROM Archivo
         JOIN Extension ON ext_id = arc_ext_id
-        WHERE arc_path = ubicacion AND ext_id = id_extension AND arc_nombre = nombre
+        WHERE arc_dir_id = id_directorio AND arc_base = base_de(ubicacion)
+          AND ext_id = id_extension AND arc_nombre = nombre
     )
   );
 END;
@@ -476,7 +722,9 @@ BEGIN
   SELECT arc_id INTO id_archivo_actualizar
   FROM Archivo
   JOIN Extension ON arc_ext_id = ext_id
-  WHERE arc_path = ubicacion AND arc_nombre = viejo_nombre AND ext_extension = extension_archivo;
+  JOIN Directorio ON arc_dir_id = dir_id
+  WHERE dir_ruta = directorio_de(ubicacion) AND arc_base = base_de(ubicacion)
+    AND arc_nombre = viejo_nombre AND ext_extension = extension_archivo;
   
   UPDATE Archivo
   SET arc_nombre = nuevo_nombre
@@ -499,7 +747,9 @@ BEGIN
   SELECT arc_id INTO id_archivo_actualizar
   FROM Archivo
   JOIN Extension ON arc_ext_id = ext_id
-  WHERE arc_path = ubicacion AND arc_nombre = nombre_archivo AND ext_extension = extension_archivo;
+  JOIN Directorio ON arc_dir_id = dir_id
+  WHERE dir_ruta = directorio_de(ubicacion) AND arc_base = base_de(ubicacion)
+    AND arc_nombre = nombre_archivo AND ext_extension = extension_archivo;
 
   UPDATE Archivo
   SET arc_tamano = nuevo_tamano, arc_fecha_modificacion = nueva_fecha_modificacion
@@ -523,7 +773,9 @@ BEGIN
   SELECT arc_id INTO id_archivo_actualizar
   FROM Archivo
   JOIN Extension ON arc_ext_id = ext_id
-  WHERE arc_path = ubicacion AND arc_nombre = nombre AND ext_extension = extension_archivo;
+  JOIN Directorio ON arc_dir_id = dir_id
+  WHERE dir_ruta = directorio_de(ubicacion) AND arc_base = base_de(ubicacion)
+    AND arc_nombre = nombre AND ext_extension = extension_archivo;
 
   SELECT cat_id INTO id_categoria_nueva
   FROM Categoria
@@ -537,4 +789,92 @@ $$ LANGUAGE plpgsql
   SECURITY DEFINER;
 
 REVOKE ALL ON FUNCTION public.sp_actualizar_categoria_archivo(VARCHAR, VARCHAR, VARCHAR, VARCHAR) FROM PUBLIC;
-GRANT EXECUTE ON FUNCTION public.sp_actualizar_categoria_archivo(VARCHAR, VARCHAR, VARCHAR, VARCHAR) TO kool_user;
\ No newline at end of file
+GRANT EXECUTE ON FUNCTION public.sp_actualizar_categoria_archivo(VARCHAR, VARCHAR, VARCHAR, VARCHAR) TO kool_user;
+
+DROP FUNCTION IF EXISTS sp_ingestar_lote_archivos(VARCHAR[], BIGINT[], DATE[], VARCHAR[], VARCHAR[], VARCHAR[]);
+DROP FUNCTION IF EXISTS sp_ingestar_lote_archivos(VARCHAR[], BIGINT[], DATE[], VARCHAR[], VARCHAR[], VARCHAR[], BIGINT);
+DROP FUNCTION IF EXISTS sp_ingestar_lote_archivos(VARCHAR[], BIGINT[], DATE[], VARCHAR[], VARCHAR[], VARCHAR[], BIGINT, VARCHAR[]);
+
+CREATE OR REPLACE FUNCTION sp_ingestar_lote_archivos(nombres VARCHAR[], tamanos BIGINT[], fechas_modificacion DATE[], ubicaciones VARCHAR[], extensiones VARCHAR[], categorias VARCHAR[], generacion BIGINT, claves VARCHAR[])
+RETURNS INTEGER AS $$
+DECLARE
+  filas_afectadas INTEGER;
+BEGIN
+  INSERT INTO Extension (ext_extension)
+  SELECT DISTINCT nueva_extension
+  FROM unnest(extensiones) AS nueva_extension
+  ON CONFLICT (ext_extension) DO NOTHING;
+
+  INSERT INTO Categoria (cat_nombre)
+  SELECT DISTINCT nueva_categoria
+  FROM unnest(categorias) AS nueva_categoria
+  ON CONFLICT (cat_nombre) DO NOTHING;
+
+  -- Un lote suele traer pocos directorios distintos: se crean (con sus
+  -- ancestros) antes de insertar los archivos que los referencian
+  PERFORM obtener_directorio(directorio)
+  FROM (SELECT DISTINCT directorio_de(ubicacion) AS directorio FROM unnest(ubicaciones) AS ubicacion) AS directorios;
+
+  -- El lote se desanida como una tabla de staging y se aplica con un solo upsert.
+  -- DISTINCT ON evita tocar dos veces la misma fila si el lote trae duplicados.
+  -- arc_generacion marca el archivo como visto; nunca baja, así una escritura
+  -- con una generación vieja no lo expone al barrido de una pasada nueva.
+  INSERT INTO Archivo (arc_nombre, arc_tamano, arc_fecha_modificacion, arc_dir_id, arc_base, arc_ext_id, arc_cat_id, arc_generacion, arc_clave)
+  SELECT DISTINCT ON (lote.ubicacion, lote.nombre, ext_id)
+    lote.nombre, lote.tamano, lote.fecha_modificacion, dir_id, base_de(lote.ubicacion), ext_id, cat_id, generacion, lote.clave
+  FROM unnest(nombres, tamanos, fechas_modificacion, ubicaciones, extensiones, categorias, claves)
+    AS lote(nombre, tamano, fecha_modificacion, ubicacion, extension, categoria, clave)
+  JOIN Directorio ON dir_ruta = directorio_de(lote.ubicacion)
+  JOIN Extension ON ext_extension = lote.extension
+  JOIN Categoria ON cat_nombre = lote.categoria
+  ON CONFLICT (arc_dir_id, arc_base, arc_nombre, arc_ext_id) DO UPDATE
+  SET arc_tamano = EXCLUDED.arc_tamano,
+      arc_fecha_modificacion = EXCLUDED.arc_fecha_modificacion,
+      arc_cat_id = EXCLUDED.arc_cat_id,
+      arc_generacion = GREATEST(Archivo.arc_generacion, EXCLUDED.arc_generacion),
+      arc_clave = EXCLUDED.arc_clave
+  WHERE (Archivo.arc_tamano, Archivo.arc_fecha_modificacion, Archivo.arc_cat_id, Archivo.arc_clave)
+    IS DISTINCT FROM (EXCLUDED.arc_tamano, EXCLUDED.arc_fecha_modificacion, EXCLUDED.arc_cat_id, EXCLUDED.arc_clave)
+    OR Archivo.arc_generacion < EXCLUDED.arc_generacion;
+
+  GET DIAGNOSTICS filas_afectadas = ROW_COUNT;
+  RETURN filas_afectadas;
+END;
+$$ LANGUAGE plpgsql
+  SECURITY DEFINER;
+
+REVOKE ALL ON FUNCTION public.sp_ingestar_lote_archivos(VARCHAR[], BIGINT[], DATE[], VARCHAR[], VARCHAR[], VARCHAR[], BIGINT, VARCHAR[]) FROM PUBLIC;
+GRANT EXECUTE ON FUNCTION public.sp_ingestar_lote_archivos(VARCHAR[], BIGINT[], DATE[], VARCHAR[], VARCHAR[], VARCHAR[], BIGINT, VARCHAR[]) TO kool_user;
+
+
+DROP FUNCTION IF EXISTS sp_barrer_archivos_no_vistos(VARCHAR, BIGINT, VARCHAR[]);
+
+-- Barrido de fin de pasada: borra lo que está bajo raiz y no se vio desde
+-- que empezó la pasada (generacion), salvo debajo de los directorios que no
+-- se pudieron listar.
+CREATE OR REPLACE FUNCTION sp_barrer_archivos_no_vistos(raiz VARCHAR, generacion BIGINT, incompletos VARCHAR[])
+RETURNS SETOF VARCHAR AS $$
+DECLARE
+  ruta VARCHAR;
+BEGIN
+  FOR ruta IN
+    DELETE FROM Archivo
+    USING Directorio
+    WHERE arc_dir_id = dir_id
+      AND dir_ruta ~>=~ (raiz || '/')
+      AND dir_ruta ~<~ (raiz || '0')
+      AND arc_generacion < generacion
+      AND NOT EXISTS (
+        SELECT 1 FROM unnest(incompletos) AS incompleto
+        WHERE starts_with(dir_ruta, incompleto || '/')
+      )
+    RETURNING dir_ruta || arc_base
+  LOOP
+    RETURN NEXT ruta;
+  END LOOP;
+END;
+$$ LANGUAGE plpgsql
+  SECURITY DEFINER;
+
+REVOKE ALL ON FUNCTION public.sp_barrer_archivos_no_vistos(VARCHAR, BIGINT, VARCHAR[]) FROM PUBLIC;
+GRANT EXECUTE ON FUNCTION public.sp_barrer_archivos_no_vistos(VARCHAR, BIGINT, VARCHAR[]) TO kool_user;
@@ -0,0 +1,11 @@
+-- Columnas de Archivo agregadas después de la primera versión del esquema.
+-- Las bases nuevas ya salen con ellas de init_schema.sql; en una base
+-- existente no hacen nada si ya están, así que dev_init lo ejecuta siempre,
+-- antes de function_initialization.sql (sus funciones las usan).
+
+-- Inicio (ms) de la última pasada que vio el archivo: el barrido de fin de
+-- pasada borra lo que quedó con una generación anterior
+ALTER TABLE Archivo ADD COLUMN IF NOT EXISTS arc_generacion BIGINT NOT NULL DEFAULT 0;
+
+-- fileKey() (dispositivo e inodo): detecta renombres y movimientos
+ALTER TABLE Archivo ADD COLUMN IF NOT EXISTS arc_clave VARCHAR(64);
@@ -0,0 +1,72 @@
+-- Migra una base creada con arc_path (la ruta completa en cada archivo) a la
+-- tabla Directorio sin perder datos. Las bases nuevas ya salen así de
+-- init_schema.sql. Después de esta migración hay que volver a ejecutar
+-- search_indexes.sql (si se usaba) y function_initialization.sql.
+
+BEGIN;
+
+CREATE TABLE IF NOT EXISTS Directorio (
+    dir_id INTEGER PRIMARY KEY GENERATED ALWAYS AS IDENTITY,
+    dir_padre_id INTEGER REFERENCES Directorio (dir_id) ON DELETE CASCADE,
+    dir_nombre VARCHAR NOT NULL,
+    dir_profundidad INTEGER NOT NULL, -- 0 para la raíz
+    dir_ruta VARCHAR NOT NULL
+);
+
+CREATE UNIQUE INDEX IF NOT EXISTS idx_dir_ruta ON Directorio (dir_ruta varchar_pattern_ops);
+CREATE INDEX IF NOT EXISTS idx_dir_padre_id ON Directorio (dir_padre_id);
+
+-- Cada directorio usado y todos sus ancestros: los prefijos de arc_path que
+-- terminan en '/'. La profundidad es la cantidad de '/' menos uno.
+INSERT INTO Directorio (dir_nombre, dir_profundidad, dir_ruta)
+SELECT DISTINCT
+    COALESCE(substring(left(prefijo, -1) FROM '[^/]*$'), ''),
+    GREATEST(length(prefijo) - length(replace(prefijo, '/', '')) - 1, 0),
+    prefijo
+FROM Archivo,
+    LATERAL (
+        SELECT left(arc_path, posicion) AS prefijo
+        FROM generate_series(1, length(arc_path)) AS posicion
+        WHERE substr(arc_path, posicion, 1) = '/'
+    ) AS prefijos
+ON CONFLICT (dir_ruta) DO NOTHING;
+
+-- Los archivos sin '/' en la ruta cuelgan de un directorio ''
+INSERT INTO Directorio (dir_nombre, dir_profundidad, dir_ruta)
+SELECT '', 0, ''
+WHERE EXISTS (SELECT 1 FROM Archivo WHERE strpos(arc_path, '/') = 0)
+ON CONFLICT (dir_ruta) DO NOTHING;
+
+UPDATE Directorio AS hijo
+SET dir_padre_id = padre.dir_id
+FROM Directorio AS padre
+WHERE hijo.dir_padre_id IS NULL
+  AND length(hijo.dir_ruta) > 1
+  AND padre.dir_ruta = COALESCE(substring(left(hijo.dir_ruta, -1) FROM '^.*/'), '');
+
+ALTER TABLE Archivo ADD COLUMN IF NOT EXISTS arc_dir_id INTEGER REFERENCES Directorio (dir_id);
+ALTER TABLE Archivo ADD COLUMN IF NOT EXISTS arc_base VARCHAR(200);
+
+UPDATE Archivo
+SET arc_dir_id = dir_id,
+    arc_base = substring(arc_path FROM '[^/]*$')
+FROM Directorio
+WHERE dir_ruta = COALESCE(substring(arc_path FROM '^.*/'), '');
+
+ALTER TABLE Archivo ALTER COLUMN arc_dir_id SET NOT NULL;
+ALTER TABLE Archivo ALTER COLUMN arc_base SET NOT NULL;
+
+-- CASCADE se lleva idx_arc_nombre_completo, idx_arc_path_prefijo y la
+-- columna arc_busqueda (se regenera con search_indexes.sql)
+ALTER TABLE Archivo DROP COLUMN arc_path CASCADE;
+
+CREATE UNIQUE INDEX IF NOT EXISTS idx_arc_nombre_completo
+    ON Archivo (arc_dir_id, arc_base, arc_nombre, arc_ext_id);
+
+GRANT SELECT ON Directorio TO kool_user;
+
+COMMIT;
+
+-- Reclama el espacio de la columna borrada (fuera de la transacción)
+VACUUM FULL Archivo;
+ANALYZE Directorio;
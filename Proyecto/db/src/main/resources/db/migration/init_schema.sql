@@ -3,6 +3,7 @@ DROP TABLE IF EXISTS
     Etiqueta_Archivo,
     Palabra_clave,
     Archivo,
+    Directorio,
     Etiqueta,
     Categoria,
     Extension;
@@ -22,19 +23,41 @@ CREATE TABLE Categoria (
     cat_nombre VARCHAR(50) NOT NULL UNIQUE
 );
 
+-- Un directorio por fila; los archivos lo referencian por id en lugar de
+-- repetir la ruta. dir_ruta es la ruta materializada con la '/' final
+-- ('/' para la raíz, '/home/x/' para /home/x), así la ruta de un archivo es
+-- dir_ruta || arc_base y "todo lo que está bajo /home/x" es el rango
+-- [dir_ruta '/home/x/', '/home/x0') sobre idx_dir_ruta.
+CREATE TABLE Directorio (
+    dir_id INTEGER PRIMARY KEY GENERATED ALWAYS AS IDENTITY,
+    dir_padre_id INTEGER REFERENCES Directorio (dir_id) ON DELETE CASCADE,
+    dir_nombre VARCHAR NOT NULL,
+    dir_profundidad INTEGER NOT NULL, -- 0 para la raíz
+    dir_ruta VARCHAR NOT NULL
+);
+
+-- Compara por bytes: sirve para la igualdad y para el rango de un subárbol
+-- aunque la collation de la base no sea "C"
+CREATE UNIQUE INDEX idx_dir_ruta ON Directorio (dir_ruta varchar_pattern_ops);
+CREATE INDEX idx_dir_padre_id ON Directorio (dir_padre_id);
+
 CREATE TABLE Archivo (
     arc_id INTEGER PRIMARY KEY GENERATED ALWAYS AS IDENTITY,
     arc_nombre VARCHAR(200) NOT NULL,
     arc_tamano BIGINT NOT NULL, -- En Bytes
     arc_fecha_modificacion DATE NOT NULL,
-    arc_path VARCHAR(200) NOT NULL,
+    arc_dir_id INTEGER NOT NULL REFERENCES Directorio (dir_id),
+    arc_base VARCHAR(200) NOT NULL, -- Último componente de la ruta
     arc_ext_id INTEGER NOT NULL REFERENCES Extension (ext_id),
-    arc_cat_id INTEGER NOT NULL REFERENCES Categoria (cat_id)
+    arc_cat_id INTEGER NOT NULL REFERENCES Categoria (cat_id),
+    arc_generacion BIGINT NOT NULL DEFAULT 0, -- Inicio (ms) de la última pasada que vio el archivo
+    arc_clave VARCHAR(64) -- fileKey() (dispositivo e inodo): detecta renombres y movimientos
 );
 
 CREATE INDEX idx_arc_ext_id ON Archivo (arc_ext_id);
 CREATE INDEX idx_arc_cat_id ON Archivo (arc_cat_id);
-CREATE UNIQUE INDEX idx_arc_nombre_completo ON Archivo (arc_path, arc_nombre, arc_ext_id);
+-- También resuelve "los archivos de un directorio" (prefijo arc_dir_id)
+CREATE UNIQUE INDEX idx_arc_nombre_completo ON Archivo (arc_dir_id, arc_base, arc_nombre, arc_ext_id);
 
 CREATE TABLE Palabra_clave (
     pal_id INTEGER PRIMARY KEY GENERATED ALWAYS AS IDENTITY,
@@ -91,6 +114,9 @@ FOR EACH ROW
 EXECUTE FUNCTION borrar_palabra_si_no_usada();
 
 GRANT USAGE ON SCHEMA public TO kool_user;
+-- Lectura directa para la búsqueda compilada en una sola sentencia
+GRANT SELECT ON Archivo, Directorio, Extension, Categoria, Etiqueta, Etiqueta_Archivo,
+    Palabra_clave, Archivo_Palabra_clave TO kool_user;
 
 
 INSERT INTO Categoria (cat_nombre) VALUES
@@ -0,0 +1,30 @@
+-- Índices de búsqueda por nombre. Se ejecuta después de init_schema.sql.
+-- pg_trgm es una extensión "trusted" desde PostgreSQL 13, así que puede
+-- crearla el dueño de la base (kool_user) sin ser superusuario.
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+-- Búsqueda por subcadena: LOWER(arc_nombre) LIKE '%patron%' usa este índice
+-- en lugar de recorrer Archivo completo (patrones de 3 o más caracteres)
+CREATE INDEX IF NOT EXISTS idx_arc_nombre_trgm
+    ON Archivo USING GIN (LOWER(arc_nombre) gin_trgm_ops);
+
+-- Opcional: búsqueda por tokens y prefijos sobre nombre y ruta.
+-- Las columnas generadas se mantienen solas al insertar/actualizar; si no se
+-- necesitan, se puede omitir esta sección para ahorrar escritura. Las
+-- palabras de la ruta viven en Directorio: renombrar un directorio no
+-- reescribe los archivos que contiene.
+ALTER TABLE Archivo ADD COLUMN IF NOT EXISTS arc_busqueda tsvector
+    GENERATED ALWAYS AS (
+        to_tsvector('simple',
+            arc_nombre || ' ' || regexp_replace(arc_base, '[\\._-]+', ' ', 'g'))
+    ) STORED;
+
+CREATE INDEX IF NOT EXISTS idx_arc_busqueda ON Archivo USING GIN (arc_busqueda);
+
+ALTER TABLE Directorio ADD COLUMN IF NOT EXISTS dir_busqueda tsvector
+    GENERATED ALWAYS AS (
+        to_tsvector('simple', regexp_replace(dir_ruta, '[/\\._-]+', ' ', 'g'))
+    ) STORED;
+
+CREATE INDEX IF NOT EXISTS idx_dir_busqueda ON Directorio USING GIN (dir_busqueda);
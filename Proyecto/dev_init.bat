@@ -11,6 +11,8 @@ set "DB_PASS=koolpass"
 set "SQL_SETUP=db\src\main\resources\db\migration\setup_dev.sql"
 set "SQL_CREATE=db\src\main\resources\db\migration\create_db.sql"
 set "SQL_INIT=db\src\main\resources\db\migration\init_schema.sql"
+set "SQL_COLUMNAS=db\src\main\resources\db\migration\columnas_archivo.sql"
+set "SQL_SEARCH=db\src\main\resources\db\migration\search_indexes.sql"
 set "SQL_FUNCTIONS=db\src\main\resources\db\functions\function_initialization.sql"
 
 echo ================================
@@ -92,6 +94,30 @@ if exist "%SQL_INIT%" (
     echo El archivo "%SQL_INIT%" no existe. No se ejecutó nada.
 )
 
+REM === Agregar columnas nuevas a una base existente===
+if exist "%SQL_COLUMNAS%" (
+    echo Ejecutando script de columnas nuevas de Archivo...
+    psql -U %DB_USER% -h %DB_HOST% -p %DB_PORT% -d %DB_NAME% -f "%SQL_COLUMNAS%"
+    if errorlevel 1 (
+        echo Error al ejecutar el script de columnas nuevas de Archivo.
+        exit /b 1
+    )
+) else (
+    echo El archivo "%SQL_COLUMNAS%" no existe. No se ejecutó nada.
+)
+
+REM === Ejecutar script de índices de búsqueda===
+if exist "%SQL_SEARCH%" (
+    echo Ejecutando script de índices de búsqueda...
+    psql -U %DB_USER% -h %DB_HOST% -p %DB_PORT% -d %DB_NAME% -f "%SQL_SEARCH%"
+    if errorlevel 1 (
+        echo Error al ejecutar el script de índices de búsqueda.
+        exit /b 1
+    )
+) else (
+    echo El archivo "%SQL_SEARCH%" no existe. No se ejecutó nada.
+)
+
 REM === Ejecutar script de creación de funciones de base de datos===
 if exist "%SQL_FUNCTIONS%" (
     echo Ejecutando script de creación de funciones de base de datos...
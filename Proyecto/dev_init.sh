@@ -11,6 +11,8 @@ DB_PASS="koolpass"
 SQL_SETUP="db/src/main/resources/db/migration/setup_dev.sql"
 SQL_CREATE="db/src/main/resources/db/migration/create_db.sql"
 SQL_INIT="db/src/main/resources/db/migration/init_schema.sql"
+SQL_COLUMNAS="db/src/main/resources/db/migration/columnas_archivo.sql"
+SQL_SEARCH="db/src/main/resources/db/migration/search_indexes.sql"
 SQL_FUNCTIONS="db/src/main/resources/db/functions/function_initialization.sql"
 
 echo "=============================="
@@ -75,6 +77,22 @@ else
     echo "El archivo $SQL_INIT no existe. No se ejecutó nada."
 fi
 
+# === Agregar columnas nuevas a una base existente ===
+if [[ -f "$SQL_COLUMNAS" ]]; then
+    echo "Ejecutando script de columnas nuevas de Archivo..."
+    psql -U "$DB_USER" -h "$DB_HOST" -p "$DB_PORT" -d "$DB_NAME" -f "$SQL_COLUMNAS"
+else
+    echo "El archivo $SQL_COLUMNAS no existe. No se ejecutó nada."
+fi
+
+# === Ejecutar script de índices de búsqueda ===
+if [[ -f "$SQL_SEARCH" ]]; then
+    echo "Ejecutando script de índices de búsqueda..."
+    psql -U "$DB_USER" -h "$DB_HOST" -p "$DB_PORT" -d "$DB_NAME" -f "$SQL_SEARCH"
+else
+    echo "El archivo $SQL_SEARCH no existe. No se ejecutó nada."
+fi
+
 # === Ejecutar script de funciones ===
 if [[ -f "$SQL_FUNCTIONS" ]]; then
     echo "Ejecutando script de funciones..."
@@ -0,0 +1,200 @@
+package koolfileindexer.db;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Operaciones de persistencia que usan el indexador y el servidor: alta,
+ * actualización, borrado, búsqueda, etiquetas y palabras clave.
+ *
+ * Hay dos implementaciones: {@link ConectorBasedeDatos} (PostgreSQL, la de
+ * siempre) y {@link AlmacenEmbebido} (en el mismo proceso, sin servidor). Se
+ * elige con -Dkoolfileindexer.almacen=postgres|embebido.
+ *
+ * Los archivos se identifican por ruta, nombre y extensión, como en la tabla
+ * Archivo. Las búsquedas devuelven las columnas de las funciones
+ * sp_buscar_archivos_* (id, path, nombre, extension, tamano,
+ * fecha_modificacion, categoria) para que ArchivoConverter las lea igual.
+ */
+public interface AlmacenArchivos {
+
+    /** Recibe cada fila de {@link #recorrerBusquedaPaginada}, ya posicionada. */
+    @FunctionalInterface
+    interface ConsumidorFila {
+        void aceptar(ResultSet fila) throws SQLException, IOException;
+    }
+
+    /** Recibe una fila de {@link #recorrerArchivos}. */
+    @FunctionalInterface
+    interface ConsumidorArchivo {
+        void aceptar(String ruta, long tamano, LocalDateTime fechaModificacion);
+    }
+
+    /** Recibe una fila de {@link #recorrerClavesBajo}. */
+    @FunctionalInterface
+    interface ConsumidorClave {
+        void aceptar(String claveArchivo, String ruta);
+    }
+
+    /** El almacén elegido por -Dkoolfileindexer.almacen (por defecto PostgreSQL). */
+    static AlmacenArchivos obtenerInstancia() {
+        String almacen = System.getProperty("koolfileindexer.almacen", "postgres");
+        if (almacen.equalsIgnoreCase("embebido")) {
+            return AlmacenEmbebido.obtenerInstancia();
+        }
+        if (!almacen.equalsIgnoreCase("postgres")) {
+            System.err.println("[CONFIG] Almacén desconocido '" + almacen + "', se usa PostgreSQL");
+        }
+        return ConectorBasedeDatos.obtenerInstancia();
+    }
+
+    /** Comprueba que el almacén responde; lanza si no se puede usar. */
+    void verificar() throws SQLException;
+
+    /** Libera conexiones o archivos abiertos; la próxima operación los vuelve a abrir. */
+    void cerrar();
+
+    /**
+     * Operaciones que el almacén atiende a la vez. Con el SocketServer en
+     * hilos virtuales acota los requests concurrentes.
+     */
+    int getCapacidad();
+
+    /** @return métricas del pool de conexiones, o null si el almacén no usa uno. */
+    default PoolConexiones.Metricas obtenerMetricasPool() {
+        return null;
+    }
+
+    // ─── Altas y actualizaciones ──────────────────────────────────
+
+    /** Inserta el archivo si no existe; si ya existe no lo toca. */
+    void crearArchivo(Archivo nuevoArchivo) throws SQLException;
+
+    /**
+     * Inserta o actualiza un lote de archivos marcándolos como vistos en la
+     * generación dada (ver {@link #barrerArchivosNoVistos}); la generación de
+     * un archivo nunca baja. También guarda su clave (getClaveArchivo).
+     *
+     * @return cantidad de filas insertadas o modificadas
+     */
+    int ingestarLoteArchivos(List<? extends Archivo> lote, long generacion) throws SQLException;
+
+    default int ingestarLoteArchivos(List<? extends Archivo> lote) throws SQLException {
+        return ingestarLoteArchivos(lote, 0);
+    }
+
+    /**
+     * Mueve lo que está en viejaUbicacion a nuevaUbicacion: los archivos con
+     * esa ruta y, si es un directorio, todo lo que tiene debajo.
+     */
+    void actualizarUbicacionConNombreNuevo(String viejaUbicacion, String nuevaUbicacion) throws SQLException;
+
+    /**
+     * Renombre o movimiento de un archivo ya identificado: lo que está en
+     * viejaUbicacion pasa a la ruta, nombre y extensión de archivoMovido sin
+     * perder su id, etiquetas ni palabras clave. Si en el destino ya había
+     * una fila con ese nombre y extensión, se borra.
+     *
+     * @return filas movidas; 0 si no había nada en viejaUbicacion
+     */
+    int moverArchivo(String viejaUbicacion, Archivo archivoMovido) throws SQLException;
+
+    /** Mueve el archivo (buscado por nombre y extensión en viejaUbicacion) a su ruta actual. */
+    void actualizarUbicacionArchivo(Archivo archivoParaModificar, String viejaUbicacion) throws SQLException;
+
+    void actualizarNombreArchivo(Archivo archivoParaModificar, String viejo_nombre) throws SQLException;
+
+    void actualizarTamanoFechaModificacionArchivo(Archivo archivoParaModificar) throws SQLException;
+
+    void actualizarCategoriaArchivo(Archivo archivoParaModificar) throws SQLException;
+
+    // ─── Etiquetas y palabras clave ───────────────────────────────
+
+    void asociarPalabraClaveArchivo(Archivo archivoParaModificar, String nuevaPalabraClave) throws SQLException;
+
+    void desasociarPalabraClaveArchivo(Archivo archivoParaModificar, String palabraClaveParaEliminar)
+            throws SQLException;
+
+    void asociarEtiquetaArchivo(Archivo archivoParaModificar, String nuevaEtiqueta) throws SQLException;
+
+    void desasociarEtiquetaArchivo(Archivo archivoParaModificar, String etiquetaParaEliminar) throws SQLException;
+
+    /** Borra la etiqueta y la quita de todos los archivos. */
+    void eliminarEtiqueta(String etiquetaParaEliminar) throws SQLException;
+
+    // ─── Búsquedas ────────────────────────────────────────────────
+
+    /**
+     * Busca con el filtro exigiendo todas sus palabras clave. Un tamaño
+     * negativo desactiva el filtro de tamaño y el nombre se compara con LIKE
+     * sin distinguir mayúsculas.
+     */
+    ResultSet buscarArchivosPorFiltroVariasPalabrasClaveMismoArchivo(Archivo archivoFiltro, long tamanoMinimo,
+            long tamanoMaximo) throws SQLException;
+
+    /** Como la anterior, pero basta con que el archivo tenga alguna de las palabras clave. */
+    ResultSet buscarArchivosPorFiltroMinimoUnaPalabraClave(Archivo archivoFiltro, long tamanoMinimo,
+            long tamanoMaximo) throws SQLException;
+
+    /**
+     * Búsqueda por tokens: cada palabra del texto es prefijo de alguna palabra
+     * del nombre o de la ruta. Ordena por nombre.
+     */
+    ResultSet buscarArchivosPorTokens(String texto, int limite) throws SQLException;
+
+    /**
+     * Busca con el filtro y entrega las filas en orden de id a partir de
+     * despuesDeId, sin materializar el resultado completo.
+     *
+     * @param despuesDeId último id entregado antes, o -1 para empezar
+     * @param limite      máximo de filas; 0 o menos para todas
+     * @return cuántas filas se entregaron
+     */
+    int recorrerBusquedaPaginada(Archivo archivoFiltro, long tamanoMinimo, long tamanoMaximo,
+            CompiladorConsultaBusqueda.ModoPalabrasClave modo, long despuesDeId, int limite,
+            ConsumidorFila consumidor) throws SQLException, IOException;
+
+    /** Recorre todos los archivos indexados sin materializarlos. */
+    void recorrerArchivos(ConsumidorArchivo consumidor) throws SQLException;
+
+    /** Como {@link #recorrerArchivos}, sólo lo que está debajo de directorio. */
+    void recorrerArchivosBajo(String directorio, ConsumidorArchivo consumidor) throws SQLException;
+
+    /** Clave y ruta de los archivos debajo de directorio que tienen clave. */
+    void recorrerClavesBajo(String directorio, ConsumidorClave consumidor) throws SQLException;
+
+    /**
+     * Como {@link #recorrerArchivos}, sólo los archivos que están directamente
+     * en alguno de los directorios (no en sus subdirectorios).
+     */
+    void recorrerArchivosEnDirectorios(List<String> directorios, ConsumidorArchivo consumidor)
+            throws SQLException;
+
+    // ─── Borrados ─────────────────────────────────────────────────
+
+    void eliminarArchivo(Archivo archivoParaEliminar) throws SQLException;
+
+    /** Borra los archivos cuya ruta es exactamente ubicacionParaEliminar. */
+    void eliminarArchivosEnUbicacion(String ubicacionParaEliminar) throws SQLException;
+
+    /**
+     * Borra todos los archivos que están debajo de directorio.
+     *
+     * @return las rutas borradas
+     */
+    List<String> eliminarArchivosBajoDirectorio(String directorio) throws SQLException;
+
+    /**
+     * Barrido de fin de pasada: borra los archivos debajo de raiz que no se
+     * marcaron desde que empezó la pasada, salvo los que están debajo de un
+     * directorio que no se pudo listar.
+     *
+     * @param generacion inicio de la pasada
+     * @return las rutas borradas
+     */
+    List<String> barrerArchivosNoVistos(String raiz, long generacion, List<String> incompletos)
+            throws SQLException;
+}
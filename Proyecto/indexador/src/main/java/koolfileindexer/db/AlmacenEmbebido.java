@@ -0,0 +1,1549 @@
+package koolfileindexer.db;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+
+/**
+ * {@link AlmacenArchivos} dentro del mismo proceso, sin servidor de base de
+ * datos (-Dkoolfileindexer.almacen=embebido).
+ *
+ * Los archivos viven en memoria con varios índices: uno hash por ruta (el
+ * upsert de la ingesta), uno ordenado por ruta (subárboles: barrido, borrado
+ * bajo un directorio, recorridos), uno por id (paginación por keyset) y uno
+ * invertido por palabra clave y otro por etiqueta. La ruta completa es la
+ * clave de los índices; si varias filas comparten ruta (la tabla Archivo lo
+ * permite cuando cambia el nombre) quedan encadenadas en la misma entrada.
+ *
+ * Persistencia: cada operación agrega al final de almacen.log un registro
+ * (largo, CRC32 y los cambios) con el estado resultante de las filas que
+ * tocó, así que reproducirlo da exactamente lo mismo. Cuando el registro
+ * pasa de koolfileindexer.almacen.registroMaximoMb, y al cerrar, se escribe
+ * una instantánea completa en almacen.snap (archivo temporal + move) y el
+ * registro empieza de nuevo. Al abrir se carga la instantánea y se reproduce
+ * el registro; lo que una caída dejó a medio escribir se descarta.
+ *
+ * Cada registro llega al sistema operativo antes de aplicarse, así que una
+ * caída del proceso no pierde nada. Con -Dkoolfileindexer.almacen.sincronizar=true
+ * se hace además fsync en cada operación; sin eso sólo las etiquetas y
+ * palabras clave lo hacen, porque son lo único que el recorrido no repone.
+ */
+public class AlmacenEmbebido implements AlmacenArchivos {
+    static final String ARCHIVO_REGISTRO = "almacen.log";
+    static final String ARCHIVO_INSTANTANEA = "almacen.snap";
+
+    private static final int MAGIA_REGISTRO = 0x4B46494C;
+    private static final int MAGIA_INSTANTANEA = 0x4B464953;
+    // Instantánea con la clave de cada fila; las anteriores usan MAGIA_INSTANTANEA
+    private static final int MAGIA_INSTANTANEA_CLAVES = 0x4B464943;
+    // Magia y época
+    private static final int LARGO_CABECERA = 12;
+    private static final long REGISTRO_MAXIMO = Long.getLong("koolfileindexer.almacen.registroMaximoMb", 64)
+            * 1024 * 1024;
+    private static final boolean SINCRONIZAR = Boolean.getBoolean("koolfileindexer.almacen.sincronizar");
+    // Filas que se copian por cada vez que se toma el candado al recorrer
+    private static final int FILAS_POR_BLOQUE = 5_000;
+
+    private static volatile AlmacenEmbebido instancia;
+
+    /** Un archivo indexado; sólo se lee o modifica con el candado tomado. */
+    private static final class Fila {
+        final long id;
+        String ruta;
+        String nombre;
+        String extension;
+        long tamano;
+        long fechaDia;
+        String categoria;
+        long generacion;
+        // fileKey() del archivo, o null si no se conoce
+        String clave;
+        // null si no tiene ninguna
+        Set<String> palabrasClave;
+        Set<String> etiquetas;
+        // Siguiente fila con la misma ruta
+        Fila otra;
+
+        Fila(long id) {
+            this.id = id;
+        }
+    }
+
+    // ─── Cambios que se registran y se aplican ────────────────────
+    private sealed interface Cambio permits Poner, Generacion, Borrar, Asociar, EliminarEtiqueta {
+    }
+
+    /** Estado completo de una fila, nueva o existente. */
+    private record Poner(long id, String ruta, String nombre, String extension, long tamano, long fechaDia,
+            String categoria, long generacion, String clave) implements Cambio {
+    }
+
+    /** Sólo la marca de visto: lo único que cambia en una pasada sin novedades. */
+    private record Generacion(long id, long generacion) implements Cambio {
+    }
+
+    private record Borrar(long id) implements Cambio {
+    }
+
+    private record Asociar(long id, boolean etiqueta, String valor, boolean agregar) implements Cambio {
+    }
+
+    private record EliminarEtiqueta(String nombre) implements Cambio {
+    }
+
+    private static final byte PONER = 1;
+    private static final byte GENERACION = 2;
+    private static final byte BORRAR = 3;
+    private static final byte ASOCIAR = 4;
+    private static final byte ELIMINAR_ETIQUETA = 5;
+    // PONER con la clave del archivo al final; los registros anteriores usan PONER
+    private static final byte PONER_CON_CLAVE = 6;
+
+    /** Ruta, tamaño y fecha copiados para entregarlos fuera del candado. */
+    private record Visto(String ruta, long tamano, long fechaDia) {
+    }
+
+    private final Path directorio;
+    private final ReentrantReadWriteLock candado = new ReentrantReadWriteLock();
+    private volatile boolean abierto;
+
+    private final Map<String, Fila> porRuta = new HashMap<>();
+    private final NavigableMap<String, Fila> porRutaOrdenada = new TreeMap<>();
+    private Fila[] porId = new Fila[1024];
+    private long siguienteId = 1;
+    private int cantidad;
+    private final Map<String, Set<Fila>> porPalabraClave = new HashMap<>();
+    private final Map<String, Set<Fila>> porEtiqueta = new HashMap<>();
+    // Extensiones y categorías se repiten mucho: una sola instancia de cada una
+    private final Map<String, String> valores = new HashMap<>();
+
+    private FileChannel registro;
+    private long epoca;
+    private final ByteArrayOutputStream bufferRegistro = new ByteArrayOutputStream();
+
+    public static AlmacenEmbebido obtenerInstancia() {
+        AlmacenEmbebido resultado = instancia;
+
+        if (resultado != null) {
+            return resultado;
+        }
+        synchronized (AlmacenEmbebido.class) {
+            if (instancia == null) {
+                String directorio = System.getProperty("koolfileindexer.almacen.directorio");
+                instancia = new AlmacenEmbebido(directorio != null
+                        ? Paths.get(directorio)
+                        : Paths.get(System.getProperty("user.home"), ".config", "koolfileindexer", "almacen"));
+            }
+            return instancia;
+        }
+    }
+
+    /** Almacén en el directorio dado; se abre con la primera operación. */
+    public AlmacenEmbebido(Path directorio) {
+        this.directorio = directorio.toAbsolutePath().normalize();
+    }
+
+    @Override
+    public String toString() {
+        return "embebido en " + directorio;
+    }
+
+    @Override
+    public void verificar() throws SQLException {
+        bloquearLectura();
+        candado.readLock().unlock();
+    }
+
+    /** Escribe la instantánea, cierra el registro y libera la memoria. */
+    @Override
+    public void cerrar() {
+        candado.writeLock().lock();
+        try {
+            if (!abierto) {
+                return;
+            }
+            try {
+                if (registro.size() > LARGO_CABECERA) {
+                    tomarInstantanea();
+                }
+            } catch (IOException e) {
+                System.err.println("[DB] No se pudo escribir la instantánea del almacén, queda el registro: "
+                        + e.getMessage());
+            }
+            cerrarRegistro();
+            vaciar();
+            abierto = false;
+        } finally {
+            candado.writeLock().unlock();
+        }
+    }
+
+    /** Cierra sin escribir la instantánea, como si se cayera el proceso (pruebas). */
+    void cerrarSinInstantanea() {
+        candado.writeLock().lock();
+        try {
+            cerrarRegistro();
+            vaciar();
+            abierto = false;
+        } finally {
+            candado.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Las lecturas comparten el candado y sólo usan CPU: más requests a la
+     * vez que procesadores sólo hacen cola. Se suman los dos que el servidor
+     * reserva para el recorrido y la ingesta.
+     */
+    @Override
+    public int getCapacidad() {
+        return Runtime.getRuntime().availableProcessors() + 2;
+    }
+
+    /** Archivos indexados. */
+    public int getCantidad() throws SQLException {
+        bloquearLectura();
+        try {
+            return cantidad;
+        } finally {
+            candado.readLock().unlock();
+        }
+    }
+
+    // ─── Altas y actualizaciones ──────────────────────────────────
+
+    @Override
+    public void crearArchivo(Archivo nuevoArchivo) throws SQLException {
+        bloquearEscritura();
+        try {
+            if (buscarFila(nuevoArchivo.getRutaCompleta(), nuevoArchivo.getNombre(),
+                    nuevoArchivo.getExtension()) == null) {
+                confirmar(List.of(nuevaFila(siguienteId, nuevoArchivo, 0)), false);
+            }
+        } finally {
+            candado.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Mismo criterio que sp_ingestar_lote_archivos: sólo cuenta (y registra)
+     * las filas nuevas, las que cambiaron y las que suben de generación.
+     */
+    @Override
+    public int ingestarLoteArchivos(List<? extends Archivo> lote, long generacion) throws SQLException {
+        if (lote.isEmpty()) {
+            return 0;
+        }
+        // Si el lote repite un archivo queda el último, como el DISTINCT ON
+        Map<String, Archivo> unicos = new LinkedHashMap<>();
+        for (Archivo archivo : lote) {
+            unicos.put(archivo.getRutaCompleta() + '\0' + archivo.getNombre() + '\0' + archivo.getExtension(),
+                    archivo);
+        }
+
+        bloquearEscritura();
+        try {
+            List<Cambio> cambios = new ArrayList<>(unicos.size());
+            long proximoId = siguienteId;
+            for (Archivo archivo : unicos.values()) {
+                Fila fila = buscarFila(archivo.getRutaCompleta(), archivo.getNombre(), archivo.getExtension());
+                if (fila == null) {
+                    cambios.add(nuevaFila(proximoId++, archivo, generacion));
+                    continue;
+                }
+                long fechaDia = dia(archivo.getFechaModificacion());
+                String categoria = nombreCategoria(archivo);
+                String clave = archivo.getClaveArchivo();
+                if (fila.tamano != archivo.getTamanoBytes() || fila.fechaDia != fechaDia
+                        || !Objects.equals(fila.categoria, categoria) || !Objects.equals(fila.clave, clave)) {
+                    cambios.add(new Poner(fila.id, fila.ruta, fila.nombre, fila.extension,
+                            archivo.getTamanoBytes(), fechaDia, categoria, Math.max(fila.generacion, generacion), clave));
+                } else if (fila.generacion < generacion) {
+                    cambios.add(new Generacion(fila.id, generacion));
+                }
+            }
+            confirmar(cambios, false);
+            return cambios.size();
+        } finally {
+            candado.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Como sp_actualizar_nombre_ubicacion: si el destino ya es un directorio
+     * con archivos, lo movido se fusiona con lo que había y un archivo del
+     * subárbol que cae sobre otro con el mismo nombre y extensión se borra.
+     * Mover un archivo sobre otro falla (23505, sin mover nada), igual que el
+     * índice único de Archivo en PostgreSQL.
+     */
+    @Override
+    public void actualizarUbicacionConNombreNuevo(String viejaUbicacion, String nuevaUbicacion)
+            throws SQLException {
+        bloquearEscritura();
+        try {
+            if (viejaUbicacion.equals(nuevaUbicacion)) {
+                return;
+            }
+            Collection<Fila> subarbol = porRutaOrdenada
+                    .subMap(viejaUbicacion + "/", true, viejaUbicacion + "0", false).values();
+            // Un archivo sí puede pasar a ser un directorio con su mismo nombre
+            if (!subarbol.isEmpty() && nuevaUbicacion.startsWith(viejaUbicacion + "/")) {
+                throw new SQLException("No se puede mover " + viejaUbicacion + " dentro de sí mismo");
+            }
+            List<Cambio> cambios = new ArrayList<>();
+            for (Fila fila = porRuta.get(viejaUbicacion); fila != null; fila = fila.otra) {
+                exigirLibre(nuevaUbicacion, fila.nombre, fila.extension);
+                cambios.add(new Poner(fila.id, nuevaUbicacion, fila.nombre, fila.extension, fila.tamano,
+                        fila.fechaDia, fila.categoria, fila.generacion, fila.clave));
+            }
+            // Si es un directorio, también todo su subárbol
+            for (Fila primera : subarbol) {
+                String ruta = nuevaUbicacion + primera.ruta.substring(viejaUbicacion.length());
+                for (Fila fila = primera; fila != null; fila = fila.otra) {
+                    if (buscarFila(ruta, fila.nombre, fila.extension) != null) {
+                        cambios.add(new Borrar(fila.id));
+                        continue;
+                    }
+                    cambios.add(new Poner(fila.id, ruta, fila.nombre, fila.extension, fila.tamano,
+                            fila.fechaDia, fila.categoria, fila.generacion, fila.clave));
+                }
+            }
+            confirmar(cambios, false);
+        } finally {
+            candado.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int moverArchivo(String viejaUbicacion, Archivo archivoMovido) throws SQLException {
+        bloquearEscritura();
+        try {
+            String nuevaUbicacion = archivoMovido.getRutaCompleta();
+            String nombre = archivoMovido.getNombre();
+            String extension = archivoMovido.getExtension();
+            List<Cambio> cambios = new ArrayList<>();
+            int movidas = 0;
+            for (Fila fila = porRuta.get(viejaUbicacion); fila != null; fila = fila.otra) {
+                // Dos filas movidas a la misma ruta, nombre y extensión violarían la restricción única
+                if (movidas > 0) {
+                    throw new SQLException("Ya existe un archivo " + nombre + "." + extension + " en "
+                            + nuevaUbicacion, "23505");
+                }
+                // Como sp_mover_archivo: lo que estaba en el destino lo reemplazó el movido
+                Fila ocupada = buscarFila(nuevaUbicacion, nombre, extension);
+                if (ocupada != null && ocupada != fila) {
+                    cambios.add(new Borrar(ocupada.id));
+                }
+                cambios.add(new Poner(fila.id, nuevaUbicacion, nombre, extension, fila.tamano, fila.fechaDia,
+                        fila.categoria, fila.generacion, fila.clave));
+                movidas++;
+            }
+            confirmar(cambios, false);
+            return movidas;
+        } finally {
+            candado.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void actualizarUbicacionArchivo(Archivo archivoParaModificar, String viejaUbicacion)
+            throws SQLException {
+        bloquearEscritura();
+        try {
+            Fila fila = buscarFila(viejaUbicacion, archivoParaModificar.getNombre(),
+                    archivoParaModificar.getExtension());
+            String nuevaUbicacion = archivoParaModificar.getRutaCompleta();
+            if (fila == null || fila.ruta.equals(nuevaUbicacion)) {
+                return;
+            }
+            exigirLibre(nuevaUbicacion, fila.nombre, fila.extension);
+            confirmar(List.of(new Poner(fila.id, nuevaUbicacion, fila.nombre, fila.extension, fila.tamano,
+                    fila.fechaDia, fila.categoria, fila.generacion, fila.clave)), false);
+        } finally {
+            candado.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void actualizarNombreArchivo(Archivo archivoParaModificar, String viejo_nombre) throws SQLException {
+        bloquearEscritura();
+        try {
+            Fila fila = buscarFila(archivoParaModificar.getRutaCompleta(), viejo_nombre,
+                    archivoParaModificar.getExtension());
+            String nuevoNombre = archivoParaModificar.getNombre();
+            if (fila == null || Objects.equals(fila.nombre, nuevoNombre)) {
+                return;
+            }
+            exigirLibre(fila.ruta, nuevoNombre, fila.extension);
+            confirmar(List.of(new Poner(fila.id, fila.ruta, nuevoNombre, fila.extension, fila.tamano,
+                    fila.fechaDia, fila.categoria, fila.generacion, fila.clave)), false);
+        } finally {
+            candado.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void actualizarTamanoFechaModificacionArchivo(Archivo archivoParaModificar) throws SQLException {
+        bloquearEscritura();
+        try {
+            Fila fila = buscarFila(archivoParaModificar);
+            if (fila != null) {
+                confirmar(List.of(new Poner(fila.id, fila.ruta, fila.nombre, fila.extension,
+                        archivoParaModificar.getTamanoBytes(), dia(archivoParaModificar.getFechaModificacion()),
+                        fila.categoria, fila.generacion, fila.clave)), false);
+            }
+        } finally {
+            candado.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void actualizarCategoriaArchivo(Archivo archivoParaModificar) throws SQLException {
+        bloquearEscritura();
+        try {
+            Fila fila = buscarFila(archivoParaModificar);
+            if (fila != null) {
+                confirmar(List.of(new Poner(fila.id, fila.ruta, fila.nombre, fila.extension, fila.tamano,
+                        fila.fechaDia, nombreCategoria(archivoParaModificar), fila.generacion, fila.clave)), false);
+            }
+        } finally {
+            candado.writeLock().unlock();
+        }
+    }
+
+    // ─── Etiquetas y palabras clave ───────────────────────────────
+
+    @Override
+    public void asociarPalabraClaveArchivo(Archivo archivoParaModificar, String nuevaPalabraClave)
+            throws SQLException {
+        asociar(archivoParaModificar, false, nuevaPalabraClave, true);
+    }
+
+    @Override
+    public void desasociarPalabraClaveArchivo(Archivo archivoParaModificar, String palabraClaveParaEliminar)
+            throws SQLException {
+        asociar(archivoParaModificar, false, palabraClaveParaEliminar, false);
+    }
+
+    @Override
+    public void asociarEtiquetaArchivo(Archivo archivoParaModificar, String nuevaEtiqueta) throws SQLException {
+        asociar(archivoParaModificar, true, nuevaEtiqueta, true);
+    }
+
+    @Override
+    public void desasociarEtiquetaArchivo(Archivo archivoParaModificar, String etiquetaParaEliminar)
+            throws SQLException {
+        asociar(archivoParaModificar, true, etiquetaParaEliminar, false);
+    }
+
+    private void asociar(Archivo archivo, boolean etiqueta, String valor, boolean agregar) throws SQLException {
+        bloquearEscritura();
+        try {
+            Fila fila = buscarFila(archivo);
+            if (fila == null) {
+                return;
+            }
+            Set<String> actuales = etiqueta ? fila.etiquetas : fila.palabrasClave;
+            boolean tiene = actuales != null && actuales.contains(valor);
+            if (tiene != agregar) {
+                confirmar(List.of(new Asociar(fila.id, etiqueta, valor, agregar)), true);
+            }
+        } finally {
+            candado.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void eliminarEtiqueta(String etiquetaParaEliminar) throws SQLException {
+        bloquearEscritura();
+        try {
+            if (porEtiqueta.containsKey(etiquetaParaEliminar)) {
+                confirmar(List.of(new EliminarEtiqueta(etiquetaParaEliminar)), true);
+            }
+        } finally {
+            candado.writeLock().unlock();
+        }
+    }
+
+    // ─── Búsquedas ────────────────────────────────────────────────
+
+    /** Criterios de CompiladorConsultaBusqueda.agregarPredicados, evaluados sobre una fila. */
+    private static final class Filtro {
+        final Set<String> palabrasClave;
+        final boolean alguna;
+        final String extension;
+        final String ruta;
+        // Rango de rutas del subárbol, como en CompiladorConsultaBusqueda
+        final String inicioSubarbol;
+        final String finSubarbol;
+        final String categoria;
+        final String etiqueta;
+        final long tamanoMinimo;
+        final long tamanoMaximo;
+        final Predicate<String> nombre;
+
+        Filtro(Archivo filtro, long tamanoMinimo, long tamanoMaximo,
+                CompiladorConsultaBusqueda.ModoPalabrasClave modo) {
+            this.palabrasClave = filtro.getPalabrasClave();
+            this.alguna = modo == CompiladorConsultaBusqueda.ModoPalabrasClave.ALGUNA;
+            this.extension = filtro.getExtension();
+            this.ruta = filtro.getRutaCompleta();
+            String directorio = filtro.getDirectorioBase();
+            this.inicioSubarbol = directorio != null ? CompiladorConsultaBusqueda.inicioSubarbol(directorio) : null;
+            this.finSubarbol = directorio != null ? CompiladorConsultaBusqueda.finSubarbol(directorio) : null;
+            this.categoria = filtro.getCategoria() != null ? filtro.getCategoria().getNombre() : null;
+            List<Etiqueta> etiquetas = filtro.getEtiquetas();
+            this.etiqueta = etiquetas != null && !etiquetas.isEmpty() ? etiquetas.get(0).getNombre() : null;
+            boolean conTamano = tamanoMinimo >= 0 && tamanoMaximo >= 0;
+            this.tamanoMinimo = conTamano ? tamanoMinimo : Long.MIN_VALUE;
+            this.tamanoMaximo = conTamano ? tamanoMaximo : Long.MAX_VALUE;
+            this.nombre = filtro.getNombre() != null ? patronSubcadena(filtro.getNombre()) : null;
+        }
+
+        boolean coincide(Fila fila) {
+            if (palabrasClave != null && !palabrasClave.isEmpty()) {
+                if (fila.palabrasClave == null) {
+                    return false;
+                }
+                boolean alcanza = alguna
+                        ? palabrasClave.stream().anyMatch(fila.palabrasClave::contains)
+                        : fila.palabrasClave.containsAll(palabrasClave);
+                if (!alcanza) {
+                    return false;
+                }
+            } else if (palabrasClave != null && alguna) {
+                // = ANY de un arreglo vacío no coincide con nada
+                return false;
+            }
+            return (extension == null || extension.equals(fila.extension))
+                    && (ruta == null || ruta.equals(fila.ruta))
+                    && (inicioSubarbol == null || fila.ruta.startsWith(inicioSubarbol))
+                    && (categoria == null || categoria.equals(fila.categoria))
+                    && (etiqueta == null || (fila.etiquetas != null && fila.etiquetas.contains(etiqueta)))
+                    && fila.tamano >= tamanoMinimo && fila.tamano <= tamanoMaximo
+                    && (nombre == null || nombre.test(fila.nombre));
+        }
+    }
+
+    @Override
+    public ResultSet buscarArchivosPorFiltroVariasPalabrasClaveMismoArchivo(Archivo archivoFiltro,
+            long tamanoMinimo, long tamanoMaximo) throws SQLException {
+        return buscar(new Filtro(archivoFiltro, tamanoMinimo, tamanoMaximo,
+                CompiladorConsultaBusqueda.ModoPalabrasClave.TODAS));
+    }
+
+    @Override
+    public ResultSet buscarArchivosPorFiltroMinimoUnaPalabraClave(Archivo archivoFiltro, long tamanoMinimo,
+            long tamanoMaximo) throws SQLException {
+        return buscar(new Filtro(archivoFiltro, tamanoMinimo, tamanoMaximo,
+                CompiladorConsultaBusqueda.ModoPalabrasClave.ALGUNA));
+    }
+
+    private ResultSet buscar(Filtro filtro) throws SQLException {
+        bloquearLectura();
+        try {
+            return aFilas(filtrar(filtro, -1, 0));
+        } finally {
+            candado.readLock().unlock();
+        }
+    }
+
+    /**
+     * Mismo criterio que la consulta con arc_busqueda: cada token es prefijo
+     * de alguna palabra del nombre o de la ruta. Sin tokens se busca el texto
+     * como subcadena del nombre.
+     */
+    @Override
+    public ResultSet buscarArchivosPorTokens(String texto, int limite) throws SQLException {
+        List<String> tokens = new ArrayList<>();
+        for (String token : texto.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        Predicate<String> nombre = tokens.isEmpty() ? patronSubcadena(texto) : null;
+        if (limite <= 0) {
+            return aFilas(List.of());
+        }
+
+        bloquearLectura();
+        try {
+            // Los "limite" primeros por nombre sin ordenar todo lo que coincide
+            Comparator<Fila> porNombre = Comparator.comparing((Fila f) -> f.nombre,
+                    Comparator.nullsLast(Comparator.naturalOrder())).thenComparingLong(f -> f.id);
+            PriorityQueue<Fila> mejores = new PriorityQueue<>(porNombre.reversed());
+            for (int id = 1; id < porId.length; id++) {
+                Fila fila = porId[id];
+                if (fila == null) {
+                    continue;
+                }
+                boolean coincide = nombre != null
+                        ? nombre.test(fila.nombre)
+                        : tokens.stream().allMatch(t -> empiezaPalabra(fila.nombre, t) || empiezaPalabra(fila.ruta, t));
+                if (coincide) {
+                    mejores.add(fila);
+                    if (mejores.size() > limite) {
+                        mejores.poll();
+                    }
+                }
+            }
+            List<Fila> filas = new ArrayList<>(mejores);
+            filas.sort(porNombre);
+            return aFilas(filas);
+        } finally {
+            candado.readLock().unlock();
+        }
+    }
+
+    /**
+     * Entrega en bloques de FILAS_POR_BLOQUE; el candado se suelta entre
+     * bloques, así que el consumidor puede escribir en el almacén.
+     */
+    @Override
+    public int recorrerBusquedaPaginada(Archivo archivoFiltro, long tamanoMinimo, long tamanoMaximo,
+            CompiladorConsultaBusqueda.ModoPalabrasClave modo, long despuesDeId, int limite,
+            ConsumidorFila consumidor) throws SQLException, IOException {
+        Filtro filtro = new Filtro(archivoFiltro, tamanoMinimo, tamanoMaximo, modo);
+        int entregadas = 0;
+        long ultimoId = despuesDeId;
+        while (true) {
+            int bloque = limite > 0 ? Math.min(FILAS_POR_BLOQUE, limite - entregadas) : FILAS_POR_BLOQUE;
+            if (bloque <= 0) {
+                return entregadas;
+            }
+            CachedRowSet filas;
+            bloquearLectura();
+            try {
+                List<Fila> encontradas = filtrar(filtro, ultimoId, bloque);
+                if (!encontradas.isEmpty()) {
+                    ultimoId = encontradas.get(encontradas.size() - 1).id;
+                }
+                filas = aFilas(encontradas);
+            } finally {
+                candado.readLock().unlock();
+            }
+            while (filas.next()) {
+                consumidor.aceptar(filas);
+                entregadas++;
+            }
+            if (filas.size() < bloque) {
+                return entregadas;
+            }
+        }
+    }
+
+    /**
+     * Filas que cumplen el filtro con id mayor que despuesDeId, en orden de
+     * id. Parte del índice más selectivo que el filtro permite usar.
+     *
+     * @param limite máximo de filas; 0 o menos para todas
+     */
+    private List<Fila> filtrar(Filtro filtro, long despuesDeId, int limite) {
+        Collection<Fila> candidatas = null;
+        if (filtro.ruta != null) {
+            candidatas = new ArrayList<>();
+            for (Fila fila = porRuta.get(filtro.ruta); fila != null; fila = fila.otra) {
+                candidatas.add(fila);
+            }
+        } else if (filtro.inicioSubarbol != null) {
+            candidatas = new ArrayList<>();
+            for (Fila primera : porRutaOrdenada.subMap(filtro.inicioSubarbol, true, filtro.finSubarbol, false)
+                    .values()) {
+                for (Fila fila = primera; fila != null; fila = fila.otra) {
+                    candidatas.add(fila);
+                }
+            }
+        } else if (filtro.palabrasClave != null && !filtro.palabrasClave.isEmpty()) {
+            if (filtro.alguna) {
+                candidatas = new HashSet<>();
+                for (String palabra : filtro.palabrasClave) {
+                    candidatas.addAll(porPalabraClave.getOrDefault(palabra, Set.of()));
+                }
+            } else {
+                for (String palabra : filtro.palabrasClave) {
+                    Set<Fila> conPalabra = porPalabraClave.getOrDefault(palabra, Set.of());
+                    if (candidatas == null || conPalabra.size() < candidatas.size()) {
+                        candidatas = conPalabra;
+                    }
+                }
+            }
+        } else if (filtro.etiqueta != null) {
+            candidatas = porEtiqueta.getOrDefault(filtro.etiqueta, Set.of());
+        }
+
+        List<Fila> resultado = new ArrayList<>();
+        if (candidatas == null) {
+            for (long id = Math.max(1, despuesDeId + 1); id < porId.length; id++) {
+                Fila fila = porId[(int) id];
+                if (fila != null && filtro.coincide(fila)) {
+                    resultado.add(fila);
+                    if (limite > 0 && resultado.size() == limite) {
+                        break;
+                    }
+                }
+            }
+            return resultado;
+        }
+        for (Fila fila : candidatas) {
+            if (fila.id > despuesDeId && filtro.coincide(fila)) {
+                resultado.add(fila);
+            }
+        }
+        resultado.sort(Comparator.comparingLong(f -> f.id));
+        return limite > 0 && resultado.size() > limite ? resultado.subList(0, limite) : resultado;
+    }
+
+    /** Mismas columnas que las funciones sp_buscar_archivos_*. */
+    private static CachedRowSet aFilas(List<Fila> filas) throws SQLException {
+        RowSetMetaDataImpl columnas = new RowSetMetaDataImpl();
+        columnas.setColumnCount(7);
+        definirColumna(columnas, 1, "id", Types.BIGINT);
+        definirColumna(columnas, 2, "path", Types.VARCHAR);
+        definirColumna(columnas, 3, "nombre", Types.VARCHAR);
+        definirColumna(columnas, 4, "extension", Types.VARCHAR);
+        definirColumna(columnas, 5, "tamano", Types.BIGINT);
+        definirColumna(columnas, 6, "fecha_modificacion", Types.DATE);
+        definirColumna(columnas, 7, "categoria", Types.VARCHAR);
+
+        CachedRowSet resultado = RowSetProvider.newFactory().createCachedRowSet();
+        resultado.setMetaData(columnas);
+        for (Fila fila : filas) {
+            resultado.moveToInsertRow();
+            resultado.updateLong(1, fila.id);
+            resultado.updateString(2, fila.ruta);
+            resultado.updateString(3, fila.nombre);
+            resultado.updateString(4, fila.extension);
+            resultado.updateLong(5, fila.tamano);
+            resultado.updateDate(6, java.sql.Date.valueOf(LocalDate.ofEpochDay(fila.fechaDia)));
+            resultado.updateString(7, fila.categoria);
+            resultado.insertRow();
+        }
+        resultado.moveToCurrentRow();
+        resultado.beforeFirst();
+        return resultado;
+    }
+
+    private static void definirColumna(RowSetMetaDataImpl columnas, int indice, String nombre, int tipo)
+            throws SQLException {
+        columnas.setColumnName(indice, nombre);
+        columnas.setColumnLabel(indice, nombre);
+        columnas.setColumnType(indice, tipo);
+    }
+
+    /**
+     * LOWER(nombre) LIKE '%texto%': "%", "_" y "\" del texto funcionan como
+     * en LIKE. Sin comodines basta con buscar la subcadena.
+     */
+    static Predicate<String> patronSubcadena(String texto) {
+        String minusculas = texto.toLowerCase(Locale.ROOT);
+        if (minusculas.indexOf('%') < 0 && minusculas.indexOf('_') < 0 && minusculas.indexOf('\\') < 0) {
+            return nombre -> nombre != null && contieneSinMayusculas(nombre, minusculas);
+        }
+        StringBuilder regex = new StringBuilder(".*");
+        for (int i = 0; i < minusculas.length(); i++) {
+            char c = minusculas.charAt(i);
+            if (c == '%') {
+                regex.append(".*");
+            } else if (c == '_') {
+                regex.append('.');
+            } else {
+                if (c == '\\' && i + 1 < minusculas.length()) {
+                    c = minusculas.charAt(++i);
+                }
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        Pattern patron = Pattern.compile(regex.append(".*").toString(), Pattern.DOTALL);
+        return nombre -> nombre != null && patron.matcher(nombre.toLowerCase(Locale.ROOT)).matches();
+    }
+
+    private static boolean contieneSinMayusculas(String texto, String minusculas) {
+        for (int i = 0; i + minusculas.length() <= texto.length(); i++) {
+            if (texto.regionMatches(true, i, minusculas, 0, minusculas.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** true si alguna palabra (letras y dígitos seguidos) de texto empieza con token. */
+    private static boolean empiezaPalabra(String texto, String token) {
+        if (texto == null) {
+            return false;
+        }
+        for (int i = 0; i + token.length() <= texto.length(); i++) {
+            if ((i == 0 || !Character.isLetterOrDigit(texto.charAt(i - 1)))
+                    && texto.regionMatches(true, i, token, 0, token.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ─── Recorridos ───────────────────────────────────────────────
+
+    @Override
+    public void recorrerArchivos(ConsumidorArchivo consumidor) throws SQLException {
+        recorrerRango(null, null, consumidor);
+    }
+
+    @Override
+    public void recorrerArchivosBajo(String directorio, ConsumidorArchivo consumidor) throws SQLException {
+        recorrerRango(directorio + "/", directorio + "0", consumidor);
+    }
+
+    /**
+     * Se copia todo el rango de una vez: quien llama arma un mapa en memoria
+     * con todas las claves de todos modos.
+     */
+    @Override
+    public void recorrerClavesBajo(String directorio, ConsumidorClave consumidor) throws SQLException {
+        List<String[]> claves = new ArrayList<>();
+        bloquearLectura();
+        try {
+            for (Fila primera : porRutaOrdenada.subMap(directorio + "/", true, directorio + "0", false).values()) {
+                for (Fila fila = primera; fila != null; fila = fila.otra) {
+                    if (fila.clave != null) {
+                        claves.add(new String[] { fila.clave, fila.ruta });
+                    }
+                }
+            }
+        } finally {
+            candado.readLock().unlock();
+        }
+        for (String[] clave : claves) {
+            consumidor.aceptar(clave[0], clave[1]);
+        }
+    }
+
+    /**
+     * Entrega las filas con ruta en [desde, hasta) en orden de ruta, copiando
+     * un bloque por vez: el consumidor corre sin el candado (el indexador
+     * borra mientras recorre).
+     */
+    private void recorrerRango(String desde, String hasta, ConsumidorArchivo consumidor) throws SQLException {
+        String ultima = null;
+        boolean quedan = true;
+        while (quedan) {
+            List<Visto> bloque = new ArrayList<>();
+            bloquearLectura();
+            try {
+                NavigableMap<String, Fila> rango = ultima != null
+                        ? porRutaOrdenada.tailMap(ultima, false)
+                        : desde != null ? porRutaOrdenada.tailMap(desde, true) : porRutaOrdenada;
+                if (hasta != null) {
+                    rango = rango.headMap(hasta, false);
+                }
+                quedan = false;
+                for (Map.Entry<String, Fila> entrada : rango.entrySet()) {
+                    if (bloque.size() >= FILAS_POR_BLOQUE) {
+                        quedan = true;
+                        break;
+                    }
+                    copiar(entrada.getValue(), bloque);
+                    ultima = entrada.getKey();
+                }
+            } finally {
+                candado.readLock().unlock();
+            }
+            entregar(bloque, consumidor);
+        }
+    }
+
+    /**
+     * Sólo los hijos directos: al encontrar un subdirectorio salta todo su
+     * subárbol en el índice ordenado en lugar de recorrerlo.
+     */
+    @Override
+    public void recorrerArchivosEnDirectorios(List<String> directorios, ConsumidorArchivo consumidor)
+            throws SQLException {
+        for (String directorio : directorios) {
+            // La raíz "/" queda como "" al quitarle el nombre a "/archivo"
+            String prefijo = (directorio.endsWith("/")
+                    ? directorio.substring(0, directorio.length() - 1)
+                    : directorio) + "/";
+            List<Visto> hijos = new ArrayList<>();
+            bloquearLectura();
+            try {
+                String clave = porRutaOrdenada.ceilingKey(prefijo);
+                while (clave != null && clave.startsWith(prefijo)) {
+                    int barra = clave.indexOf('/', prefijo.length());
+                    if (barra < 0) {
+                        copiar(porRutaOrdenada.get(clave), hijos);
+                        clave = porRutaOrdenada.higherKey(clave);
+                    } else {
+                        clave = porRutaOrdenada.ceilingKey(clave.substring(0, barra) + "0");
+                    }
+                }
+            } finally {
+                candado.readLock().unlock();
+            }
+            entregar(hijos, consumidor);
+        }
+    }
+
+    private static void copiar(Fila primera, List<Visto> destino) {
+        for (Fila fila = primera; fila != null; fila = fila.otra) {
+            destino.add(new Visto(fila.ruta, fila.tamano, fila.fechaDia));
+        }
+    }
+
+    private static void entregar(List<Visto> vistos, ConsumidorArchivo consumidor) {
+        for (Visto visto : vistos) {
+            consumidor.aceptar(visto.ruta(), visto.tamano(), LocalDate.ofEpochDay(visto.fechaDia()).atStartOfDay());
+        }
+    }
+
+    // ─── Borrados ─────────────────────────────────────────────────
+
+    @Override
+    public void eliminarArchivo(Archivo archivoParaEliminar) throws SQLException {
+        bloquearEscritura();
+        try {
+            Fila fila = buscarFila(archivoParaEliminar);
+            if (fila != null) {
+                confirmar(List.of(new Borrar(fila.id)), false);
+            }
+        } finally {
+            candado.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void eliminarArchivosEnUbicacion(String ubicacionParaEliminar) throws SQLException {
+        bloquearEscritura();
+        try {
+            List<Cambio> cambios = new ArrayList<>();
+            for (Fila fila = porRuta.get(ubicacionParaEliminar); fila != null; fila = fila.otra) {
+                cambios.add(new Borrar(fila.id));
+            }
+            confirmar(cambios, false);
+        } finally {
+            candado.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<String> eliminarArchivosBajoDirectorio(String directorio) throws SQLException {
+        return eliminarBajo(directorio, fila -> true);
+    }
+
+    @Override
+    public List<String> barrerArchivosNoVistos(String raiz, long generacion, List<String> incompletos)
+            throws SQLException {
+        List<String> prefijosIncompletos = new ArrayList<>(incompletos.size());
+        for (String incompleto : incompletos) {
+            prefijosIncompletos.add(incompleto + "/");
+        }
+        return eliminarBajo(raiz, fila -> fila.generacion < generacion
+                && prefijosIncompletos.stream().noneMatch(fila.ruta::startsWith));
+    }
+
+    /** Borra las filas debajo de directorio que cumplen la condición; devuelve sus rutas. */
+    private List<String> eliminarBajo(String directorio, Predicate<Fila> condicion) throws SQLException {
+        bloquearEscritura();
+        try {
+            List<Cambio> cambios = new ArrayList<>();
+            List<String> eliminadas = new ArrayList<>();
+            for (Fila primera : porRutaOrdenada.subMap(directorio + "/", true, directorio + "0", false).values()) {
+                for (Fila fila = primera; fila != null; fila = fila.otra) {
+                    if (condicion.test(fila)) {
+                        cambios.add(new Borrar(fila.id));
+                        eliminadas.add(fila.ruta);
+                    }
+                }
+            }
+            confirmar(cambios, false);
+            return eliminadas;
+        } finally {
+            candado.writeLock().unlock();
+        }
+    }
+
+    // ─── Índices ──────────────────────────────────────────────────
+
+    private Fila buscarFila(Archivo archivo) {
+        return buscarFila(archivo.getRutaCompleta(), archivo.getNombre(), archivo.getExtension());
+    }
+
+    private Fila buscarFila(String ruta, String nombre, String extension) {
+        for (Fila fila = ruta != null ? porRuta.get(ruta) : null; fila != null; fila = fila.otra) {
+            if (Objects.equals(fila.nombre, nombre) && Objects.equals(fila.extension, extension)) {
+                return fila;
+            }
+        }
+        return null;
+    }
+
+    /** Como la restricción única (ruta, nombre, extensión) de Archivo. */
+    private void exigirLibre(String ruta, String nombre, String extension) throws SQLException {
+        if (buscarFila(ruta, nombre, extension) != null) {
+            throw new SQLException("Ya existe un archivo " + nombre + "." + extension + " en " + ruta, "23505");
+        }
+    }
+
+    private Fila filaPorId(long id) {
+        return id > 0 && id < porId.length ? porId[(int) id] : null;
+    }
+
+    private Poner nuevaFila(long id, Archivo archivo, long generacion) {
+        return new Poner(id, archivo.getRutaCompleta(), archivo.getNombre(), archivo.getExtension(),
+                archivo.getTamanoBytes(), dia(archivo.getFechaModificacion()), nombreCategoria(archivo), generacion,
+                archivo.getClaveArchivo());
+    }
+
+    private static long dia(LocalDateTime fecha) {
+        return fecha.toLocalDate().toEpochDay();
+    }
+
+    private static String nombreCategoria(Archivo archivo) {
+        return archivo.getCategoria() != null ? archivo.getCategoria().getNombre() : null;
+    }
+
+    private void aplicar(Cambio cambio) {
+        switch (cambio) {
+            case Poner poner -> poner(poner);
+            case Generacion marca -> {
+                Fila fila = filaPorId(marca.id());
+                if (fila != null) {
+                    fila.generacion = marca.generacion();
+                }
+            }
+            case Borrar borrar -> {
+                Fila fila = filaPorId(borrar.id());
+                if (fila != null) {
+                    quitar(fila);
+                }
+            }
+            case Asociar asociar -> asociar(asociar);
+            case EliminarEtiqueta eliminar -> {
+                Set<Fila> filas = porEtiqueta.remove(eliminar.nombre());
+                if (filas != null) {
+                    for (Fila fila : filas) {
+                        fila.etiquetas.remove(eliminar.nombre());
+                        if (fila.etiquetas.isEmpty()) {
+                            fila.etiquetas = null;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void poner(Poner poner) {
+        Fila fila = filaPorId(poner.id());
+        if (fila == null) {
+            fila = new Fila(poner.id());
+            fila.ruta = poner.ruta();
+            if (poner.id() >= porId.length) {
+                porId = Arrays.copyOf(porId, (int) Math.max(porId.length * 2L, poner.id() + 1));
+            }
+            porId[(int) poner.id()] = fila;
+            siguienteId = Math.max(siguienteId, poner.id() + 1);
+            cantidad++;
+            enlazar(fila);
+        } else if (!fila.ruta.equals(poner.ruta())) {
+            desenlazar(fila);
+            fila.ruta = poner.ruta();
+            enlazar(fila);
+        }
+        fila.nombre = poner.nombre();
+        fila.extension = compartido(poner.extension());
+        fila.tamano = poner.tamano();
+        fila.fechaDia = poner.fechaDia();
+        fila.categoria = compartido(poner.categoria());
+        fila.generacion = poner.generacion();
+        fila.clave = poner.clave();
+    }
+
+    private String compartido(String valor) {
+        return valor == null ? null : valores.computeIfAbsent(valor, v -> v);
+    }
+
+    private void enlazar(Fila fila) {
+        Fila primera = porRuta.get(fila.ruta);
+        if (primera == null) {
+            porRuta.put(fila.ruta, fila);
+            porRutaOrdenada.put(fila.ruta, fila);
+        } else {
+            fila.otra = primera.otra;
+            primera.otra = fila;
+        }
+    }
+
+    private void desenlazar(Fila fila) {
+        Fila primera = porRuta.get(fila.ruta);
+        if (primera == fila) {
+            if (fila.otra == null) {
+                porRuta.remove(fila.ruta);
+                porRutaOrdenada.remove(fila.ruta);
+            } else {
+                porRuta.put(fila.ruta, fila.otra);
+                porRutaOrdenada.put(fila.ruta, fila.otra);
+            }
+        } else if (primera != null) {
+            Fila anterior = primera;
+            while (anterior.otra != null && anterior.otra != fila) {
+                anterior = anterior.otra;
+            }
+            anterior.otra = fila.otra;
+        }
+        fila.otra = null;
+    }
+
+    private void quitar(Fila fila) {
+        desenlazar(fila);
+        porId[(int) fila.id] = null;
+        cantidad--;
+        if (fila.palabrasClave != null) {
+            for (String palabra : fila.palabrasClave) {
+                quitarDeIndice(porPalabraClave, palabra, fila);
+            }
+        }
+        if (fila.etiquetas != null) {
+            for (String etiqueta : fila.etiquetas) {
+                quitarDeIndice(porEtiqueta, etiqueta, fila);
+            }
+        }
+    }
+
+    private void asociar(Asociar asociar) {
+        Fila fila = filaPorId(asociar.id());
+        if (fila == null) {
+            return;
+        }
+        Map<String, Set<Fila>> indice = asociar.etiqueta() ? porEtiqueta : porPalabraClave;
+        Set<String> actuales = asociar.etiqueta() ? fila.etiquetas : fila.palabrasClave;
+        if (asociar.agregar()) {
+            if (actuales == null) {
+                actuales = new HashSet<>(4);
+                if (asociar.etiqueta()) {
+                    fila.etiquetas = actuales;
+                } else {
+                    fila.palabrasClave = actuales;
+                }
+            }
+            if (actuales.add(asociar.valor())) {
+                indice.computeIfAbsent(asociar.valor(), v -> new HashSet<>()).add(fila);
+            }
+        } else if (actuales != null && actuales.remove(asociar.valor())) {
+            quitarDeIndice(indice, asociar.valor(), fila);
+            if (actuales.isEmpty()) {
+                if (asociar.etiqueta()) {
+                    fila.etiquetas = null;
+                } else {
+                    fila.palabrasClave = null;
+                }
+            }
+        }
+    }
+
+    private static void quitarDeIndice(Map<String, Set<Fila>> indice, String valor, Fila fila) {
+        Set<Fila> filas = indice.get(valor);
+        if (filas != null && filas.remove(fila) && filas.isEmpty()) {
+            indice.remove(valor);
+        }
+    }
+
+    private void vaciar() {
+        porRuta.clear();
+        porRutaOrdenada.clear();
+        porId = new Fila[1024];
+        siguienteId = 1;
+        cantidad = 0;
+        porPalabraClave.clear();
+        porEtiqueta.clear();
+        valores.clear();
+        epoca = 0;
+    }
+
+    // ─── Candado y apertura ───────────────────────────────────────
+
+    /** Toma el candado de lectura, abriendo el almacén si hace falta. */
+    private void bloquearLectura() throws SQLException {
+        while (true) {
+            candado.readLock().lock();
+            if (abierto) {
+                return;
+            }
+            candado.readLock().unlock();
+            bloquearEscritura();
+            candado.writeLock().unlock();
+        }
+    }
+
+    /** Toma el candado de escritura, abriendo el almacén si hace falta. */
+    private void bloquearEscritura() throws SQLException {
+        candado.writeLock().lock();
+        if (!abierto) {
+            try {
+                abrir();
+            } catch (SQLException e) {
+                candado.writeLock().unlock();
+                throw e;
+            }
+        }
+    }
+
+    private void abrir() throws SQLException {
+        try {
+            Files.createDirectories(directorio);
+            long epocaInstantanea = cargarInstantanea(directorio.resolve(ARCHIVO_INSTANTANEA));
+            abrirRegistro(directorio.resolve(ARCHIVO_REGISTRO), epocaInstantanea);
+            abierto = true;
+            System.out.println("[DB] Almacén embebido abierto en " + directorio + " (" + cantidad + " archivos)");
+        } catch (IOException | RuntimeException e) {
+            cerrarRegistro();
+            vaciar();
+            throw new SQLException("No se pudo abrir el almacén en " + directorio + ": " + e.getMessage(), e);
+        }
+    }
+
+    // ─── Registro e instantáneas ──────────────────────────────────
+
+    /**
+     * Escribe los cambios en el registro como un único registro y recién
+     * entonces los aplica en memoria. Se llama con el candado de escritura.
+     */
+    private void confirmar(List<Cambio> cambios, boolean sincronizar) throws SQLException {
+        if (cambios.isEmpty()) {
+            return;
+        }
+        try {
+            escribirRegistro(cambios, sincronizar || SINCRONIZAR);
+        } catch (IOException e) {
+            throw new SQLException("No se pudo escribir el registro del almacén: " + e.getMessage(), e);
+        }
+        for (Cambio cambio : cambios) {
+            aplicar(cambio);
+        }
+        try {
+            if (registro.size() > REGISTRO_MAXIMO) {
+                tomarInstantanea();
+            }
+        } catch (IOException e) {
+            // El registro sigue completo: sólo tarda más en abrir
+            System.err.println("[DB] No se pudo escribir la instantánea del almacén: " + e.getMessage());
+        }
+    }
+
+    private void escribirRegistro(List<Cambio> cambios, boolean sincronizar) throws IOException {
+        bufferRegistro.reset();
+        DataOutputStream salida = new DataOutputStream(bufferRegistro);
+        // Lugar para el largo y el CRC
+        salida.writeLong(0);
+        salida.writeInt(cambios.size());
+        for (Cambio cambio : cambios) {
+            escribirCambio(salida, cambio);
+        }
+        byte[] bytes = bufferRegistro.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 8, bytes.length - 8);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.putInt(0, bytes.length - 8);
+        buffer.putInt(4, (int) crc.getValue());
+
+        long antes = registro.position();
+        try {
+            while (buffer.hasRemaining()) {
+                registro.write(buffer);
+            }
+            if (sincronizar) {
+                registro.force(false);
+            }
+        } catch (IOException e) {
+            // Un registro a medias cortaría la reproducción de los siguientes
+            try {
+                registro.truncate(antes);
+                registro.position(antes);
+            } catch (IOException ignorada) {
+            }
+            throw e;
+        }
+    }
+
+    private void abrirRegistro(Path archivo, long epocaInstantanea) throws IOException {
+        registro = FileChannel.open(archivo, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        // Dos procesos escribiendo el mismo registro lo corromperían
+        try {
+            if (registro.tryLock() == null) {
+                throw new IOException("otro proceso está usando el almacén");
+            }
+        } catch (OverlappingFileLockException e) {
+            throw new IOException("ya está abierto en este proceso");
+        }
+        long largo = registro.size();
+        long valido = 0;
+        if (largo >= LARGO_CABECERA) {
+            ByteBuffer cabecera = ByteBuffer.allocate(LARGO_CABECERA);
+            while (cabecera.hasRemaining() && registro.read(cabecera, cabecera.position()) >= 0) {
+            }
+            // Un registro de una época ya incluida en la instantánea se descarta
+            if (cabecera.getInt(0) == MAGIA_REGISTRO && cabecera.getLong(4) > epocaInstantanea) {
+                epoca = cabecera.getLong(4);
+                valido = reproducir(largo);
+            }
+        }
+        if (valido == 0) {
+            epoca = epocaInstantanea + 1;
+            reiniciarRegistro();
+            return;
+        }
+        if (valido < largo) {
+            System.err.println("[DB] Registro del almacén cortado, se descartan los últimos "
+                    + (largo - valido) + " bytes");
+            registro.truncate(valido);
+        }
+        registro.position(valido);
+    }
+
+    /** @return hasta dónde el registro es válido */
+    private long reproducir(long largo) throws IOException {
+        long posicion = LARGO_CABECERA;
+        // No se cierra: cerraría el canal
+        DataInputStream entrada = new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(registro.position(posicion)), 1 << 16));
+        CRC32 crc = new CRC32();
+        byte[] datos = new byte[1024];
+        while (posicion + 8 <= largo) {
+            int tamano = entrada.readInt();
+            int suma = entrada.readInt();
+            if (tamano <= 0 || posicion + 8 + tamano > largo) {
+                break;
+            }
+            if (datos.length < tamano) {
+                datos = new byte[tamano];
+            }
+            entrada.readFully(datos, 0, tamano);
+            crc.reset();
+            crc.update(datos, 0, tamano);
+            if ((int) crc.getValue() != suma) {
+                break;
+            }
+            DataInputStream cambios = new DataInputStream(new ByteArrayInputStream(datos, 0, tamano));
+            for (int i = cambios.readInt(); i > 0; i--) {
+                aplicar(leerCambio(cambios));
+            }
+            posicion += 8 + tamano;
+        }
+        return posicion;
+    }
+
+    private void reiniciarRegistro() throws IOException {
+        registro.truncate(0);
+        ByteBuffer cabecera = ByteBuffer.allocate(LARGO_CABECERA);
+        cabecera.putInt(MAGIA_REGISTRO).putLong(epoca).flip();
+        registro.position(0);
+        while (cabecera.hasRemaining()) {
+            registro.write(cabecera);
+        }
+        registro.force(true);
+    }
+
+    private void cerrarRegistro() {
+        if (registro != null) {
+            try {
+                registro.close();
+            } catch (IOException e) {
+                System.err.println("[DB] Error al cerrar el registro del almacén: " + e.getMessage());
+            }
+            registro = null;
+        }
+    }
+
+    /**
+     * Escribe todas las filas en almacen.snap (temporal + move, con fsync) y
+     * empieza un registro de la época siguiente. Si se cae entre el move y el
+     * reinicio, el registro viejo tiene la época de la instantánea y se ignora.
+     */
+    private void tomarInstantanea() throws IOException {
+        Path destino = directorio.resolve(ARCHIVO_INSTANTANEA);
+        Path temporal = directorio.resolve(ARCHIVO_INSTANTANEA + ".tmp");
+        try (FileOutputStream archivo = new FileOutputStream(temporal.toFile());
+                DataOutputStream salida = new DataOutputStream(new BufferedOutputStream(archivo, 1 << 16))) {
+            salida.writeInt(MAGIA_INSTANTANEA_CLAVES);
+            salida.writeLong(epoca);
+            salida.writeLong(siguienteId);
+            salida.writeInt(cantidad);
+            for (Fila primera : porRutaOrdenada.values()) {
+                for (Fila fila = primera; fila != null; fila = fila.otra) {
+                    escribirFila(salida, fila);
+                }
+            }
+            // Al final también, para notar una instantánea cortada
+            salida.writeInt(MAGIA_INSTANTANEA_CLAVES);
+            salida.flush();
+            archivo.getFD().sync();
+        }
+        Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        epoca++;
+        reiniciarRegistro();
+    }
+
+    /** @return la época del registro que ya incluye, o 0 si no hay instantánea */
+    private long cargarInstantanea(Path archivo) throws IOException {
+        if (!Files.exists(archivo)) {
+            return 0;
+        }
+        try (DataInputStream entrada = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(archivo), 1 << 16))) {
+            int magia = entrada.readInt();
+            if (magia != MAGIA_INSTANTANEA && magia != MAGIA_INSTANTANEA_CLAVES) {
+                throw new IOException(archivo + " no es una instantánea del almacén");
+            }
+            long epocaInstantanea = entrada.readLong();
+            long proximoId = entrada.readLong();
+            for (int i = entrada.readInt(); i > 0; i--) {
+                leerFila(entrada, magia == MAGIA_INSTANTANEA_CLAVES);
+            }
+            if (entrada.readInt() != magia) {
+                throw new IOException(archivo + " está incompleta");
+            }
+            siguienteId = Math.max(siguienteId, proximoId);
+            return epocaInstantanea;
+        }
+    }
+
+    private static void escribirFila(DataOutput salida, Fila fila) throws IOException {
+        salida.writeLong(fila.id);
+        salida.writeUTF(fila.ruta);
+        escribirTexto(salida, fila.nombre);
+        escribirTexto(salida, fila.extension);
+        salida.writeLong(fila.tamano);
+        salida.writeLong(fila.fechaDia);
+        escribirTexto(salida, fila.categoria);
+        salida.writeLong(fila.generacion);
+        escribirTexto(salida, fila.clave);
+        escribirConjunto(salida, fila.palabrasClave);
+        escribirConjunto(salida, fila.etiquetas);
+    }
+
+    private void leerFila(DataInput entrada, boolean conClave) throws IOException {
+        long id = entrada.readLong();
+        poner(new Poner(id, entrada.readUTF(), leerTexto(entrada), leerTexto(entrada), entrada.readLong(),
+                entrada.readLong(), leerTexto(entrada), entrada.readLong(), conClave ? leerTexto(entrada) : null));
+        for (int i = entrada.readInt(); i > 0; i--) {
+            asociar(new Asociar(id, false, entrada.readUTF(), true));
+        }
+        for (int i = entrada.readInt(); i > 0; i--) {
+            asociar(new Asociar(id, true, entrada.readUTF(), true));
+        }
+    }
+
+    private static void escribirCambio(DataOutput salida, Cambio cambio) throws IOException {
+        switch (cambio) {
+            case Poner poner -> {
+                salida.writeByte(PONER_CON_CLAVE);
+                salida.writeLong(poner.id());
+                salida.writeUTF(poner.ruta());
+                escribirTexto(salida, poner.nombre());
+                escribirTexto(salida, poner.extension());
+                salida.writeLong(poner.tamano());
+                salida.writeLong(poner.fechaDia());
+                escribirTexto(salida, poner.categoria());
+                salida.writeLong(poner.generacion());
+                escribirTexto(salida, poner.clave());
+            }
+            case Generacion marca -> {
+                salida.writeByte(GENERACION);
+                salida.writeLong(marca.id());
+                salida.writeLong(marca.generacion());
+            }
+            case Borrar borrar -> {
+                salida.writeByte(BORRAR);
+                salida.writeLong(borrar.id());
+            }
+            case Asociar asociar -> {
+                salida.writeByte(ASOCIAR);
+                salida.writeLong(asociar.id());
+                salida.writeBoolean(asociar.etiqueta());
+                salida.writeUTF(asociar.valor());
+                salida.writeBoolean(asociar.agregar());
+            }
+            case EliminarEtiqueta eliminar -> {
+                salida.writeByte(ELIMINAR_ETIQUETA);
+                salida.writeUTF(eliminar.nombre());
+            }
+        }
+    }
+
+    private static Cambio leerCambio(DataInput entrada) throws IOException {
+        byte tipo = entrada.readByte();
+        return switch (tipo) {
+            case PONER, PONER_CON_CLAVE -> new Poner(entrada.readLong(), entrada.readUTF(), leerTexto(entrada),
+                    leerTexto(entrada), entrada.readLong(), entrada.readLong(), leerTexto(entrada), entrada.readLong(),
+                    tipo == PONER_CON_CLAVE ? leerTexto(entrada) : null);
+            case GENERACION -> new Generacion(entrada.readLong(), entrada.readLong());
+            case BORRAR -> new Borrar(entrada.readLong());
+            case ASOCIAR -> new Asociar(entrada.readLong(), entrada.readBoolean(), entrada.readUTF(),
+                    entrada.readBoolean());
+            case ELIMINAR_ETIQUETA -> new EliminarEtiqueta(entrada.readUTF());
+            default -> throw new IOException("Cambio desconocido en el registro: " + tipo);
+        };
+    }
+
+    private static void escribirTexto(DataOutput salida, String texto) throws IOException {
+        salida.writeBoolean(texto != null);
+        if (texto != null) {
+            salida.writeUTF(texto);
+        }
+    }
+
+    private static String leerTexto(DataInput entrada) throws IOException {
+        return entrada.readBoolean() ? entrada.readUTF() : null;
+    }
+
+    private static void escribirConjunto(DataOutput salida, Set<String> conjunto) throws IOException {
+        salida.writeInt(conjunto == null ? 0 : conjunto.size());
+        if (conjunto != null) {
+            for (String valor : conjunto) {
+                salida.writeUTF(valor);
+            }
+        }
+    }
+}
@@ -18,6 +18,11 @@ public class Archivo {
     // Añadir constante para el valor de filtro
     private static final String FILTER_VALUE = "filtro_temp";
 
+    // Sólo para filtros: limita la búsqueda a lo que está debajo de este directorio
+    private String directorioBase;
+    // fileKey() del archivo (ver modelo.Archivo#getClaveArchivo); null si no se conoce
+    private String claveArchivo;
+
     public Archivo(String nombre, long tamanoBytes, LocalDateTime fechaModificacion,
             String rutaCompleta, String extension, String categoria) {
         // Validar y transformar entradas que podrían causar problemas
@@ -113,6 +118,23 @@ public class Archivo {
         return Collections.emptyList(); // Nunca devuelve null
     }
 
+    /** Directorio cuyo subárbol completo se busca, o null para no limitar. */
+    public String getDirectorioBase() {
+        return directorioBase;
+    }
+
+    public void setDirectorioBase(String directorioBase) {
+        this.directorioBase = directorioBase;
+    }
+
+    public String getClaveArchivo() {
+        return claveArchivo;
+    }
+
+    public void setClaveArchivo(String claveArchivo) {
+        this.claveArchivo = claveArchivo;
+    }
+
     public Set<String> getPalabrasClave() {
         return modelo.getPalabrasClave();
     }
@@ -0,0 +1,210 @@
+package koolfileindexer.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Caché LRU de sentencias preparadas de una conexión física, indexada por el
+ * texto SQL (más tipo y concurrencia del ResultSet, y si es una llamada).
+ *
+ * Cerrar una sentencia obtenida de la caché sólo limpia sus parámetros y la
+ * deja libre para reutilizarla; el cierre físico ocurre cuando sale del LRU o
+ * cuando se cierra la conexión. Así el driver puede mantener la sentencia
+ * preparada en el servidor y el número de sentencias abiertas queda acotado
+ * por la capacidad.
+ *
+ * No es segura entre hilos: la usa sólo quien tiene la conexión prestada.
+ */
+public class CacheSentencias {
+
+    private record Clave(String sql, int tipo, int concurrencia, boolean llamada) {
+    }
+
+    private static final class Entrada {
+        final PreparedStatement sentencia;
+        boolean enUso;
+
+        Entrada(PreparedStatement sentencia) {
+            this.sentencia = sentencia;
+        }
+    }
+
+    private final int capacidad;
+    private final LinkedHashMap<Clave, Entrada> entradas;
+    private long aciertos;
+    private long fallos;
+
+    public CacheSentencias(int capacidad) {
+        if (capacidad < 0) {
+            throw new IllegalArgumentException("La capacidad no puede ser negativa");
+        }
+        this.capacidad = capacidad;
+        this.entradas = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Devuelve una sentencia para el SQL dado, reutilizando la cacheada si está
+     * libre. Si ya está en uso (dos sentencias iguales abiertas a la vez) se
+     * crea una aparte que se cierra de verdad al cerrarla.
+     */
+    public CallableStatement prepararLlamada(Connection fisica, String sql, int tipo, int concurrencia)
+            throws SQLException {
+        return (CallableStatement) preparar(fisica, new Clave(sql, tipo, concurrencia, true));
+    }
+
+    /** Igual que {@link #prepararLlamada} para sentencias SQL comunes. */
+    public PreparedStatement prepararSentencia(Connection fisica, String sql, int tipo, int concurrencia)
+            throws SQLException {
+        return preparar(fisica, new Clave(sql, tipo, concurrencia, false));
+    }
+
+    private PreparedStatement preparar(Connection fisica, Clave clave) throws SQLException {
+        Entrada entrada = entradas.get(clave);
+        if (entrada != null && !entrada.enUso) {
+            aciertos++;
+            entrada.enUso = true;
+            return envolver(entrada);
+        }
+
+        fallos++;
+        PreparedStatement sentencia = clave.llamada()
+                ? fisica.prepareCall(clave.sql(), clave.tipo(), clave.concurrencia())
+                : fisica.prepareStatement(clave.sql(), clave.tipo(), clave.concurrencia());
+        if (entrada != null || capacidad == 0) {
+            return sentencia;
+        }
+        Entrada nueva = new Entrada(sentencia);
+        nueva.enUso = true;
+        entradas.put(clave, nueva);
+        desalojarSobrantes();
+        return envolver(nueva);
+    }
+
+    public int tamano() {
+        return entradas.size();
+    }
+
+    public long getAciertos() {
+        return aciertos;
+    }
+
+    public long getFallos() {
+        return fallos;
+    }
+
+    /** Cierra físicamente todas las sentencias; se llama al cerrar la conexión. */
+    public void cerrarTodas() {
+        for (Entrada entrada : entradas.values()) {
+            cerrarSilenciosamente(entrada.sentencia);
+        }
+        entradas.clear();
+    }
+
+    /**
+     * Saca las menos usadas recientemente hasta volver a la capacidad. Las que
+     * están en uso se saltan y se cierran cuando se devuelvan.
+     */
+    private void desalojarSobrantes() {
+        Iterator<Map.Entry<Clave, Entrada>> it = entradas.entrySet().iterator();
+        List<Entrada> desalojadas = new ArrayList<>();
+        while (entradas.size() - desalojadas.size() > capacidad && it.hasNext()) {
+            Entrada entrada = it.next().getValue();
+            if (!entrada.enUso) {
+                it.remove();
+                desalojadas.add(entrada);
+            }
+        }
+        desalojadas.forEach(e -> cerrarSilenciosamente(e.sentencia));
+    }
+
+    private void liberar(Entrada entrada) {
+        // Si fue desalojada mientras estaba en uso ya no está en el mapa
+        if (!entradas.containsValue(entrada)) {
+            cerrarSilenciosamente(entrada.sentencia);
+            return;
+        }
+        try {
+            ResultSet abierto = entrada.sentencia.getResultSet();
+            if (abierto != null) {
+                abierto.close();
+            }
+            entrada.sentencia.clearParameters();
+            entrada.enUso = false;
+        } catch (SQLException e) {
+            // Una sentencia que no se puede limpiar no se reutiliza
+            entradas.values().remove(entrada);
+            cerrarSilenciosamente(entrada.sentencia);
+        }
+    }
+
+    private PreparedStatement envolver(Entrada entrada) {
+        Class<?> interfaz = entrada.sentencia instanceof CallableStatement
+                ? CallableStatement.class
+                : PreparedStatement.class;
+        return (PreparedStatement) Proxy.newProxyInstance(
+                CacheSentencias.class.getClassLoader(),
+                new Class<?>[] { interfaz },
+                new SentenciaPrestada(entrada));
+    }
+
+    private static void cerrarSilenciosamente(PreparedStatement sentencia) {
+        try {
+            sentencia.close();
+        } catch (SQLException e) {
+            System.err.println("[DB] Error al cerrar sentencia: " + e.getMessage());
+        }
+    }
+
+    /** Sentencia cacheada: close() la devuelve a la caché una sola vez. */
+    private final class SentenciaPrestada implements InvocationHandler {
+        private final Entrada entrada;
+        private boolean cerrada;
+
+        SentenciaPrestada(Entrada entrada) {
+            this.entrada = entrada;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method metodo, Object[] args) throws Throwable {
+            switch (metodo.getName()) {
+                case "close":
+                    if (!cerrada) {
+                        cerrada = true;
+                        liberar(entrada);
+                    }
+                    return null;
+                case "isClosed":
+                    return cerrada || entrada.sentencia.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "SentenciaCacheada[" + entrada.sentencia + "]";
+                default:
+                    break;
+            }
+            if (cerrada) {
+                throw new SQLException("La sentencia ya fue cerrada");
+            }
+            try {
+                return metodo.invoke(entrada.sentencia, args);
+            } catch (InvocationTargetException e) {
+                throw Objects.requireNonNullElse(e.getCause(), e);
+            }
+        }
+    }
+}
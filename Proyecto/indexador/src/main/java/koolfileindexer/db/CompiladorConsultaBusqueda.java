@@ -0,0 +1,267 @@
+package koolfileindexer.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Traduce un {@link Archivo} de filtro a una única sentencia SELECT
+ * parametrizada, con los joins y predicados en el WHERE.
+ *
+ * Reemplaza la cadena {@code sp_a(?) INTERSECT sp_b(?) ...}: cada función
+ * plpgsql materializa su resultado completo antes del INTERSECT, mientras que
+ * una sola sentencia deja que el planificador elija el predicado más
+ * selectivo y lo resuelva con índices. Etiquetas y palabras clave se expresan
+ * con EXISTS para no duplicar filas.
+ *
+ * Las columnas se llaman igual que las que devuelven las funciones
+ * sp_buscar_archivos_*, así que quien lee el ResultSet no nota la diferencia.
+ *
+ * El filtro por nombre usa la misma expresión que el índice trigram
+ * idx_arc_nombre_trgm (ver search_indexes.sql). La ruta de cada archivo es
+ * dir_ruta || arc_base (ver la tabla Directorio en init_schema.sql), así que
+ * un subárbol es un rango de dir_ruta que se resuelve con idx_dir_ruta.
+ */
+public final class CompiladorConsultaBusqueda {
+
+    /** Cómo se combinan varias palabras clave del filtro. */
+    public enum ModoPalabrasClave {
+        /** El archivo debe tener todas las palabras clave. */
+        TODAS,
+        /** Basta con que tenga alguna de ellas. */
+        ALGUNA
+    }
+
+    /** Sentencia compilada junto con sus parámetros en orden. */
+    public record ConsultaCompilada(String sql, List<Object> parametros) {
+
+        public ConsultaCompilada {
+            parametros = Collections.unmodifiableList(new ArrayList<>(parametros));
+        }
+
+        /** Asigna los parámetros; los String[] viajan como arreglos varchar. */
+        public void asignarParametros(Connection conexion, PreparedStatement sentencia) throws SQLException {
+            int indice = 1;
+            for (Object parametro : parametros) {
+                if (parametro instanceof String[] arreglo) {
+                    sentencia.setArray(indice++, conexion.createArrayOf("varchar", arreglo));
+                } else if (parametro instanceof Long numero) {
+                    sentencia.setLong(indice++, numero);
+                } else {
+                    sentencia.setString(indice++, (String) parametro);
+                }
+            }
+        }
+    }
+
+    static final String SELECCION = "SELECT arc_id AS id, dir_ruta || arc_base AS path, arc_nombre AS nombre, "
+            + "ext_extension AS extension, arc_tamano AS tamano, "
+            + "arc_fecha_modificacion AS fecha_modificacion, cat_nombre AS categoria "
+            + "FROM Archivo "
+            + "JOIN Directorio ON arc_dir_id = dir_id "
+            + "JOIN Extension ON arc_ext_id = ext_id "
+            + "JOIN Categoria ON arc_cat_id = cat_id";
+
+    private static final String EXISTE_ETIQUETA = "EXISTS (SELECT 1 FROM Etiqueta_Archivo "
+            + "JOIN Etiqueta ON etia_eti_id = eti_id "
+            + "WHERE etia_arc_id = arc_id AND eti_nombre = ?)";
+
+    private static final String EXISTE_PALABRA_CLAVE = "EXISTS (SELECT 1 FROM Archivo_Palabra_clave "
+            + "JOIN Palabra_clave ON arcp_pal_id = pal_id "
+            + "WHERE arcp_arc_id = arc_id AND pal_palabra %s)";
+
+    // Misma expresión que idx_arc_nombre_trgm para que el índice aplique
+    private static final String PREDICADO_NOMBRE = "LOWER(arc_nombre) LIKE ?";
+
+    private CompiladorConsultaBusqueda() {
+    }
+
+    /**
+     * Directorio de la ruta tal como se guarda en dir_ruta: hasta la última
+     * '/' incluida, o "" si no tiene. Igual que directorio_de() en SQL.
+     */
+    static String directorioDe(String ruta) {
+        return ruta.substring(0, ruta.lastIndexOf('/') + 1);
+    }
+
+    /** Último componente de la ruta, como arc_base. Igual que base_de() en SQL. */
+    static String baseDe(String ruta) {
+        return ruta.substring(ruta.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Inicio del rango de dir_ruta que cubre el subárbol de directorio: el
+     * directorio con su '/' final ("/" para la raíz).
+     */
+    static String inicioSubarbol(String directorio) {
+        return directorio.endsWith("/") ? directorio : directorio + "/";
+    }
+
+    /**
+     * Fin (excluido) del rango: '0' es el carácter siguiente a '/', así que
+     * "/var/app0" queda justo después de todo lo que empieza por "/var/app/".
+     */
+    static String finSubarbol(String directorio) {
+        String inicio = inicioSubarbol(directorio);
+        return inicio.substring(0, inicio.length() - 1) + "0";
+    }
+
+    /**
+     * Patrón LIKE de subcadena en minúsculas. Los comodines del texto se
+     * respetan, igual que en sp_buscar_archivos_segun_nombre (la limpieza busca
+     * con "%").
+     */
+    static String patronSubcadena(String texto) {
+        return "%" + texto.toLowerCase(Locale.ROOT) + "%";
+    }
+
+    /** Búsqueda sólo por subcadena del nombre (usa idx_arc_nombre_trgm). */
+    public static ConsultaCompilada compilarPorNombre(String texto, int limite) {
+        return new ConsultaCompilada(SELECCION + " WHERE " + PREDICADO_NOMBRE + " ORDER BY arc_nombre LIMIT ?",
+                List.of(patronSubcadena(texto), (long) limite));
+    }
+
+    /**
+     * Compila una búsqueda por tokens sobre las columnas opcionales
+     * arc_busqueda (nombre) y dir_busqueda (ruta del directorio), separadas en
+     * palabras. Cada token se busca como prefijo: "inf 2024" encuentra
+     * "informe_2024.pdf".
+     *
+     * Un token puede estar en el nombre y otro en el directorio, así que los
+     * candidatos salen de los dos índices GIN con cualquiera de los tokens y
+     * después se exigen todos sobre la unión de ambos vectores.
+     *
+     * @return la consulta, o null si el texto no tiene ningún token utilizable
+     */
+    public static ConsultaCompilada compilarPorTokens(String texto, int limite) {
+        StringBuilder todos = new StringBuilder();
+        StringBuilder alguno = new StringBuilder();
+        for (String token : texto.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (token.isEmpty()) {
+                continue;
+            }
+            if (todos.length() > 0) {
+                todos.append(" & ");
+                alguno.append(" | ");
+            }
+            todos.append(token).append(":*");
+            alguno.append(token).append(":*");
+        }
+        if (todos.length() == 0) {
+            return null;
+        }
+
+        List<Object> parametros = new ArrayList<>();
+        parametros.add(alguno.toString());
+        parametros.add(alguno.toString());
+        parametros.add(todos.toString());
+        parametros.add((long) limite);
+        return new ConsultaCompilada(SELECCION
+                + " WHERE arc_id IN (SELECT arc_id FROM Archivo WHERE arc_busqueda @@ to_tsquery('simple', ?)"
+                + " UNION SELECT arc_id FROM Archivo JOIN Directorio ON arc_dir_id = dir_id"
+                + " WHERE dir_busqueda @@ to_tsquery('simple', ?))"
+                + " AND (arc_busqueda || dir_busqueda) @@ to_tsquery('simple', ?)"
+                + " ORDER BY arc_nombre LIMIT ?", parametros);
+    }
+
+    /**
+     * Compila el filtro. Los criterios son los mismos que aplicaba la cadena
+     * de funciones: un tamaño negativo desactiva el filtro de tamaño y el nombre
+     * se compara con LIKE sin distinguir mayúsculas.
+     */
+    public static ConsultaCompilada compilar(Archivo filtro, long tamanoMinimo, long tamanoMaximo,
+            ModoPalabrasClave modo) {
+        List<String> predicados = new ArrayList<>();
+        List<Object> parametros = new ArrayList<>();
+        agregarPredicados(filtro, tamanoMinimo, tamanoMaximo, modo, predicados, parametros);
+        return new ConsultaCompilada(unir(predicados), parametros);
+    }
+
+    /**
+     * Igual que {@link #compilar} pero devuelve una página ordenada por arc_id
+     * a partir del id siguiente a despuesDeId (paginación por keyset: el costo
+     * no crece con el número de página).
+     *
+     * @param despuesDeId último id de la página anterior, o -1 para la primera
+     * @param limite      filas de la página; 0 o menos para todas
+     */
+    public static ConsultaCompilada compilarPagina(Archivo filtro, long tamanoMinimo, long tamanoMaximo,
+            ModoPalabrasClave modo, long despuesDeId, int limite) {
+        List<String> predicados = new ArrayList<>();
+        List<Object> parametros = new ArrayList<>();
+        agregarPredicados(filtro, tamanoMinimo, tamanoMaximo, modo, predicados, parametros);
+        if (despuesDeId >= 0) {
+            predicados.add("arc_id > ?");
+            parametros.add(despuesDeId);
+        }
+        StringBuilder sql = new StringBuilder(unir(predicados)).append(" ORDER BY arc_id");
+        if (limite > 0) {
+            sql.append(" LIMIT ?");
+            parametros.add((long) limite);
+        }
+        return new ConsultaCompilada(sql.toString(), parametros);
+    }
+
+    private static void agregarPredicados(Archivo filtro, long tamanoMinimo, long tamanoMaximo,
+            ModoPalabrasClave modo, List<String> predicados, List<Object> parametros) {
+        Set<String> palabrasClave = filtro.getPalabrasClave();
+        if (palabrasClave != null) {
+            if (modo == ModoPalabrasClave.ALGUNA) {
+                predicados.add(String.format(EXISTE_PALABRA_CLAVE, "= ANY(?)"));
+                parametros.add(palabrasClave.toArray(new String[0]));
+            } else {
+                for (String palabra : palabrasClave) {
+                    predicados.add(String.format(EXISTE_PALABRA_CLAVE, "= ?"));
+                    parametros.add(palabra);
+                }
+            }
+        }
+        if (filtro.getExtension() != null) {
+            predicados.add("ext_extension = ?");
+            parametros.add(filtro.getExtension());
+        }
+        if (filtro.getRutaCompleta() != null) {
+            // Por separado para que se resuelva con idx_dir_ruta e idx_arc_nombre_completo
+            predicados.add("dir_ruta = ? AND arc_base = ?");
+            parametros.add(directorioDe(filtro.getRutaCompleta()));
+            parametros.add(baseDe(filtro.getRutaCompleta()));
+        }
+        if (filtro.getDirectorioBase() != null) {
+            // Los operadores ~>=~ y ~<~ son los que sirve varchar_pattern_ops
+            predicados.add("dir_ruta ~>=~ ? AND dir_ruta ~<~ ?");
+            parametros.add(inicioSubarbol(filtro.getDirectorioBase()));
+            parametros.add(finSubarbol(filtro.getDirectorioBase()));
+        }
+        if (filtro.getCategoria() != null) {
+            predicados.add("cat_nombre = ?");
+            parametros.add(filtro.getCategoria().getNombre());
+        }
+        List<Etiqueta> etiquetas = filtro.getEtiquetas();
+        if (etiquetas != null && !etiquetas.isEmpty()) {
+            predicados.add(EXISTE_ETIQUETA);
+            parametros.add(etiquetas.get(0).getNombre());
+        }
+        if ((tamanoMinimo >= 0) && (tamanoMaximo >= 0)) {
+            predicados.add("arc_tamano BETWEEN ? AND ?");
+            parametros.add(tamanoMinimo);
+            parametros.add(tamanoMaximo);
+        }
+        if (filtro.getNombre() != null) {
+            predicados.add(PREDICADO_NOMBRE);
+            parametros.add(patronSubcadena(filtro.getNombre()));
+        }
+    }
+
+    private static String unir(List<String> predicados) {
+        StringBuilder sql = new StringBuilder(SELECCION);
+        for (int i = 0; i < predicados.size(); i++) {
+            sql.append(i == 0 ? " WHERE " : " AND ").append(predicados.get(i));
+        }
+        return sql.toString();
+    }
+}
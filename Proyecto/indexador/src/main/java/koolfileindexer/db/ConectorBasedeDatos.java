@@ -1,20 +1,52 @@
 package koolfileindexer.db;
 
+import java.io.IOException;
 import java.sql.Array;
 import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
-public class ConectorBasedeDatos {
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetProvider;
+
+/** {@link AlmacenArchivos} sobre PostgreSQL, con un pool de conexiones. */
+public class ConectorBasedeDatos implements AlmacenArchivos {
     private static volatile ConectorBasedeDatos instancia;
 
     private final String JDBC_URL = "jdbc:postgresql://localhost:5432/KoolFileIndexer";
     private final String USUARIO = "kool_user";
     private final String CONTRASENA = "koolpass";
-    private Connection conexion;
+
+    // Tamaño del pool: por defecto alcanza para los 10 workers del SocketServer
+    // más el recorrido y el escritor de la ingesta
+    private static final int POOL_MINIMO = Integer.getInteger("koolfileindexer.pool.minimo", 1);
+    private static final int POOL_MAXIMO = Integer.getInteger("koolfileindexer.pool.maximo", 12);
+    private static final Duration POOL_ESPERA_MAXIMA = Duration
+            .ofMillis(Long.getLong("koolfileindexer.pool.esperaMs", 10_000));
+    private static final Duration POOL_INACTIVIDAD_MAXIMA = Duration
+            .ofMillis(Long.getLong("koolfileindexer.pool.inactividadMs", 300_000));
+    private static final Duration POOL_VALIDAR_TRAS = Duration
+            .ofMillis(Long.getLong("koolfileindexer.pool.validarTrasMs", 30_000));
+    // Sentencias preparadas que se mantienen por conexión (LRU por texto SQL)
+    private static final int POOL_SENTENCIAS = Integer.getInteger("koolfileindexer.pool.sentenciasPorConexion", 32);
+    // Filas que trae el driver por viaje al recorrer la tabla completa
+    private static final int FILAS_POR_BLOQUE = 5_000;
+
+    private PoolConexiones pool;
+
+    // Búsqueda con una sola sentencia; las funciones sp_buscar_* quedan como
+    // respaldo si la BD no permite el SELECT directo
+    private volatile boolean usarConsultaCompilada = !Boolean.getBoolean("koolfileindexer.busqueda.soloFunciones");
+    private volatile boolean usarBusquedaPorTokens = true;
 
     public static ConectorBasedeDatos obtenerInstancia() {
         ConectorBasedeDatos resultado = instancia;
@@ -30,99 +62,485 @@ public class ConectorBasedeDatos {
         }
     }
 
-    public synchronized Connection obtenerConexion() throws SQLException {
+    /**
+     * Toma una conexión del pool. Quien la pide debe cerrarla para devolverla;
+     * cerrarla no cierra la conexión física.
+     */
+    public Connection obtenerConexion() throws SQLException {
         try {
-            if (conexion == null || conexion.isClosed()) {
-                conexion = DriverManager.getConnection(
-                        JDBC_URL,
-                        USUARIO,
-                        CONTRASENA);
-            }
+            return obtenerPool().obtener();
         } catch (SQLException e) {
             throw new SQLException("Error al obtener la conexión", e);
         }
+    }
+
+    /** Cierra el pool; la próxima operación abre uno nuevo. */
+    public synchronized void terminarConexion() {
+        if (pool != null) {
+            pool.cerrar();
+            pool = null;
+        }
+    }
 
-        return conexion;
+    @Override
+    public String toString() {
+        return "PostgreSQL en " + JDBC_URL;
     }
 
-    public void terminarConexion() {
-        try {
-            if (conexion != null && !conexion.isClosed()) {
-                conexion.close();
+    @Override
+    public void cerrar() {
+        terminarConexion();
+    }
+
+    @Override
+    public void verificar() throws SQLException {
+        try (Connection conexion = obtenerConexion()) {
+            if (conexion == null || conexion.isClosed()) {
+                throw new SQLException("No se pudo establecer la conexión a la base de datos");
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
         }
     }
 
-    public void crearArchivo(Archivo nuevoArchivo) throws SQLException {
-        CallableStatement sentenciaEjecutable = null;
-        final String stringComandoSql = "{CALL sp_crear_archivo(?, ?, ?, ?, ?, ?)}";
+    @Override
+    public int getCapacidad() {
+        return getCapacidadPool();
+    }
 
-        obtenerConexion();
+    /**
+     * Conexiones que el pool presta a la vez. Con el SocketServer en hilos
+     * virtuales sirve para acotar los requests concurrentes a lo que la BD
+     * puede atender en vez de a una cantidad de hilos.
+     */
+    public int getCapacidadPool() {
+        return Math.max(POOL_MINIMO, POOL_MAXIMO);
+    }
 
-        sentenciaEjecutable = conexion.prepareCall(
-                stringComandoSql,
-                ResultSet.TYPE_SCROLL_INSENSITIVE,
-                ResultSet.CONCUR_READ_ONLY);
+    /** @return métricas del pool (activas, inactivas, tiempo de espera), o null si no se abrió. */
+    @Override
+    public synchronized PoolConexiones.Metricas obtenerMetricasPool() {
+        return pool == null ? null : pool.getMetricas();
+    }
 
-        sentenciaEjecutable.setString(1, nuevoArchivo.getNombre());
-        sentenciaEjecutable.setLong(2, nuevoArchivo.getTamanoBytes());
+    private synchronized PoolConexiones obtenerPool() {
+        if (pool == null || pool.estaCerrado()) {
+            pool = PoolConexiones.abrir(
+                    () -> DriverManager.getConnection(JDBC_URL, USUARIO, CONTRASENA),
+                    POOL_MINIMO,
+                    getCapacidadPool(),
+                    POOL_ESPERA_MAXIMA,
+                    POOL_INACTIVIDAD_MAXIMA,
+                    POOL_VALIDAR_TRAS,
+                    Math.max(0, POOL_SENTENCIAS));
+        }
+        return pool;
+    }
 
-        java.sql.Date fechaModificacionParaSql = java.sql.Date.valueOf(
-                nuevoArchivo.getFechaModificacion().toLocalDate());
-        sentenciaEjecutable.setDate(3, fechaModificacionParaSql);
+    public void crearArchivo(Archivo nuevoArchivo) throws SQLException {
+        final String stringComandoSql = "{CALL sp_crear_archivo(?, ?, ?, ?, ?, ?)}";
+        try (Connection conexion = obtenerConexion();
+                CallableStatement sentenciaEjecutable = conexion.prepareCall(
+                        stringComandoSql,
+                        ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY)) {
+            sentenciaEjecutable.setString(1, nuevoArchivo.getNombre());
+            sentenciaEjecutable.setLong(2, nuevoArchivo.getTamanoBytes());
+
+            java.sql.Date fechaModificacionParaSql = java.sql.Date.valueOf(
+                    nuevoArchivo.getFechaModificacion().toLocalDate());
+            sentenciaEjecutable.setDate(3, fechaModificacionParaSql);
+
+            sentenciaEjecutable.setString(4, nuevoArchivo.getRutaCompleta());
+            sentenciaEjecutable.setString(5, nuevoArchivo.getExtension());
+            sentenciaEjecutable.setString(6, nuevoArchivo.getCategoria().getNombre());
+
+            sentenciaEjecutable.execute();
+        }
+    }
 
-        sentenciaEjecutable.setString(4, nuevoArchivo.getRutaCompleta());
-        sentenciaEjecutable.setString(5, nuevoArchivo.getExtension());
-        sentenciaEjecutable.setString(6, nuevoArchivo.getCategoria().getNombre());
+    /**
+     * Inserta o actualiza un lote de archivos en un solo viaje a la BD.
+     * Los datos viajan como arreglos paralelos y sp_ingestar_lote_archivos
+     * hace un único upsert basado en conjuntos sobre Archivo, marcando los
+     * archivos como vistos en la generación dada.
+     *
+     * @return cantidad de filas insertadas o modificadas
+     */
+    public int ingestarLoteArchivos(List<? extends Archivo> lote, long generacion) throws SQLException {
+        if (lote.isEmpty()) {
+            return 0;
+        }
+        final String stringComandoSql = "{? = CALL sp_ingestar_lote_archivos(?, ?, ?, ?, ?, ?, ?, ?)}";
+        int cantidad = lote.size();
+        String[] nombres = new String[cantidad];
+        Long[] tamanos = new Long[cantidad];
+        java.sql.Date[] fechasModificacion = new java.sql.Date[cantidad];
+        String[] ubicaciones = new String[cantidad];
+        String[] extensiones = new String[cantidad];
+        String[] categorias = new String[cantidad];
+        String[] claves = new String[cantidad];
+
+        for (int i = 0; i < cantidad; i++) {
+            Archivo archivo = lote.get(i);
+            nombres[i] = archivo.getNombre();
+            tamanos[i] = archivo.getTamanoBytes();
+            fechasModificacion[i] = java.sql.Date.valueOf(archivo.getFechaModificacion().toLocalDate());
+            ubicaciones[i] = archivo.getRutaCompleta();
+            extensiones[i] = archivo.getExtension();
+            categorias[i] = archivo.getCategoria().getNombre();
+            claves[i] = archivo.getClaveArchivo();
+        }
 
-        sentenciaEjecutable.execute();
+        try (Connection conexion = obtenerConexion();
+                CallableStatement sentenciaEjecutable = conexion.prepareCall(
+                        stringComandoSql,
+                        ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY)) {
+            sentenciaEjecutable.registerOutParameter(1, Types.INTEGER);
+            sentenciaEjecutable.setArray(2, conexion.createArrayOf("varchar", nombres));
+            sentenciaEjecutable.setArray(3, conexion.createArrayOf("bigint", tamanos));
+            sentenciaEjecutable.setArray(4, conexion.createArrayOf("date", fechasModificacion));
+            sentenciaEjecutable.setArray(5, conexion.createArrayOf("varchar", ubicaciones));
+            sentenciaEjecutable.setArray(6, conexion.createArrayOf("varchar", extensiones));
+            sentenciaEjecutable.setArray(7, conexion.createArrayOf("varchar", categorias));
+            sentenciaEjecutable.setLong(8, generacion);
+            sentenciaEjecutable.setArray(9, conexion.createArrayOf("varchar", claves));
+
+            sentenciaEjecutable.execute();
+            return sentenciaEjecutable.getInt(1);
+        }
     }
 
     public void asociarPalabraClaveArchivo(
             Archivo archivoParaModificar,
             String nuevaPalabraClave) throws SQLException {
-        CallableStatement sentenciaEjecutable = null;
         final String stringComandoSql = "{CALL sp_asociar_palabra_clave_archivo (?, ?, ?, ?)}";
-
-        obtenerConexion();
-
-        sentenciaEjecutable = conexion.prepareCall(
-                stringComandoSql,
-                ResultSet.TYPE_SCROLL_INSENSITIVE,
-                ResultSet.CONCUR_READ_ONLY);
-
-        sentenciaEjecutable.setString(1, archivoParaModificar.getRutaCompleta());
-        sentenciaEjecutable.setString(2, archivoParaModificar.getNombre());
-        sentenciaEjecutable.setString(3, archivoParaModificar.getExtension());
-        sentenciaEjecutable.setString(4, nuevaPalabraClave);
-
-        sentenciaEjecutable.execute();
+        try (Connection conexion = obtenerConexion();
+                CallableStatement sentenciaEjecutable = conexion.prepareCall(
+                        stringComandoSql,
+                        ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY)) {
+            sentenciaEjecutable.setString(1, archivoParaModificar.getRutaCompleta());
+            sentenciaEjecutable.setString(2, archivoParaModificar.getNombre());
+            sentenciaEjecutable.setString(3, archivoParaModificar.getExtension());
+            sentenciaEjecutable.setString(4, nuevaPalabraClave);
+
+            sentenciaEjecutable.execute();
+        }
     }
 
     public void asociarEtiquetaArchivo(
             Archivo archivoParaModificar,
             String nuevaEtiqueta) throws SQLException {
-        CallableStatement sentenciaEjecutable = null;
         final String stringComandoSql = "{CALL sp_asociar_etiqueta_archivo (?, ?, ?, ?)}";
+        try (Connection conexion = obtenerConexion();
+                CallableStatement sentenciaEjecutable = conexion.prepareCall(
+                        stringComandoSql,
+                        ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY)) {
+            sentenciaEjecutable.setString(1, archivoParaModificar.getRutaCompleta());
+            sentenciaEjecutable.setString(2, archivoParaModificar.getNombre());
+            sentenciaEjecutable.setString(3, archivoParaModificar.getExtension());
+            sentenciaEjecutable.setString(4, nuevaEtiqueta);
+
+            sentenciaEjecutable.execute();
+        }
+    }
 
-        obtenerConexion();
+    public ResultSet buscarArchivosPorFiltroVariasPalabrasClaveMismoArchivo(
+            Archivo archivoFiltro,
+            long tamanoMinimo,
+            long tamanoMaximo) throws SQLException {
 
-        sentenciaEjecutable = conexion.prepareCall(
-                stringComandoSql,
-                ResultSet.TYPE_SCROLL_INSENSITIVE,
-                ResultSet.CONCUR_READ_ONLY);
+        if (usarConsultaCompilada) {
+            try {
+                return buscarConConsultaCompilada(CompiladorConsultaBusqueda.compilar(
+                        archivoFiltro, tamanoMinimo, tamanoMaximo,
+                        CompiladorConsultaBusqueda.ModoPalabrasClave.TODAS));
+            } catch (SQLException e) {
+                registrarFalloConsultaCompilada(e);
+            }
+        }
+        return buscarConFuncionesVariasPalabrasClaveMismoArchivo(archivoFiltro, tamanoMinimo, tamanoMaximo);
+    }
+
+    public ResultSet buscarArchivosPorFiltroMinimoUnaPalabraClave(
+            Archivo archivoFiltro,
+            long tamanoMinimo,
+            long tamanoMaximo) throws SQLException {
+
+        if (usarConsultaCompilada) {
+            try {
+                return buscarConConsultaCompilada(CompiladorConsultaBusqueda.compilar(
+                        archivoFiltro, tamanoMinimo, tamanoMaximo,
+                        CompiladorConsultaBusqueda.ModoPalabrasClave.ALGUNA));
+            } catch (SQLException e) {
+                registrarFalloConsultaCompilada(e);
+            }
+        }
+        return buscarConFuncionesMinimoUnaPalabraClave(archivoFiltro, tamanoMinimo, tamanoMaximo);
+    }
 
-        sentenciaEjecutable.setString(1, archivoParaModificar.getRutaCompleta());
-        sentenciaEjecutable.setString(2, archivoParaModificar.getNombre());
-        sentenciaEjecutable.setString(3, archivoParaModificar.getExtension());
-        sentenciaEjecutable.setString(4, nuevaEtiqueta);
+    /**
+     * Búsqueda por tokens y prefijos sobre nombre y ruta, usando la columna
+     * opcional arc_busqueda (ver search_indexes.sql). Si la BD no tiene esa
+     * columna se busca el texto completo como subcadena del nombre.
+     */
+    public ResultSet buscarArchivosPorTokens(String texto, int limite) throws SQLException {
+        CompiladorConsultaBusqueda.ConsultaCompilada consulta = CompiladorConsultaBusqueda
+                .compilarPorTokens(texto, limite);
+        if (consulta != null && usarBusquedaPorTokens) {
+            try {
+                return buscarConConsultaCompilada(consulta);
+            } catch (SQLException e) {
+                // 42703: columna inexistente, la migración opcional no se aplicó
+                if (!"42703".equals(e.getSQLState())) {
+                    throw e;
+                }
+                usarBusquedaPorTokens = false;
+                System.err.println("[DB] arc_busqueda no existe, la búsqueda por tokens usa LIKE sobre el nombre");
+            }
+        }
+        return buscarConConsultaCompilada(CompiladorConsultaBusqueda.compilarPorNombre(texto, limite));
+    }
 
-        sentenciaEjecutable.execute();
+    /** Permite comparar ambos caminos de búsqueda (benchmarks y pruebas). */
+    void setUsarConsultaCompilada(boolean usar) {
+        usarConsultaCompilada = usar;
     }
 
-    public ResultSet buscarArchivosPorFiltroVariasPalabrasClaveMismoArchivo(
+    private ResultSet buscarConConsultaCompilada(
+            CompiladorConsultaBusqueda.ConsultaCompilada consulta) throws SQLException {
+        try (Connection conexion = obtenerConexion();
+                PreparedStatement sentencia = conexion.prepareStatement(
+                        consulta.sql(),
+                        ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY)) {
+            consulta.asignarParametros(conexion, sentencia);
+            try (ResultSet resultado = sentencia.executeQuery()) {
+                CachedRowSet filas = RowSetProvider.newFactory().createCachedRowSet();
+                filas.populate(resultado);
+                return filas;
+            }
+        }
+    }
+
+    /**
+     * Busca con el filtro y entrega las filas en orden de arc_id a partir de
+     * despuesDeId, sin materializarlas: el driver las trae en bloques y cada
+     * una pasa al consumidor en cuanto llega.
+     *
+     * Con las funciones sp_buscar_* como respaldo no hay forma de paginar en
+     * la BD, así que se ordena y recorta en memoria. Sólo se recurre a ellas
+     * si la consulta compilada no se puede ejecutar en esta BD; un error
+     * después de entregar filas se propaga, para no repetirlas.
+     *
+     * @param despuesDeId último id entregado antes, o -1 para empezar
+     * @param limite      máximo de filas; 0 o menos para todas
+     * @return cuántas filas se entregaron
+     */
+    public int recorrerBusquedaPaginada(Archivo archivoFiltro, long tamanoMinimo, long tamanoMaximo,
+            CompiladorConsultaBusqueda.ModoPalabrasClave modo, long despuesDeId, int limite,
+            ConsumidorFila consumidor) throws SQLException, IOException {
+        if (usarConsultaCompilada) {
+            CompiladorConsultaBusqueda.ConsultaCompilada consulta = CompiladorConsultaBusqueda.compilarPagina(
+                    archivoFiltro, tamanoMinimo, tamanoMaximo, modo, despuesDeId, limite);
+            try (Connection conexion = obtenerConexion()) {
+                conexion.setAutoCommit(false);
+                try (PreparedStatement sentencia = conexion.prepareStatement(
+                        consulta.sql(),
+                        ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY)) {
+                    sentencia.setFetchSize(FILAS_POR_BLOQUE);
+                    consulta.asignarParametros(conexion, sentencia);
+                    try (ResultSet rs = ejecutarConsultaCompilada(sentencia)) {
+                        if (rs != null) {
+                            int entregadas = 0;
+                            while (rs.next()) {
+                                consumidor.aceptar(rs);
+                                entregadas++;
+                            }
+                            return entregadas;
+                        }
+                    }
+                }
+            }
+        }
+
+        try (ResultSet rs = modo == CompiladorConsultaBusqueda.ModoPalabrasClave.ALGUNA
+                ? buscarConFuncionesMinimoUnaPalabraClave(archivoFiltro, tamanoMinimo, tamanoMaximo)
+                : buscarConFuncionesVariasPalabrasClaveMismoArchivo(archivoFiltro, tamanoMinimo, tamanoMaximo)) {
+            List<long[]> idsPorFila = new ArrayList<>();
+            while (rs.next()) {
+                long id = rs.getLong("id");
+                if (id > despuesDeId) {
+                    idsPorFila.add(new long[] { id, rs.getRow() });
+                }
+            }
+            idsPorFila.sort((a, b) -> Long.compare(a[0], b[0]));
+            int entregadas = 0;
+            for (long[] idYFila : idsPorFila) {
+                if (limite > 0 && entregadas == limite) {
+                    break;
+                }
+                rs.absolute((int) idYFila[1]);
+                consumidor.aceptar(rs);
+                entregadas++;
+            }
+            return entregadas;
+        }
+    }
+
+    /**
+     * Recorre todos los archivos indexados sin materializarlos: con autocommit
+     * desactivado el driver trae las filas en bloques de FILAS_POR_BLOQUE.
+     */
+    public void recorrerArchivos(ConsumidorArchivo consumidor) throws SQLException {
+        try (Connection conexion = obtenerConexion()) {
+            conexion.setAutoCommit(false);
+            try (PreparedStatement sentencia = conexion.prepareStatement(
+                    "SELECT dir_ruta || arc_base, arc_tamano, arc_fecha_modificacion "
+                            + "FROM Archivo JOIN Directorio ON arc_dir_id = dir_id",
+                    ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY)) {
+                sentencia.setFetchSize(FILAS_POR_BLOQUE);
+                try (ResultSet rs = sentencia.executeQuery()) {
+                    while (rs.next()) {
+                        Timestamp fecha = rs.getTimestamp(3);
+                        consumidor.aceptar(rs.getString(1), rs.getLong(2),
+                                fecha != null ? fecha.toLocalDateTime() : null);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Como {@link #recorrerArchivos} pero sólo los archivos que están debajo de
+     * directorio (a cualquier profundidad): el rango de sus subdirectorios en
+     * idx_dir_ruta y, por cada uno, sus archivos.
+     */
+    public void recorrerArchivosBajo(String directorio, ConsumidorArchivo consumidor) throws SQLException {
+        try (Connection conexion = obtenerConexion()) {
+            conexion.setAutoCommit(false);
+            try (PreparedStatement sentencia = conexion.prepareStatement(
+                    "SELECT dir_ruta || arc_base, arc_tamano, arc_fecha_modificacion "
+                            + "FROM Directorio JOIN Archivo ON arc_dir_id = dir_id "
+                            + "WHERE dir_ruta ~>=~ ? AND dir_ruta ~<~ ?",
+                    ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY)) {
+                // '0' sigue a '/': el rango es todo lo que empieza con directorio + "/"
+                sentencia.setString(1, directorio + "/");
+                sentencia.setString(2, directorio + "0");
+                sentencia.setFetchSize(FILAS_POR_BLOQUE);
+                try (ResultSet rs = sentencia.executeQuery()) {
+                    while (rs.next()) {
+                        Timestamp fecha = rs.getTimestamp(3);
+                        consumidor.aceptar(rs.getString(1), rs.getLong(2),
+                                fecha != null ? fecha.toLocalDateTime() : null);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Clave y ruta de los archivos con clave debajo de directorio, con el
+     * mismo rango que {@link #recorrerArchivosBajo}.
+     */
+    public void recorrerClavesBajo(String directorio, ConsumidorClave consumidor) throws SQLException {
+        try (Connection conexion = obtenerConexion()) {
+            conexion.setAutoCommit(false);
+            try (PreparedStatement sentencia = conexion.prepareStatement(
+                    "SELECT arc_clave, dir_ruta || arc_base "
+                            + "FROM Directorio JOIN Archivo ON arc_dir_id = dir_id "
+                            + "WHERE dir_ruta ~>=~ ? AND dir_ruta ~<~ ? AND arc_clave IS NOT NULL",
+                    ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY)) {
+                sentencia.setString(1, directorio + "/");
+                sentencia.setString(2, directorio + "0");
+                sentencia.setFetchSize(FILAS_POR_BLOQUE);
+                try (ResultSet rs = sentencia.executeQuery()) {
+                    while (rs.next()) {
+                        consumidor.aceptar(rs.getString(1), rs.getString(2));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Como {@link #recorrerArchivos} pero sólo los archivos que están
+     * directamente en alguno de los directorios dados (no en sus
+     * subdirectorios).
+     */
+    public void recorrerArchivosEnDirectorios(List<String> directorios, ConsumidorArchivo consumidor)
+            throws SQLException {
+        String[] padres = new String[directorios.size()];
+        for (int i = 0; i < padres.length; i++) {
+            String directorio = directorios.get(i);
+            // dir_ruta lleva la '/' final; la raíz "/" ya la tiene
+            padres[i] = directorio.endsWith("/") ? directorio : directorio + "/";
+        }
+        try (Connection conexion = obtenerConexion()) {
+            conexion.setAutoCommit(false);
+            try (PreparedStatement sentencia = conexion.prepareStatement(
+                    "SELECT dir_ruta || arc_base, arc_tamano, arc_fecha_modificacion "
+                            + "FROM Directorio JOIN Archivo ON arc_dir_id = dir_id "
+                            + "WHERE dir_ruta = ANY (?)",
+                    ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY)) {
+                sentencia.setArray(1, conexion.createArrayOf("varchar", padres));
+                sentencia.setFetchSize(FILAS_POR_BLOQUE);
+                try (ResultSet rs = sentencia.executeQuery()) {
+                    while (rs.next()) {
+                        Timestamp fecha = rs.getTimestamp(3);
+                        consumidor.aceptar(rs.getString(1), rs.getLong(2),
+                                fecha != null ? fecha.toLocalDateTime() : null);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Ejecuta la consulta compilada de una página.
+     *
+     * @return las filas, o null si esta BD no admite la consulta compilada y
+     *         hay que usar las funciones
+     */
+    private ResultSet ejecutarConsultaCompilada(PreparedStatement sentencia) throws SQLException {
+        try {
+            return sentencia.executeQuery();
+        } catch (SQLException e) {
+            if (!consultaCompiladaNoDisponible(e)) {
+                throw e;
+            }
+            registrarFalloConsultaCompilada(e);
+            return null;
+        }
+    }
+
+    /** Sin permisos sobre las tablas (42501) o sin las tablas esperadas (42P01). */
+    private static boolean consultaCompiladaNoDisponible(SQLException e) {
+        return "42501".equals(e.getSQLState()) || "42P01".equals(e.getSQLState());
+    }
+
+    /**
+     * Sin permisos sobre las tablas o sin las tablas esperadas no tiene
+     * sentido reintentar: se pasa a usar sólo las funciones.
+     */
+    private void registrarFalloConsultaCompilada(SQLException e) {
+        if (consultaCompiladaNoDisponible(e)) {
+            usarConsultaCompilada = false;
+            System.err.println("[DB] Búsqueda compilada desactivada, se usan las funciones sp_buscar_*: "
+                    + e.getMessage());
+        } else {
+            System.err.println("[DB] Falló la búsqueda compilada, se reintenta con las funciones: "
+                    + e.getMessage());
+        }
+    }
+
+    private ResultSet buscarConFuncionesVariasPalabrasClaveMismoArchivo(
             Archivo archivoFiltro,
             long tamanoMinimo,
             long tamanoMaximo) throws SQLException {
@@ -140,33 +558,36 @@ public class ConectorBasedeDatos {
             }
         }
 
-        CallableStatement sentenciaEjecutable = generarSentenciaEjecutableParaBuscarArchivos(
-                archivoFiltro,
-                tamanoMinimo,
-                tamanoMaximo,
-                esPrimerComando,
-                consultaSQLDinamica);
-
-        int indiceParametro = 1;
-
-        if (archivoFiltro.getPalabrasClave() != null) {
-            Iterator<String> iteradorPalabrasClave = archivoFiltro.getPalabrasClave().iterator();
-            while (iteradorPalabrasClave.hasNext()) {
-                sentenciaEjecutable.setString(
-                        indiceParametro++,
-                        iteradorPalabrasClave.next());
+        try (Connection conexion = obtenerConexion();
+                CallableStatement sentenciaEjecutable = generarSentenciaEjecutableParaBuscarArchivos(
+                        conexion,
+                        archivoFiltro,
+                        tamanoMinimo,
+                        tamanoMaximo,
+                        esPrimerComando,
+                        consultaSQLDinamica)) {
+
+            int indiceParametro = 1;
+
+            if (archivoFiltro.getPalabrasClave() != null) {
+                Iterator<String> iteradorPalabrasClave = archivoFiltro.getPalabrasClave().iterator();
+                while (iteradorPalabrasClave.hasNext()) {
+                    sentenciaEjecutable.setString(
+                            indiceParametro++,
+                            iteradorPalabrasClave.next());
+                }
             }
-        }
 
-        return ejecutarConsultaSQLParaBuscarArchivos(
-                archivoFiltro,
-                tamanoMinimo,
-                tamanoMaximo,
-                sentenciaEjecutable,
-                indiceParametro);
+            return ejecutarConsultaSQLParaBuscarArchivos(
+                    archivoFiltro,
+                    tamanoMinimo,
+                    tamanoMaximo,
+                    sentenciaEjecutable,
+                    indiceParametro);
+        }
     }
 
-    public ResultSet buscarArchivosPorFiltroMinimoUnaPalabraClave(
+    private ResultSet buscarConFuncionesMinimoUnaPalabraClave(
             Archivo archivoFiltro,
             long tamanoMinimo,
             long tamanoMaximo) throws SQLException {
@@ -180,33 +601,37 @@ public class ConectorBasedeDatos {
             esPrimerComando = false;
         }
 
-        CallableStatement sentenciaEjecutable = generarSentenciaEjecutableParaBuscarArchivos(
-                archivoFiltro,
-                tamanoMinimo,
-                tamanoMaximo,
-                esPrimerComando,
-                consultaSQLDinamica);
-
-        int indiceParametro = 1;
+        try (Connection conexion = obtenerConexion();
+                CallableStatement sentenciaEjecutable = generarSentenciaEjecutableParaBuscarArchivos(
+                        conexion,
+                        archivoFiltro,
+                        tamanoMinimo,
+                        tamanoMaximo,
+                        esPrimerComando,
+                        consultaSQLDinamica)) {
+
+            int indiceParametro = 1;
+
+            if (archivoFiltro.getPalabrasClave() != null) {
+                Array palabras_clave = conexion.createArrayOf(
+                        "varchar",
+                        archivoFiltro.getPalabrasClave().toArray());
+                sentenciaEjecutable.setArray(
+                        indiceParametro++,
+                        palabras_clave);
+            }
 
-        if (archivoFiltro.getPalabrasClave() != null) {
-            Array palabras_clave = conexion.createArrayOf(
-                    "varchar",
-                    archivoFiltro.getPalabrasClave().toArray());
-            sentenciaEjecutable.setArray(
-                    indiceParametro++,
-                    palabras_clave);
+            return ejecutarConsultaSQLParaBuscarArchivos(
+                    archivoFiltro,
+                    tamanoMinimo,
+                    tamanoMaximo,
+                    sentenciaEjecutable,
+                    indiceParametro);
         }
-
-        return ejecutarConsultaSQLParaBuscarArchivos(
-                archivoFiltro,
-                tamanoMinimo,
-                tamanoMaximo,
-                sentenciaEjecutable,
-                indiceParametro);
     }
 
     private CallableStatement generarSentenciaEjecutableParaBuscarArchivos(
+            Connection conexion,
             Archivo archivoFiltro,
             long tamanoMinimo,
             long tamanoMaximo,
@@ -223,6 +648,11 @@ public class ConectorBasedeDatos {
             consultaSQLDinamica += "sp_buscar_archivos_segun_ubicacion (?) ";
             esPrimerComando = false;
         }
+        if (archivoFiltro.getDirectorioBase() != null) {
+            consultaSQLDinamica += esPrimerComando ? "" : "INTERSECT SELECT * FROM ";
+            consultaSQLDinamica += "sp_buscar_archivos_bajo_directorio (?) ";
+            esPrimerComando = false;
+        }
         if (archivoFiltro.getCategoria() != null) {
             consultaSQLDinamica += esPrimerComando ? "" : "INTERSECT SELECT * FROM ";
             consultaSQLDinamica += "sp_buscar_archivos_segun_categoria (?) ";
@@ -244,11 +674,9 @@ public class ConectorBasedeDatos {
             esPrimerComando = false;
         }
 
-        obtenerConexion();
-
         return conexion.prepareCall(
                 consultaSQLDinamica,
-                ResultSet.TYPE_SCROLL_INSENSITIVE,
+                ResultSet.TYPE_FORWARD_ONLY,
                 ResultSet.CONCUR_READ_ONLY);
     }
 
@@ -269,6 +697,11 @@ public class ConectorBasedeDatos {
                     indiceParametro++,
                     archivoFiltro.getRutaCompleta());
         }
+        if (archivoFiltro.getDirectorioBase() != null) {
+            sentenciaEjecutable.setString(
+                    indiceParametro++,
+                    archivoFiltro.getDirectorioBase());
+        }
         if (archivoFiltro.getCategoria() != null) {
             sentenciaEjecutable.setString(
                     indiceParametro++,
@@ -289,204 +722,248 @@ public class ConectorBasedeDatos {
                     archivoFiltro.getNombre());
         }
 
-        return sentenciaEjecutable.executeQuery();
+        // Se materializa el resultado para devolver la conexión al pool en
+        // cuanto termina la consulta, sin depender de que quien llama cierre rs
+        try (ResultSet resultado = sentenciaEjecutable.executeQuery()) {
+            CachedRowSet filas = RowSetProvider.newFactory().createCachedRowSet();
+            filas.populate(resultado);
+            return filas;
+        }
     }
 
     public void actualizarUbicacionConNombreNuevo(
             String viejaUbicacion,
             String nuevaUbicacion) throws SQLException {
-        CallableStatement sentenciaEjecutable = null;
         final String stringComandoSql = "{CALL sp_actualizar_nombre_ubicacion (?, ?)}";
+        try (Connection conexion = obtenerConexion();
+                CallableStatement sentenciaEjecutable = conexion.prepareCall(
+                        stringComandoSql,
+                        ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY)) {
+            sentenciaEjecutable.setString(1, viejaUbicacion);
+            sentenciaEjecutable.setString(2, nuevaUbicacion);
+
+            sentenciaEjecutable.execute();
+        }
+    }
 
-        obtenerConexion();
-
-        sentenciaEjecutable = conexion.prepareCall(
-                stringComandoSql,
-                ResultSet.TYPE_SCROLL_INSENSITIVE,
-                ResultSet.CONCUR_READ_ONLY);
-
-        sentenciaEjecutable.setString(1, viejaUbicacion);
-        sentenciaEjecutable.setString(2, nuevaUbicacion);
-
-        sentenciaEjecutable.execute();
+    public int moverArchivo(String viejaUbicacion, Archivo archivoMovido) throws SQLException {
+        final String stringComandoSql = "{? = CALL sp_mover_archivo (?, ?, ?, ?)}";
+        try (Connection conexion = obtenerConexion();
+                CallableStatement sentenciaEjecutable = conexion.prepareCall(
+                        stringComandoSql,
+                        ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY)) {
+            sentenciaEjecutable.registerOutParameter(1, Types.INTEGER);
+            sentenciaEjecutable.setString(2, viejaUbicacion);
+            sentenciaEjecutable.setString(3, archivoMovido.getRutaCompleta());
+            sentenciaEjecutable.setString(4, archivoMovido.getNombre());
+            sentenciaEjecutable.setString(5, archivoMovido.getExtension());
+
+            sentenciaEjecutable.execute();
+            return sentenciaEjecutable.getInt(1);
+        }
     }
 
     public void actualizarUbicacionArchivo(
             Archivo archivoParaModificar,
             String viejaUbicacion) throws SQLException {
-        CallableStatement sentenciaEjecutable = null;
         final String stringComandoSql = "{CALL sp_actualizar_archivo_con_nueva_ubicacion (?, ?, ?, ?)}";
-
-        obtenerConexion();
-
-        sentenciaEjecutable = conexion.prepareCall(
-                stringComandoSql,
-                ResultSet.TYPE_SCROLL_INSENSITIVE,
-                ResultSet.CONCUR_READ_ONLY);
-
-        sentenciaEjecutable.setString(1, viejaUbicacion);
-        sentenciaEjecutable.setString(2, archivoParaModificar.getNombre());
-        sentenciaEjecutable.setString(3, archivoParaModificar.getExtension());
-        sentenciaEjecutable.setString(4, archivoParaModificar.getRutaCompleta());
-
-        sentenciaEjecutable.execute();
+        try (Connection conexion = obtenerConexion();
+                CallableStatement sentenciaEjecutable = conexion.prepareCall(
+                        stringComandoSql,
+                        ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY)) {
+            sentenciaEjecutable.setString(1, viejaUbicacion);
+            sentenciaEjecutable.setString(2, archivoParaModificar.getNombre());
+            sentenciaEjecutable.setString(3, archivoParaModificar.getExtension());
+            sentenciaEjecutable.setString(4, archivoParaModificar.getRutaCompleta());
+
+            sentenciaEjecutable.execute();
+        }
     }
 
     public void actualizarNombreArchivo(
             Archivo archivoParaModificar,
             String viejo_nombre) throws SQLException {
-        CallableStatement sentenciaEjecutable = null;
         final String stringComandoSql = "{CALL sp_actualizar_nombre_archivo (?, ?, ?, ?)}";
-
-        obtenerConexion();
-
-        sentenciaEjecutable = conexion.prepareCall(
-                stringComandoSql,
-                ResultSet.TYPE_SCROLL_INSENSITIVE,
-                ResultSet.CONCUR_READ_ONLY);
-
-        sentenciaEjecutable.setString(1, archivoParaModificar.getRutaCompleta());
-        sentenciaEjecutable.setString(2, viejo_nombre);
-        sentenciaEjecutable.setString(3, archivoParaModificar.getExtension());
-        sentenciaEjecutable.setString(4, archivoParaModificar.getNombre());
-
-        sentenciaEjecutable.execute();
+        try (Connection conexion = obtenerConexion();
+                CallableStatement sentenciaEjecutable = conexion.prepareCall(
+                        stringComandoSql,
+                        ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY)) {
+            sentenciaEjecutable.setString(1, archivoParaModificar.getRutaCompleta());
+            sentenciaEjecutable.setString(2, viejo_nombre);
+            sentenciaEjecutable.setString(3, archivoParaModificar.getExtension());
+            sentenciaEjecutable.setString(4, archivoParaModificar.getNombre());
+
+            sentenciaEjecutable.execute();
+        }
     }
 
     public void actualizarTamanoFechaModificacionArchivo(
             Archivo archivoParaModificar) throws SQLException {
-        CallableStatement sentenciaEjecutable = null;
         final String stringComandoSql = "{CALL sp_actualizar_tamano_fecha_modificacion_archivo (?, ?, ?, ?, ?)}";
-
-        obtenerConexion();
-
-        sentenciaEjecutable = conexion.prepareCall(
-                stringComandoSql,
-                ResultSet.TYPE_SCROLL_INSENSITIVE,
-                ResultSet.CONCUR_READ_ONLY);
-
-        sentenciaEjecutable.setString(1, archivoParaModificar.getRutaCompleta());
-        sentenciaEjecutable.setString(2, archivoParaModificar.getNombre());
-        sentenciaEjecutable.setString(3, archivoParaModificar.getExtension());
-        sentenciaEjecutable.setLong(4, archivoParaModificar.getTamanoBytes());
-
-        java.sql.Date fechaModificacionParaSql = java.sql.Date.valueOf(
-                archivoParaModificar.getFechaModificacion().toLocalDate());
-        sentenciaEjecutable.setDate(5, fechaModificacionParaSql);
-
-        sentenciaEjecutable.execute();
+        try (Connection conexion = obtenerConexion();
+                CallableStatement sentenciaEjecutable = conexion.prepareCall(
+                        stringComandoSql,
+                        ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY)) {
+            sentenciaEjecutable.setString(1, archivoParaModificar.getRutaCompleta());
+            sentenciaEjecutable.setString(2, archivoParaModificar.getNombre());
+            sentenciaEjecutable.setString(3, archivoParaModificar.getExtension());
+            sentenciaEjecutable.setLong(4, archivoParaModificar.getTamanoBytes());
+
+            java.sql.Date fechaModificacionParaSql = java.sql.Date.valueOf(
+                    archivoParaModificar.getFechaModificacion().toLocalDate());
+            sentenciaEjecutable.setDate(5, fechaModificacionParaSql);
+
+            sentenciaEjecutable.execute();
+        }
     }
 
     public void actualizarCategoriaArchivo(
             Archivo archivoParaModificar) throws SQLException {
-        CallableStatement sentenciaEjecutable = null;
         final String stringComandoSql = "{CALL sp_actualizar_categoria_archivo (?, ?, ?, ?)}";
-
-        obtenerConexion();
-
-        sentenciaEjecutable = conexion.prepareCall(
-                stringComandoSql,
-                ResultSet.TYPE_SCROLL_INSENSITIVE,
-                ResultSet.CONCUR_READ_ONLY);
-
-        sentenciaEjecutable.setString(1, archivoParaModificar.getRutaCompleta());
-        sentenciaEjecutable.setString(2, archivoParaModificar.getNombre());
-        sentenciaEjecutable.setString(3, archivoParaModificar.getExtension());
-        sentenciaEjecutable.setString(4, archivoParaModificar.getCategoria().getNombre());
-
-        sentenciaEjecutable.execute();
+        try (Connection conexion = obtenerConexion();
+                CallableStatement sentenciaEjecutable = conexion.prepareCall(
+                        stringComandoSql,
+                        ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY)) {
+            sentenciaEjecutable.setString(1, archivoParaModificar.getRutaCompleta());
+            sentenciaEjecutable.setString(2, archivoParaModificar.getNombre());
+            sentenciaEjecutable.setString(3, archivoParaModificar.getExtension());
+            sentenciaEjecutable.setString(4, archivoParaModificar.getCategoria().getNombre());
+
+            sentenciaEjecutable.execute();
+        }
     }
 
     public void desasociarPalabraClaveArchivo(
             Archivo archivoParaModificar,
             String palabraClaveParaEliminar) throws SQLException {
-        CallableStatement sentenciaEjecutable = null;
         final String stringComandoSql = "{CALL sp_desasociar_palabra_clave_archivo (?, ?, ?, ?)}";
-
-        obtenerConexion();
-
-        sentenciaEjecutable = conexion.prepareCall(
-                stringComandoSql,
-                ResultSet.TYPE_SCROLL_INSENSITIVE,
-                ResultSet.CONCUR_READ_ONLY);
-
-        sentenciaEjecutable.setString(1, archivoParaModificar.getRutaCompleta());
-        sentenciaEjecutable.setString(2, archivoParaModificar.getNombre());
-        sentenciaEjecutable.setString(3, archivoParaModificar.getExtension());
-        sentenciaEjecutable.setString(4, palabraClaveParaEliminar);
-
-        sentenciaEjecutable.execute();
+        try (Connection conexion = obtenerConexion();
+                CallableStatement sentenciaEjecutable = conexion.prepareCall(
+                        stringComandoSql,
+                        ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY)) {
+            sentenciaEjecutable.setString(1, archivoParaModificar.getRutaCompleta());
+            sentenciaEjecutable.setString(2, archivoParaModificar.getNombre());
+            sentenciaEjecutable.setString(3, archivoParaModificar.getExtension());
+            sentenciaEjecutable.setString(4, palabraClaveParaEliminar);
+
+            sentenciaEjecutable.execute();
+        }
     }
 
     public void desasociarEtiquetaArchivo(
             Archivo archivoParaModificar,
             String etiquetaParaEliminar) throws SQLException {
-        CallableStatement sentenciaEjecutable = null;
         final String stringComandoSql = "{CALL sp_desasociar_etiqueta_archivo (?, ?, ?, ?)}";
-
-        obtenerConexion();
-
-        sentenciaEjecutable = conexion.prepareCall(
-                stringComandoSql,
-                ResultSet.TYPE_SCROLL_INSENSITIVE,
-                ResultSet.CONCUR_READ_ONLY);
-
-        sentenciaEjecutable.setString(1, archivoParaModificar.getRutaCompleta());
-        sentenciaEjecutable.setString(2, archivoParaModificar.getNombre());
-        sentenciaEjecutable.setString(3, archivoParaModificar.getExtension());
-        sentenciaEjecutable.setString(4, etiquetaParaEliminar);
-
-        sentenciaEjecutable.execute();
+        try (Connection conexion = obtenerConexion();
+                CallableStatement sentenciaEjecutable = conexion.prepareCall(
+                        stringComandoSql,
+                        ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY)) {
+            sentenciaEjecutable.setString(1, archivoParaModificar.getRutaCompleta());
+            sentenciaEjecutable.setString(2, archivoParaModificar.getNombre());
+            sentenciaEjecutable.setString(3, archivoParaModificar.getExtension());
+            sentenciaEjecutable.setString(4, etiquetaParaEliminar);
+
+            sentenciaEjecutable.execute();
+        }
     }
 
     public void eliminarArchivo(Archivo archivoParaEliminar) throws SQLException {
-        CallableStatement sentenciaEjecutable = null;
         final String stringComandoSql = "{CALL sp_eliminar_archivo (?, ?, ?)}";
-
-        obtenerConexion();
-
-        sentenciaEjecutable = conexion.prepareCall(
-                stringComandoSql,
-                ResultSet.TYPE_SCROLL_INSENSITIVE,
-                ResultSet.CONCUR_READ_ONLY);
-
-        sentenciaEjecutable.setString(1, archivoParaEliminar.getRutaCompleta());
-        sentenciaEjecutable.setString(2, archivoParaEliminar.getNombre());
-        sentenciaEjecutable.setString(3, archivoParaEliminar.getExtension());
-
-        sentenciaEjecutable.execute();
-
+        try (Connection conexion = obtenerConexion();
+                CallableStatement sentenciaEjecutable = conexion.prepareCall(
+                        stringComandoSql,
+                        ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY)) {
+            sentenciaEjecutable.setString(1, archivoParaEliminar.getRutaCompleta());
+            sentenciaEjecutable.setString(2, archivoParaEliminar.getNombre());
+            sentenciaEjecutable.setString(3, archivoParaEliminar.getExtension());
+
+            sentenciaEjecutable.execute();
+        }
     }
 
     public void eliminarArchivosEnUbicacion(String ubicacionParaEliminar) throws SQLException {
-        CallableStatement sentenciaEjecutable = null;
         final String stringComandoSql = "{CALL sp_eliminar_archivos_en_ubicacion (?)}";
+        try (Connection conexion = obtenerConexion();
+                CallableStatement sentenciaEjecutable = conexion.prepareCall(
+                        stringComandoSql,
+                        ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY)) {
+            sentenciaEjecutable.setString(1, ubicacionParaEliminar);
+
+            sentenciaEjecutable.execute();
+        }
+    }
 
-        obtenerConexion();
-
-        sentenciaEjecutable = conexion.prepareCall(
-                stringComandoSql,
-                ResultSet.TYPE_SCROLL_INSENSITIVE,
-                ResultSet.CONCUR_READ_ONLY);
-
-        sentenciaEjecutable.setString(1, ubicacionParaEliminar);
+    /**
+     * Borra todos los archivos que están debajo de directorio (un directorio
+     * que se borró o se movió fuera de lo indexado).
+     *
+     * @return las rutas borradas
+     */
+    public List<String> eliminarArchivosBajoDirectorio(String directorio) throws SQLException {
+        List<String> eliminadas = new ArrayList<>();
+        try (Connection conexion = obtenerConexion();
+                PreparedStatement sentencia = conexion.prepareStatement(
+                        "SELECT * FROM sp_eliminar_archivos_bajo_directorio(?)",
+                        ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY)) {
+            sentencia.setString(1, directorio);
+            try (ResultSet rs = sentencia.executeQuery()) {
+                while (rs.next()) {
+                    eliminadas.add(rs.getString(1));
+                }
+            }
+        }
+        return eliminadas;
+    }
 
-        sentenciaEjecutable.execute();
+    /**
+     * Barrido de fin de pasada: borra los archivos debajo de raiz que no se
+     * marcaron desde que empezó la pasada, salvo los que están debajo de un
+     * directorio que no se pudo listar.
+     *
+     * @param generacion inicio de la pasada
+     * @return las rutas borradas
+     */
+    public List<String> barrerArchivosNoVistos(String raiz, long generacion, List<String> incompletos)
+            throws SQLException {
+        List<String> eliminadas = new ArrayList<>();
+        try (Connection conexion = obtenerConexion();
+                PreparedStatement sentencia = conexion.prepareStatement(
+                        "SELECT * FROM sp_barrer_archivos_no_vistos(?, ?, ?)",
+                        ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY)) {
+            sentencia.setString(1, raiz);
+            sentencia.setLong(2, generacion);
+            sentencia.setArray(3, conexion.createArrayOf("varchar", incompletos.toArray(new String[0])));
+            try (ResultSet rs = sentencia.executeQuery()) {
+                while (rs.next()) {
+                    eliminadas.add(rs.getString(1));
+                }
+            }
+        }
+        return eliminadas;
     }
 
     public void eliminarEtiqueta(String etiquetaParaEliminar) throws SQLException {
-        CallableStatement sentenciaEjecutable = null;
         final String stringComandoSql = "{CALL sp_eliminar_etiqueta (?)}";
-
-        obtenerConexion();
-
-        sentenciaEjecutable = conexion.prepareCall(
-                stringComandoSql,
-                ResultSet.TYPE_SCROLL_INSENSITIVE,
-                ResultSet.CONCUR_READ_ONLY);
-
-        sentenciaEjecutable.setString(1, etiquetaParaEliminar);
-
-        sentenciaEjecutable.execute();
+        try (Connection conexion = obtenerConexion();
+                CallableStatement sentenciaEjecutable = conexion.prepareCall(
+                        stringComandoSql,
+                        ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY)) {
+            sentenciaEjecutable.setString(1, etiquetaParaEliminar);
+
+            sentenciaEjecutable.execute();
+        }
     }
 }
\ No newline at end of file
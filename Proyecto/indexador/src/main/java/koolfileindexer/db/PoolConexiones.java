@@ -0,0 +1,450 @@
+package koolfileindexer.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool acotado de conexiones JDBC.
+ * Cada operación toma una conexión con {@link #obtener()} y la devuelve al
+ * cerrarla, así las búsquedas del servidor y la ingesta del indexador no se
+ * serializan sobre un único backend ni comparten estado de transacción.
+ *
+ * Las conexiones inactivas se reutilizan en orden LIFO (la más reciente
+ * primero), se validan si llevan un rato sin uso y se desalojan cuando pasan
+ * más de {@code tiempoMaximoInactiva} ociosas, sin bajar del mínimo.
+ *
+ * Cada conexión física lleva su {@link CacheSentencias}: prepareCall (y
+ * prepareStatement con tipo y concurrencia) sobre una conexión prestada
+ * reutiliza la sentencia ya preparada para ese SQL.
+ *
+ * Cada préstamo toma un permiso de un Semaphore justo con {@code maximo}
+ * permisos. Esperar ahí (y no con wait() dentro del monitor) deja que un hilo
+ * virtual se desmonte mientras espera en vez de bloquear a su carrier.
+ */
+public class PoolConexiones {
+
+    /** Crea conexiones físicas nuevas; normalmente DriverManager.getConnection. */
+    @FunctionalInterface
+    public interface FabricaConexiones {
+        Connection crear() throws SQLException;
+    }
+
+    /** Foto de las métricas del pool para dimensionarlo bajo carga. */
+    public record Metricas(int activas, int inactivas, int esperando, long prestamos, long esperas,
+            long tiempoEsperaTotalNanos, long tiempoEsperaMaximoNanos, long creadas, long descartadas) {
+
+        public double tiempoEsperaPromedioMs() {
+            return prestamos == 0 ? 0 : tiempoEsperaTotalNanos / 1e6 / prestamos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "activas=%d inactivas=%d esperando=%d préstamos=%d esperas=%d espera prom=%.2fms máx=%.2fms creadas=%d descartadas=%d",
+                    activas, inactivas, esperando, prestamos, esperas, tiempoEsperaPromedioMs(),
+                    tiempoEsperaMaximoNanos / 1e6, creadas, descartadas);
+        }
+    }
+
+    /** Conexión física junto con su caché de sentencias. */
+    private static final class ConexionFisica {
+        final Connection conexion;
+        final CacheSentencias sentencias;
+
+        ConexionFisica(Connection conexion, int capacidadSentencias) {
+            this.conexion = conexion;
+            this.sentencias = new CacheSentencias(capacidadSentencias);
+        }
+
+        void cerrar() {
+            sentencias.cerrarTodas();
+            try {
+                conexion.close();
+            } catch (SQLException e) {
+                System.err.println("[DB] Error al cerrar conexión: " + e.getMessage());
+            }
+        }
+    }
+
+    private record ConexionInactiva(ConexionFisica fisica, long desdeNanos) {
+    }
+
+    private static final int SEGUNDOS_VALIDACION = 2;
+
+    private final FabricaConexiones fabrica;
+    private final int minimo;
+    private final int maximo;
+    private final Duration tiempoMaximoEspera;
+    private final Duration tiempoMaximoInactiva;
+    private final Duration validarTras;
+    private final int sentenciasPorConexion;
+    // Uno por conexión prestada
+    private final Semaphore permisos;
+
+    // Protegidos por el monitor de this
+    private final Deque<ConexionInactiva> inactivas = new ArrayDeque<>();
+    private int activas;
+    private int esperando;
+    private boolean cerrado;
+    private long prestamos;
+    private long esperas;
+    private long tiempoEsperaTotalNanos;
+    private long tiempoEsperaMaximoNanos;
+    private long creadas;
+    private long descartadas;
+
+    private final ScheduledExecutorService desalojador;
+
+    /**
+     * Crea el pool y arranca el desalojo periódico de conexiones ociosas.
+     *
+     * @param fabrica              creación de conexiones físicas
+     * @param minimo               conexiones que se mantienen aunque estén ociosas
+     * @param maximo               tope de conexiones abiertas a la vez
+     * @param tiempoMaximoEspera   cuánto espera {@link #obtener()} si el pool está
+     *                             agotado antes de fallar
+     * @param tiempoMaximoInactiva tras cuánto tiempo ociosa se cierra una conexión
+     * @param validarTras          una conexión ociosa más de este tiempo se valida
+     *                             con isValid antes de prestarla
+     * @param sentenciasPorConexion capacidad del LRU de sentencias de cada
+     *                             conexión (0 desactiva la caché)
+     */
+    public static PoolConexiones abrir(FabricaConexiones fabrica, int minimo, int maximo,
+            Duration tiempoMaximoEspera, Duration tiempoMaximoInactiva, Duration validarTras,
+            int sentenciasPorConexion) {
+        PoolConexiones pool = new PoolConexiones(fabrica, minimo, maximo, tiempoMaximoEspera, tiempoMaximoInactiva,
+                validarTras, sentenciasPorConexion);
+        // Recién construido: el hilo de desalojo no ve un pool a medio inicializar
+        long periodo = Math.max(1, tiempoMaximoInactiva.toMillis() / 2);
+        pool.desalojador.scheduleWithFixedDelay(pool::mantener, periodo, periodo, TimeUnit.MILLISECONDS);
+        return pool;
+    }
+
+    private PoolConexiones(FabricaConexiones fabrica, int minimo, int maximo, Duration tiempoMaximoEspera,
+            Duration tiempoMaximoInactiva, Duration validarTras, int sentenciasPorConexion) {
+        if (minimo < 0 || maximo <= 0 || minimo > maximo) {
+            throw new IllegalArgumentException("Tamaños de pool inválidos: mínimo=" + minimo + " máximo=" + maximo);
+        }
+        if (sentenciasPorConexion < 0) {
+            throw new IllegalArgumentException("La caché de sentencias no puede ser negativa");
+        }
+        this.fabrica = fabrica;
+        this.minimo = minimo;
+        this.maximo = maximo;
+        this.tiempoMaximoEspera = tiempoMaximoEspera;
+        this.tiempoMaximoInactiva = tiempoMaximoInactiva;
+        this.validarTras = validarTras;
+        this.sentenciasPorConexion = sentenciasPorConexion;
+        this.permisos = new Semaphore(maximo, true);
+
+        this.desalojador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "PoolConexiones-Desalojo");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public int getMinimo() {
+        return minimo;
+    }
+
+    public int getMaximo() {
+        return maximo;
+    }
+
+    /**
+     * Toma una conexión del pool. Se debe cerrar (idealmente con
+     * try-with-resources) para devolverla; cerrarla no cierra la conexión física.
+     *
+     * @throws SQLException si el pool está cerrado, si no se libera ninguna
+     *                      conexión a tiempo o si falla la creación
+     */
+    public Connection obtener() throws SQLException {
+        long inicio = System.nanoTime();
+        ConexionInactiva reutilizada = null;
+
+        if (estaCerrado()) {
+            throw new SQLException("El pool de conexiones está cerrado");
+        }
+        boolean espero = !permisos.tryAcquire();
+        if (espero) {
+            esperar();
+        }
+
+        synchronized (this) {
+            if (cerrado) {
+                // Pasa el permiso al siguiente que espera, que también va a fallar
+                permisos.release();
+                throw new SQLException("El pool de conexiones está cerrado");
+            }
+            // Con el permiso hay lugar: hay una inactiva o activas + inactivas < maximo
+            reutilizada = inactivas.pollFirst();
+            activas++;
+            long espera = System.nanoTime() - inicio;
+            prestamos++;
+            if (espero) {
+                esperas++;
+            }
+            tiempoEsperaTotalNanos += espera;
+            tiempoEsperaMaximoNanos = Math.max(tiempoEsperaMaximoNanos, espera);
+        }
+
+        // La validación y la creación se hacen fuera del monitor para no frenar
+        // al resto de hilos mientras se habla con la BD
+        try {
+            ConexionFisica fisica = null;
+            if (reutilizada != null) {
+                fisica = validar(reutilizada);
+            }
+            if (fisica == null) {
+                fisica = new ConexionFisica(fabrica.crear(), sentenciasPorConexion);
+                synchronized (this) {
+                    creadas++;
+                }
+            }
+            return envolver(fisica);
+        } catch (SQLException | RuntimeException e) {
+            synchronized (this) {
+                activas--;
+            }
+            permisos.release();
+            throw e;
+        }
+    }
+
+    private void esperar() throws SQLException {
+        synchronized (this) {
+            esperando++;
+        }
+        try {
+            if (!permisos.tryAcquire(tiempoMaximoEspera.toNanos(), TimeUnit.NANOSECONDS)) {
+                throw new SQLException("Tiempo de espera agotado para obtener una conexión ("
+                        + getMetricas().activas() + " activas de " + maximo + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrumpido esperando una conexión", e);
+        } finally {
+            synchronized (this) {
+                esperando--;
+            }
+        }
+    }
+
+    public synchronized Metricas getMetricas() {
+        return new Metricas(activas, inactivas.size(), esperando, prestamos, esperas,
+                tiempoEsperaTotalNanos, tiempoEsperaMaximoNanos, creadas, descartadas);
+    }
+
+    /**
+     * Cierra las conexiones ociosas y rechaza nuevos préstamos. Las conexiones
+     * prestadas se cierran cuando se devuelven.
+     */
+    public void cerrar() {
+        List<ConexionFisica> aCerrar = new ArrayList<>();
+        synchronized (this) {
+            if (cerrado) {
+                return;
+            }
+            cerrado = true;
+            for (ConexionInactiva inactiva : inactivas) {
+                aCerrar.add(inactiva.fisica());
+            }
+            inactivas.clear();
+        }
+        // Despierta a los que esperan; cada uno ve el pool cerrado y pasa el
+        // permiso al siguiente
+        permisos.release();
+        desalojador.shutdownNow();
+        aCerrar.forEach(ConexionFisica::cerrar);
+    }
+
+    public synchronized boolean estaCerrado() {
+        return cerrado;
+    }
+
+    /** @return la conexión si sigue viva, o null si hubo que descartarla. */
+    private ConexionFisica validar(ConexionInactiva inactiva) {
+        ConexionFisica fisica = inactiva.fisica();
+        long ociosaNanos = System.nanoTime() - inactiva.desdeNanos();
+        try {
+            if (ociosaNanos < validarTras.toNanos() || fisica.conexion.isValid(SEGUNDOS_VALIDACION)) {
+                return fisica;
+            }
+        } catch (SQLException e) {
+            // Se trata igual que una conexión inválida
+        }
+        fisica.cerrar();
+        synchronized (this) {
+            descartadas++;
+        }
+        return null;
+    }
+
+    /**
+     * Recibe una conexión devuelta: deshace cualquier transacción a medias para
+     * que el siguiente préstamo no herede estado, y la deja como inactiva.
+     */
+    private void devolver(ConexionFisica fisica) {
+        boolean reutilizable;
+        try {
+            reutilizable = !fisica.conexion.isClosed();
+            if (reutilizable && !fisica.conexion.getAutoCommit()) {
+                fisica.conexion.rollback();
+                fisica.conexion.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            reutilizable = false;
+        }
+
+        boolean cerrarFisica = false;
+        synchronized (this) {
+            activas--;
+            if (!reutilizable || cerrado) {
+                cerrarFisica = true;
+                if (!reutilizable) {
+                    descartadas++;
+                }
+            } else {
+                inactivas.addFirst(new ConexionInactiva(fisica, System.nanoTime()));
+            }
+        }
+        permisos.release();
+        if (cerrarFisica) {
+            fisica.cerrar();
+        }
+    }
+
+    /**
+     * Tarea periódica: desaloja las conexiones ociosas de más (las más viejas
+     * están al final de la cola) y vuelve a llenar hasta el mínimo.
+     */
+    void mantener() {
+        List<ConexionFisica> aCerrar = new ArrayList<>();
+        int faltantes;
+        synchronized (this) {
+            if (cerrado) {
+                return;
+            }
+            long ahora = System.nanoTime();
+            Iterator<ConexionInactiva> it = inactivas.descendingIterator();
+            while (it.hasNext() && activas + inactivas.size() > minimo) {
+                ConexionInactiva inactiva = it.next();
+                if (ahora - inactiva.desdeNanos() < tiempoMaximoInactiva.toNanos()) {
+                    break;
+                }
+                it.remove();
+                aCerrar.add(inactiva.fisica());
+                descartadas++;
+            }
+            faltantes = minimo - (activas + inactivas.size());
+        }
+        aCerrar.forEach(ConexionFisica::cerrar);
+
+        for (int i = 0; i < faltantes; i++) {
+            try {
+                ConexionFisica nueva = new ConexionFisica(fabrica.crear(), sentenciasPorConexion);
+                synchronized (this) {
+                    if (cerrado || activas + inactivas.size() >= maximo) {
+                        nueva.cerrar();
+                        return;
+                    }
+                    creadas++;
+                    inactivas.addLast(new ConexionInactiva(nueva, System.nanoTime()));
+                }
+            } catch (SQLException e) {
+                System.err.println("[DB] No se pudo precalentar el pool: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private Connection envolver(ConexionFisica fisica) {
+        return (Connection) Proxy.newProxyInstance(
+                PoolConexiones.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                new ConexionPrestada(fisica));
+    }
+
+    /**
+     * Conexión prestada: delega en la física salvo close(), que la devuelve al
+     * pool una sola vez, y prepareCall/prepareStatement, que pasan por la caché
+     * de sentencias.
+     * Después de devuelta, cualquier uso falla.
+     */
+    private final class ConexionPrestada implements InvocationHandler {
+        private final ConexionFisica fisica;
+        private boolean devuelta;
+
+        ConexionPrestada(ConexionFisica fisica) {
+            this.fisica = fisica;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method metodo, Object[] args) throws Throwable {
+            switch (metodo.getName()) {
+                case "close":
+                    synchronized (this) {
+                        if (devuelta) {
+                            return null;
+                        }
+                        devuelta = true;
+                    }
+                    devolver(fisica);
+                    return null;
+                case "isClosed":
+                    synchronized (this) {
+                        return devuelta || fisica.conexion.isClosed();
+                    }
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "ConexionPrestada[" + fisica.conexion + "]";
+                default:
+                    break;
+            }
+            synchronized (this) {
+                if (devuelta) {
+                    throw new SQLException("La conexión ya fue devuelta al pool");
+                }
+            }
+            if (metodo.getName().equals("prepareStatement") && args.length == 3
+                    && metodo.getParameterTypes()[1] == int.class) {
+                return fisica.sentencias.prepararSentencia(fisica.conexion, (String) args[0],
+                        (Integer) args[1], (Integer) args[2]);
+            }
+            if (metodo.getName().equals("prepareCall")) {
+                if (args.length == 1) {
+                    return fisica.sentencias.prepararLlamada(fisica.conexion, (String) args[0],
+                            ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                }
+                if (args.length == 3) {
+                    return fisica.sentencias.prepararLlamada(fisica.conexion, (String) args[0],
+                            (Integer) args[1], (Integer) args[2]);
+                }
+            }
+            try {
+                return metodo.invoke(fisica.conexion, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -35,6 +35,7 @@ public class ArchivoConverter {
             Set<String> palabrasClave = new HashSet<>(modeloArchivo.getPalabrasClave());
             dbArchivo.setPalabrasClave(palabrasClave);
         }
+        dbArchivo.setClaveArchivo(modeloArchivo.getClaveArchivo());
 
         return dbArchivo;
     }
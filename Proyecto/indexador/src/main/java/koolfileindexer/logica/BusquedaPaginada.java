@@ -0,0 +1,208 @@
+package koolfileindexer.logica;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import koolfileindexer.db.CompiladorConsultaBusqueda.ModoPalabrasClave;
+import koolfileindexer.db.AlmacenArchivos;
+import koolfileindexer.modelo.Archivo;
+
+/**
+ * Búsqueda de la acción "search" entregada por páginas. Sigue los mismos
+ * pasos que la búsqueda completa: primero por nombre (en memoria si el
+ * {@link IndiceNombres} está cargado, si no en la BD) y, si el nombre no
+ * encuentra nada, por palabras clave.
+ *
+ * El cursor que recibe el cliente es opaco y dice en qué paso va y desde
+ * dónde seguir: "n:{último arc_id}" o "p:{último arc_id}" para los pasos en
+ * la BD, que se paginan por keyset sobre arc_id, y "m:{posición}" para el
+ * índice en memoria.
+ *
+ * Con un directorio base la búsqueda se limita a su subárbol y va siempre a
+ * la BD (el índice en memoria no conoce los directorios); un nombre de la
+ * forma "*.log" se busca como extensión.
+ */
+public class BusquedaPaginada {
+
+    /** Recibe cada archivo de la página en cuanto se obtiene. */
+    @FunctionalInterface
+    public interface Destino {
+        void aceptar(Archivo archivo) throws IOException;
+    }
+
+    enum Fase {
+        NOMBRE('n'), PALABRAS_CLAVE('p'), MEMORIA('m');
+
+        final char prefijo;
+
+        Fase(char prefijo) {
+            this.prefijo = prefijo;
+        }
+    }
+
+    record Cursor(Fase fase, long posicion) {
+
+        String codificar() {
+            return fase.prefijo + ":" + posicion;
+        }
+
+        /** @return el cursor, o null si el token es null o vacío */
+        static Cursor decodificar(String token) {
+            if (token == null || token.isBlank()) {
+                return null;
+            }
+            String[] partes = token.trim().split(":", 2);
+            if (partes.length == 2 && partes[0].length() == 1) {
+                for (Fase fase : Fase.values()) {
+                    if (fase.prefijo == partes[0].charAt(0)) {
+                        try {
+                            return new Cursor(fase, Long.parseLong(partes[1]));
+                        } catch (NumberFormatException e) {
+                            break;
+                        }
+                    }
+                }
+            }
+            throw new IllegalArgumentException("Cursor de búsqueda inválido: " + token);
+        }
+    }
+
+    // "*.log": todos los archivos con esa extensión
+    private static final Pattern COMODIN_EXTENSION = Pattern.compile("\\*\\.([^*?/.]+)");
+
+    private final AlmacenArchivos connector;
+    private final IndiceNombres indiceNombres;
+
+    /** @param indiceNombres índice en memoria, o null si no se usa */
+    public BusquedaPaginada(AlmacenArchivos connector, IndiceNombres indiceNombres) {
+        this.connector = connector;
+        this.indiceNombres = indiceNombres;
+    }
+
+    /**
+     * Entrega una página al destino.
+     *
+     * @param conEtiquetas si la búsqueda trae etiquetas (el índice en memoria
+     *                     no las conoce y se va directo a la BD)
+     * @param limite       máximo de archivos; 0 o menos para todos
+     * @return el cursor de la página siguiente, o null si no hay más
+     */
+    public String buscar(String[] keywords, boolean conEtiquetas, String token, int limite, Destino destino)
+            throws SQLException, IOException {
+        return buscar(keywords, conEtiquetas, null, token, limite, destino);
+    }
+
+    /**
+     * Como {@link #buscar(String[], boolean, String, int, Destino)} pero sólo
+     * dentro del subárbol de bajoDirectorio.
+     *
+     * @param bajoDirectorio directorio base, o null para buscar en todo
+     */
+    public String buscar(String[] keywords, boolean conEtiquetas, String bajoDirectorio, String token, int limite,
+            Destino destino) throws SQLException, IOException {
+        String nombre = (keywords != null && keywords.length > 0 && keywords[0] != null
+                && !keywords[0].trim().isEmpty()) ? keywords[0].trim() : null;
+
+        Cursor cursor = Cursor.decodificar(token);
+        boolean primeraPagina = cursor == null;
+        if (cursor == null) {
+            if (nombre == null) {
+                cursor = new Cursor(Fase.PALABRAS_CLAVE, -1);
+            } else if (indiceNombres != null && indiceNombres.estaListo() && !conEtiquetas
+                    && bajoDirectorio == null && !COMODIN_EXTENSION.matcher(nombre).matches()) {
+                cursor = new Cursor(Fase.MEMORIA, 0);
+            } else {
+                cursor = new Cursor(Fase.NOMBRE, -1);
+            }
+        }
+
+        Progreso progreso = new Progreso(limite, destino);
+        String siguiente = switch (cursor.fase()) {
+            case MEMORIA -> buscarEnMemoria(nombre, (int) cursor.posicion(), progreso);
+            case NOMBRE -> buscarEnBD(Fase.NOMBRE, keywords, bajoDirectorio, cursor.posicion(), progreso);
+            case PALABRAS_CLAVE -> buscarEnBD(Fase.PALABRAS_CLAVE, keywords, bajoDirectorio, cursor.posicion(),
+                    progreso);
+        };
+
+        // Como en la búsqueda completa: si el nombre no encontró nada se
+        // prueba con las palabras clave
+        if (primeraPagina && cursor.fase() != Fase.PALABRAS_CLAVE && progreso.entregados == 0) {
+            return buscarEnBD(Fase.PALABRAS_CLAVE, keywords, bajoDirectorio, -1, progreso);
+        }
+        return siguiente;
+    }
+
+    private String buscarEnMemoria(String nombre, int desde, Progreso progreso) throws IOException {
+        int hasta = progreso.limite > 0 ? desde + progreso.limite + 1 : Integer.MAX_VALUE;
+        List<IndiceNombres.Coincidencia> coincidencias = indiceNombres.buscarSubcadena(nombre, hasta);
+        for (int i = desde; i < coincidencias.size(); i++) {
+            Archivo archivo;
+            try {
+                archivo = coincidencias.get(i).aArchivo();
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            if (!progreso.entregar(archivo, i)) {
+                break;
+            }
+        }
+        return progreso.hayMas ? new Cursor(Fase.MEMORIA, progreso.ultimaPosicion + 1).codificar() : null;
+    }
+
+    private String buscarEnBD(Fase fase, String[] keywords, String bajoDirectorio, long despuesDeId,
+            Progreso progreso) throws SQLException, IOException {
+        ArchivoAdapter filtro = new ArchivoAdapter();
+        filtro.setDirectorioBase(bajoDirectorio);
+        ModoPalabrasClave modo = ModoPalabrasClave.TODAS;
+        if (fase == Fase.NOMBRE) {
+            Matcher extension = COMODIN_EXTENSION.matcher(keywords[0].trim());
+            if (extension.matches()) {
+                filtro.setExtension(extension.group(1));
+            } else {
+                filtro.setNombre(keywords[0].trim());
+            }
+        } else if (keywords != null && keywords.length > 0) {
+            filtro.setPalabrasClave(new HashSet<>(Arrays.asList(keywords)));
+            if (keywords.length > 1) {
+                modo = ModoPalabrasClave.ALGUNA;
+            }
+        }
+
+        // Se pide una fila de más para saber si hay otra página
+        int filas = progreso.limite > 0 ? progreso.limite + 1 : 0;
+        connector.recorrerBusquedaPaginada(filtro, -1, -1, modo, despuesDeId, filas,
+                fila -> progreso.entregar(ArchivoConverter.fromResultSet(fila), fila.getLong("id")));
+        return progreso.hayMas ? new Cursor(fase, progreso.ultimaPosicion).codificar() : null;
+    }
+
+    /** Cuenta lo entregado y corta al llegar al límite. */
+    private static final class Progreso {
+        final int limite;
+        final Destino destino;
+        int entregados;
+        long ultimaPosicion = -1;
+        boolean hayMas;
+
+        Progreso(int limite, Destino destino) {
+            this.limite = limite;
+            this.destino = destino;
+        }
+
+        /** @return false si la página ya estaba llena */
+        boolean entregar(Archivo archivo, long posicion) throws IOException {
+            if (limite > 0 && entregados == limite) {
+                hayMas = true;
+                return false;
+            }
+            destino.aceptar(archivo);
+            entregados++;
+            ultimaPosicion = posicion;
+            return true;
+        }
+    }
+}
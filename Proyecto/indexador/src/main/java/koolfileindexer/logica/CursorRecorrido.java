@@ -0,0 +1,248 @@
+package koolfileindexer.logica;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Cursor persistente de recorrido para una raíz.
+ * Guarda la frontera de directorios pendientes, de modo que cada ciclo
+ * continúa donde terminó el anterior en lugar de reiniciar desde la raíz.
+ * La frontera se recorre en profundidad para que su tamaño sea proporcional
+ * a la profundidad del árbol y no a su anchura.
+ *
+ * También guarda lo necesario para el barrido de fin de pasada: cuándo
+ * empezó (la generación con la que se marcan los archivos vistos), qué
+ * directorios no se pudieron listar y si algo impide barrer.
+ */
+public class CursorRecorrido {
+    private static final String CABECERA_RAIZ = "raiz: ";
+    private static final String CABECERA_PASADAS = "pasadas: ";
+    private static final String LINEA_INICIO = "inicio: ";
+    private static final String LINEA_BARRIDO = "barrido: ";
+    private static final String LINEA_INCOMPLETO = "incompleto: ";
+
+    private final Path raiz;
+    private final Path archivoEstado;
+    private final Deque<Path> frontera = new ArrayDeque<>();
+    private long pasadasCompletas;
+    private long inicioPasada;
+    private boolean admiteBarrido = true;
+    private final Set<Path> incompletos = new LinkedHashSet<>();
+
+    private CursorRecorrido(Path raiz, Path archivoEstado) {
+        this.raiz = raiz;
+        this.archivoEstado = archivoEstado;
+    }
+
+    /**
+     * Carga el cursor de la raíz desde el directorio de estado.
+     * Si no hay checkpoint previo (o está corrupto) se empieza una pasada nueva.
+     * Un checkpoint guardado con la pasada terminada (frontera vacía) la
+     * cierra aquí mismo, igual que si el proceso no se hubiera reiniciado:
+     * cuenta la pasada y empieza otra con una generación nueva.
+     */
+    public static CursorRecorrido cargar(Path raiz, Path directorioEstado) {
+        Path raizNormalizada = raiz.toAbsolutePath().normalize();
+        Path archivo = directorioEstado == null
+                ? null
+                : directorioEstado.resolve(nombreArchivoEstado(raizNormalizada));
+        CursorRecorrido cursor = new CursorRecorrido(raizNormalizada, archivo);
+        boolean pasadaTerminada = false;
+
+        if (archivo != null && Files.exists(archivo)) {
+            try {
+                List<String> lineas = Files.readAllLines(archivo, StandardCharsets.UTF_8);
+                if (lineas.size() >= 2
+                        && lineas.get(0).equals(CABECERA_RAIZ + raizNormalizada)
+                        && lineas.get(1).startsWith(CABECERA_PASADAS)) {
+                    cursor.pasadasCompletas = Long.parseLong(
+                            lineas.get(1).substring(CABECERA_PASADAS.length()).trim());
+                    for (String linea : lineas.subList(2, lineas.size())) {
+                        // Las rutas de la frontera son absolutas: no pueden
+                        // empezar con estas etiquetas
+                        if (linea.startsWith(LINEA_INICIO)) {
+                            cursor.inicioPasada = Long.parseLong(linea.substring(LINEA_INICIO.length()).trim());
+                        } else if (linea.startsWith(LINEA_BARRIDO)) {
+                            cursor.admiteBarrido = Boolean.parseBoolean(linea.substring(LINEA_BARRIDO.length()).trim());
+                        } else if (linea.startsWith(LINEA_INCOMPLETO)) {
+                            cursor.incompletos.add(Paths.get(linea.substring(LINEA_INCOMPLETO.length())));
+                        } else if (!linea.isBlank()) {
+                            cursor.frontera.addLast(Paths.get(linea));
+                        }
+                    }
+                    pasadaTerminada = cursor.frontera.isEmpty();
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("[CURSOR] Checkpoint inválido para " + raizNormalizada
+                        + ", se reinicia el recorrido: " + e.getMessage());
+                cursor.frontera.clear();
+                cursor.incompletos.clear();
+                pasadaTerminada = false;
+                // Sin saber cuándo empezó la pasada no se puede barrer
+                cursor.inicioPasada = 0;
+            }
+        } else {
+            cursor.inicioPasada = System.currentTimeMillis();
+        }
+
+        if (pasadaTerminada) {
+            cursor.iniciarPasada();
+        } else if (cursor.frontera.isEmpty()) {
+            cursor.frontera.addLast(raizNormalizada);
+        }
+        return cursor;
+    }
+
+    static String nombreArchivoEstado(Path raiz) {
+        return "cursor-" + Integer.toHexString(raiz.toString().hashCode()) + ".txt";
+    }
+
+    public Path getRaiz() {
+        return raiz;
+    }
+
+    public synchronized long getPasadasCompletas() {
+        return pasadasCompletas;
+    }
+
+    /**
+     * Generación de la pasada actual: los archivos que se escriben durante
+     * la pasada quedan marcados con un valor mayor o igual.
+     */
+    public synchronized long getInicioPasada() {
+        return inicioPasada;
+    }
+
+    /** Anota un directorio que no se pudo listar en esta pasada. */
+    public synchronized void marcarIncompleto(Path directorio) {
+        incompletos.add(directorio.toAbsolutePath().normalize());
+    }
+
+    /** Directorios que no se pudieron listar; el barrido no toca lo que está debajo. */
+    public synchronized List<Path> getIncompletos() {
+        return new ArrayList<>(incompletos);
+    }
+
+    /**
+     * Impide el barrido al terminar esta pasada: algún archivo visto pudo no
+     * quedar marcado (un directorio que se salteó, un lote que no usó el
+     * upsert por conjuntos).
+     */
+    public synchronized void descartarBarrido() {
+        admiteBarrido = false;
+    }
+
+    /**
+     * @return true si se puede barrer lo no visto en esta pasada (una pasada
+     *         que se retomó de un checkpoint sin inicio no se barre)
+     */
+    public synchronized boolean admiteBarrido() {
+        return admiteBarrido && inicioPasada > 0;
+    }
+
+    public synchronized int pendientes() {
+        return frontera.size();
+    }
+
+    /** @return el siguiente directorio a procesar, o null si la pasada terminó. */
+    public synchronized Path siguienteDirectorio() {
+        return frontera.pollFirst();
+    }
+
+    /** Vacía la frontera y devuelve todos los directorios pendientes. */
+    public synchronized List<Path> tomarPendientes() {
+        List<Path> pendientes = new ArrayList<>(frontera);
+        frontera.clear();
+        return pendientes;
+    }
+
+    /**
+     * Añade los subdirectorios descubiertos al frente de la frontera,
+     * conservando el orden en que se listaron.
+     */
+    public synchronized void agregarSubdirectorios(List<Path> subdirectorios) {
+        for (int i = subdirectorios.size() - 1; i >= 0; i--) {
+            frontera.addFirst(subdirectorios.get(i));
+        }
+    }
+
+    /** Coloca un directorio al frente de la frontera para el próximo ciclo. */
+    public synchronized void priorizar(Path directorio) {
+        Path normalizado = directorio.toAbsolutePath().normalize();
+        frontera.remove(normalizado);
+        frontera.addFirst(normalizado);
+    }
+
+    /** Quita de la frontera los directorios que están bajo el prefijo dado. */
+    public synchronized int descartarBajo(Path prefijo) {
+        Path normalizado = prefijo.toAbsolutePath().normalize();
+        int descartados = 0;
+        Iterator<Path> it = frontera.iterator();
+        while (it.hasNext()) {
+            if (it.next().startsWith(normalizado)) {
+                it.remove();
+                descartados++;
+            }
+        }
+        return descartados;
+    }
+
+    public synchronized boolean pasadaTerminada() {
+        return frontera.isEmpty();
+    }
+
+    /** Cierra la pasada actual y vuelve a sembrar la frontera con la raíz. */
+    public synchronized void iniciarPasada() {
+        if (frontera.isEmpty()) {
+            pasadasCompletas++;
+        }
+        frontera.clear();
+        frontera.addLast(raiz);
+        // Siempre creciente, aunque el reloj retroceda
+        inicioPasada = Math.max(System.currentTimeMillis(), inicioPasada + 1);
+        admiteBarrido = true;
+        incompletos.clear();
+    }
+
+    /**
+     * Escribe el checkpoint de forma atómica (archivo temporal + move),
+     * para que una caída a mitad de escritura no deje el cursor corrupto.
+     */
+    public synchronized void guardar() {
+        if (archivoEstado == null) {
+            return;
+        }
+        List<String> lineas = new ArrayList<>(frontera.size() + incompletos.size() + 4);
+        lineas.add(CABECERA_RAIZ + raiz);
+        lineas.add(CABECERA_PASADAS + pasadasCompletas);
+        lineas.add(LINEA_INICIO + inicioPasada);
+        lineas.add(LINEA_BARRIDO + admiteBarrido);
+        for (Path p : incompletos) {
+            lineas.add(LINEA_INCOMPLETO + p);
+        }
+        for (Path p : frontera) {
+            lineas.add(p.toString());
+        }
+
+        try {
+            Files.createDirectories(archivoEstado.getParent());
+            Path temporal = archivoEstado.resolveSibling(archivoEstado.getFileName() + ".tmp");
+            Files.write(temporal, lineas, StandardCharsets.UTF_8);
+            Files.move(temporal, archivoEstado,
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("[CURSOR] No se pudo guardar el checkpoint de " + raiz + ": " + e.getMessage());
+        }
+    }
+}
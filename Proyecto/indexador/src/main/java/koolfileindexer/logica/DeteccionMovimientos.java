@@ -0,0 +1,153 @@
+package koolfileindexer.logica;
+
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+import koolfileindexer.db.AlmacenArchivos;
+
+/**
+ * Detección de renombres y movimientos durante una pasada por la clave del
+ * archivo (BasicFileAttributes.fileKey(): dispositivo e inodo en unix), que
+ * no cambia al renombrar ni al mover dentro del mismo sistema de archivos.
+ *
+ * Al empezar la pasada se carga clave → ruta de lo que el almacén tiene bajo
+ * la raíz. Un archivo cuya clave ya estaba con otra ruta que ya no existe se
+ * movió: basta con cambiarle la ruta en lugar de borrarlo y volver a crearlo,
+ * y conserva sus etiquetas y palabras clave. Si además su directorio ya no
+ * existe y el nuevo no se conocía, lo que se movió es el directorio (se sube
+ * mientras los nombres coincidan) y se reescribe una sola vez el prefijo.
+ *
+ * Una clave con otra ruta que sigue existiendo es un enlace duro o un inodo
+ * reutilizado, y no se toca.
+ *
+ * detectar no bloquea; quien aplica un movimiento debe volver a detectarlo y
+ * aplicarlo sincronizado sobre esta instancia, para que dos hilos del
+ * recorrido no apliquen el mismo movimiento de directorio.
+ */
+public class DeteccionMovimientos {
+
+    /** Un renombre o movimiento: de un archivo o, si directorio, de todo un subárbol. */
+    public record Movimiento(String viejaRuta, String nuevaRuta, boolean directorio) {
+    }
+
+    private final Map<String, String> rutaPorClave = new ConcurrentHashMap<>();
+    // Directorios de las rutas conocidas y sus ancestros
+    private final Set<String> directoriosConocidos = ConcurrentHashMap.newKeySet();
+    private final Predicate<String> existe;
+
+    DeteccionMovimientos(Predicate<String> existe) {
+        this.existe = existe;
+    }
+
+    /** Carga las claves de lo que el almacén tiene bajo directorio ("" para todo). */
+    public static DeteccionMovimientos cargar(AlmacenArchivos almacen, String directorio) throws SQLException {
+        DeteccionMovimientos deteccion = new DeteccionMovimientos(
+                ruta -> Files.exists(Paths.get(ruta), LinkOption.NOFOLLOW_LINKS));
+        almacen.recorrerClavesBajo(directorio, deteccion::conocer);
+        return deteccion;
+    }
+
+    /** Anota que el almacén tiene el archivo de esa clave en ruta. */
+    void conocer(String claveArchivo, String ruta) {
+        rutaPorClave.put(claveArchivo, ruta);
+        agregarDirectorios(Paths.get(ruta).getParent());
+    }
+
+    public int getCantidad() {
+        return rutaPorClave.size();
+    }
+
+    /**
+     * @return el movimiento que explica encontrar la clave en ruta, o null si
+     *         es un archivo nuevo, no se movió o no tiene clave
+     */
+    public Movimiento detectar(String claveArchivo, String ruta) {
+        if (claveArchivo == null) {
+            return null;
+        }
+        String conocida = rutaPorClave.get(claveArchivo);
+        if (conocida == null || conocida.equals(ruta) || existe.test(conocida)) {
+            return null;
+        }
+
+        Path vieja = Paths.get(conocida);
+        Path nueva = Paths.get(ruta);
+        boolean directorio = false;
+        while (subirAlPadre(vieja, nueva)) {
+            vieja = vieja.getParent();
+            nueva = nueva.getParent();
+            directorio = true;
+        }
+        return new Movimiento(vieja.toString(), nueva.toString(), directorio);
+    }
+
+    /**
+     * Si el movimiento de vieja a nueva se explica mejor como el de sus
+     * directorios: mismo nombre, el directorio viejo desapareció y el nuevo
+     * no se conocía. Nunca se sube hasta la raíz.
+     */
+    private boolean subirAlPadre(Path vieja, Path nueva) {
+        Path padreViejo = vieja.getParent();
+        Path padreNuevo = nueva.getParent();
+        if (padreViejo == null || padreNuevo == null
+                || padreViejo.getParent() == null || padreNuevo.getParent() == null) {
+            return false;
+        }
+        return vieja.getFileName().equals(nueva.getFileName())
+                && !padreViejo.equals(padreNuevo)
+                && !directoriosConocidos.contains(padreNuevo.toString())
+                && !existe.test(padreViejo.toString());
+    }
+
+    /**
+     * Anota un movimiento ya aplicado en el almacén. Para un directorio se
+     * recorre todo el mapa (es poco frecuente) y se devuelven las rutas que
+     * tenía debajo antes de moverlo.
+     *
+     * @param claveArchivo clave del archivo con el que se detectó
+     * @param ruta         ruta actual de ese archivo
+     */
+    public List<String> aplicado(Movimiento movimiento, String claveArchivo, String ruta) {
+        List<String> viejas = new ArrayList<>();
+        if (movimiento.directorio()) {
+            String prefijo = movimiento.viejaRuta() + "/";
+            for (Map.Entry<String, String> entrada : rutaPorClave.entrySet()) {
+                String conocida = entrada.getValue();
+                if (conocida.startsWith(prefijo)) {
+                    viejas.add(conocida);
+                    entrada.setValue(movimiento.nuevaRuta() + conocida.substring(movimiento.viejaRuta().length()));
+                }
+            }
+            // Primero el directorio y sus ancestros: agregarDirectorios corta
+            // en el primero que ya estaba
+            agregarDirectorios(Paths.get(movimiento.nuevaRuta()));
+            for (String conocido : List.copyOf(directoriosConocidos)) {
+                if (conocido.startsWith(prefijo)) {
+                    directoriosConocidos
+                            .add(movimiento.nuevaRuta() + conocido.substring(movimiento.viejaRuta().length()));
+                }
+            }
+        } else {
+            viejas.add(movimiento.viejaRuta());
+        }
+        conocer(claveArchivo, ruta);
+        return viejas;
+    }
+
+    private void agregarDirectorios(Path directorio) {
+        for (Path actual = directorio; actual != null; actual = actual.getParent()) {
+            if (!directoriosConocidos.add(actual.toString())) {
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package koolfileindexer.logica;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Estado persistente de los directorios ya listados: fecha de modificación,
+ * cantidad de enlaces (unix:nlink, que en ext4/xfs cuenta los subdirectorios)
+ * y los nombres de sus subdirectorios.
+ *
+ * Crear, borrar o renombrar una entrada cambia la fecha de modificación del
+ * directorio que la contiene, así que un directorio con la misma fecha y los
+ * mismos enlaces tiene las mismas entradas que cuando se listó: no hace falta
+ * volver a listarlo ni stat de sus archivos, sólo seguir por sus
+ * subdirectorios (los cambios no suben al padre). Lo que no se detecta así es
+ * un archivo modificado en su lugar; para eso el Indexador hace cada tanto una
+ * pasada sin saltear nada.
+ *
+ * No se confía en un listado hecho menos de MARGEN_MS después de la fecha de
+ * modificación del directorio: un cambio en ese intervalo podría quedar con
+ * la misma fecha (sistemas de archivos con resolución gruesa).
+ */
+public class EstadoDirectorios {
+    private static final String CABECERA = "estado-directorios: 1";
+    private static final long MARGEN_MS = 2_000;
+
+    private record Entrada(long modificacion, long enlaces, long listado, String[] subdirectorios) {
+    }
+
+    private final Path archivoEstado;
+    private final Consumer<Path> alDesaparecer;
+    private final Map<Path, Entrada> entradas = new ConcurrentHashMap<>();
+    // Directorios ya conocidos que se volvieron a listar porque cambiaron
+    private final Set<Path> cambiados = ConcurrentHashMap.newKeySet();
+    private final AtomicLong saltados = new AtomicLong();
+    private final AtomicLong listados = new AtomicLong();
+    private volatile boolean modificado;
+    private static volatile boolean enlacesDisponibles = true;
+
+    private EstadoDirectorios(Path archivoEstado, Consumer<Path> alDesaparecer) {
+        this.archivoEstado = archivoEstado;
+        this.alDesaparecer = alDesaparecer;
+    }
+
+    /**
+     * Carga el estado guardado; si no hay (o está corrupto) se empieza vacío y
+     * la primera pasada lista todo.
+     *
+     * @param archivoEstado dónde se guarda (null para no persistirlo)
+     * @param alDesaparecer se llama con cada subdirectorio que ya no está en
+     *                      su padre
+     */
+    public static EstadoDirectorios cargar(Path archivoEstado, Consumer<Path> alDesaparecer) {
+        EstadoDirectorios estado = new EstadoDirectorios(archivoEstado, alDesaparecer);
+        if (archivoEstado == null || !Files.exists(archivoEstado)) {
+            return estado;
+        }
+        try (BufferedReader lector = Files.newBufferedReader(archivoEstado, StandardCharsets.UTF_8)) {
+            if (!CABECERA.equals(lector.readLine())) {
+                throw new IOException("cabecera desconocida");
+            }
+            Path dir = null;
+            long[] datos = null;
+            List<String> subdirectorios = new ArrayList<>();
+            String linea;
+            while ((linea = lector.readLine()) != null) {
+                if (linea.startsWith("\t")) {
+                    subdirectorios.add(linea.substring(1));
+                    continue;
+                }
+                if (dir != null) {
+                    estado.entradas.put(dir, new Entrada(datos[0], datos[1], datos[2],
+                            subdirectorios.toArray(new String[0])));
+                    subdirectorios.clear();
+                }
+                String[] partes = linea.split(" ", 4);
+                datos = new long[] { Long.parseLong(partes[0]), Long.parseLong(partes[1]), Long.parseLong(partes[2]) };
+                dir = Paths.get(partes[3]);
+            }
+            if (dir != null) {
+                estado.entradas.put(dir, new Entrada(datos[0], datos[1], datos[2],
+                        subdirectorios.toArray(new String[0])));
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("[DIRECTORIOS] Estado inválido en " + archivoEstado + ", se lista todo de nuevo: "
+                    + e.getMessage());
+            estado.entradas.clear();
+        }
+        return estado;
+    }
+
+    /**
+     * Decide si dir hace falta listarlo.
+     *
+     * @param listar lista dir (procesando sus archivos) y devuelve sus
+     *               subdirectorios, o null si no se pudo listar
+     * @param saltar false para listarlo aunque no haya cambiado
+     * @return los subdirectorios por los que seguir el recorrido
+     */
+    public List<Path> visitar(Path dir, Supplier<List<Path>> listar, boolean saltar) {
+        long inicio = System.currentTimeMillis();
+        long[] atributos = leerAtributos(dir);
+        Entrada previa = entradas.get(dir);
+        if (saltar && atributos != null && previa != null
+                && previa.modificacion() == atributos[0] && previa.enlaces() == atributos[1]
+                && previa.listado() - previa.modificacion() > MARGEN_MS) {
+            saltados.incrementAndGet();
+            List<Path> subdirectorios = new ArrayList<>(previa.subdirectorios().length);
+            for (String nombre : previa.subdirectorios()) {
+                subdirectorios.add(dir.resolve(nombre));
+            }
+            return subdirectorios;
+        }
+
+        List<Path> subdirectorios = listar.get();
+        listados.incrementAndGet();
+        modificado = true;
+        if (subdirectorios == null || atributos == null) {
+            // Sin listado completo no hay nada en qué confiar la próxima vez
+            entradas.remove(dir);
+            return subdirectorios != null ? subdirectorios : List.of();
+        }
+
+        String[] nombres = new String[subdirectorios.size()];
+        for (int i = 0; i < nombres.length; i++) {
+            nombres[i] = subdirectorios.get(i).getFileName().toString();
+        }
+        entradas.put(dir, new Entrada(atributos[0], atributos[1], inicio, nombres));
+        if (previa != null) {
+            cambiados.add(dir);
+            Set<String> actuales = Set.of(nombres);
+            for (String nombre : previa.subdirectorios()) {
+                if (!actuales.contains(nombre)) {
+                    olvidar(dir.resolve(nombre));
+                    alDesaparecer.accept(dir.resolve(nombre));
+                }
+            }
+        }
+        return subdirectorios;
+    }
+
+    /**
+     * Devuelve y limpia los directorios conocidos que se volvieron a listar
+     * desde la llamada anterior: sólo en ellos pudo desaparecer un archivo.
+     */
+    public Set<Path> tomarCambiados() {
+        Set<Path> resultado = new HashSet<>(cambiados);
+        cambiados.removeAll(resultado);
+        return resultado;
+    }
+
+    public int getDirectorios() {
+        return entradas.size();
+    }
+
+    public long getSaltados() {
+        return saltados.get();
+    }
+
+    public long getListados() {
+        return listados.get();
+    }
+
+    /** Escribe el estado de forma atómica (archivo temporal + move) si cambió. */
+    public void guardar() {
+        if (archivoEstado == null || !modificado) {
+            return;
+        }
+        modificado = false;
+        try {
+            Files.createDirectories(archivoEstado.getParent());
+            Path temporal = archivoEstado.resolveSibling(archivoEstado.getFileName() + ".tmp");
+            try (BufferedWriter escritor = Files.newBufferedWriter(temporal, StandardCharsets.UTF_8)) {
+                escritor.write(CABECERA);
+                escritor.newLine();
+                for (Map.Entry<Path, Entrada> e : entradas.entrySet()) {
+                    Entrada entrada = e.getValue();
+                    String ruta = e.getKey().toString();
+                    // Un salto de línea en un nombre rompería el formato: ese
+                    // directorio se vuelve a listar la próxima vez
+                    if (tieneSaltoDeLinea(ruta) || tieneSaltoDeLinea(entrada.subdirectorios())) {
+                        continue;
+                    }
+                    escritor.write(entrada.modificacion() + " " + entrada.enlaces() + " " + entrada.listado() + " "
+                            + ruta);
+                    escritor.newLine();
+                    for (String nombre : entrada.subdirectorios()) {
+                        escritor.write('\t');
+                        escritor.write(nombre);
+                        escritor.newLine();
+                    }
+                }
+            }
+            Files.move(temporal, archivoEstado, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            modificado = true;
+            System.err.println("[DIRECTORIOS] No se pudo guardar el estado: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Olvida dir y lo que tiene debajo: la próxima vez se listan aunque no
+     * hayan cambiado (por ejemplo, un subárbol que estuvo excluido).
+     */
+    public void olvidar(Path dir) {
+        Iterator<Path> it = entradas.keySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().startsWith(dir)) {
+                it.remove();
+                modificado = true;
+            }
+        }
+    }
+
+    private static boolean tieneSaltoDeLinea(String texto) {
+        return texto.indexOf('\n') >= 0 || texto.indexOf('\r') >= 0;
+    }
+
+    private static boolean tieneSaltoDeLinea(String[] nombres) {
+        for (String nombre : nombres) {
+            if (tieneSaltoDeLinea(nombre)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** {fecha de modificación en ms, enlaces (-1 si no se conocen)}, o null si no se pudo leer. */
+    private static long[] leerAtributos(Path dir) {
+        try {
+            if (enlacesDisponibles) {
+                try {
+                    Map<String, Object> atributos = Files.readAttributes(dir, "unix:lastModifiedTime,nlink",
+                            LinkOption.NOFOLLOW_LINKS);
+                    return new long[] { ((FileTime) atributos.get("lastModifiedTime")).toMillis(),
+                            ((Number) atributos.get("nlink")).longValue() };
+                } catch (UnsupportedOperationException | IllegalArgumentException e) {
+                    enlacesDisponibles = false;
+                }
+            }
+            return new long[] { Files.getLastModifiedTime(dir, LinkOption.NOFOLLOW_LINKS).toMillis(), -1 };
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package koolfileindexer.logica;
 
-import koolfileindexer.db.ConectorBasedeDatos;
+import koolfileindexer.db.AlmacenArchivos;
+import koolfileindexer.db.PoolConexiones;
 import koolfileindexer.modelo.Archivo;
 import koolfileindexer.modelo.Categoria;
 import java.nio.file.*;
@@ -8,7 +9,9 @@ import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDateTime;
@@ -18,16 +21,23 @@ import java.io.IOException;
 
 /**
  * Indexador recorre carpetas por lotes, aplica exclusiones
- * y delega persistencia en BD vía ConectorBasedeDatos.
+ * y delega persistencia en el almacén elegido (ver AlmacenArchivos).
  */
 public class Indexador implements Runnable {
     private static final AtomicReference<Indexador> INSTANCIA = new AtomicReference<>();
-    private final ConectorBasedeDatos connector;
+    private final AlmacenArchivos connector;
 
     // ─── Exclusiones ──────────────────────────────────────────────
     private final Set<Path> rutasExcluidas = new HashSet<>();
-    private static final Set<String> EXT_PROHIBIDAS = Set.of("exe", "dll");
-    private static final Set<String> PATRONES_PROTEGIDOS = Set.of("windows");
+    // Líneas "glob:" y "regex:" del archivo de exclusiones
+    private final List<String> patronesExcluidos = new ArrayList<>();
+    // Archivos .koolignore encontrados en el recorrido, por su directorio
+    private final Map<Path, PatronesIgnorar> archivosIgnorar = new ConcurrentHashMap<>();
+    // Lo que consulta excluirArchivo; se recompila al cargar el archivo o
+    // cuando cambia un .koolignore
+    private volatile ReglasExclusion reglasExclusion = ReglasExclusion.compilar(Set.of(), List.of());
+    // Directorios excluidos que el recorrido no listó en el ciclo actual
+    private final AtomicLong subarbolesPodados = new AtomicLong();
 
     // ─── Scheduler y batching ─────────────────────────────────────
     private ScheduledExecutorService scheduler;
@@ -39,17 +49,65 @@ public class Indexador implements Runnable {
     private final int tamanoLote;
     private final Duration intervaloEjecucion;
     private volatile boolean ejecutando = true;
+    // Llamadas a recorrerDirectorio en curso: shutdown las espera antes de
+    // cerrar la ingesta y la conexión
+    private final Object monitorRecorridos = new Object();
+    private int recorridosEnCurso;
+    private static final Duration ESPERA_CIERRE = Duration.ofSeconds(10);
+
+    // ─── Cursores de recorrido por raíz ───────────────────────────
+    private final Map<Path, CursorRecorrido> cursores = new ConcurrentHashMap<>();
+    private final Path directorioCursores;
+
+    // ─── Recorrido paralelo (1 = secuencial) ──────────────────────
+    private volatile int paralelismoRecorrido = 1;
+    private RecorredorParalelo recorredorParalelo;
+
+    // ─── Ingesta por lotes hacia la BD ────────────────────────────
+    private static final int CAPACIDAD_COLA_INGESTA = 10_000;
+    private static final int TAMANO_LOTE_INGESTA = 500;
+    private static final Duration ESPERA_LOTE_INGESTA = Duration.ofMillis(200);
+    private final IngestaArchivos ingesta;
+
+    // ─── Índice de nombres en memoria (opcional) ──────────────────
+    private volatile IndiceNombres indiceNombres;
+
+    // ─── Vigilancia de cambios con inotify (opcional) ─────────────
+    private volatile VigilanteCambios vigilante;
+    // Raíces cuya pasada actual empezó con el vigilante activo: al terminarla
+    // todos sus directorios quedaron vigilados
+    private final Set<Path> pasadasVigiladas = ConcurrentHashMap.newKeySet();
+
+    // ─── Directorios sin cambios (opcional) ───────────────────────
+    private volatile EstadoDirectorios estadoDirectorios;
+    private volatile int pasadasEntreCompletas;
+    // Si la pasada en curso saltea los directorios sin cambios
+    private volatile boolean saltarSinCambios;
+
+    // ─── Barrido de fin de pasada ─────────────────────────────────
+    private volatile CursorRecorrido cursorEnCurso;
+    // Generación con la que se marcan los archivos escritos: el mayor inicio
+    // de pasada visto, así nunca es menor que el de la pasada en curso
+    private final AtomicLong generacionEscritura = new AtomicLong();
+
+    // ─── Renombres y movimientos por clave de archivo ─────────────
+    // Una por raíz con pasada en curso; se carga al empezar la pasada
+    private final Map<Path, DeteccionMovimientos> detecciones = new ConcurrentHashMap<>();
+    private volatile DeteccionMovimientos deteccionEnCurso;
 
     // Constructor existente modificado para recibir parámetros de ejecución
     private Indexador(String archivoExclusiones, List<Path> raices, int tamanoLote, Duration intervalo) {
-        this.connector = ConectorBasedeDatos.obtenerInstancia();
+        this.connector = AlmacenArchivos.obtenerInstancia();
         this.raicesAIndexar = raices;
         this.tamanoLote = tamanoLote;
         this.intervaloEjecucion = intervalo;
+        this.ingesta = new IngestaArchivos(CAPACIDAD_COLA_INGESTA, TAMANO_LOTE_INGESTA,
+                ESPERA_LOTE_INGESTA, this::escribirLote);
 
         // Primero intentar con el archivo en $HOME/.config
         String userHome = System.getProperty("user.home");
         Path configPath = Paths.get(userHome, ".config", "koolfileindexer", "exclusiones.txt");
+        this.directorioCursores = configPath.resolveSibling("cursores");
 
         if (Files.exists(configPath)) {
             cargarExclusiones(configPath.toString());
@@ -144,9 +202,11 @@ public class Indexador implements Runnable {
 
     /**
      * Carga las exclusiones desde un archivo de texto.
-     * Cada línea representa una ruta a excluir.
+     * Cada línea representa una ruta a excluir, o un patrón si empieza con
+     * "glob:" o "regex:" o usa sintaxis de .gitignore, como "node_modules/"
+     * o "*.o" (ver {@link ReglasExclusion}).
      */
-    public void cargarExclusiones(String archivoExclusiones) {
+    public synchronized void cargarExclusiones(String archivoExclusiones) {
         if (archivoExclusiones == null || archivoExclusiones.isBlank())
             return;
         Path path = Paths.get(archivoExclusiones);
@@ -154,113 +214,242 @@ public class Indexador implements Runnable {
             return;
 
         try {
+            List<String> lineas = Files.readAllLines(path);
+
             // Limpiar exclusiones anteriores
             rutasExcluidas.clear();
+            patronesExcluidos.clear();
 
-            Files.readAllLines(path).stream()
+            lineas.stream()
                     .map(String::trim)
                     .filter(s -> !s.isEmpty() && !s.startsWith("#"))
-                    .map(Paths::get)
-                    .map(Path::toAbsolutePath)
-                    .map(Path::normalize)
-                    .forEach(rutasExcluidas::add);
+                    .forEach(linea -> {
+                        if (ReglasExclusion.esPatron(linea)) {
+                            patronesExcluidos.add(linea);
+                        } else {
+                            rutasExcluidas.add(Paths.get(linea).toAbsolutePath().normalize());
+                        }
+                    });
+            recompilarExclusiones();
 
-            System.out.println("[CONFIG] Cargadas " + rutasExcluidas.size() + " exclusiones de " + path);
+            System.out.println("[CONFIG] Cargadas " + (rutasExcluidas.size() + patronesExcluidos.size())
+                    + " exclusiones de " + path);
         } catch (IOException e) {
             System.err.println("Error leyendo exclusiones: " + e.getMessage());
         }
 
         System.out.println("[DEBUG] Exclusiones cargadas:");
         rutasExcluidas.forEach(p -> System.out.println("  - " + p));
+        patronesExcluidos.forEach(p -> System.out.println("  - " + p));
     }
 
-    public Set<Path> getRutasExcluidas() {
-        return Collections.unmodifiableSet(rutasExcluidas);
-    }
+    /**
+     * Recarga el archivo de exclusiones y aplica enseguida la diferencia de
+     * rutas con las anteriores, en tiempo proporcional a lo que cambió: cada
+     * subárbol que quedó excluido se borra de la BD con un DELETE por prefijo
+     * y cada uno que dejó de estarlo pasa al frente de la frontera de su raíz.
+     * Los patrones no se comparan (no se sabe a qué subárboles afectan sin
+     * recorrer): sus cambios los aplican el recorrido y el barrido de fin de
+     * pasada.
+     */
+    public void recargarExclusiones(String archivoExclusiones) {
+        Set<Path> anteriores;
+        Set<Path> actuales;
+        synchronized (this) {
+            anteriores = new HashSet<>(rutasExcluidas);
+            cargarExclusiones(archivoExclusiones);
+            actuales = new HashSet<>(rutasExcluidas);
+        }
 
-    // Verificar que este método siga conteniendo estas validaciones
-    private boolean excluirArchivo(Path p) {
-        Path norm = p.toAbsolutePath().normalize();
+        int purgados = 0;
+        for (Path ruta : actuales) {
+            // Debajo de una exclusión anterior no hay nada en la BD
+            if (!anteriores.contains(ruta) && !estaBajo(ruta, anteriores) && !estaBajo(ruta, actuales)) {
+                purgarSubarbol(ruta);
+                purgados++;
+            }
+        }
+        int reincorporados = 0;
+        for (Path ruta : anteriores) {
+            if (!actuales.contains(ruta) && !estaBajo(ruta, anteriores) && priorizarSubarbol(ruta)) {
+                reincorporados++;
+            }
+        }
+        System.out.println("[EXCLUSIONES] Recarga: " + purgados + " subárboles purgados, " + reincorporados
+                + " reincorporados al recorrido");
+    }
 
-        // Exclusiones personalizadas del archivo
-        for (Path excl : rutasExcluidas) {
-            if (norm.startsWith(excl)) {
+    /** true si ruta está estrictamente debajo de alguno de los prefijos. */
+    private static boolean estaBajo(Path ruta, Set<Path> prefijos) {
+        for (Path p = ruta.getParent(); p != null; p = p.getParent()) {
+            if (prefijos.contains(p)) {
                 return true;
             }
         }
+        return false;
+    }
 
-        // Manejar el caso de rutas raíz donde getFileName() puede ser null
-        Path fileName = norm.getFileName();
-        if (fileName == null) {
-            // Es una ruta raíz, usar solo la ruta completa para evaluación
-            String rutaMin = norm.toString().toLowerCase();
-
-            // Evaluar exclusiones basadas en la ruta
-            if (System.getProperty("os.name").toLowerCase().contains("windows")) {
-                if (rutaMin.contains("\\windows\\") ||
-                        rutaMin.contains("\\program files\\") ||
-                        rutaMin.contains("\\archivos de programa\\")) {
-                    return true;
-                }
-            } else if (System.getProperty("os.name").toLowerCase().contains("linux")) {
-                if (rutaMin.startsWith("/proc/") ||
-                        rutaMin.startsWith("/sys/") ||
-                        rutaMin.startsWith("/dev/")) {
-                    return true;
-                }
+    /** Saca de la BD, la frontera, el estado y la vigilancia un subárbol recién excluido. */
+    private void purgarSubarbol(Path ruta) {
+        for (CursorRecorrido cursor : cursores.values()) {
+            if (cursor.descartarBajo(ruta) > 0) {
+                cursor.guardar();
             }
+        }
+        EstadoDirectorios estado = estadoDirectorios;
+        if (estado != null) {
+            estado.olvidar(ruta);
+        }
+        VigilanteCambios v = vigilante;
+        if (v != null) {
+            v.dejarDeVigilar(ruta);
+        }
+        eliminarRuta(ruta, true);
+        // La exclusión también puede ser un archivo
+        if (!Files.isDirectory(ruta, LinkOption.NOFOLLOW_LINKS)) {
+            eliminarRuta(ruta, false);
+        }
+    }
 
-            return false; // No excluir por defecto si es ruta raíz
+    /**
+     * Pone un subárbol que dejó de estar excluido al frente de la frontera de
+     * la raíz que lo contiene, salvo que otra regla lo siga excluyendo.
+     *
+     * @return true si quedó en alguna frontera
+     */
+    private boolean priorizarSubarbol(Path dir) {
+        ReglasExclusion reglas = reglasExclusion;
+        // Las reglas de nombre se aplican bajando por el árbol: hay que mirar
+        // también los ancestros
+        for (Path p = dir; p != null; p = p.getParent()) {
+            if (reglas.excluye(p, true)) {
+                return false;
+            }
+        }
+        if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)) {
+            return false;
         }
+        Set<Path> raices = new HashSet<>(cursores.keySet());
+        if (raicesAIndexar != null) {
+            raicesAIndexar.forEach(r -> raices.add(r.toAbsolutePath().normalize()));
+        }
+        boolean priorizado = false;
+        for (Path raiz : raices) {
+            if (!dir.startsWith(raiz)) {
+                continue;
+            }
+            CursorRecorrido cursor = obtenerCursor(raiz);
+            if (cursor.pasadaTerminada()) {
+                // Sólo se recorre el subárbol: al terminarlo no se barre la raíz
+                cursor.descartarBarrido();
+            }
+            cursor.priorizar(dir);
+            cursor.guardar();
+            priorizado = true;
+        }
+        EstadoDirectorios estado = estadoDirectorios;
+        if (priorizado && estado != null) {
+            estado.olvidar(dir);
+        }
+        return priorizado;
+    }
 
-        // Procesar normalmente si no es una ruta raíz
-        String nombre = fileName.toString().toLowerCase();
-        String rutaMin = norm.toString().toLowerCase();
+    public Set<Path> getRutasExcluidas() {
+        return Collections.unmodifiableSet(rutasExcluidas);
+    }
 
-        // Archivos ocultos
-        try {
-            if (Files.isHidden(norm))
-                return true;
-        } catch (IOException ignored) {
-        }
+    public List<String> getPatronesExcluidos() {
+        return Collections.unmodifiableList(patronesExcluidos);
+    }
 
-        // Archivos que empiezan con punto
-        if (nombre.startsWith("."))
-            return true;
+    /** Directorios con un .koolignore en vigor. */
+    public Set<Path> getDirectoriosConIgnorar() {
+        return Collections.unmodifiableSet(archivosIgnorar.keySet());
+    }
 
-        // Extensiones prohibidas
-        int idx = nombre.lastIndexOf('.');
-        if (idx >= 0 && EXT_PROHIBIDAS.contains(nombre.substring(idx + 1))) {
+    private synchronized void recompilarExclusiones() {
+        reglasExclusion = ReglasExclusion.compilar(rutasExcluidas, patronesExcluidos, archivosIgnorar);
+    }
+
+    // Rutas del archivo de exclusiones, ocultos, .exe/.dll, thumbs.db,
+    // directorios del sistema y patrones (ver ReglasExclusion)
+    private boolean excluirArchivo(Path p) {
+        return reglasExclusion.excluye(p, false);
+    }
+
+    private boolean excluirDirectorio(Path dir) {
+        return reglasExclusion.excluye(dir, true);
+    }
+
+    /** Para el recorrido: un directorio excluido se poda sin listarlo. */
+    private boolean podarDirectorio(Path dir) {
+        if (excluirDirectorio(dir)) {
+            subarbolesPodados.incrementAndGet();
             return true;
         }
+        return false;
+    }
 
-        // Rutas del sistema adaptadas para ser más específicas
-        // En Windows
-        if (System.getProperty("os.name").toLowerCase().contains("windows")) {
-            if (rutaMin.contains("\\windows\\") ||
-                    rutaMin.contains("\\program files\\") ||
-                    rutaMin.contains("\\archivos de programa\\")) {
-                return true;
+    /**
+     * Lee (o vuelve a leer, si cambió) el .koolignore de dir antes de listarlo,
+     * para que se aplique a sus entradas; si ya no está, deja de aplicarse.
+     */
+    private void actualizarIgnorar(Path dir) {
+        Path archivo = dir.resolve(PatronesIgnorar.NOMBRE_ARCHIVO);
+        PatronesIgnorar actual = archivosIgnorar.get(dir);
+        // isRegularFile no lanza excepción si no existe, que es lo habitual
+        if (!Files.isRegularFile(archivo, LinkOption.NOFOLLOW_LINKS)) {
+            if (actual != null) {
+                synchronized (this) {
+                    archivosIgnorar.remove(dir);
+                    recompilarExclusiones();
+                }
+                System.out.println("[EXCLUSIONES] Ya no se aplica " + archivo);
             }
+            return;
         }
-        // En Linux, excluir solo directorios específicos del sistema
-        else if (System.getProperty("os.name").toLowerCase().contains("linux")) {
-            if (rutaMin.startsWith("/proc/") ||
-                    rutaMin.startsWith("/sys/") ||
-                    rutaMin.startsWith("/dev/")) {
-                return true;
+        try {
+            if (actual != null && actual.mismoArchivo(
+                    Files.readAttributes(archivo, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS))) {
+                return;
             }
+            PatronesIgnorar nuevo = PatronesIgnorar.leer(archivo, ReglasExclusion.Sistema.actual());
+            synchronized (this) {
+                archivosIgnorar.put(dir, nuevo);
+                recompilarExclusiones();
+            }
+            System.out.println("[EXCLUSIONES] " + nuevo.getCantidad() + " patrones de " + archivo);
+        } catch (IOException e) {
+            System.err.println("[EXCLUSIONES] No se pudo leer " + archivo + ": " + e.getMessage());
         }
+    }
 
-        // Archivos específicos a excluir
-        if (nombre.equals("thumbs.db")) {
-            return true;
+    /**
+     * Procesa un lote de archivos bajo rutaBase continuando desde el cursor
+     * persistido para esa raíz. Cada llamada avanza sobre una porción nueva del
+     * árbol; cuando la frontera se vacía la pasada se da por completa y la
+     * siguiente llamada empieza otra desde la raíz. El lote se revisa entre
+     * directorios, por lo que puede excederse como máximo en los archivos de
+     * un único directorio.
+     */
+    public void recorrerDirectorio(Path rutaBase, int batchSize) {
+        synchronized (monitorRecorridos) {
+            recorridosEnCurso++;
+        }
+        try {
+            recorrerDirectorioEnCurso(rutaBase, batchSize);
+        } finally {
+            synchronized (monitorRecorridos) {
+                recorridosEnCurso--;
+                monitorRecorridos.notifyAll();
+            }
         }
-
-        return false;
     }
 
-    public void recorrerDirectorio(Path rutaBase, int batchSize) {
+    private void recorrerDirectorioEnCurso(Path rutaBase, int batchSize) {
+        if (!ejecutando) {
+            return;
+        }
         System.out.println("[BATCH] Iniciando recorrido en: " + rutaBase);
         System.out.println("[BATCH] Máximo de archivos a procesar: " + batchSize);
 
@@ -276,90 +465,588 @@ public class Indexador implements Runnable {
             return;
         }
 
+        CursorRecorrido cursor = obtenerCursor(base);
+        if (cursor.pasadaTerminada()) {
+            cursor.iniciarPasada();
+            detecciones.remove(base);
+            if (vigilante != null) {
+                pasadasVigiladas.add(base);
+            } else {
+                pasadasVigiladas.remove(base);
+            }
+        }
+        // Cada pasadasEntreCompletas pasadas se lista todo, para ver los
+        // archivos modificados en su lugar
+        EstadoDirectorios estado = estadoDirectorios;
+        saltarSinCambios = estado != null && cursor.getPasadasCompletas() % pasadasEntreCompletas != 0;
+        if (saltarSinCambios) {
+            // Los archivos de los directorios salteados no se marcan
+            cursor.descartarBarrido();
+        }
+        cursorEnCurso = cursor;
+        deteccionEnCurso = obtenerDeteccion(cursor);
+        generacionEscritura.accumulateAndGet(cursor.getInicioPasada(), Math::max);
+
         AtomicInteger procesados = new AtomicInteger();
+        subarbolesPodados.set(0);
+        RecorredorParalelo paralelo = obtenerRecorredorParalelo();
+        if (paralelo != null) {
+            List<Path> sinVisitar = paralelo.recorrer(cursor.tomarPendientes(), batchSize, procesados);
+            cursor.agregarSubdirectorios(sinVisitar);
+        } else {
+            Path dir;
+            while (!recorridoDetenido() && procesados.get() < batchSize
+                    && (dir = cursor.siguienteDirectorio()) != null) {
+                recorrerUnDirectorio(dir, cursor, procesados);
+            }
+        }
+        if (recorridoDetenido()) {
+            // Lo listado a medias no se guarda: al volver se retoma desde el
+            // último checkpoint, sin barrer
+            System.out.println("[BATCH] Recorrido detenido en " + base + ", se retoma desde el último checkpoint");
+            return;
+        }
+        // El checkpoint sólo avanza cuando lo recorrido ya está escrito en la BD
+        vaciarIngesta();
+        if (cursor.pasadaTerminada()) {
+            barrerNoVistos(cursor);
+            detecciones.remove(base);
+            deteccionEnCurso = null;
+        }
+        cursor.guardar();
+        if (estado != null) {
+            estado.guardar();
+            System.out.println("[DIRECTORIOS] " + estado.getSaltados() + " sin cambios, "
+                    + estado.getListados() + " listados (acumulado)");
+        }
 
-        try {
-            Files.walkFileTree(base, new SimpleFileVisitor<Path>() {
-                @Override
-                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
-                    if (excluirArchivo(dir) || procesados.get() >= batchSize) {
-                        return procesados.get() >= batchSize
-                                ? FileVisitResult.TERMINATE
-                                : FileVisitResult.SKIP_SUBTREE;
-                    }
-                    return FileVisitResult.CONTINUE;
+        System.out.println("[BATCH] Procesados " + procesados.get() + " archivos en este ciclo");
+        System.out.println("[EXCLUSIONES] " + subarbolesPodados.get() + " subárboles podados en este ciclo");
+        if (cursor.pasadaTerminada()) {
+            System.out.println("[CURSOR] Pasada completa sobre " + base);
+        } else {
+            System.out.println("[CURSOR] Quedan " + cursor.pendientes() + " directorios pendientes en " + base);
+        }
+        PoolConexiones.Metricas metricas = connector.obtenerMetricasPool();
+        if (metricas != null) {
+            System.out.println("[DB] Pool: " + metricas);
+        }
+    }
+
+    /**
+     * Lista un único directorio: procesa sus archivos regulares y deja sus
+     * subdirectorios en la frontera del cursor. No sigue enlaces simbólicos,
+     * igual que Files.walkFileTree sin FOLLOW_LINKS.
+     */
+    private void recorrerUnDirectorio(Path dir, CursorRecorrido cursor, AtomicInteger procesados) {
+        if (podarDirectorio(dir)) {
+            return;
+        }
+        cursor.agregarSubdirectorios(visitarDirectorio(dir, () -> listarDirectorio(dir, procesados)));
+    }
+
+    /** @return los subdirectorios de dir, o null si no se pudo listar */
+    private List<Path> listarDirectorio(Path dir, AtomicInteger procesados) {
+        List<Path> subdirectorios = new ArrayList<>();
+        try (DirectoryStream<Path> entradas = Files.newDirectoryStream(dir)) {
+            for (Path entrada : entradas) {
+                if (recorridoDetenido()) {
+                    return null;
+                }
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(entrada, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException e) {
+                    System.err.println("⚠️ No se pudo acceder a: " + entrada + " (" + e.getMessage() + ")");
+                    continue;
                 }
 
-                @Override
-                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-                    if (procesados.get() >= batchSize) {
-                        return FileVisitResult.TERMINATE;
-                    }
-                    try {
-                        if (attrs.isRegularFile() && !excluirArchivo(file)) {
-                            procesados.incrementAndGet();
-                            procesarArchivo(file, attrs);
-                        }
-                    } catch (Exception e) {
-                        // Capturar excepciones para evitar que falle todo el recorrido
-                        System.err.println("Error al procesar " + file + ": " + e.getMessage());
+                if (attrs.isDirectory()) {
+                    subdirectorios.add(entrada);
+                    continue;
+                }
+                try {
+                    if (attrs.isRegularFile() && !excluirArchivo(entrada)) {
+                        procesados.incrementAndGet();
+                        procesarArchivo(entrada, attrs);
                     }
-                    return FileVisitResult.CONTINUE;
+                } catch (Exception e) {
+                    // Capturar excepciones para evitar que falle todo el recorrido
+                    System.err.println("Error al procesar " + entrada + ": " + e.getMessage());
                 }
+            }
+        } catch (IOException | DirectoryIteratorException e) {
+            System.err.println("⚠️ No se pudo acceder a: " + dir + " (" + e.getMessage() + ")");
+            return null;
+        }
+        return subdirectorios;
+    }
+
+    /**
+     * Paso común del recorrido secuencial y el paralelo para cada directorio
+     * no excluido: carga su .koolignore, lo vigila si la vigilancia está
+     * activa y lo lista salvo que el estado de directorios diga que no cambió.
+     */
+    private List<Path> visitarDirectorio(Path dir, Supplier<List<Path>> listar) {
+        actualizarIgnorar(dir);
+        vigilar(dir);
+        CursorRecorrido cursor = cursorEnCurso;
+        Supplier<List<Path>> listarYAnotar = () -> {
+            List<Path> subdirectorios = listar.get();
+            if (subdirectorios == null && cursor != null) {
+                // Lo que hay debajo no se marcó: el barrido no lo toca
+                cursor.marcarIncompleto(dir);
+            }
+            return subdirectorios;
+        };
+        EstadoDirectorios estado = estadoDirectorios;
+        if (estado != null) {
+            return estado.visitar(dir, listarYAnotar, saltarSinCambios);
+        }
+        List<Path> subdirectorios = listarYAnotar.get();
+        return subdirectorios != null ? subdirectorios : List.of();
+    }
+
+    /**
+     * Barrido de fin de pasada: borra de la BD lo que está bajo la raíz y no
+     * se marcó como visto desde que empezó la pasada.
+     */
+    private void barrerNoVistos(CursorRecorrido cursor) {
+        Path raiz = cursor.getRaiz();
+        if (!cursor.admiteBarrido()) {
+            System.out.println("[LIMPIEZA] Sin barrido en esta pasada sobre " + raiz);
+            return;
+        }
+        // Con la raíz del sistema el prefijo "/" + "/" no coincidiría con nada
+        String prefijo = raiz.getParent() == null ? "" : raiz.toString();
+        List<String> incompletos = new ArrayList<>();
+        for (Path dir : cursor.getIncompletos()) {
+            incompletos.add(dir.toString());
+        }
+        try {
+            List<String> eliminadas = connector.barrerArchivosNoVistos(prefijo, cursor.getInicioPasada(),
+                    incompletos);
+            eliminadas.forEach(this::quitarDeIndiceNombres);
+            System.out.println("[LIMPIEZA] " + eliminadas.size() + " archivos que ya no existen bajo " + raiz
+                    + (incompletos.isEmpty() ? "" : " (" + incompletos.size() + " directorios sin listar)"));
+        } catch (SQLException e) {
+            System.err.println("Error de base de datos durante la limpieza: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Mapa de claves de la pasada en curso sobre la raíz del cursor; se carga
+     * la primera vez con el mismo prefijo que usa el barrido. Si no se puede
+     * cargar, la pasada sigue sin detectar movimientos.
+     */
+    private DeteccionMovimientos obtenerDeteccion(CursorRecorrido cursor) {
+        Path raiz = cursor.getRaiz();
+        DeteccionMovimientos deteccion = detecciones.get(raiz);
+        if (deteccion != null) {
+            return deteccion;
+        }
+        try {
+            deteccion = DeteccionMovimientos.cargar(connector, raiz.getParent() == null ? "" : raiz.toString());
+            detecciones.put(raiz, deteccion);
+            System.out.println("[MOVIDO] " + deteccion.getCantidad() + " claves de archivo bajo " + raiz);
+            return deteccion;
+        } catch (SQLException e) {
+            System.err.println("[DB] No se pudieron cargar las claves de archivo: " + e.getMessage());
+            return null;
+        }
+    }
 
-                @Override
-                public FileVisitResult visitFileFailed(Path file, IOException exc) {
-                    System.err.println("⚠️ No se pudo acceder a: " + file + " (" + exc.getMessage() + ")");
-                    return FileVisitResult.CONTINUE;
+    /**
+     * Configura cuántos directorios se recorren a la vez. Con 1 (valor por
+     * defecto) se usa el recorrido secuencial; con más se usa un
+     * {@link RecorredorParalelo} sobre un ForkJoinPool de ese tamaño.
+     */
+    public synchronized void configurarParalelismo(int paralelismo) {
+        if (paralelismo <= 0) {
+            throw new IllegalArgumentException("El paralelismo debe ser positivo");
+        }
+        if (paralelismo == paralelismoRecorrido) {
+            return;
+        }
+        if (recorredorParalelo != null) {
+            recorredorParalelo.cerrar();
+            recorredorParalelo = null;
+        }
+        this.paralelismoRecorrido = paralelismo;
+        System.out.println("[CONFIG] Paralelismo de recorrido: " + paralelismo);
+    }
+
+    public int getParalelismo() {
+        return paralelismoRecorrido;
+    }
+
+    private synchronized RecorredorParalelo obtenerRecorredorParalelo() {
+        if (paralelismoRecorrido <= 1) {
+            return null;
+        }
+        if (recorredorParalelo == null) {
+            recorredorParalelo = new RecorredorParalelo(paralelismoRecorrido, this::podarDirectorio,
+                    this::excluirArchivo, this::procesarArchivo, this::visitarDirectorio);
+        }
+        return recorredorParalelo;
+    }
+
+    /**
+     * Mantiene el índice de nombres al día con lo que se escribe y se borra en
+     * la BD. Con null deja de actualizarlo.
+     */
+    public void configurarIndiceNombres(IndiceNombres indice) {
+        this.indiceNombres = indice;
+    }
+
+    /**
+     * Activa la vigilancia con inotify: desde ahí cada directorio que lista el
+     * recorrido queda vigilado y sus cambios llegan a la ingesta sin esperar
+     * al próximo ciclo. Cuando una raíz se recorrió entera con la vigilancia
+     * activa, el ciclo periódico deja de recorrerla.
+     *
+     * @param ventana tiempo sin eventos tras el cual se aplica una ráfaga
+     */
+    public synchronized void activarVigilancia(Duration ventana) throws IOException {
+        if (vigilante != null) {
+            return;
+        }
+        VigilanteCambios nuevo = new VigilanteCambios(this::excluirDirectorio, this::excluirArchivo,
+                new DestinoVigilancia(), ventana);
+        nuevo.iniciar();
+        vigilante = nuevo;
+        System.out.println("[VIGILANCIA] Activada (agrupado de " + ventana.toMillis() + " ms)");
+    }
+
+    public VigilanteCambios getVigilante() {
+        return vigilante;
+    }
+
+    /**
+     * Guarda la fecha de modificación de cada directorio listado y en las
+     * pasadas siguientes no vuelve a listar los que no cambiaron (ver
+     * {@link EstadoDirectorios}). Los archivos modificados en su lugar no
+     * cambian su directorio: una de cada pasadasEntreCompletas pasadas lista
+     * todo igual.
+     */
+    public synchronized void activarSaltoSinCambios(int pasadasEntreCompletas) {
+        if (pasadasEntreCompletas < 2) {
+            throw new IllegalArgumentException("Debe haber al menos una pasada que saltee entre las completas");
+        }
+        this.pasadasEntreCompletas = pasadasEntreCompletas;
+        if (estadoDirectorios == null) {
+            estadoDirectorios = EstadoDirectorios.cargar(directorioCursores.resolve("directorios.txt"),
+                    dir -> eliminarRuta(dir, true));
+            System.out.println("[DIRECTORIOS] Salto de directorios sin cambios activado ("
+                    + estadoDirectorios.getDirectorios() + " conocidos, pasada completa cada "
+                    + pasadasEntreCompletas + ")");
+        }
+    }
+
+    private void vigilar(Path dir) {
+        VigilanteCambios v = vigilante;
+        if (v != null) {
+            v.registrar(dir);
+        }
+    }
+
+    /**
+     * true si el vigilante cubre todo raiz: una pasada completa la recorrió con
+     * la vigilancia activa y no se perdió ningún directorio.
+     */
+    private boolean vigilanciaCubre(Path raiz) {
+        VigilanteCambios v = vigilante;
+        Path base = raiz.toAbsolutePath().normalize();
+        return v != null && v.estaCompleto() && pasadasVigiladas.contains(base)
+                && obtenerCursor(base).pasadaTerminada();
+    }
+
+    /**
+     * Borra de la BD (y del índice de nombres) un archivo o, si es un
+     * directorio, todo lo que había debajo.
+     */
+    private void eliminarRuta(Path ruta, boolean directorio) {
+        // Lo que ya está encolado no debe volver a crear la fila después de borrarla
+        vaciarIngesta();
+        String rutaCompleta = ruta.toAbsolutePath().normalize().toString();
+        try {
+            if (directorio) {
+                List<String> eliminadas = connector.eliminarArchivosBajoDirectorio(rutaCompleta);
+                eliminadas.forEach(this::quitarDeIndiceNombres);
+                System.out.println("[ELIMINADO] " + rutaCompleta + " (" + eliminadas.size() + " archivos)");
+            } else {
+                connector.eliminarArchivosEnUbicacion(rutaCompleta);
+                quitarDeIndiceNombres(rutaCompleta);
+            }
+        } catch (SQLException e) {
+            System.err.println("[DB] Error al eliminar " + rutaCompleta + ": " + e.getMessage());
+        }
+    }
+
+    /** Aplica los cambios del vigilante con los mismos caminos que el recorrido. */
+    private final class DestinoVigilancia implements VigilanteCambios.Destino {
+
+        @Override
+        public void actualizar(Path archivo, BasicFileAttributes attrs) {
+            procesarArchivo(archivo, attrs);
+        }
+
+        @Override
+        public void eliminar(Path ruta, boolean directorio) {
+            eliminarRuta(ruta, directorio);
+        }
+
+        @Override
+        public void purgarFaltantes(Path dir) {
+            vaciarIngesta();
+            String directorio = dir.toAbsolutePath().normalize().toString();
+            List<String> faltantes = new ArrayList<>();
+            try {
+                connector.recorrerArchivosBajo(directorio, (ruta, tamano, fecha) -> {
+                    if (!Files.exists(Paths.get(ruta), LinkOption.NOFOLLOW_LINKS)) {
+                        faltantes.add(ruta);
+                    }
+                });
+                for (String ruta : faltantes) {
+                    connector.eliminarArchivosEnUbicacion(ruta);
+                    quitarDeIndiceNombres(ruta);
                 }
-            });
-        } catch (IOException e) {
-            System.err.println("Error recorriendo directorio: " + e.getMessage());
+                System.out.println("[VIGILANCIA] Eventos perdidos en " + directorio + ", "
+                        + faltantes.size() + " archivos ya no existían");
+            } catch (SQLException e) {
+                System.err.println("[VIGILANCIA] Error al revisar " + directorio + ": " + e.getMessage());
+            }
         }
+    }
 
-        System.out.println("[BATCH] Procesados " + procesados.get() + " archivos en este ciclo");
+    private void registrarEnIndiceNombres(Archivo archivo) {
+        IndiceNombres indice = indiceNombres;
+        if (indice != null) {
+            indice.registrar(archivo.getRutaCompleta(), archivo.getTamanoBytes(), archivo.getFechaModificacion());
+        }
     }
 
+    private void quitarDeIndiceNombres(String ruta) {
+        IndiceNombres indice = indiceNombres;
+        if (indice != null && ruta != null) {
+            indice.eliminar(ruta);
+        }
+    }
+
+    private CursorRecorrido obtenerCursor(Path base) {
+        return cursores.computeIfAbsent(base, raiz -> CursorRecorrido.cargar(raiz, directorioCursores));
+    }
+
+    /**
+     * Encola el archivo en la ingesta por lotes; la escritura en BD la hace el
+     * hilo escritor de {@link IngestaArchivos}.
+     */
     private void procesarArchivo(Path p, BasicFileAttributes attrs) {
         Archivo archivoModelo = crearArchivoDesdePath(p, attrs);
+        aplicarMovimiento(archivoModelo);
+        try {
+            ingesta.encolar(archivoModelo);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Recorrido interrumpido al encolar: " + p);
+        } catch (IllegalStateException e) {
+            // La ingesta se cerró: seguir archivo por archivo sólo repetiría el error
+            if (ejecutando) {
+                System.err.println("[INGESTA] Cola cerrada, se detiene el recorrido en " + p);
+            }
+            detenerRecorrido();
+        }
+    }
+
+    /**
+     * El recorrido se corta entre archivos si se está cerrando o si se
+     * interrumpió el hilo (un encolar interrumpido no entra a la cola).
+     */
+    private boolean recorridoDetenido() {
+        return !ejecutando || Thread.currentThread().isInterrupted();
+    }
+
+    /** Hace que los recorridos en curso terminen y que no empiecen otros. */
+    private void detenerRecorrido() {
+        ejecutando = false;
+        RecorredorParalelo paralelo;
+        synchronized (this) {
+            paralelo = recorredorParalelo;
+        }
+        if (paralelo != null) {
+            paralelo.detener();
+        }
+    }
+
+    /** Espera hasta ESPERA_CIERRE a que terminen las llamadas a recorrerDirectorio. */
+    private void esperarRecorridos() {
+        long limite = System.nanoTime() + ESPERA_CIERRE.toNanos();
+        synchronized (monitorRecorridos) {
+            while (recorridosEnCurso > 0) {
+                long restante = TimeUnit.NANOSECONDS.toMillis(limite - System.nanoTime());
+                if (restante <= 0) {
+                    System.err.println("[BATCH] " + recorridosEnCurso + " recorridos no terminaron a tiempo");
+                    return;
+                }
+                try {
+                    monitorRecorridos.wait(restante);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Si la clave del archivo estaba en el almacén con otra ruta que ya no
+     * existe, mueve esa fila (o todo su directorio) antes de encolarlo: el
+     * upsert la encuentra en su lugar y no queda una fila nueva más la vieja
+     * para el barrido.
+     */
+    private void aplicarMovimiento(Archivo archivo) {
+        DeteccionMovimientos deteccion = deteccionEnCurso;
+        String clave = archivo.getClaveArchivo();
+        String ruta = archivo.getRutaCompleta();
+        if (deteccion == null || deteccion.detectar(clave, ruta) == null) {
+            return;
+        }
+        synchronized (deteccion) {
+            // Otro hilo pudo haberlo aplicado mientras tanto
+            DeteccionMovimientos.Movimiento movimiento = deteccion.detectar(clave, ruta);
+            if (movimiento == null) {
+                return;
+            }
+            try {
+                if (movimiento.directorio()) {
+                    connector.actualizarUbicacionConNombreNuevo(movimiento.viejaRuta(), movimiento.nuevaRuta());
+                } else {
+                    connector.moverArchivo(movimiento.viejaRuta(), ArchivoConverter.toDbArchivo(archivo));
+                }
+            } catch (SQLException e) {
+                System.err.println("[DB] Error al mover " + movimiento.viejaRuta() + ": " + e.getMessage());
+                return;
+            }
+            deteccion.aplicado(movimiento, clave, ruta).forEach(this::quitarDeIndiceNombres);
+            System.out.println("[MOVIDO] " + movimiento.viejaRuta() + " -> " + movimiento.nuevaRuta());
+        }
+    }
+
+    /**
+     * Escribe un lote con un único upsert por conjuntos. Si el lote falla
+     * (por ejemplo, una BD sin sp_ingestar_lote_archivos) se reintenta archivo
+     * por archivo con el camino anterior de búsqueda + alta/actualización.
+     */
+    private void escribirLote(List<Archivo> lote) {
+        List<koolfileindexer.db.Archivo> loteBD = new ArrayList<>(lote.size());
+        for (Archivo archivo : lote) {
+            loteBD.add(ArchivoConverter.toDbArchivo(archivo));
+        }
+        try {
+            connector.ingestarLoteArchivos(loteBD, generacionEscritura.get());
+            lote.forEach(this::registrarEnIndiceNombres);
+        } catch (SQLException e) {
+            System.err.println("[INGESTA] Falló el upsert por lotes, se reintenta archivo por archivo: "
+                    + e.getMessage());
+            // El camino individual no marca la generación
+            CursorRecorrido cursor = cursorEnCurso;
+            if (cursor != null) {
+                cursor.descartarBarrido();
+            }
+            for (Archivo archivo : lote) {
+                if (persistirArchivoIndividual(archivo)) {
+                    registrarEnIndiceNombres(archivo);
+                }
+            }
+        }
+    }
+
+    private void vaciarIngesta() {
+        try {
+            ingesta.vaciar();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
+    private boolean persistirArchivoIndividual(Archivo archivoModelo) {
         try {
             // Usar Archivo de db en lugar de ArchivoBD
             koolfileindexer.db.Archivo filtroBD = ArchivoConverter.toDbArchivo(archivoModelo);
 
             // Buscar en BD y manejar resultado
             ResultSet rs = connector.buscarArchivosPorFiltroVariasPalabrasClaveMismoArchivo(
-                    filtroBD, attrs.size(), attrs.size());
+                    filtroBD, archivoModelo.getTamanoBytes(), archivoModelo.getTamanoBytes());
             if (rs != null) {
                 try (rs) { // <-- Usar try-with-resources
                     if (rs.next()) {
-                        actualizarArchivoExistente(archivoModelo, attrs, rs);
+                        actualizarArchivoExistente(archivoModelo, rs);
                     } else {
-                        insertarNuevoArchivo(archivoModelo, attrs);
+                        insertarNuevoArchivo(archivoModelo);
                     }
                 }
             } else {
-                insertarNuevoArchivo(archivoModelo, attrs);
+                insertarNuevoArchivo(archivoModelo);
             }
+            return true;
         } catch (Exception e) {
-            System.err.println("Error al procesar archivo: " + p + " - " + e.getMessage());
+            System.err.println("Error al procesar archivo: " + archivoModelo.getRutaCompleta() + " - " + e.getMessage());
+            return false;
         }
     }
 
     /**
-     * Detiene el scheduler de indexación periódica si está activo.
+     * Detiene el scheduler de indexación periódica si está activo, espera
+     * (con un tope) a que termine el recorrido en curso y recién después
+     * cierra la ingesta y la conexión.
+     *
+     * La espera se hace sin el monitor de la instancia: el recorrido lo toma
+     * al recargar exclusiones.
      */
-    public synchronized void shutdown() {
-        if (scheduler != null) {
-            scheduler.shutdownNow();
+    public void shutdown() {
+        detenerRecorrido();
+        ScheduledExecutorService programado;
+        synchronized (this) {
+            programado = scheduler;
             scheduler = null;
-            System.out.println("[SCHEDULER] Detenido correctamente");
+        }
+        if (programado != null) {
+            programado.shutdownNow();
+            try {
+                if (programado.awaitTermination(ESPERA_CIERRE.toMillis(), TimeUnit.MILLISECONDS)) {
+                    System.out.println("[SCHEDULER] Detenido correctamente");
+                } else {
+                    System.err.println("[SCHEDULER] El ciclo en curso no terminó a tiempo");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        esperarRecorridos();
+        cerrarRecursos();
+    }
+
+    private synchronized void cerrarRecursos() {
+        if (vigilante != null) {
+            vigilante.detener();
+            System.out.println("[VIGILANCIA] " + vigilante.getEventos() + " eventos, "
+                    + vigilante.getDirectoriosVigilados() + " directorios vigilados");
+            vigilante = null;
+        }
+
+        ingesta.cerrar();
+        System.out.println("[INGESTA] " + ingesta.getArchivosEscritos() + " archivos escritos en "
+                + ingesta.getLotesEscritos() + " lotes");
+
+        if (recorredorParalelo != null) {
+            recorredorParalelo.cerrar();
+            recorredorParalelo = null;
         }
 
         // Cerrar conexión si es necesario
         if (connector != null) {
             try {
-                connector.terminarConexion();
+                connector.cerrar();
                 System.out.println("[DB] Conexión cerrada correctamente");
             } catch (Exception e) {
                 System.err.println("[DB] Error al cerrar conexión: " + e.getMessage());
@@ -368,7 +1055,7 @@ public class Indexador implements Runnable {
     }
 
     // Añadir este método para detectar cambios en archivos
-    private void detectarCambiosArchivo(Path nuevaRuta, BasicFileAttributes attrs, ResultSet rs) throws SQLException {
+    private void detectarCambiosArchivo(Path nuevaRuta, ResultSet rs) throws SQLException {
         try {
             // Usar el enfoque de alternativas para obtener nombres de columnas
             String nombreActualEnBD = ArchivoConverter.getStringWithAlternatives(rs,
@@ -393,6 +1080,7 @@ public class Indexador implements Runnable {
                 }
 
                 connector.actualizarNombreArchivo(archivo, nombreActualEnBD);
+                quitarDeIndiceNombres(rutaActualEnBD);
                 System.out.println("[RENOMBRADO] " + nombreActualEnBD + " -> " + nuevoNombre);
             }
 
@@ -410,6 +1098,7 @@ public class Indexador implements Runnable {
                 }
 
                 connector.actualizarUbicacionArchivo(archivo, rutaActualEnBD);
+                quitarDeIndiceNombres(rutaActualEnBD);
                 System.out.println("[MOVIDO] " + rutaActualEnBD + " -> " + nuevaRutaCompleta);
             }
         } catch (Exception e) {
@@ -417,16 +1106,14 @@ public class Indexador implements Runnable {
         }
     }
 
-    private void actualizarArchivoExistente(Archivo archivoModelo, BasicFileAttributes attrs, ResultSet rs)
+    private void actualizarArchivoExistente(Archivo archivoModelo, ResultSet rs)
             throws Exception {
         archivoModelo.setId(rs.getLong("id"));
         archivoModelo.asignarCategoria(Categoria.clasificar(archivoModelo));
-        archivoModelo.actualizarFechaModificacion(
-                LocalDateTime.ofInstant(attrs.lastModifiedTime().toInstant(), ZoneId.systemDefault()));
 
         try {
             // Detectar y manejar cambios de nombre o ubicación
-            detectarCambiosArchivo(Paths.get(archivoModelo.getRutaCompleta()), attrs, rs);
+            detectarCambiosArchivo(Paths.get(archivoModelo.getRutaCompleta()), rs);
 
             // Actualizar el resto de información
             koolfileindexer.db.Archivo archivoDb = ArchivoConverter.toDbArchivo(archivoModelo);
@@ -438,7 +1125,7 @@ public class Indexador implements Runnable {
         }
     }
 
-    private void insertarNuevoArchivo(Archivo archivoModelo, BasicFileAttributes attrs) throws Exception {
+    private void insertarNuevoArchivo(Archivo archivoModelo) throws Exception {
         // Usar ArchivoConverter para asegurar que se crea un objeto válido
         koolfileindexer.db.Archivo archivoDb = ArchivoConverter.toDbArchivo(archivoModelo);
 
@@ -474,6 +1161,9 @@ public class Indexador implements Runnable {
 
         Archivo a = new Archivo(nombre, ruta, ext, tam, cre, mod);
         a.asignarCategoria(Categoria.clasificar(a));
+        // (dispositivo, inodo) en unix; null donde el sistema de archivos no la da
+        Object clave = attrs.fileKey();
+        a.setClaveArchivo(clave != null ? clave.toString() : null);
         return a;
     }
 
@@ -493,12 +1183,23 @@ public class Indexador implements Runnable {
             System.out.println("\n=== Iniciando monitor periódico ===");
             while (ejecutando && !Thread.currentThread().isInterrupted()) {
                 try {
-                    // Indexación periódica de HOME
+                    // Indexación periódica de HOME; con la vigilancia cubriéndolo
+                    // los cambios ya llegan por inotify
                     Path homePath = Paths.get(System.getProperty("user.home"));
-                    recorrerDirectorio(homePath, tamanoLote);
-
-                    // Añadir limpieza periódica
-                    limpiarArchivosNoExistentes();
+                    if (!vigilanciaCubre(homePath)) {
+                        recorrerDirectorio(homePath, tamanoLote);
+
+                        // Las pasadas completas se limpian con el barrido al
+                        // terminar; si se saltearon directorios sin cambios sólo
+                        // pudo faltar algo en los que se listaron
+                        EstadoDirectorios estado = estadoDirectorios;
+                        if (estado != null) {
+                            Set<Path> cambiados = estado.tomarCambiados();
+                            if (saltarSinCambios) {
+                                limpiarDirectoriosCambiados(cambiados);
+                            }
+                        }
+                    }
 
                     // Esperar hasta el próximo intervalo
                     Thread.sleep(intervaloEjecucion.toMillis());
@@ -579,51 +1280,36 @@ public class Indexador implements Runnable {
         }
     }
 
-    // Añadir este método a la clase Indexador
-    public void limpiarArchivosNoExistentes() {
-        System.out.println("[LIMPIEZA] Iniciando verificación de archivos indexados...");
+    /**
+     * Limpieza de las pasadas que saltean directorios sin cambios (que no se
+     * pueden barrer): revisa sólo los archivos que están directamente en los
+     * directorios dados.
+     */
+    private void limpiarDirectoriosCambiados(Set<Path> directorios) {
+        if (directorios.isEmpty()) {
+            return;
+        }
+        vaciarIngesta();
+        List<String> rutas = new ArrayList<>(directorios.size());
+        for (Path dir : directorios) {
+            rutas.add(dir.toString());
+        }
+        List<String> faltantes = new ArrayList<>();
         try {
-            // Usar ArchivoAdapter en lugar de Archivo normal
-            ArchivoAdapter filtro = new ArchivoAdapter();
-            filtro.setNombre("%"); // Comodín SQL para buscar cualquier nombre
-
-            ResultSet rs = connector.buscarArchivosPorFiltroVariasPalabrasClaveMismoArchivo(filtro, -1, -1);
-
-            if (rs != null) {
-                // El resto del código sigue igual
-                int eliminados = 0;
-                try (rs) {
-                    while (rs.next()) {
-                        String rutaCompleta = ArchivoConverter.getStringWithAlternatives(rs,
-                                new String[] { "arc_ruta_completa", "ruta_completa", "path" });
-                        Path path = Paths.get(rutaCompleta);
-
-                        // Verificar si el archivo ya no existe
-                        if (!Files.exists(path)) {
-                            ArchivoAdapter archivoDb = new ArchivoAdapter(
-                                    rs.getString("arc_nombre"),
-                                    0, // El tamaño no es relevante para eliminar
-                                    LocalDateTime.now(), // La fecha no es relevante para eliminar
-                                    rutaCompleta,
-                                    rs.getString("ext_extension"),
-                                    rs.getString("cat_nombre") // Obtener la categoría del resultset
-                            );
-
-                            // Eliminar el archivo de la BD
-                            connector.eliminarArchivo(archivoDb);
-                            eliminados++;
-                            System.out.println("[ELIMINADO] " + rutaCompleta + " (ya no existe en el sistema)");
-                        }
-                    }
+            connector.recorrerArchivosEnDirectorios(rutas, (ruta, tamano, fecha) -> {
+                if (!Files.exists(Paths.get(ruta), LinkOption.NOFOLLOW_LINKS)) {
+                    faltantes.add(ruta);
                 }
-                System.out.println("[LIMPIEZA] Total de archivos eliminados: " + eliminados);
+            });
+            for (String ruta : faltantes) {
+                connector.eliminarArchivosEnUbicacion(ruta);
+                quitarDeIndiceNombres(ruta);
+                System.out.println("[ELIMINADO] " + ruta + " (ya no existe en el sistema)");
             }
-        } catch (SQLException sqlEx) {
-            System.err.println("Error de base de datos durante la limpieza: " + sqlEx.getMessage());
-            sqlEx.printStackTrace();
-        } catch (Exception e) {
-            System.err.println("Error inesperado durante la limpieza: " + e.getMessage());
-            e.printStackTrace();
+            System.out.println("[LIMPIEZA] " + directorios.size() + " directorios con cambios, "
+                    + faltantes.size() + " archivos eliminados");
+        } catch (SQLException e) {
+            System.err.println("Error de base de datos durante la limpieza: " + e.getMessage());
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,669 @@
+package koolfileindexer.logica;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import koolfileindexer.modelo.Archivo;
+
+/**
+ * Índice en memoria de nombres de archivo para responder búsquedas por
+ * prefijo y por subcadena sin ir a la BD.
+ *
+ * Los nombres y directorios distintos (con su separador final) se internan
+ * en un único char[] cada uno y se identifican con un int; cada archivo es
+ * una posición en arreglos paralelos de primitivos (nombre, directorio,
+ * tamaño, fecha, el anterior y el siguiente archivo con el mismo nombre y el
+ * siguiente en su cubeta). Un archivo se ubica por (directorio, nombre) en
+ * una tabla hash encadenada con esos arreglos, así que registrar o quitar no
+ * depende de cuántos archivos comparten el nombre (package.json,
+ * index.js...). Para cada
+ * trigrama en minúsculas de los nombres se guarda la lista de ids de nombre
+ * que lo contienen, codificada como diferencias en varint. Una búsqueda
+ * recorre la lista más corta de los trigramas del patrón intersectada con las
+ * dos siguientes, y verifica cada candidato contra el texto; los prefijos usan
+ * un carácter centinela al inicio del nombre, así que "inf" se resuelve con el
+ * trigrama "^in" sin recorrer todos los nombres. Patrones de menos de tres
+ * caracteres (dos para prefijos) recorren los nombres hasta llenar el límite.
+ *
+ * Presupuesto de memoria, con nombres de ~20 caracteres Latin-1 y casi todos
+ * distintos: 36 bytes por archivo más 4-8 de su cubeta, más ~90 bytes por
+ * nombre distinto (caracteres, tabla hash, cabeza de la cadena y ~19
+ * trigramas de 1-2 bytes), más el directorio repartido entre sus archivos:
+ * unos 145 bytes por archivo, ~725 MB para 5M archivos (ver
+ * IndiceNombresBenchmark).
+ * {@link #memoriaEstimadaBytes()} da el valor real.
+ *
+ * Los nombres que se quedan sin archivos no se borran de las listas de
+ * trigramas; cuando son más que los vivos el índice se reconstruye.
+ *
+ * Los resultados no guardan etiquetas ni tienen un orden definido; es seguro
+ * entre hilos (un escritor, varios lectores).
+ */
+public class IndiceNombres {
+
+    /** Archivo encontrado en el índice. */
+    public record Coincidencia(String ruta, String nombre, long tamano, LocalDateTime fechaModificacion) {
+
+        /**
+         * Archivo del modelo con estos datos (la fecha de creación no se guarda
+         * y se usa la de modificación).
+         *
+         * @throws IllegalArgumentException si los datos no pasan la validación
+         */
+        public Archivo aArchivo() {
+            return new Archivo(nombre, ruta, extension(), tamano, fechaModificacion, fechaModificacion);
+        }
+
+        /** Extensión con la misma regla que usa el Indexador al recorrer. */
+        public String extension() {
+            int idx = nombre.lastIndexOf('.');
+            return (idx > 0 && idx < nombre.length() - 1)
+                    ? nombre.substring(idx + 1).toLowerCase()
+                    : "";
+        }
+    }
+
+    // Marca el inicio del nombre en los trigramas de prefijo
+    private static final char CENTINELA = '\u0001';
+    private static final int SIN_ARCHIVO = -1;
+    private static final int NOMBRES_MUERTOS_MINIMOS = 1_024;
+    // Cuántas listas de trigramas se intersectan y hasta qué largo relativo
+    private static final int LISTAS_INTERSECTADAS = 3;
+    private static final int PROPORCION_INTERSECCION = 16;
+
+    private final ReadWriteLock cerrojo = new ReentrantReadWriteLock();
+
+    // ─── Nombres distintos ────────────────────────────────────────
+    private TablaCadenas nombres;
+    private int[] primerArchivo; // por id de nombre; SIN_ARCHIVO si no tiene
+    private int nombresMuertos;
+    private Map<Long, Posting> trigramas;
+
+    // ─── Directorios distintos ────────────────────────────────────
+    private TablaCadenas directorios;
+
+    // ─── Archivos (arreglos paralelos por id de archivo) ─────────
+    private int[] nombreDeArchivo; // SIN_ARCHIVO si la posición está libre
+    private int[] directorioDeArchivo;
+    private int[] siguienteConNombre;
+    private int[] anteriorConNombre;
+    private int[] siguienteEnCubeta;
+    private long[] tamanos;
+    private long[] fechas; // segundos de la fecha local
+    private int posicionesUsadas;
+    private int[] libres;
+    private int cantidadLibres;
+    private int archivosVivos;
+    // Primer archivo de cada cubeta de (directorio, nombre); largo potencia de 2
+    private int[] cubetas;
+
+    private volatile boolean listo;
+
+    public IndiceNombres() {
+        reiniciar(1_024);
+    }
+
+    private void reiniciar(int capacidad) {
+        nombres = new TablaCadenas(capacidad);
+        primerArchivo = new int[capacidad];
+        nombresMuertos = 0;
+        trigramas = new HashMap<>();
+        directorios = new TablaCadenas(Math.max(16, capacidad / 8));
+        nombreDeArchivo = new int[capacidad];
+        directorioDeArchivo = new int[capacidad];
+        siguienteConNombre = new int[capacidad];
+        anteriorConNombre = new int[capacidad];
+        siguienteEnCubeta = new int[capacidad];
+        tamanos = new long[capacidad];
+        fechas = new long[capacidad];
+        posicionesUsadas = 0;
+        libres = new int[16];
+        cantidadLibres = 0;
+        archivosVivos = 0;
+        cubetas = new int[Integer.highestOneBit(Math.max(16, capacidad) - 1) << 1];
+        Arrays.fill(cubetas, SIN_ARCHIVO);
+    }
+
+    /**
+     * Marca el índice como completo (la carga inicial terminó). Antes de eso
+     * las búsquedas deberían seguir yendo a la BD.
+     */
+    public void marcarListo() {
+        listo = true;
+    }
+
+    public boolean estaListo() {
+        return listo;
+    }
+
+    public int getArchivos() {
+        cerrojo.readLock().lock();
+        try {
+            return archivosVivos;
+        } finally {
+            cerrojo.readLock().unlock();
+        }
+    }
+
+    /**
+     * Alta o actualización de un archivo identificado por su ruta completa. El
+     * nombre es lo que sigue al último separador.
+     */
+    public void registrar(String ruta, long tamano, LocalDateTime fechaModificacion) {
+        int separador = ultimoSeparador(ruta);
+        String directorio = ruta.substring(0, separador + 1);
+        String nombre = ruta.substring(separador + 1);
+        long fecha = fechaModificacion != null ? fechaModificacion.toEpochSecond(ZoneOffset.UTC) : 0L;
+
+        cerrojo.writeLock().lock();
+        try {
+            int existente = buscarArchivo(directorio, nombre);
+            if (existente != SIN_ARCHIVO) {
+                tamanos[existente] = tamano;
+                fechas[existente] = fecha;
+                return;
+            }
+
+            int idNombre = nombres.buscar(nombre);
+            if (idNombre < 0) {
+                idNombre = nombres.agregar(nombre);
+                primerArchivo = asegurar(primerArchivo, idNombre + 1);
+                primerArchivo[idNombre] = SIN_ARCHIVO;
+                indexarTrigramas(idNombre, nombre);
+            } else if (primerArchivo[idNombre] == SIN_ARCHIVO) {
+                nombresMuertos--;
+            }
+
+            agregarArchivo(idNombre, directorios.agregar(directorio), tamano, fecha);
+        } finally {
+            cerrojo.writeLock().unlock();
+        }
+    }
+
+    /** Quita un archivo por su ruta completa; no hace nada si no estaba. */
+    public void eliminar(String ruta) {
+        cerrojo.writeLock().lock();
+        try {
+            int separador = ultimoSeparador(ruta);
+            int id = buscarArchivo(ruta.substring(0, separador + 1), ruta.substring(separador + 1));
+            if (id == SIN_ARCHIVO) {
+                return;
+            }
+
+            int idNombre = nombreDeArchivo[id];
+            int anterior = anteriorConNombre[id];
+            int siguiente = siguienteConNombre[id];
+            if (anterior == SIN_ARCHIVO) {
+                primerArchivo[idNombre] = siguiente;
+            } else {
+                siguienteConNombre[anterior] = siguiente;
+            }
+            if (siguiente != SIN_ARCHIVO) {
+                anteriorConNombre[siguiente] = anterior;
+            }
+            quitarDeCubeta(id);
+            if (primerArchivo[idNombre] == SIN_ARCHIVO) {
+                nombresMuertos++;
+            }
+
+            nombreDeArchivo[id] = SIN_ARCHIVO;
+            libres = asegurar(libres, cantidadLibres + 1);
+            libres[cantidadLibres++] = id;
+            archivosVivos--;
+
+            if (nombresMuertos > Math.max(NOMBRES_MUERTOS_MINIMOS, nombres.cantidad() - nombresMuertos)) {
+                reconstruir();
+            }
+        } finally {
+            cerrojo.writeLock().unlock();
+        }
+    }
+
+    /** Archivos cuyo nombre contiene el texto, sin distinguir mayúsculas. */
+    public List<Coincidencia> buscarSubcadena(String texto, int limite) {
+        return buscar(minusculas(texto, false), false, limite);
+    }
+
+    /** Archivos cuyo nombre empieza por el texto, sin distinguir mayúsculas. */
+    public List<Coincidencia> buscarPrefijo(String texto, int limite) {
+        return buscar(minusculas(texto, true), true, limite);
+    }
+
+    private List<Coincidencia> buscar(char[] patron, boolean prefijo, int limite) {
+        List<Coincidencia> resultado = new ArrayList<>();
+        if (limite <= 0) {
+            return resultado;
+        }
+
+        cerrojo.readLock().lock();
+        try {
+            if (patron.length < 3) {
+                for (int idNombre = 0; idNombre < nombres.cantidad() && resultado.size() < limite; idNombre++) {
+                    agregarSiCoincide(idNombre, patron, prefijo, limite, resultado);
+                }
+                return resultado;
+            }
+
+            List<Posting> listas = new ArrayList<>();
+            for (int i = 0; i + 2 < patron.length; i++) {
+                Posting posting = trigramas.get(trigrama(patron[i], patron[i + 1], patron[i + 2]));
+                if (posting == null) {
+                    return resultado;
+                }
+                if (!listas.contains(posting)) {
+                    listas.add(posting);
+                }
+            }
+            listas.sort((a, b) -> Integer.compare(a.cantidad, b.cantidad));
+
+            // La lista más corta guía; las siguientes se recorren a la par sólo
+            // si no son mucho más largas, el resto lo descarta la verificación
+            Cursor guia = new Cursor(listas.get(0));
+            List<Cursor> filtros = new ArrayList<>();
+            for (int i = 1; i < listas.size() && filtros.size() < LISTAS_INTERSECTADAS - 1; i++) {
+                if (listas.get(i).cantidad <= guia.posting.cantidad * PROPORCION_INTERSECCION) {
+                    filtros.add(new Cursor(listas.get(i)));
+                }
+            }
+
+            candidatos: for (int idNombre = guia.siguiente(); idNombre >= 0 && resultado.size() < limite;
+                    idNombre = guia.siguiente()) {
+                for (Cursor filtro : filtros) {
+                    if (!filtro.avanzarHasta(idNombre)) {
+                        continue candidatos;
+                    }
+                }
+                agregarSiCoincide(idNombre, patron, prefijo, limite, resultado);
+            }
+            return resultado;
+        } finally {
+            cerrojo.readLock().unlock();
+        }
+    }
+
+    private void agregarSiCoincide(int idNombre, char[] patron, boolean prefijo, int limite,
+            List<Coincidencia> resultado) {
+        if (primerArchivo[idNombre] == SIN_ARCHIVO || !nombres.contiene(idNombre, patron, prefijo)) {
+            return;
+        }
+        String nombre = nombres.texto(idNombre);
+        for (int id = primerArchivo[idNombre]; id != SIN_ARCHIVO && resultado.size() < limite;
+                id = siguienteConNombre[id]) {
+            resultado.add(new Coincidencia(
+                    directorios.texto(directorioDeArchivo[id]) + nombre,
+                    nombre,
+                    tamanos[id],
+                    LocalDateTime.ofEpochSecond(fechas[id], 0, ZoneOffset.UTC)));
+        }
+    }
+
+    /** Bytes que ocupan los arreglos del índice (sin cabeceras de objetos). */
+    public long memoriaEstimadaBytes() {
+        cerrojo.readLock().lock();
+        try {
+            long total = nombres.memoriaBytes() + directorios.memoriaBytes()
+                    + 4L * primerArchivo.length
+                    + (4L * 5 + 8L * 2) * nombreDeArchivo.length
+                    + 4L * cubetas.length
+                    + 4L * libres.length;
+            for (Posting posting : trigramas.values()) {
+                total += posting.datos.length + 48; // entrada del mapa + objeto
+            }
+            return total;
+        } finally {
+            cerrojo.readLock().unlock();
+        }
+    }
+
+    /** Vuelve a construir el índice sólo con los archivos vivos. */
+    private void reconstruir() {
+        TablaCadenas nombresAnteriores = nombres;
+        TablaCadenas directoriosAnteriores = directorios;
+        int[] nombreAnterior = nombreDeArchivo;
+        int[] directorioAnterior = directorioDeArchivo;
+        long[] tamanosAnteriores = tamanos;
+        long[] fechasAnteriores = fechas;
+        int usadas = posicionesUsadas;
+
+        reiniciar(Math.max(1_024, archivosVivos));
+        for (int id = 0; id < usadas; id++) {
+            if (nombreAnterior[id] == SIN_ARCHIVO) {
+                continue;
+            }
+            String nombre = nombresAnteriores.texto(nombreAnterior[id]);
+            String directorio = directoriosAnteriores.texto(directorioAnterior[id]);
+
+            int idNombre = nombres.buscar(nombre);
+            if (idNombre < 0) {
+                idNombre = nombres.agregar(nombre);
+                primerArchivo = asegurar(primerArchivo, idNombre + 1);
+                primerArchivo[idNombre] = SIN_ARCHIVO;
+                indexarTrigramas(idNombre, nombre);
+            }
+            agregarArchivo(idNombre, directorios.agregar(directorio), tamanosAnteriores[id], fechasAnteriores[id]);
+        }
+    }
+
+    /** Ocupa una posición y la enlaza en la cadena de su nombre y en su cubeta. */
+    private void agregarArchivo(int idNombre, int idDirectorio, long tamano, long fecha) {
+        int id = nuevaPosicion();
+        nombreDeArchivo[id] = idNombre;
+        directorioDeArchivo[id] = idDirectorio;
+        tamanos[id] = tamano;
+        fechas[id] = fecha;
+        int primero = primerArchivo[idNombre];
+        siguienteConNombre[id] = primero;
+        anteriorConNombre[id] = SIN_ARCHIVO;
+        if (primero != SIN_ARCHIVO) {
+            anteriorConNombre[primero] = id;
+        }
+        primerArchivo[idNombre] = id;
+        archivosVivos++;
+
+        if (archivosVivos > cubetas.length) {
+            redimensionarCubetas();
+        } else {
+            int cubeta = cubeta(idDirectorio, idNombre);
+            siguienteEnCubeta[id] = cubetas[cubeta];
+            cubetas[cubeta] = id;
+        }
+    }
+
+    private int buscarArchivo(String directorio, String nombre) {
+        int idNombre = nombres.buscar(nombre);
+        int idDirectorio = directorios.buscar(directorio);
+        if (idNombre < 0 || idDirectorio < 0) {
+            return SIN_ARCHIVO;
+        }
+        for (int id = cubetas[cubeta(idDirectorio, idNombre)]; id != SIN_ARCHIVO; id = siguienteEnCubeta[id]) {
+            if (nombreDeArchivo[id] == idNombre && directorioDeArchivo[id] == idDirectorio) {
+                return id;
+            }
+        }
+        return SIN_ARCHIVO;
+    }
+
+    private void quitarDeCubeta(int id) {
+        int cubeta = cubeta(directorioDeArchivo[id], nombreDeArchivo[id]);
+        if (cubetas[cubeta] == id) {
+            cubetas[cubeta] = siguienteEnCubeta[id];
+            return;
+        }
+        int anterior = cubetas[cubeta];
+        while (siguienteEnCubeta[anterior] != id) {
+            anterior = siguienteEnCubeta[anterior];
+        }
+        siguienteEnCubeta[anterior] = siguienteEnCubeta[id];
+    }
+
+    private void redimensionarCubetas() {
+        cubetas = new int[cubetas.length * 2];
+        Arrays.fill(cubetas, SIN_ARCHIVO);
+        for (int id = 0; id < posicionesUsadas; id++) {
+            if (nombreDeArchivo[id] != SIN_ARCHIVO) {
+                int cubeta = cubeta(directorioDeArchivo[id], nombreDeArchivo[id]);
+                siguienteEnCubeta[id] = cubetas[cubeta];
+                cubetas[cubeta] = id;
+            }
+        }
+    }
+
+    private int cubeta(int idDirectorio, int idNombre) {
+        return TablaCadenas.mezclar(idDirectorio * 0x9E3779B9 + idNombre) & (cubetas.length - 1);
+    }
+
+    private int nuevaPosicion() {
+        if (cantidadLibres > 0) {
+            return libres[--cantidadLibres];
+        }
+        int id = posicionesUsadas++;
+        if (id == nombreDeArchivo.length) {
+            int capacidad = nombreDeArchivo.length + (nombreDeArchivo.length >> 1);
+            nombreDeArchivo = Arrays.copyOf(nombreDeArchivo, capacidad);
+            directorioDeArchivo = Arrays.copyOf(directorioDeArchivo, capacidad);
+            siguienteConNombre = Arrays.copyOf(siguienteConNombre, capacidad);
+            anteriorConNombre = Arrays.copyOf(anteriorConNombre, capacidad);
+            siguienteEnCubeta = Arrays.copyOf(siguienteEnCubeta, capacidad);
+            tamanos = Arrays.copyOf(tamanos, capacidad);
+            fechas = Arrays.copyOf(fechas, capacidad);
+        }
+        return id;
+    }
+
+    private void indexarTrigramas(int idNombre, String nombre) {
+        char[] texto = minusculas(nombre, true);
+        // Un trigrama repetido en el mismo nombre se agrega una sola vez
+        // porque el id de nombre ya es el último de su lista
+        for (int i = 0; i + 2 < texto.length; i++) {
+            trigramas.computeIfAbsent(trigrama(texto[i], texto[i + 1], texto[i + 2]), t -> new Posting())
+                    .agregar(idNombre);
+        }
+    }
+
+    private static long trigrama(char a, char b, char c) {
+        return ((long) a << 32) | ((long) b << 16) | c;
+    }
+
+    private static char[] minusculas(String texto, boolean conCentinela) {
+        int inicio = conCentinela ? 1 : 0;
+        char[] resultado = new char[texto.length() + inicio];
+        if (conCentinela) {
+            resultado[0] = CENTINELA;
+        }
+        for (int i = 0; i < texto.length(); i++) {
+            resultado[i + inicio] = Character.toLowerCase(texto.charAt(i));
+        }
+        return resultado;
+    }
+
+    private static int ultimoSeparador(String ruta) {
+        return Math.max(ruta.lastIndexOf('/'), ruta.lastIndexOf('\\'));
+    }
+
+    private static int[] asegurar(int[] arreglo, int minimo) {
+        if (minimo <= arreglo.length) {
+            return arreglo;
+        }
+        return Arrays.copyOf(arreglo, Math.max(minimo, arreglo.length + (arreglo.length >> 1)));
+    }
+
+    /** Ids de nombre crecientes, guardados como diferencias en varint. */
+    private static final class Posting {
+        byte[] datos = new byte[4];
+        int longitud;
+        int cantidad;
+        int ultimo = -1;
+
+        void agregar(int idNombre) {
+            if (idNombre <= ultimo) {
+                return;
+            }
+            int delta = idNombre - ultimo;
+            ultimo = idNombre;
+            cantidad++;
+            if (longitud + 5 > datos.length) {
+                datos = Arrays.copyOf(datos, Math.max(longitud + 5, datos.length * 2));
+            }
+            while ((delta & ~0x7F) != 0) {
+                datos[longitud++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            datos[longitud++] = (byte) delta;
+        }
+    }
+
+    /** Recorrido secuencial de un Posting. */
+    private static final class Cursor {
+        final Posting posting;
+        private int posicion;
+        private int actual = -1;
+
+        Cursor(Posting posting) {
+            this.posting = posting;
+        }
+
+        /** Siguiente id de la lista, o -1 al terminar. */
+        int siguiente() {
+            if (posicion >= posting.longitud) {
+                actual = Integer.MAX_VALUE;
+                return -1;
+            }
+            int delta = 0;
+            int desplazamiento = 0;
+            byte b;
+            do {
+                b = posting.datos[posicion++];
+                delta |= (b & 0x7F) << desplazamiento;
+                desplazamiento += 7;
+            } while (b < 0);
+            actual += delta;
+            return actual;
+        }
+
+        /** Avanza hasta el primer id >= objetivo; true si es exactamente ése. */
+        boolean avanzarHasta(int objetivo) {
+            while (actual < objetivo && siguiente() >= 0) {
+                // sigue decodificando
+            }
+            return actual == objetivo;
+        }
+    }
+
+    /**
+     * Cadenas internadas en un único char[], con una tabla hash de
+     * direccionamiento abierto que guarda id + 1 (0 es ranura vacía).
+     */
+    private static final class TablaCadenas {
+        private char[] caracteres;
+        private int caracteresUsados;
+        private int[] inicios; // inicios[id]..inicios[id + 1]
+        private int cantidad;
+        private int[] ranuras;
+
+        TablaCadenas(int capacidad) {
+            caracteres = new char[Math.max(64, capacidad * 8)];
+            inicios = new int[capacidad + 1];
+            ranuras = new int[Integer.highestOneBit(Math.max(16, capacidad * 2) - 1) << 1];
+        }
+
+        int cantidad() {
+            return cantidad;
+        }
+
+        int buscar(String texto) {
+            int mascara = ranuras.length - 1;
+            for (int i = hash(texto) & mascara;; i = (i + 1) & mascara) {
+                int ranura = ranuras[i];
+                if (ranura == 0) {
+                    return -1;
+                }
+                if (igual(ranura - 1, texto)) {
+                    return ranura - 1;
+                }
+            }
+        }
+
+        int agregar(String texto) {
+            int existente = buscar(texto);
+            if (existente >= 0) {
+                return existente;
+            }
+            if (caracteresUsados + texto.length() > caracteres.length) {
+                caracteres = Arrays.copyOf(caracteres,
+                        Math.max(caracteresUsados + texto.length(), caracteres.length + (caracteres.length >> 1)));
+            }
+            texto.getChars(0, texto.length(), caracteres, caracteresUsados);
+            caracteresUsados += texto.length();
+
+            int id = cantidad++;
+            inicios = asegurar(inicios, cantidad + 1);
+            inicios[cantidad] = caracteresUsados;
+
+            if (cantidad * 2 > ranuras.length) {
+                redimensionar();
+            } else {
+                ubicar(id, hash(texto));
+            }
+            return id;
+        }
+
+        String texto(int id) {
+            return new String(caracteres, inicios[id], inicios[id + 1] - inicios[id]);
+        }
+
+        /**
+         * Compara con el patrón en minúsculas. Si es prefijo, el patrón empieza
+         * con el centinela, que se salta.
+         */
+        boolean contiene(int id, char[] patron, boolean prefijo) {
+            int inicio = inicios[id];
+            int fin = inicios[id + 1];
+            int desde = prefijo ? 1 : 0;
+            int largo = patron.length - desde;
+            int ultimoInicio = prefijo ? inicio : fin - largo;
+            for (int i = inicio; i <= ultimoInicio && i + largo <= fin; i++) {
+                int j = 0;
+                while (j < largo && Character.toLowerCase(caracteres[i + j]) == patron[desde + j]) {
+                    j++;
+                }
+                if (j == largo) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        long memoriaBytes() {
+            return 2L * caracteres.length + 4L * inicios.length + 4L * ranuras.length;
+        }
+
+        private boolean igual(int id, String texto) {
+            int inicio = inicios[id];
+            if (inicios[id + 1] - inicio != texto.length()) {
+                return false;
+            }
+            for (int i = 0; i < texto.length(); i++) {
+                if (caracteres[inicio + i] != texto.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void redimensionar() {
+            ranuras = new int[ranuras.length * 2];
+            for (int id = 0; id < cantidad; id++) {
+                int h = 0;
+                for (int i = inicios[id]; i < inicios[id + 1]; i++) {
+                    h = 31 * h + caracteres[i];
+                }
+                ubicar(id, mezclar(h));
+            }
+        }
+
+        private void ubicar(int id, int hash) {
+            int mascara = ranuras.length - 1;
+            int i = hash & mascara;
+            while (ranuras[i] != 0) {
+                i = (i + 1) & mascara;
+            }
+            ranuras[i] = id + 1;
+        }
+
+        private static int hash(String texto) {
+            return mezclar(texto.hashCode());
+        }
+
+        private static int mezclar(int h) {
+            h *= 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
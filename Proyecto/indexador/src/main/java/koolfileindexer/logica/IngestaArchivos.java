@@ -0,0 +1,191 @@
+package koolfileindexer.logica;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import koolfileindexer.modelo.Archivo;
+
+/**
+ * Canal de ingesta por lotes entre el recorrido y la BD.
+ * Los hilos del recorrido encolan archivos en una cola acotada (si se llena,
+ * el recorrido espera) y un único hilo escritor la vacía en lotes de hasta
+ * {@code tamanoLote}, de modo que cada viaje a la BD cubre muchos archivos.
+ */
+public class IngestaArchivos {
+
+    /** Destino de los lotes; normalmente un upsert por conjuntos en la BD. */
+    @FunctionalInterface
+    public interface EscritorLote {
+        void escribir(List<Archivo> lote) throws Exception;
+    }
+
+    private final BlockingQueue<Archivo> cola;
+    private final int tamanoLote;
+    private final Duration esperaMaxima;
+    private final EscritorLote escritor;
+
+    private final Object monitorPendientes = new Object();
+    private long pendientes;
+    private final AtomicLong lotesEscritos = new AtomicLong();
+    private final AtomicLong archivosEscritos = new AtomicLong();
+
+    private Thread hiloEscritor;
+    private volatile boolean activo = true;
+
+    /**
+     * @param capacidad    tamaño máximo de la cola antes de frenar al recorrido
+     * @param tamanoLote   archivos por viaje a la BD
+     * @param esperaMaxima tiempo máximo que un lote incompleto espera antes de
+     *                     escribirse
+     * @param escritor     destino de cada lote
+     */
+    public IngestaArchivos(int capacidad, int tamanoLote, Duration esperaMaxima, EscritorLote escritor) {
+        if (capacidad <= 0 || tamanoLote <= 0) {
+            throw new IllegalArgumentException("La capacidad y el tamaño de lote deben ser positivos");
+        }
+        this.cola = new ArrayBlockingQueue<>(capacidad);
+        this.tamanoLote = tamanoLote;
+        this.esperaMaxima = esperaMaxima;
+        this.escritor = escritor;
+    }
+
+    /**
+     * Encola un archivo para escritura. Bloquea si la cola está llena, lo que
+     * limita la memoria usada cuando la BD va más lenta que el recorrido.
+     */
+    public void encolar(Archivo archivo) throws InterruptedException {
+        if (!activo) {
+            throw new IllegalStateException("La ingesta está cerrada");
+        }
+        iniciarEscritorSiHaceFalta();
+        synchronized (monitorPendientes) {
+            pendientes++;
+        }
+        try {
+            cola.put(archivo);
+        } catch (InterruptedException e) {
+            // No entró a la cola: vaciar no tiene que esperarlo
+            synchronized (monitorPendientes) {
+                pendientes--;
+                monitorPendientes.notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Espera a que todo lo encolado hasta ahora quede escrito.
+     * El recorrido la llama al final de cada ciclo antes de guardar el cursor.
+     */
+    public void vaciar() throws InterruptedException {
+        synchronized (monitorPendientes) {
+            while (pendientes > 0 && hiloEscritor != null && hiloEscritor.isAlive()) {
+                monitorPendientes.wait(esperaMaxima.toMillis() + 100);
+            }
+        }
+    }
+
+    /** Escribe lo pendiente y detiene el hilo escritor. */
+    public void cerrar() {
+        try {
+            vaciar();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        activo = false;
+        Thread hilo;
+        synchronized (this) {
+            hilo = hiloEscritor;
+        }
+        if (hilo != null) {
+            hilo.interrupt();
+        }
+    }
+
+    public long getLotesEscritos() {
+        return lotesEscritos.get();
+    }
+
+    public long getArchivosEscritos() {
+        return archivosEscritos.get();
+    }
+
+    public int getTamanoLote() {
+        return tamanoLote;
+    }
+
+    private synchronized void iniciarEscritorSiHaceFalta() {
+        if (hiloEscritor == null || !hiloEscritor.isAlive()) {
+            hiloEscritor = new Thread(this::bucleEscritor, "Indexador-Ingesta");
+            hiloEscritor.setDaemon(true);
+            hiloEscritor.start();
+        }
+    }
+
+    private void bucleEscritor() {
+        List<Archivo> lote = new ArrayList<>(tamanoLote);
+        while (activo) {
+            try {
+                Archivo primero = cola.poll(esperaMaxima.toMillis(), TimeUnit.MILLISECONDS);
+                if (primero == null) {
+                    continue;
+                }
+                lote.add(primero);
+                completarLote(lote);
+                escribirLote(lote);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        // Escribir lo que haya quedado al cerrar
+        if (!lote.isEmpty()) {
+            escribirLote(lote);
+        }
+        while (cola.drainTo(lote, tamanoLote) > 0) {
+            escribirLote(lote);
+        }
+    }
+
+    /**
+     * Sigue llenando el lote hasta completarlo o hasta que pase esperaMaxima
+     * desde el primer elemento, para no hacer viajes con lotes casi vacíos.
+     */
+    private void completarLote(List<Archivo> lote) throws InterruptedException {
+        long limite = System.nanoTime() + esperaMaxima.toNanos();
+        while (lote.size() < tamanoLote) {
+            if (cola.drainTo(lote, tamanoLote - lote.size()) > 0) {
+                continue;
+            }
+            long restante = limite - System.nanoTime();
+            if (restante <= 0) {
+                return;
+            }
+            Archivo siguiente = cola.poll(restante, TimeUnit.NANOSECONDS);
+            if (siguiente == null) {
+                return;
+            }
+            lote.add(siguiente);
+        }
+    }
+
+    private void escribirLote(List<Archivo> lote) {
+        try {
+            escritor.escribir(lote);
+            lotesEscritos.incrementAndGet();
+            archivosEscritos.addAndGet(lote.size());
+        } catch (Exception e) {
+            System.err.println("[INGESTA] Error escribiendo lote de " + lote.size() + " archivos: " + e.getMessage());
+        } finally {
+            synchronized (monitorPendientes) {
+                pendientes -= lote.size();
+                monitorPendientes.notifyAll();
+            }
+            lote.clear();
+        }
+    }
+}
@@ -1,15 +1,17 @@
 package koolfileindexer.logica;
 
-import koolfileindexer.db.ConectorBasedeDatos;
+import koolfileindexer.db.AlmacenArchivos;
 import koolfileindexer.modelo.Archivo;
 import koolfileindexer.modelo.Etiqueta;
 // Importaciones para la API de sockets
 import koolfileindexer.common.model.GenericList;
+import koolfileindexer.common.model.Page;
 import koolfileindexer.common.model.Search;
 import koolfileindexer.common.model.Tag;
 // Usar nombre completo o renombrar para evitar conflicto
 import koolfileindexer.common.model.File;
 import koolfileindexer.common.model.ErrorMessage;
+import koolfileindexer.common.Constants;
 import koolfileindexer.common.protocol.Request;
 import koolfileindexer.common.protocol.Response;
 import koolfileindexer.common.protocol.v1.SocketServer;
@@ -19,7 +21,6 @@ import java.io.InterruptedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.Duration;
@@ -34,7 +35,36 @@ import java.util.concurrent.Future;
 public class MainIndexadorCLI {
     private static final int DEFAULT_BATCH = 100;
     private static final Duration DEFAULT_INTERVAL = Duration.ofMinutes(1);
-    private static ConectorBasedeDatos connector;
+    // Hilos del recorrido; se puede cambiar con -Dkoolfileindexer.paralelismo=N
+    private static final int DEFAULT_PARALELISMO = Integer.getInteger("koolfileindexer.paralelismo", 1);
+    // Búsqueda por nombre en memoria (-Dkoolfileindexer.indiceMemoria=true)
+    private static final boolean USAR_INDICE_MEMORIA = Boolean.getBoolean("koolfileindexer.indiceMemoria");
+    private static final int LIMITE_INDICE_MEMORIA = Integer.getInteger("koolfileindexer.indiceMemoria.limite", 1_000);
+    // Un Selector para todas las conexiones en vez de un hilo por conexión
+    // (-Dkoolfileindexer.eventLoop=true)
+    private static final SocketServer.Mode MODO_SERVIDOR = Boolean.getBoolean("koolfileindexer.eventLoop")
+            ? SocketServer.Mode.EVENT_LOOP
+            : SocketServer.Mode.BLOCKING;
+    // Un hilo virtual por request, acotados por la capacidad del pool de la BD
+    // (-Dkoolfileindexer.hilosVirtuales=true)
+    private static final boolean HILOS_VIRTUALES = Boolean.getBoolean("koolfileindexer.hilosVirtuales");
+    // Conexiones del pool que quedan para el recorrido y el escritor de la ingesta
+    private static final int CONEXIONES_INDEXADOR = 2;
+    // Cambios por inotify en lugar de esperar al próximo recorrido
+    // (-Dkoolfileindexer.vigilancia=true); la ventana agrupa ráfagas de eventos
+    private static final boolean VIGILANCIA = Boolean.getBoolean("koolfileindexer.vigilancia");
+    private static final Duration VENTANA_VIGILANCIA = Duration
+            .ofMillis(Long.getLong("koolfileindexer.vigilancia.ventanaMs", 100));
+    // No volver a listar los directorios cuya fecha de modificación no cambió
+    // (-Dkoolfileindexer.saltarSinCambios=true); cada N pasadas se lista todo
+    // para ver los archivos modificados en su lugar
+    private static final boolean SALTAR_SIN_CAMBIOS = Boolean.getBoolean("koolfileindexer.saltarSinCambios");
+    private static final int PASADAS_ENTRE_COMPLETAS = Integer
+            .getInteger("koolfileindexer.saltarSinCambios.pasadasEntreCompletas", 10);
+    private static IndiceNombres indiceNombres;
+    // Tamaño de página si el cliente pide paginación sin indicar límite
+    private static final int LIMITE_PAGINA_POR_DEFECTO = 500;
+    private static AlmacenArchivos connector;
     private static SocketServer socketServer;
     private static Future<?> indexadorFuture;
     private static volatile boolean running = true; // Añadir variable de control
@@ -57,7 +87,7 @@ public class MainIndexadorCLI {
     }
 
     private static void inicializarBaseDeDatos() throws SQLException {
-        connector = ConectorBasedeDatos.obtenerInstancia();
+        connector = AlmacenArchivos.obtenerInstancia();
         verificarConexionBD();
     }
 
@@ -66,15 +96,61 @@ public class MainIndexadorCLI {
         Indexador indexador = Indexador.getInstance(
                 Paths.get("src", "main", "resources", "indexador", "exclusiones.txt").toString(),
                 rootsToScan, DEFAULT_BATCH, DEFAULT_INTERVAL);
+        indexador.configurarParalelismo(Math.max(1, DEFAULT_PARALELISMO));
+        if (USAR_INDICE_MEMORIA) {
+            indiceNombres = new IndiceNombres();
+            indexador.configurarIndiceNombres(indiceNombres);
+            cargarIndiceNombres(indiceNombres);
+        }
+        if (SALTAR_SIN_CAMBIOS) {
+            indexador.activarSaltoSinCambios(PASADAS_ENTRE_COMPLETAS);
+        }
+        if (VIGILANCIA) {
+            try {
+                indexador.activarVigilancia(VENTANA_VIGILANCIA);
+            } catch (IOException e) {
+                System.err.println("[VIGILANCIA] No disponible, se usa sólo el recorrido periódico: "
+                        + e.getMessage());
+            }
+        }
         mostrarConfiguracion(indexador);
         return indexador;
     }
 
+    /**
+     * Carga en segundo plano lo que ya está en la BD; mientras tanto las
+     * búsquedas siguen yendo a la BD y el recorrido ya va registrando cambios.
+     */
+    private static void cargarIndiceNombres(IndiceNombres indice) {
+        Thread carga = new Thread(() -> {
+            long inicio = System.nanoTime();
+            try {
+                connector.recorrerArchivos(indice::registrar);
+                indice.marcarListo();
+                System.out.printf("[INDICE] %,d archivos en memoria (%,d KB) en %.1f s%n",
+                        indice.getArchivos(), indice.memoriaEstimadaBytes() / 1024,
+                        (System.nanoTime() - inicio) / 1e9);
+            } catch (SQLException e) {
+                System.err.println("[INDICE] No se pudo cargar el índice de nombres, se busca en la BD: "
+                        + e.getMessage());
+            }
+        }, "kfi-indice-nombres");
+        carga.setDaemon(true);
+        carga.start();
+    }
+
     private static void iniciarServidorSocket(Indexador indexador) throws IOException {
-        socketServer = SocketServer.createServer(10);
+        if (HILOS_VIRTUALES) {
+            int permisos = Math.max(1, connector.getCapacidad() - CONEXIONES_INDEXADOR);
+            socketServer = SocketServer.createServer(Constants.SOCKET_PATH, permisos, MODO_SERVIDOR,
+                    SocketServer.Threads.VIRTUAL);
+        } else {
+            socketServer = SocketServer.createServer(10, MODO_SERVIDOR);
+        }
         registrarAccionesAPI(socketServer, indexador);
         indexadorFuture = socketServer.submit(indexador);
-        System.out.println("Servidor socket iniciado. Esperando conexiones...");
+        System.out.println("Servidor socket iniciado (" + MODO_SERVIDOR
+                + (HILOS_VIRTUALES ? ", hilos virtuales" : "") + "). Esperando conexiones...");
     }
 
     private static void ejecutarBucleAceptacion() {
@@ -105,7 +181,7 @@ public class MainIndexadorCLI {
         }
 
         if (connector != null) {
-            connector.terminarConexion();
+            connector.cerrar();
         }
     }
 
@@ -113,14 +189,19 @@ public class MainIndexadorCLI {
         // Registrar acción para buscar archivos
         server.registerAction("search", (Request req) -> {
             try {
-                Search search = req.build(Search.stringFactory());
+                Search search = req.build(Search.stringFactory(), Search.binaryFactory());
                 String[] keywords = search.getKeywords();
                 String[] tagNames = search.getTags();
                 String[] filters = search.getFilters(); // Obtener los filtros
+                String prefijo = null;
 
                 // Procesar filtros para búsqueda por nombre
                 if (filters != null && filters.length > 0) {
                     for (String filter : filters) {
+                        if (filter.startsWith("prefix:") || filter.startsWith("prefijo:")) {
+                            prefijo = filter.substring(filter.indexOf(":") + 1).trim();
+                            break;
+                        }
                         if (filter.startsWith("name:") || filter.startsWith("nombre:")) {
                             // Reemplazar las keywords con el nombre a buscar
                             String nombreBusqueda = filter.substring(filter.indexOf(":") + 1).trim();
@@ -135,14 +216,31 @@ public class MainIndexadorCLI {
                         String.join(", ", keywords) + " - Tags: " +
                         (tagNames != null && tagNames.length > 0 ? String.join(", ", tagNames) : "ninguna") +
                         " - Filtros: "
-                        + (filters != null && filters.length > 0 ? String.join(", ", filters) : "ninguno"));
+                        + (filters != null && filters.length > 0 ? String.join(", ", filters) : "ninguno")
+                        + (search.getUnder() != null ? " - Bajo: " + search.getUnder() : ""));
+
+                // Las búsquedas en un subárbol van siempre por BusquedaPaginada
+                if ((search.isPaged() || search.getUnder() != null) && prefijo == null) {
+                    return responderPagina(search, keywords, tagNames != null && tagNames.length > 0);
+                }
 
                 // El método buscarArchivos ya está implementado para usar la primera keyword
                 // como nombre
-                List<Archivo> resultados = buscarArchivos(keywords, tagNames);
+                List<Archivo> resultados = prefijo != null
+                        ? buscarArchivosPorPrefijo(prefijo)
+                        : buscarArchivos(keywords, tagNames);
                 GenericList<File> listaArchivos = convertirArchivos(resultados);
 
-                return Response.ok(listaArchivos);
+                // Los prefijos no se paginan: una sola página con todo
+                if (search.isStream()) {
+                    return Response.stream(sink -> {
+                        for (File archivo : listaArchivos) {
+                            sink.write(archivo);
+                        }
+                        return null;
+                    });
+                }
+                return search.isPaged() ? Response.ok(new Page<>(listaArchivos, null)) : Response.ok(listaArchivos);
             } catch (Exception e) {
                 e.printStackTrace();
                 return Response.err(new ErrorMessage("Error en búsqueda: " + e.getMessage()));
@@ -263,8 +361,8 @@ public class MainIndexadorCLI {
                     return Response.err(new ErrorMessage("El archivo de exclusiones no es legible: " + filePath));
                 }
 
-                // Cargar las exclusiones desde el archivo
-                indexador.cargarExclusiones(filePath);
+                // Cargar las exclusiones y aplicar lo que cambió
+                indexador.recargarExclusiones(filePath);
 
                 return Response.ok("Exclusiones recargadas correctamente desde: " + filePath);
             } catch (Exception e) {
@@ -285,6 +383,12 @@ public class MainIndexadorCLI {
                 for (Path exclusion : exclusiones) {
                     sb.append(i++).append(". ").append(exclusion).append("\n");
                 }
+                for (String patron : indexador.getPatronesExcluidos()) {
+                    sb.append(i++).append(". ").append(patron).append("\n");
+                }
+                for (Path dir : indexador.getDirectoriosConIgnorar()) {
+                    sb.append(i++).append(". ").append(dir.resolve(PatronesIgnorar.NOMBRE_ARCHIVO)).append("\n");
+                }
 
                 return Response.ok(sb.toString());
             } catch (Exception e) {
@@ -296,6 +400,37 @@ public class MainIndexadorCLI {
 
     // Métodos auxiliares para la API
 
+    /**
+     * Responde una página de la búsqueda. En modo stream cada archivo se
+     * escribe al socket al salir del ResultSet; si no, la página se arma
+     * completa (acotada por el límite) dentro de una Page. Un cliente que no
+     * pagina (sólo pidió un subárbol) recibe todo en una GenericList.
+     */
+    private static Response responderPagina(Search search, String[] keywords, boolean conEtiquetas) {
+        BusquedaPaginada busqueda = new BusquedaPaginada(connector, indiceNombres);
+        if (search.isStream()) {
+            int limite = search.getLimit() != null ? search.getLimit() : 0;
+            return Response.stream(sink -> busqueda.buscar(keywords, conEtiquetas, search.getUnder(),
+                    search.getCursor(), limite, archivo -> sink.write(convertirArchivo(archivo))));
+        }
+
+        int limite = !search.isPaged() ? 0
+                : search.getLimit() != null && search.getLimit() > 0
+                        ? search.getLimit()
+                        : LIMITE_PAGINA_POR_DEFECTO;
+        GenericList<File> pagina = new GenericList<>();
+        try {
+            String siguiente = busqueda.buscar(keywords, conEtiquetas, search.getUnder(), search.getCursor(), limite,
+                    archivo -> pagina.add(convertirArchivo(archivo)));
+            return search.isPaged() ? Response.ok(new Page<>(pagina, siguiente)) : Response.ok(pagina);
+        } catch (IllegalArgumentException e) {
+            return Response.err(new ErrorMessage(e.getMessage()));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return Response.err(new ErrorMessage("Error en búsqueda: " + e.getMessage()));
+        }
+    }
+
     // Modificar el método buscarArchivos para usar el método más adecuado según el
     // caso
     private static List<Archivo> buscarArchivos(String[] keywords, String[] tagNames) {
@@ -305,6 +440,15 @@ public class MainIndexadorCLI {
 
             // Si hay palabras clave, intentar usarlas primero como nombre
             if (keywords != null && keywords.length > 0 && keywords[0] != null && !keywords[0].trim().isEmpty()) {
+                // Sin etiquetas, el nombre se resuelve en memoria si el índice está cargado
+                if (indiceListo() && (tagNames == null || tagNames.length == 0)) {
+                    resultados.addAll(convertirCoincidencias(
+                            indiceNombres.buscarSubcadena(keywords[0].trim(), LIMITE_INDICE_MEMORIA)));
+                    if (!resultados.isEmpty()) {
+                        return resultados;
+                    }
+                }
+
                 // Solo establecer el nombre si no está vacío
                 filtro.setNombre(keywords[0].trim());
 
@@ -371,26 +515,69 @@ public class MainIndexadorCLI {
         return resultados;
     }
 
+    /**
+     * Archivos cuyo nombre empieza por el texto. Sin índice en memoria se
+     * busca la subcadena en la BD y se filtra aquí.
+     */
+    private static List<Archivo> buscarArchivosPorPrefijo(String prefijo) throws SQLException {
+        if (indiceListo()) {
+            return convertirCoincidencias(indiceNombres.buscarPrefijo(prefijo, LIMITE_INDICE_MEMORIA));
+        }
+
+        List<Archivo> resultados = new ArrayList<>();
+        ArchivoAdapter filtro = new ArchivoAdapter();
+        filtro.setNombre(prefijo);
+        String prefijoMinusculas = prefijo.toLowerCase();
+        try (ResultSet rs = connector.buscarArchivosPorFiltroVariasPalabrasClaveMismoArchivo(filtro, -1, -1)) {
+            while (rs.next()) {
+                Archivo archivo = ArchivoConverter.fromResultSet(rs);
+                if (archivo.getNombre().toLowerCase().startsWith(prefijoMinusculas)) {
+                    resultados.add(archivo);
+                }
+            }
+        }
+        return resultados;
+    }
+
+    private static boolean indiceListo() {
+        return indiceNombres != null && indiceNombres.estaListo();
+    }
+
+    private static List<Archivo> convertirCoincidencias(List<IndiceNombres.Coincidencia> coincidencias) {
+        List<Archivo> archivos = new ArrayList<>(coincidencias.size());
+        for (IndiceNombres.Coincidencia c : coincidencias) {
+            try {
+                archivos.add(c.aArchivo());
+            } catch (IllegalArgumentException e) {
+                System.err.println("[INDICE] Entrada inválida " + c.ruta() + ": " + e.getMessage());
+            }
+        }
+        return archivos;
+    }
+
     private static GenericList<koolfileindexer.common.model.File> convertirArchivos(List<Archivo> archivos) {
         GenericList<koolfileindexer.common.model.File> resultado = new GenericList<>();
         for (Archivo archivo : archivos) {
-            // Convertir etiquetas a array
-            String[] etiquetas = archivo.getEtiquetas().stream()
-                    .map(Etiqueta::getNombre)
-                    .toArray(String[]::new);
-
-            koolfileindexer.common.model.File fileUI = new koolfileindexer.common.model.File(
-                    archivo.getNombre(),
-                    archivo.getExtension(),
-                    archivo.getRutaCompleta(),
-                    archivo.getFechaModificacion().toString(),
-                    (int) archivo.getTamanoBytes(),
-                    etiquetas);
-            resultado.add(fileUI);
+            resultado.add(convertirArchivo(archivo));
         }
         return resultado;
     }
 
+    private static koolfileindexer.common.model.File convertirArchivo(Archivo archivo) {
+        // Convertir etiquetas a array
+        String[] etiquetas = archivo.getEtiquetas().stream()
+                .map(Etiqueta::getNombre)
+                .toArray(String[]::new);
+
+        return new koolfileindexer.common.model.File(
+                archivo.getNombre(),
+                archivo.getExtension(),
+                archivo.getRutaCompleta(),
+                archivo.getFechaModificacion().toString(),
+                (int) archivo.getTamanoBytes(),
+                etiquetas);
+    }
+
     // Implementar el método agregarEtiqueta
     private static boolean agregarEtiqueta(String filePath, String tagName) {
         try {
@@ -549,18 +736,15 @@ public class MainIndexadorCLI {
 
     // Mantener métodos existentes de verificación y configuración
     private static void verificarConexionBD() throws SQLException {
-        try (Connection conn = connector.obtenerConexion()) {
-            if (conn == null || conn.isClosed()) {
-                throw new SQLException("No se pudo establecer la conexión a la base de datos");
-            }
-            System.out.println("✓ Conexión a base de datos establecida correctamente");
-        }
+        connector.verificar();
+        System.out.println("✓ Almacén de archivos disponible: " + connector);
     }
 
     private static void mostrarConfiguracion(Indexador idx) {
         System.out.println("\n=== Configuración del Indexador ===");
         System.out.println(">>> Rutas/patrones excluidos:");
         idx.getRutasExcluidas().forEach(r -> System.out.println("  - " + r));
+        idx.getPatronesExcluidos().forEach(p -> System.out.println("  - " + p));
     }
 
     private static List<Path> seleccionarRaices(String[] args) {
@@ -0,0 +1,263 @@
+package koolfileindexer.logica;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Patrones con la sintaxis de .gitignore, del archivo de exclusiones o de un
+ * archivo .koolignore (que se aplica a lo que está debajo de su directorio):
+ * - "#" comenta, "!" vuelve a incluir y "\" escapa el carácter siguiente;
+ * - con "/" al final el patrón sólo se aplica a directorios;
+ * - sin "/" (salvo el final) se compara con el nombre, a cualquier
+ *   profundidad; con "/" se ancla al directorio base y se compara con la ruta
+ *   relativa, donde "**" abarca cero o más directorios;
+ * - gana el último patrón que coincide.
+ *
+ * Como en git, un directorio excluido no se recorre, así que un "!" no vuelve
+ * a incluir lo que está debajo de él.
+ */
+public final class PatronesIgnorar {
+    public static final String NOMBRE_ARCHIVO = ".koolignore";
+
+    // Resultado de evaluar: el último patrón que coincide decide
+    static final int EXCLUYE = 1;
+    static final int INCLUYE = -1;
+    static final int NINGUNO = 0;
+
+    /** nombre != null: nombre literal; si no, patron (sobre el nombre o anclado). */
+    private record Regla(boolean negada, boolean soloDirectorios, boolean anclada, String nombre, Pattern patron) {
+    }
+
+    private final Regla[] reglas;
+    private final boolean ignorarMayusculas;
+    // Un Matcher por regla y por hilo (null para los nombres literales)
+    private final ThreadLocal<Matcher[]> matchers;
+    // Del archivo .koolignore leído, para saber si cambió
+    private final FileTime modificacion;
+    private final long tamano;
+
+    private PatronesIgnorar(List<Regla> reglas, boolean ignorarMayusculas, FileTime modificacion, long tamano) {
+        this.reglas = reglas.toArray(new Regla[0]);
+        this.ignorarMayusculas = ignorarMayusculas;
+        this.modificacion = modificacion;
+        this.tamano = tamano;
+        this.matchers = ThreadLocal.withInitial(() -> {
+            Matcher[] m = new Matcher[this.reglas.length];
+            for (int i = 0; i < m.length; i++) {
+                if (this.reglas[i].patron() != null) {
+                    m[i] = this.reglas[i].patron().matcher("");
+                }
+            }
+            return m;
+        });
+    }
+
+    /** Compila líneas con sintaxis de .gitignore; las inválidas se informan y se ignoran. */
+    public static PatronesIgnorar compilar(List<String> lineas, ReglasExclusion.Sistema sistema) {
+        return compilar(lineas, sistema, null, 0);
+    }
+
+    /** Lee y compila un archivo .koolignore. */
+    public static PatronesIgnorar leer(Path archivo, ReglasExclusion.Sistema sistema) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(archivo, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        List<String> lineas = Files.readAllLines(archivo, StandardCharsets.UTF_8);
+        return compilar(lineas, sistema, attrs.lastModifiedTime(), attrs.size());
+    }
+
+    private static PatronesIgnorar compilar(List<String> lineas, ReglasExclusion.Sistema sistema,
+            FileTime modificacion, long tamano) {
+        char separador = FileSystems.getDefault().getSeparator().charAt(0);
+        boolean ignorarMayusculas = sistema == ReglasExclusion.Sistema.WINDOWS;
+        int flags = ignorarMayusculas ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0;
+        List<Regla> reglas = new ArrayList<>();
+        for (String original : lineas) {
+            String linea = quitarEspaciosFinales(original);
+            if (linea.isEmpty() || linea.startsWith("#")) {
+                continue;
+            }
+            boolean negada = linea.startsWith("!");
+            if (negada || linea.startsWith("\\!") || linea.startsWith("\\#")) {
+                linea = linea.substring(1);
+            }
+            boolean soloDirectorios = false;
+            while (linea.endsWith("/")) {
+                soloDirectorios = true;
+                linea = linea.substring(0, linea.length() - 1);
+            }
+            if (linea.isEmpty()) {
+                continue;
+            }
+            boolean anclada = linea.indexOf('/') >= 0;
+            if (linea.startsWith("/")) {
+                linea = linea.substring(1);
+            } else if (linea.startsWith("**/") && linea.indexOf('/', 3) < 0) {
+                // "**/nombre" es lo mismo que "nombre"
+                linea = linea.substring(3);
+                anclada = false;
+            }
+            try {
+                if (!anclada && !tieneComodines(linea)) {
+                    reglas.add(new Regla(negada, soloDirectorios, false, linea, null));
+                } else {
+                    reglas.add(new Regla(negada, soloDirectorios, anclada, null,
+                            Pattern.compile(aRegex(linea, separador), flags)));
+                }
+            } catch (IllegalArgumentException e) {
+                System.err.println("[CONFIG] Patrón de exclusión inválido, se ignora: " + original + " ("
+                        + e.getMessage() + ")");
+            }
+        }
+        return new PatronesIgnorar(reglas, ignorarMayusculas, modificacion, tamano);
+    }
+
+    /**
+     * true si una línea del archivo de exclusiones usa sintaxis de .gitignore
+     * (comodines, "!" o "/" final); las demás siguen siendo rutas.
+     */
+    static boolean esSintaxisIgnorar(String linea) {
+        return linea.startsWith("!") || linea.endsWith("/") || linea.indexOf('*') >= 0
+                || linea.indexOf('?') >= 0 || linea.indexOf('[') >= 0;
+    }
+
+    public int getCantidad() {
+        return reglas.length;
+    }
+
+    /** true si attrs (del mismo .koolignore) muestra que no cambió desde que se leyó. */
+    public boolean mismoArchivo(BasicFileAttributes attrs) {
+        return modificacion != null && modificacion.equals(attrs.lastModifiedTime()) && tamano == attrs.size();
+    }
+
+    /**
+     * Evalúa una ruta bajo el directorio base de los patrones.
+     *
+     * @param ruta         la ruta completa
+     * @param inicio       dónde empieza en ruta lo relativo al directorio base
+     * @param inicioNombre dónde empieza el último componente
+     * @param directorio   si la ruta es un directorio
+     * @return EXCLUYE, INCLUYE o NINGUNO si no coincide ningún patrón
+     */
+    int evaluar(String ruta, int inicio, int inicioNombre, boolean directorio) {
+        int largo = ruta.length();
+        Matcher[] m = null;
+        for (int r = reglas.length - 1; r >= 0; r--) {
+            Regla regla = reglas[r];
+            if (regla.soloDirectorios() && !directorio) {
+                continue;
+            }
+            boolean coincide;
+            if (regla.nombre() != null) {
+                String nombre = regla.nombre();
+                coincide = nombre.length() == largo - inicioNombre
+                        && nombre.regionMatches(ignorarMayusculas, 0, ruta, inicioNombre, nombre.length());
+            } else {
+                if (m == null) {
+                    m = matchers.get();
+                }
+                coincide = m[r].reset(ruta).region(regla.anclada() ? inicio : inicioNombre, largo).matches();
+            }
+            if (coincide) {
+                return regla.negada() ? INCLUYE : EXCLUYE;
+            }
+        }
+        return NINGUNO;
+    }
+
+    /** Los espacios finales no cuentan salvo que estén escapados con "\". */
+    private static String quitarEspaciosFinales(String linea) {
+        int fin = linea.length();
+        while (fin > 0 && linea.charAt(fin - 1) == ' ' && (fin < 2 || linea.charAt(fin - 2) != '\\')) {
+            fin--;
+        }
+        return linea.substring(0, fin);
+    }
+
+    private static boolean tieneComodines(String patron) {
+        for (int i = 0; i < patron.length(); i++) {
+            if ("*?[\\".indexOf(patron.charAt(i)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Traduce un patrón (sin "/" inicial ni final) a regex sobre la ruta
+     * relativa: "*", "?" y [...] no cruzan separadores; "**" como componente
+     * entero abarca cero o más directorios.
+     */
+    static String aRegex(String patron, char separador) {
+        String sep = separador == '\\' ? "\\\\" : String.valueOf(separador);
+        String noSeparador = "[^" + sep + "]";
+        StringBuilder regex = new StringBuilder();
+        String[] componentes = patron.split("/", -1);
+        for (int c = 0; c < componentes.length; c++) {
+            boolean ultimo = c == componentes.length - 1;
+            if (componentes[c].equals("**")) {
+                regex.append(ultimo ? ".*" : "(?:.*" + sep + ")?");
+                continue;
+            }
+            String componente = componentes[c];
+            for (int i = 0; i < componente.length(); i++) {
+                char ch = componente.charAt(i);
+                switch (ch) {
+                    case '*' -> {
+                        while (i + 1 < componente.length() && componente.charAt(i + 1) == '*') {
+                            i++;
+                        }
+                        regex.append(noSeparador).append('*');
+                    }
+                    case '?' -> regex.append(noSeparador);
+                    case '[' -> {
+                        int cierre = componente.indexOf(']', i + 2);
+                        if (cierre < 0) {
+                            regex.append("\\[");
+                            break;
+                        }
+                        String clase = componente.substring(i + 1, cierre);
+                        boolean negada = clase.startsWith("!") || clase.startsWith("^");
+                        if (negada) {
+                            clase = clase.substring(1);
+                        }
+                        clase = clase.replace("\\", "\\\\").replace("[", "\\[").replace("&", "\\&");
+                        // [^x&&[^/]] de Java sí coincide con "/": la negada
+                        // suma el separador a lo excluido
+                        if (negada) {
+                            regex.append("[^").append(clase).append(sep).append(']');
+                        } else {
+                            regex.append('[').append(clase).append("&&").append(noSeparador).append(']');
+                        }
+                        i = cierre;
+                    }
+                    case '\\' -> {
+                        if (i + 1 >= componente.length()) {
+                            throw new PatternSyntaxException("escape al final", patron, i);
+                        }
+                        regex.append(Pattern.quote(String.valueOf(componente.charAt(++i))));
+                    }
+                    default -> {
+                        if ("^$.|+(){}".indexOf(ch) >= 0) {
+                            regex.append('\\');
+                        }
+                        regex.append(ch);
+                    }
+                }
+            }
+            if (!ultimo) {
+                regex.append(sep);
+            }
+        }
+        return regex.toString();
+    }
+}
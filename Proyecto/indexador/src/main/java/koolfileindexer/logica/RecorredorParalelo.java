@@ -0,0 +1,194 @@
+package koolfileindexer.logica;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Recorredor de directorios en paralelo sobre un ForkJoinPool con robo de
+ * trabajo: una tarea por directorio, con un tope de hilos configurable.
+ * En discos NVMe o sistemas de archivos en red el recorrido está limitado por
+ * la latencia de stat, así que varios directorios en vuelo a la vez mejoran el
+ * rendimiento aunque la CPU esté ociosa.
+ *
+ * Aplica el mismo criterio de exclusión que el recorrido secuencial: un
+ * directorio excluido no se lista y un archivo excluido no se procesa.
+ */
+public class RecorredorParalelo {
+
+    /**
+     * Envuelve el listado de cada directorio no excluido; el Indexador lo usa
+     * para vigilarlo y para no listar los que no cambiaron.
+     */
+    @FunctionalInterface
+    public interface VisitaDirectorio {
+        /**
+         * @param listar lista dir, procesa sus archivos y devuelve sus
+         *               subdirectorios (null si no se pudo listar)
+         * @return los subdirectorios por los que seguir
+         */
+        List<Path> visitar(Path dir, Supplier<List<Path>> listar);
+    }
+
+    private final ForkJoinPool pool;
+    private final Predicate<Path> excluirDirectorio;
+    private final Predicate<Path> excluir;
+    private final BiConsumer<Path, BasicFileAttributes> procesador;
+    private final VisitaDirectorio visita;
+    private volatile boolean detenido;
+
+    public RecorredorParalelo(int paralelismo, Predicate<Path> excluir,
+            BiConsumer<Path, BasicFileAttributes> procesador) {
+        this(paralelismo, excluir, procesador, (dir, listar) -> {
+            List<Path> subdirectorios = listar.get();
+            return subdirectorios != null ? subdirectorios : List.of();
+        });
+    }
+
+    public RecorredorParalelo(int paralelismo, Predicate<Path> excluir,
+            BiConsumer<Path, BasicFileAttributes> procesador, VisitaDirectorio visita) {
+        this(paralelismo, excluir, excluir, procesador, visita);
+    }
+
+    /**
+     * @param excluirDirectorio criterio para los directorios: uno excluido se
+     *                          poda sin listarlo
+     * @param excluir           criterio para los archivos
+     */
+    public RecorredorParalelo(int paralelismo, Predicate<Path> excluirDirectorio, Predicate<Path> excluir,
+            BiConsumer<Path, BasicFileAttributes> procesador, VisitaDirectorio visita) {
+        if (paralelismo <= 0) {
+            throw new IllegalArgumentException("El paralelismo debe ser positivo");
+        }
+        this.pool = new ForkJoinPool(paralelismo);
+        this.excluirDirectorio = excluirDirectorio;
+        this.excluir = excluir;
+        this.procesador = procesador;
+        this.visita = visita;
+    }
+
+    public int getParalelismo() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Recorre los directorios dados hasta procesar aproximadamente {@code limite}
+     * archivos. Las tareas que arrancan con el lote ya lleno no se listan y se
+     * devuelven como pendientes para que el cursor las retome en el próximo ciclo.
+     *
+     * @param directorios directorios a recorrer
+     * @param limite      máximo de archivos del lote (se revisa por directorio)
+     * @param procesados  contador compartido de archivos procesados
+     * @return directorios que quedaron sin visitar
+     */
+    public List<Path> recorrer(List<Path> directorios, int limite, AtomicInteger procesados) {
+        Queue<Path> pendientes = new ConcurrentLinkedQueue<>();
+        List<TareaDirectorio> tareas = new ArrayList<>(directorios.size());
+        for (Path dir : directorios) {
+            tareas.add(new TareaDirectorio(dir, limite, procesados, pendientes));
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tareas);
+            }
+        });
+        return new ArrayList<>(pendientes);
+    }
+
+    /**
+     * Hace que las tareas en curso terminen en el próximo archivo y que no se
+     * listen más directorios; lo que quedaba se pierde, no va a pendientes.
+     */
+    public void detener() {
+        detenido = true;
+    }
+
+    /** Detiene los hilos del pool. */
+    public void cerrar() {
+        pool.shutdownNow();
+    }
+
+    private final class TareaDirectorio extends RecursiveAction {
+        private final Path dir;
+        private final int limite;
+        private final AtomicInteger procesados;
+        private final Queue<Path> pendientes;
+
+        TareaDirectorio(Path dir, int limite, AtomicInteger procesados, Queue<Path> pendientes) {
+            this.dir = dir;
+            this.limite = limite;
+            this.procesados = procesados;
+            this.pendientes = pendientes;
+        }
+
+        @Override
+        protected void compute() {
+            if (detenido) {
+                return;
+            }
+            if (procesados.get() >= limite) {
+                pendientes.add(dir);
+                return;
+            }
+            if (excluirDirectorio.test(dir)) {
+                return;
+            }
+
+            List<TareaDirectorio> hijas = new ArrayList<>();
+            for (Path subdirectorio : visita.visitar(dir, this::listar)) {
+                hijas.add(new TareaDirectorio(subdirectorio, limite, procesados, pendientes));
+            }
+            invokeAll(hijas);
+        }
+
+        private List<Path> listar() {
+            List<Path> subdirectorios = new ArrayList<>();
+            try (DirectoryStream<Path> entradas = Files.newDirectoryStream(dir)) {
+                for (Path entrada : entradas) {
+                    if (detenido) {
+                        return null;
+                    }
+                    BasicFileAttributes attrs;
+                    try {
+                        attrs = Files.readAttributes(entrada, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        System.err.println("⚠️ No se pudo acceder a: " + entrada + " (" + e.getMessage() + ")");
+                        continue;
+                    }
+
+                    if (attrs.isDirectory()) {
+                        subdirectorios.add(entrada);
+                        continue;
+                    }
+                    try {
+                        if (attrs.isRegularFile() && !excluir.test(entrada)) {
+                            procesados.incrementAndGet();
+                            procesador.accept(entrada, attrs);
+                        }
+                    } catch (Exception e) {
+                        System.err.println("Error al procesar " + entrada + ": " + e.getMessage());
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                System.err.println("⚠️ No se pudo acceder a: " + dir + " (" + e.getMessage() + ")");
+                return null;
+            }
+            return subdirectorios;
+        }
+    }
+}
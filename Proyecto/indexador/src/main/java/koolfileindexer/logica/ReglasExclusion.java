@@ -0,0 +1,534 @@
+package koolfileindexer.logica;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Reglas de exclusión del recorrido compiladas una sola vez, para que
+ * decidir si se excluye una ruta cueste O(profundidad) sin crear objetos.
+ *
+ * Se trabaja sobre el String de la ruta (Path lo calcula una vez y lo guarda)
+ * por regiones, sin subcadenas:
+ * - las rutas excluidas forman un trie por componente, con tablas hash que
+ *   buscan directamente una región del String;
+ * - las reglas del sistema operativo se resuelven al compilar (en Linux
+ *   /proc, /sys y /dev pasan a ser prefijos del trie);
+ * - el último componente se compara contra las tablas de nombres y
+ *   extensiones prohibidas (sin distinguir mayúsculas, como antes) y los
+ *   nombres que empiezan con punto son los ocultos de Unix, sin llamar a
+ *   Files.isHidden (en Windows sí, porque ahí es un atributo);
+ * - las líneas "glob:" y "regex:" del archivo de exclusiones se compilan a
+ *   Pattern una vez; los globs sin separador se aplican al nombre y, si son
+ *   un nombre literal o "*.ext", van a las tablas en lugar de a un Pattern;
+ * - las líneas con sintaxis de .gitignore y los archivos .koolignore (ver
+ *   {@link PatronesIgnorar}) se evalúan al bajar por el mismo trie: los de un
+ *   directorio más profundo tienen prioridad y los del archivo de
+ *   exclusiones, la menor.
+ *
+ * Un "!" de .gitignore puede volver a incluir lo que excluyen las reglas de
+ * nombre (ocultos, extensiones, globs de nombre), no lo que excluye una ruta,
+ * un directorio del sistema o un patrón de ruta.
+ *
+ * Es inmutable; el Indexador compila otras reglas al recargar el archivo o
+ * al encontrar un .koolignore nuevo.
+ */
+public final class ReglasExclusion {
+    private static final String PREFIJO_GLOB = "glob:";
+    private static final String PREFIJO_REGEX = "regex:";
+    private static final Set<String> EXT_PROHIBIDAS = Set.of("exe", "dll");
+    private static final Set<String> NOMBRES_PROHIBIDOS = Set.of("thumbs.db");
+    private static final Set<String> DIRECTORIOS_WINDOWS = Set.of("windows", "program files", "archivos de programa");
+    private static final List<String> PREFIJOS_LINUX = List.of("/proc", "/sys", "/dev");
+
+    /** Sistema operativo de las reglas fijas. */
+    public enum Sistema {
+        WINDOWS, LINUX, OTRO;
+
+        public static Sistema actual() {
+            String nombre = System.getProperty("os.name", "").toLowerCase(Locale.ROOT);
+            if (nombre.contains("windows")) {
+                return WINDOWS;
+            }
+            return nombre.contains("linux") ? LINUX : OTRO;
+        }
+    }
+
+    private final Sistema sistema;
+    private final char separador;
+    private final TablaNombres<Nodo> raices;
+    private final TablaNombres<Boolean> nombres = new TablaNombres<>(true);
+    private final TablaNombres<Boolean> extensiones = new TablaNombres<>(true);
+    private final TablaNombres<Boolean> directoriosSistema = new TablaNombres<>(true);
+    private final Pattern[] patronesNombre;
+    private final Pattern[] patronesRuta;
+    // Un Matcher por patrón y por hilo, reutilizado con reset()
+    private final ThreadLocal<Matcher[]> matchersNombre;
+    private final ThreadLocal<Matcher[]> matchersRuta;
+    // Líneas con sintaxis de .gitignore del archivo de exclusiones (null si no hay)
+    private final PatronesIgnorar ignorarGlobal;
+
+    /** Nodo del trie de rutas excluidas y directorios con .koolignore. */
+    private static final class Nodo {
+        boolean excluido;
+        PatronesIgnorar ignorar;
+        TablaNombres<Nodo> hijos;
+    }
+
+    private ReglasExclusion(Sistema sistema, Collection<Path> rutas, Collection<String> patrones,
+            Map<Path, PatronesIgnorar> ignorarPorDirectorio) {
+        this.sistema = sistema;
+        this.separador = FileSystems.getDefault().getSeparator().charAt(0);
+        boolean ignorarMayusculas = sistema == Sistema.WINDOWS;
+        this.raices = new TablaNombres<>(ignorarMayusculas);
+
+        EXT_PROHIBIDAS.forEach(e -> extensiones.poner(e, Boolean.TRUE));
+        NOMBRES_PROHIBIDOS.forEach(n -> nombres.poner(n, Boolean.TRUE));
+        if (sistema == Sistema.WINDOWS) {
+            DIRECTORIOS_WINDOWS.forEach(d -> directoriosSistema.poner(d, Boolean.TRUE));
+        }
+        if (sistema == Sistema.LINUX && separador == '/') {
+            for (String prefijo : PREFIJOS_LINUX) {
+                nodo(Path.of(prefijo), ignorarMayusculas).excluido = true;
+            }
+        }
+        for (Path ruta : rutas) {
+            nodo(ruta.toAbsolutePath().normalize(), ignorarMayusculas).excluido = true;
+        }
+        for (Map.Entry<Path, PatronesIgnorar> entrada : ignorarPorDirectorio.entrySet()) {
+            nodo(entrada.getKey().toAbsolutePath().normalize(), ignorarMayusculas).ignorar = entrada.getValue();
+        }
+
+        List<Pattern> deNombre = new ArrayList<>();
+        List<Pattern> deRuta = new ArrayList<>();
+        List<String> lineasIgnorar = new ArrayList<>();
+        int flagsRuta = ignorarMayusculas ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0;
+        for (String patron : patrones) {
+            try {
+                if (patron.startsWith(PREFIJO_REGEX)) {
+                    deRuta.add(Pattern.compile(patron.substring(PREFIJO_REGEX.length()), flagsRuta));
+                } else if (patron.startsWith(PREFIJO_GLOB)) {
+                    String glob = patron.substring(PREFIJO_GLOB.length());
+                    if (glob.indexOf('/') >= 0 || glob.indexOf(separador) >= 0) {
+                        deRuta.add(Pattern.compile(globARegex(glob), flagsRuta));
+                    } else if (!tieneComodines(glob)) {
+                        nombres.poner(glob, Boolean.TRUE);
+                    } else if (glob.startsWith("*.") && !tieneComodines(glob.substring(2))) {
+                        extensiones.poner(glob.substring(2), Boolean.TRUE);
+                    } else {
+                        deNombre.add(Pattern.compile(globARegex(glob),
+                                Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE));
+                    }
+                } else {
+                    lineasIgnorar.add(patron);
+                }
+            } catch (IllegalArgumentException e) {
+                System.err.println("[CONFIG] Patrón de exclusión inválido, se ignora: " + patron + " ("
+                        + e.getMessage() + ")");
+            }
+        }
+        this.patronesNombre = deNombre.toArray(new Pattern[0]);
+        this.patronesRuta = deRuta.toArray(new Pattern[0]);
+        this.matchersNombre = ThreadLocal.withInitial(() -> crearMatchers(patronesNombre));
+        this.matchersRuta = ThreadLocal.withInitial(() -> crearMatchers(patronesRuta));
+        this.ignorarGlobal = lineasIgnorar.isEmpty() ? null : PatronesIgnorar.compilar(lineasIgnorar, sistema);
+    }
+
+    /**
+     * @param rutas    rutas excluidas con todo lo que tienen debajo
+     * @param patrones líneas "glob:...", "regex:..." o con sintaxis de
+     *                 .gitignore; las inválidas se informan y se ignoran
+     */
+    public static ReglasExclusion compilar(Collection<Path> rutas, Collection<String> patrones) {
+        return compilar(rutas, patrones, Map.of(), Sistema.actual());
+    }
+
+    public static ReglasExclusion compilar(Collection<Path> rutas, Collection<String> patrones, Sistema sistema) {
+        return compilar(rutas, patrones, Map.of(), sistema);
+    }
+
+    /**
+     * @param ignorarPorDirectorio los .koolignore encontrados, por el
+     *                             directorio al que se aplican
+     */
+    public static ReglasExclusion compilar(Collection<Path> rutas, Collection<String> patrones,
+            Map<Path, PatronesIgnorar> ignorarPorDirectorio) {
+        return compilar(rutas, patrones, ignorarPorDirectorio, Sistema.actual());
+    }
+
+    public static ReglasExclusion compilar(Collection<Path> rutas, Collection<String> patrones,
+            Map<Path, PatronesIgnorar> ignorarPorDirectorio, Sistema sistema) {
+        return new ReglasExclusion(sistema, rutas, patrones, ignorarPorDirectorio);
+    }
+
+    /**
+     * true si la línea del archivo de exclusiones es un patrón y no una ruta:
+     * "glob:", "regex:" o sintaxis de .gitignore en una línea que no es una
+     * ruta absoluta (las rutas relativas sin comodines siguen siendo rutas).
+     */
+    public static boolean esPatron(String linea) {
+        if (linea.startsWith(PREFIJO_GLOB) || linea.startsWith(PREFIJO_REGEX)) {
+            return true;
+        }
+        if (!PatronesIgnorar.esSintaxisIgnorar(linea)) {
+            return false;
+        }
+        try {
+            return !Paths.get(linea).isAbsolute();
+        } catch (InvalidPathException e) {
+            // "*" no es válido en una ruta de Windows
+            return true;
+        }
+    }
+
+    /** Como {@link #excluye(Path, boolean)} para un archivo. */
+    public boolean excluye(Path p) {
+        return excluye(p, false);
+    }
+
+    /**
+     * Decide si se excluye p (y, si es un directorio, todo lo que tiene debajo).
+     *
+     * @param directorio si p es un directorio (para los patrones con "/" final)
+     */
+    public boolean excluye(Path p, boolean directorio) {
+        Path norm = normalizar(p);
+        String ruta = norm.toString();
+        int largo = ruta.length();
+        int inicio = longitudRaiz(norm, ruta);
+        int inicioNombre = ruta.lastIndexOf(separador) + 1;
+        if (inicioNombre < inicio) {
+            inicioNombre = inicio;
+        }
+        boolean conNombre = inicioNombre < largo;
+
+        // Patrones de .gitignore: decide el más profundo que coincide
+        int decision = ignorarGlobal != null && conNombre
+                ? ignorarGlobal.evaluar(ruta, inicio, inicioNombre, directorio)
+                : PatronesIgnorar.NINGUNO;
+
+        // Rutas excluidas y .koolignore: se baja por el trie un componente a la vez
+        Nodo nodo = raices.buscar(ruta, 0, inicio);
+        int i = inicio;
+        while (nodo != null) {
+            if (nodo.excluido) {
+                return true;
+            }
+            if (i >= largo) {
+                break;
+            }
+            if (nodo.ignorar != null) {
+                int d = nodo.ignorar.evaluar(ruta, i, inicioNombre, directorio);
+                if (d != PatronesIgnorar.NINGUNO) {
+                    decision = d;
+                }
+            }
+            if (nodo.hijos == null) {
+                break;
+            }
+            int fin = finComponente(ruta, i);
+            nodo = nodo.hijos.buscar(ruta, i, fin);
+            i = fin + 1;
+        }
+
+        // Directorios del sistema en cualquier componente menos el último
+        if (!directoriosSistema.vacia()) {
+            for (int c = inicio; c < inicioNombre; c = finComponente(ruta, c) + 1) {
+                if (directoriosSistema.buscar(ruta, c, finComponente(ruta, c)) != null) {
+                    return true;
+                }
+            }
+        }
+
+        if (patronesRuta.length > 0) {
+            for (Matcher m : matchersRuta.get()) {
+                if (m.reset(ruta).matches()) {
+                    return true;
+                }
+            }
+        }
+
+        // Raíz del sistema de archivos: no tiene nombre
+        if (!conNombre) {
+            return false;
+        }
+        if (decision != PatronesIgnorar.NINGUNO) {
+            return decision == PatronesIgnorar.EXCLUYE;
+        }
+        // Ocultos: en Unix es lo mismo que empezar con punto
+        if (ruta.charAt(inicioNombre) == '.') {
+            return true;
+        }
+        if (sistema == Sistema.WINDOWS) {
+            try {
+                if (Files.isHidden(norm)) {
+                    return true;
+                }
+            } catch (IOException ignored) {
+            }
+        }
+        if (nombres.buscar(ruta, inicioNombre, largo) != null) {
+            return true;
+        }
+        int punto = ruta.lastIndexOf('.');
+        if (punto > inicioNombre && extensiones.buscar(ruta, punto + 1, largo) != null) {
+            return true;
+        }
+        if (patronesNombre.length > 0) {
+            for (Matcher m : matchersNombre.get()) {
+                if (m.reset(ruta).region(inicioNombre, largo).matches()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Nodo del trie para ruta (absoluta), creándolo si hace falta. */
+    private Nodo nodo(Path ruta, boolean ignorarMayusculas) {
+        Path raiz = ruta.getRoot();
+        String clave = raiz.toString();
+        Nodo nodo = raices.buscar(clave, 0, clave.length());
+        if (nodo == null) {
+            nodo = new Nodo();
+            raices.poner(clave, nodo);
+        }
+        for (Path componente : ruta) {
+            String nombre = componente.toString();
+            if (nodo.hijos == null) {
+                nodo.hijos = new TablaNombres<>(ignorarMayusculas);
+            }
+            Nodo hijo = nodo.hijos.buscar(nombre, 0, nombre.length());
+            if (hijo == null) {
+                hijo = new Nodo();
+                nodo.hijos.poner(nombre, hijo);
+            }
+            nodo = hijo;
+        }
+        return nodo;
+    }
+
+    /**
+     * Las rutas del recorrido ya vienen absolutas y normalizadas; sólo se
+     * normaliza (creando otro Path) si hay un "." o ".." como componente.
+     */
+    private Path normalizar(Path p) {
+        if (!p.isAbsolute()) {
+            return p.toAbsolutePath().normalize();
+        }
+        String ruta = p.toString();
+        int largo = ruta.length();
+        for (int i = ruta.indexOf('.'); i >= 0; i = ruta.indexOf('.', i + 1)) {
+            if (i == 0 || ruta.charAt(i - 1) != separador) {
+                continue;
+            }
+            int fin = i + 1 < largo && ruta.charAt(i + 1) == '.' ? i + 2 : i + 1;
+            if (fin == largo || ruta.charAt(fin) == separador) {
+                return p.normalize();
+            }
+        }
+        return p;
+    }
+
+    private int longitudRaiz(Path norm, String ruta) {
+        if (separador == '/') {
+            return ruta.startsWith("/") ? 1 : 0;
+        }
+        // Unidades y rutas UNC de Windows
+        Path raiz = norm.getRoot();
+        return raiz == null ? 0 : raiz.toString().length();
+    }
+
+    private int finComponente(String ruta, int inicio) {
+        int fin = ruta.indexOf(separador, inicio);
+        return fin < 0 ? ruta.length() : fin;
+    }
+
+    private static Matcher[] crearMatchers(Pattern[] patrones) {
+        Matcher[] matchers = new Matcher[patrones.length];
+        for (int i = 0; i < patrones.length; i++) {
+            matchers[i] = patrones[i].matcher("");
+        }
+        return matchers;
+    }
+
+    private static boolean tieneComodines(String glob) {
+        for (int i = 0; i < glob.length(); i++) {
+            if ("*?[]{}\\".indexOf(glob.charAt(i)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Traduce un glob con la sintaxis de FileSystem.getPathMatcher: * y ?
+     * no cruzan separadores, ** sí, [...] y {a,b} como allí.
+     */
+    static String globARegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        String noSeparador = "[^/\\\\]";
+        boolean enGrupo = false;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            switch (c) {
+                case '*' -> {
+                    if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                        regex.append(".*");
+                        i++;
+                    } else {
+                        regex.append(noSeparador).append('*');
+                    }
+                }
+                case '?' -> regex.append(noSeparador);
+                case '[' -> {
+                    int cierre = glob.indexOf(']', i + 1);
+                    if (cierre < 0) {
+                        throw new PatternSyntaxException("corchete sin cerrar", glob, i);
+                    }
+                    String clase = glob.substring(i + 1, cierre);
+                    if (clase.startsWith("!")) {
+                        clase = "^" + clase.substring(1);
+                    }
+                    regex.append('[').append(clase.replace("\\", "\\\\").replace("[", "\\[")).append(']');
+                    i = cierre;
+                }
+                case '{' -> {
+                    if (enGrupo) {
+                        throw new PatternSyntaxException("llaves anidadas", glob, i);
+                    }
+                    regex.append("(?:");
+                    enGrupo = true;
+                }
+                case '}' -> {
+                    if (!enGrupo) {
+                        throw new PatternSyntaxException("llave sin abrir", glob, i);
+                    }
+                    regex.append(')');
+                    enGrupo = false;
+                }
+                case ',' -> regex.append(enGrupo ? "|" : ",");
+                case '\\' -> {
+                    if (i + 1 >= glob.length()) {
+                        throw new PatternSyntaxException("escape al final", glob, i);
+                    }
+                    regex.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+                }
+                default -> {
+                    if ("^$.|+()".indexOf(c) >= 0) {
+                        regex.append('\\');
+                    }
+                    regex.append(c);
+                }
+            }
+        }
+        if (enGrupo) {
+            throw new PatternSyntaxException("llave sin cerrar", glob, glob.length());
+        }
+        return regex.toString();
+    }
+
+    /**
+     * Tabla hash de direccionamiento abierto con claves String que se busca
+     * con una región de otro String, sin crear la subcadena.
+     */
+    private static final class TablaNombres<V> {
+        private final boolean ignorarMayusculas;
+        private String[] claves = new String[8];
+        private Object[] valores = new Object[8];
+        // 32 - log2(claves.length): el índice son los bits altos del hash
+        private int desplazamiento = 29;
+        private int tamano;
+
+        TablaNombres(boolean ignorarMayusculas) {
+            this.ignorarMayusculas = ignorarMayusculas;
+        }
+
+        boolean vacia() {
+            return tamano == 0;
+        }
+
+        void poner(String clave, V valor) {
+            if ((tamano + 1) * 2 > claves.length) {
+                crecer();
+            }
+            int mascara = claves.length - 1;
+            int i = hash(clave, 0, clave.length()) >>> desplazamiento;
+            while (claves[i] != null) {
+                if (iguales(claves[i], clave, 0, clave.length())) {
+                    valores[i] = valor;
+                    return;
+                }
+                i = (i + 1) & mascara;
+            }
+            claves[i] = clave;
+            valores[i] = valor;
+            tamano++;
+        }
+
+        @SuppressWarnings("unchecked")
+        V buscar(String texto, int inicio, int fin) {
+            if (tamano == 0) {
+                return null;
+            }
+            int mascara = claves.length - 1;
+            int i = hash(texto, inicio, fin) >>> desplazamiento;
+            String clave;
+            while ((clave = claves[i]) != null) {
+                if (iguales(clave, texto, inicio, fin)) {
+                    return (V) valores[i];
+                }
+                i = (i + 1) & mascara;
+            }
+            return null;
+        }
+
+        private boolean iguales(String clave, String texto, int inicio, int fin) {
+            return clave.length() == fin - inicio && clave.regionMatches(ignorarMayusculas, 0, texto, inicio, fin - inicio);
+        }
+
+        private int hash(String texto, int inicio, int fin) {
+            int h = 0;
+            for (int i = inicio; i < fin; i++) {
+                char c = texto.charAt(i);
+                if (ignorarMayusculas) {
+                    // Igual que regionMatches(true, ...), con atajo para ASCII
+                    c = c < 128
+                            ? (c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c)
+                            : Character.toLowerCase(Character.toUpperCase(c));
+                }
+                h = 31 * h + c;
+            }
+            // Hash multiplicativo: nombres como "p1", "p2"... tienen hashes
+            // consecutivos y con los bits bajos quedarían en una sola racha
+            return h * 0x9E3779B9;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void crecer() {
+            String[] viejasClaves = claves;
+            Object[] viejosValores = valores;
+            claves = new String[viejasClaves.length * 2];
+            valores = new Object[viejasClaves.length * 2];
+            desplazamiento--;
+            tamano = 0;
+            for (int i = 0; i < viejasClaves.length; i++) {
+                if (viejasClaves[i] != null) {
+                    poner(viejasClaves[i], (V) viejosValores[i]);
+                }
+            }
+        }
+    }
+}
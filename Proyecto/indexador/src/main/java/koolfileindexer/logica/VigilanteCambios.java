@@ -0,0 +1,378 @@
+package koolfileindexer.logica;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Fuente de cambios incremental con un WatchService (inotify en Linux): el
+ * recorrido registra cada directorio que lista y desde ahí los cambios llegan
+ * sin volver a recorrer el árbol.
+ *
+ * Los eventos se agrupan por ruta: una ráfaga (un editor que guarda con
+ * varios CREATE/MODIFY, un rename que llega como DELETE + CREATE) se aplica
+ * una sola vez cuando pasa {@code ventana} sin eventos nuevos, o a las diez
+ * ventanas si los eventos no paran. Al aplicar se mira cómo quedó la ruta en
+ * disco, así que no importa el orden ni la cantidad de eventos intermedios.
+ *
+ * Si se pierden eventos de un directorio (OVERFLOW) se vuelve a listar ese
+ * directorio y se le pide al destino que purgue lo que ya no existe debajo.
+ * Si no se pudo vigilar algún directorio (por ejemplo, se llegó al límite
+ * fs.inotify.max_user_watches) {@link #estaCompleto()} pasa a false y el
+ * Indexador sigue recorriendo periódicamente.
+ */
+public class VigilanteCambios {
+
+    /** Adónde van los cambios; el Indexador los manda a la ingesta y a la BD. */
+    public interface Destino {
+        /** Archivo regular nuevo o modificado. */
+        void actualizar(Path archivo, BasicFileAttributes attrs);
+
+        /**
+         * La ruta ya no existe.
+         *
+         * @param directorio true si era un directorio vigilado (hay que borrar
+         *                   todo lo que estaba debajo)
+         */
+        void eliminar(Path ruta, boolean directorio);
+
+        /** Se perdieron eventos de dir: quitar lo que ya no existe debajo. */
+        void purgarFaltantes(Path dir);
+    }
+
+    private static final int VENTANAS_MAXIMAS = 10;
+
+    private final WatchService servicio;
+    private final Predicate<Path> excluirDirectorio;
+    private final Predicate<Path> excluir;
+    private final Destino destino;
+    private final long ventanaNanos;
+    private final Map<Path, WatchKey> claves = new ConcurrentHashMap<>();
+
+    // Sólo los usa el hilo del vigilante: rutas con eventos sin aplicar, en
+    // orden de llegada, y directorios con eventos perdidos
+    private final Set<Path> cambios = new LinkedHashSet<>();
+    private final Set<Path> desbordados = new LinkedHashSet<>();
+
+    private final AtomicLong eventos = new AtomicLong();
+    private final AtomicLong rutasAplicadas = new AtomicLong();
+    private final AtomicLong desbordes = new AtomicLong();
+    private volatile boolean completo = true;
+    private volatile boolean activo = true;
+    private Thread hilo;
+
+    /**
+     * @param excluir criterio de exclusión del recorrido
+     * @param destino qué hacer con cada cambio
+     * @param ventana tiempo sin eventos tras el cual se aplica lo acumulado
+     */
+    public VigilanteCambios(Predicate<Path> excluir, Destino destino, Duration ventana) throws IOException {
+        this(excluir, excluir, destino, ventana);
+    }
+
+    /**
+     * @param excluirDirectorio criterio para los directorios (que no se
+     *                          vigilan ni se listan)
+     * @param excluir           criterio para los archivos
+     */
+    public VigilanteCambios(Predicate<Path> excluirDirectorio, Predicate<Path> excluir, Destino destino,
+            Duration ventana) throws IOException {
+        if (ventana == null || ventana.isNegative()) {
+            throw new IllegalArgumentException("La ventana de agrupado no puede ser negativa");
+        }
+        this.servicio = FileSystems.getDefault().newWatchService();
+        this.excluirDirectorio = excluirDirectorio;
+        this.excluir = excluir;
+        this.destino = destino;
+        this.ventanaNanos = ventana.toNanos();
+    }
+
+    /** Arranca el hilo que recibe y aplica los eventos. */
+    public synchronized void iniciar() {
+        if (hilo == null) {
+            hilo = new Thread(this::bucle, "Indexador-Vigilante");
+            hilo.setDaemon(true);
+            hilo.start();
+        }
+    }
+
+    /**
+     * Empieza a vigilar un directorio (sin sus subdirectorios). El recorrido
+     * lo llama antes de listarlo, así lo que se cree mientras se lista genera
+     * un evento.
+     *
+     * @return true si el directorio quedó vigilado
+     */
+    public boolean registrar(Path dir) {
+        if (!activo) {
+            return false;
+        }
+        Path norm = dir.toAbsolutePath().normalize();
+        if (vigilado(norm)) {
+            return true;
+        }
+        try {
+            claves.put(norm, norm.register(servicio, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY));
+            return true;
+        } catch (NoSuchFileException | NotDirectoryException | AccessDeniedException e) {
+            // Tampoco lo puede listar el recorrido
+            return false;
+        } catch (ClosedWatchServiceException e) {
+            return false;
+        } catch (IOException e) {
+            if (completo) {
+                completo = false;
+                System.err.println("[VIGILANCIA] No se pudo vigilar " + norm + " (" + e.getMessage()
+                        + "); se sigue recorriendo periódicamente");
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Deja de vigilar dir y lo que tiene debajo sin informar eliminaciones
+     * (un subárbol que pasó a estar excluido).
+     *
+     * @return cuántos directorios dejaron de vigilarse
+     */
+    public int dejarDeVigilar(Path dir) {
+        Path norm = dir.toAbsolutePath().normalize();
+        int cancelados = 0;
+        Iterator<Map.Entry<Path, WatchKey>> it = claves.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Path, WatchKey> entrada = it.next();
+            if (entrada.getKey().startsWith(norm)) {
+                entrada.getValue().cancel();
+                it.remove();
+                cancelados++;
+            }
+        }
+        return cancelados;
+    }
+
+    /** true mientras todos los directorios que se intentaron registrar quedaron vigilados. */
+    public boolean estaCompleto() {
+        return completo;
+    }
+
+    public int getDirectoriosVigilados() {
+        return claves.size();
+    }
+
+    public long getEventos() {
+        return eventos.get();
+    }
+
+    public long getRutasAplicadas() {
+        return rutasAplicadas.get();
+    }
+
+    public long getDesbordes() {
+        return desbordes.get();
+    }
+
+    /** Deja de vigilar; lo que no se aplicó todavía se descarta. */
+    public void detener() {
+        activo = false;
+        try {
+            servicio.close();
+        } catch (IOException e) {
+            System.err.println("[VIGILANCIA] Error al cerrar: " + e.getMessage());
+        }
+        Thread h;
+        synchronized (this) {
+            h = hilo;
+        }
+        if (h != null) {
+            h.interrupt();
+        }
+    }
+
+    private void bucle() {
+        long primero = 0;
+        long ultimo = 0;
+        while (activo) {
+            try {
+                boolean hayPendientes = !cambios.isEmpty() || !desbordados.isEmpty();
+                WatchKey clave;
+                if (!hayPendientes) {
+                    clave = servicio.take();
+                } else {
+                    long limite = Math.min(ultimo + ventanaNanos, primero + ventanaNanos * VENTANAS_MAXIMAS);
+                    long espera = limite - System.nanoTime();
+                    clave = espera > 0 ? servicio.poll(espera, TimeUnit.NANOSECONDS) : null;
+                    if (clave == null) {
+                        aplicar();
+                        continue;
+                    }
+                }
+                ultimo = System.nanoTime();
+                if (!hayPendientes) {
+                    primero = ultimo;
+                }
+                leerEventos(clave);
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                break;
+            } catch (RuntimeException e) {
+                // Un error del destino no debe dejar de vigilar el resto
+                System.err.println("[VIGILANCIA] Error aplicando cambios: " + e.getMessage());
+            }
+        }
+    }
+
+    private void leerEventos(WatchKey clave) {
+        Path dir = (Path) clave.watchable();
+        for (WatchEvent<?> evento : clave.pollEvents()) {
+            eventos.incrementAndGet();
+            if (evento.kind() == OVERFLOW) {
+                desbordes.incrementAndGet();
+                desbordados.add(dir);
+            } else {
+                cambios.add(dir.resolve((Path) evento.context()));
+            }
+        }
+        // Si el directorio se borró la clave queda inválida pero sigue en
+        // claves hasta que llegue el DELETE del padre, para saber que era un
+        // directorio
+        clave.reset();
+    }
+
+    private boolean vigilado(Path dir) {
+        WatchKey clave = claves.get(dir);
+        return clave != null && clave.isValid();
+    }
+
+    private void aplicar() {
+        List<Path> lote = new ArrayList<>(cambios);
+        List<Path> revisar = new ArrayList<>(desbordados);
+        cambios.clear();
+        desbordados.clear();
+
+        List<Path> existentes = new ArrayList<>(lote.size());
+        // Primero lo borrado: un directorio movido se deja de vigilar en su
+        // ruta vieja antes de registrarlo en la nueva
+        for (Path ruta : lote) {
+            if (Files.exists(ruta, LinkOption.NOFOLLOW_LINKS)) {
+                existentes.add(ruta);
+            } else {
+                eliminar(ruta);
+            }
+        }
+        for (Path ruta : existentes) {
+            actualizar(ruta);
+        }
+        rutasAplicadas.addAndGet(lote.size());
+
+        for (Path dir : revisar) {
+            destino.purgarFaltantes(dir);
+            listar(dir);
+        }
+    }
+
+    private void eliminar(Path ruta) {
+        WatchKey clave = claves.remove(ruta);
+        boolean directorio = clave != null;
+        if (directorio) {
+            clave.cancel();
+            Iterator<Map.Entry<Path, WatchKey>> it = claves.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Path, WatchKey> entrada = it.next();
+                if (entrada.getKey().startsWith(ruta)) {
+                    entrada.getValue().cancel();
+                    it.remove();
+                }
+            }
+        } else if (excluir.test(ruta)) {
+            return;
+        }
+        destino.eliminar(ruta, directorio);
+    }
+
+    private void actualizar(Path ruta) {
+        if (excluir.test(ruta)) {
+            return;
+        }
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(ruta, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException e) {
+            // Se borró entre el exists y acá; su DELETE ya está en camino
+            return;
+        }
+        if (attrs.isDirectory()) {
+            // Un MODIFY sobre un directorio vigilado no cambia nada; uno nuevo
+            // (o movido acá) se recorre entero porque lo que se creó adentro
+            // antes de registrarlo no generó eventos
+            if (!vigilado(ruta)) {
+                listar(ruta);
+            }
+        } else if (attrs.isRegularFile()) {
+            destino.actualizar(ruta, attrs);
+        }
+    }
+
+    /**
+     * Registra y lista dir; los subdirectorios que no estaban vigilados se
+     * recorren también.
+     */
+    private void listar(Path dir) {
+        Deque<Path> pendientes = new ArrayDeque<>();
+        pendientes.push(dir);
+        while (!pendientes.isEmpty()) {
+            Path actual = pendientes.pop();
+            if (excluirDirectorio.test(actual)) {
+                continue;
+            }
+            registrar(actual);
+            try (DirectoryStream<Path> entradas = Files.newDirectoryStream(actual)) {
+                for (Path entrada : entradas) {
+                    BasicFileAttributes attrs;
+                    try {
+                        attrs = Files.readAttributes(entrada, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        continue;
+                    }
+                    if (attrs.isDirectory()) {
+                        if (!vigilado(entrada)) {
+                            pendientes.push(entrada);
+                        }
+                    } else if (attrs.isRegularFile() && !excluir.test(entrada)) {
+                        destino.actualizar(entrada, attrs);
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                System.err.println("⚠️ No se pudo acceder a: " + actual + " (" + e.getMessage() + ")");
+            }
+        }
+    }
+}
@@ -17,6 +17,8 @@ public class Archivo {
     private final LocalDateTime fechaCreacion;
     private LocalDateTime fechaModificacion;
     private Categoria categoria;
+    // Identidad del archivo en el sistema de archivos (dispositivo e inodo)
+    private String claveArchivo;
     private final Set<Etiqueta> etiquetas = new HashSet<>();
     private final Set<String> palabrasClave = new HashSet<>();
 
@@ -87,6 +89,19 @@ public class Archivo {
         this.id = id;
     }
 
+    /**
+     * BasicFileAttributes.fileKey() como texto, o null si el sistema de
+     * archivos no la da. Sobrevive a renombres y movimientos dentro del mismo
+     * dispositivo.
+     */
+    public String getClaveArchivo() {
+        return claveArchivo;
+    }
+
+    public void setClaveArchivo(String claveArchivo) {
+        this.claveArchivo = claveArchivo;
+    }
+
     /** Un archivo oculto comienza con punto. */
     public boolean esOculto() {
         return nombre.startsWith(".");
@@ -0,0 +1,213 @@
+package koolfileindexer.db;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmark manual (no se ejecuta con los tests): la misma carga sobre cada
+ * AlmacenArchivos. Ingesta por lotes como el indexador, una pasada sin
+ * cambios (sólo sube la generación), búsquedas, palabras clave, recorrido y
+ * borrado de un subárbol y barrido de fin de pasada. Para el embebido mide
+ * también cuánto tarda en volver a abrir desde la instantánea.
+ *
+ * PostgreSQL necesita la BD local; si no responde se informa y se sigue.
+ *
+ * Uso: java ... koolfileindexer.db.AlmacenBenchmark [filas=200000] [embebido|postgres|ambos]
+ * Las filas sintéticas quedan bajo /kfi-bench y se borran al terminar.
+ */
+public class AlmacenBenchmark {
+    private static final String DIRECTORIO_SINTETICO = "/kfi-bench";
+    private static final String[] EXTENSIONES = { "txt", "pdf", "jpg", "java", "mp3", "png", "doc", "csv" };
+    private static final int TAMANO_LOTE = 500;
+    private static final int REPETICIONES = 20;
+    private static final int PALABRAS_CLAVE = 1_000;
+
+    private interface Operacion {
+        int ejecutar(AlmacenArchivos almacen) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int filas = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        String almacenes = args.length > 1 ? args[1] : "ambos";
+
+        if (!almacenes.equals("postgres")) {
+            Path directorio = Files.createTempDirectory("kfi-almacen");
+            AlmacenEmbebido embebido = new AlmacenEmbebido(directorio);
+            ejecutar("embebido", embebido, filas);
+            medirReapertura(embebido, directorio, filas);
+        }
+        if (!almacenes.equals("embebido")) {
+            ConectorBasedeDatos postgres = ConectorBasedeDatos.obtenerInstancia();
+            try {
+                postgres.verificar();
+            } catch (SQLException e) {
+                System.out.println("\n== postgres: no disponible (" + e.getMessage() + ")");
+                return;
+            }
+            ejecutar("postgres", postgres, filas);
+        }
+    }
+
+    private static void ejecutar(String nombre, AlmacenArchivos almacen, int filas) throws Exception {
+        System.out.printf("%n== %s, %,d filas%n", nombre, filas);
+        try {
+            medirUnaVez("ingesta (lotes de " + TAMANO_LOTE + ")", filas, a -> ingestar(a, filas, 1), almacen);
+            medirUnaVez("pasada sin cambios", filas, a -> ingestar(a, filas, 2), almacen);
+
+            medir("nombre + extensión", almacen, a -> contar(a.buscarArchivosPorFiltroVariasPalabrasClaveMismoArchivo(
+                    new FiltroSinRuta("archivo12345", "pdf"), -1, -1)));
+            medir("extensión + tamaño", almacen, a -> contar(a.buscarArchivosPorFiltroVariasPalabrasClaveMismoArchivo(
+                    new FiltroSinRuta(null, "csv"), 5_000, 5_100)));
+            medir("ruta exacta", almacen, a -> {
+                Archivo filtro = new Archivo();
+                filtro.setRutaCompleta(rutaSintetica(777));
+                return contar(a.buscarArchivosPorFiltroVariasPalabrasClaveMismoArchivo(filtro, -1, -1));
+            });
+            medir("tokens", almacen, a -> contar(a.buscarArchivosPorTokens("archivo1234", 50)));
+
+            medirUnaVez("asociar palabras clave", PALABRAS_CLAVE, a -> {
+                for (int i = 0; i < PALABRAS_CLAVE; i++) {
+                    a.asociarPalabraClaveArchivo(archivoSintetico(i * (filas / PALABRAS_CLAVE)), "bench");
+                }
+                return PALABRAS_CLAVE;
+            }, almacen);
+            medir("por palabra clave", almacen, a -> {
+                Archivo filtro = new FiltroSinRuta(null, null);
+                filtro.setPalabrasClave(Set.of("bench"));
+                return contar(a.buscarArchivosPorFiltroVariasPalabrasClaveMismoArchivo(filtro, -1, -1));
+            });
+
+            medir("recorrer subárbol", almacen, a -> {
+                AtomicInteger vistos = new AtomicInteger();
+                a.recorrerArchivosBajo(DIRECTORIO_SINTETICO + "/d7", (ruta, tamano, fecha) -> vistos.incrementAndGet());
+                return vistos.get();
+            });
+            medirUnaVez("eliminar subárbol", 0,
+                    a -> a.eliminarArchivosBajoDirectorio(DIRECTORIO_SINTETICO + "/d3").size(), almacen);
+            // Nada se vio en la generación 3: se barre todo lo que queda
+            medirUnaVez("barrido fin de pasada", 0,
+                    a -> a.barrerArchivosNoVistos(DIRECTORIO_SINTETICO, 3, List.of()).size(), almacen);
+        } finally {
+            almacen.eliminarArchivosBajoDirectorio(DIRECTORIO_SINTETICO);
+        }
+    }
+
+    private static void medirReapertura(AlmacenEmbebido embebido, Path directorio, int filas) throws Exception {
+        // El subárbol ya se borró: se vuelve a cargar para medir la apertura con datos
+        ingestar(embebido, filas, 4);
+        embebido.cerrar();
+        long bytes = Files.size(directorio.resolve(AlmacenEmbebido.ARCHIVO_INSTANTANEA));
+
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long antes = runtime.totalMemory() - runtime.freeMemory();
+        long inicio = System.nanoTime();
+        embebido.verificar();
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        System.gc();
+        long despues = runtime.totalMemory() - runtime.freeMemory();
+        System.out.printf("%-24s %8.2f s  (%,d filas, instantánea %,d KB, ~%,d bytes/fila en memoria)%n",
+                "reabrir", segundos, filas, bytes / 1024, (despues - antes) / Math.max(1, filas));
+        embebido.eliminarArchivosBajoDirectorio(DIRECTORIO_SINTETICO);
+        embebido.cerrar();
+    }
+
+    private static int ingestar(AlmacenArchivos almacen, int filas, long generacion) throws SQLException {
+        List<Archivo> lote = new ArrayList<>(TAMANO_LOTE);
+        int escritas = 0;
+        for (int i = 0; i < filas; i++) {
+            lote.add(archivoSintetico(i));
+            if (lote.size() == TAMANO_LOTE || i == filas - 1) {
+                escritas += almacen.ingestarLoteArchivos(lote, generacion);
+                lote.clear();
+            }
+        }
+        return escritas;
+    }
+
+    private static void medirUnaVez(String nombre, int unidades, Operacion operacion, AlmacenArchivos almacen)
+            throws Exception {
+        long inicio = System.nanoTime();
+        int resultado = operacion.ejecutar(almacen);
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        if (unidades > 0) {
+            System.out.printf("%-24s %8.2f s  (%,.0f/s, %,d filas escritas)%n", nombre, segundos,
+                    unidades / segundos, resultado);
+        } else {
+            System.out.printf("%-24s %8.2f s  (%,d filas)%n", nombre, segundos, resultado);
+        }
+    }
+
+    private static void medir(String nombre, AlmacenArchivos almacen, Operacion operacion) throws Exception {
+        operacion.ejecutar(almacen); // calentamiento
+        long[] tiempos = new long[REPETICIONES];
+        int resultados = 0;
+        for (int i = 0; i < REPETICIONES; i++) {
+            long inicio = System.nanoTime();
+            resultados = operacion.ejecutar(almacen);
+            tiempos[i] = System.nanoTime() - inicio;
+        }
+        Arrays.sort(tiempos);
+        System.out.printf("%-24s p50=%8.2f ms  p95=%8.2f ms  (%d resultados)%n", nombre,
+                tiempos[REPETICIONES / 2] / 1e6, tiempos[REPETICIONES * 95 / 100] / 1e6, resultados);
+    }
+
+    private static int contar(ResultSet rs) throws SQLException {
+        try (rs) {
+            int filas = 0;
+            while (rs.next()) {
+                filas++;
+            }
+            return filas;
+        }
+    }
+
+    /** Filtro sin ruta ni categoría (ver BusquedaBenchmark). */
+    private static final class FiltroSinRuta extends Archivo {
+        private final String nombre;
+        private final String extension;
+
+        FiltroSinRuta(String nombre, String extension) {
+            this.nombre = nombre;
+            this.extension = extension;
+        }
+
+        @Override
+        public String getNombre() {
+            return nombre;
+        }
+
+        @Override
+        public String getExtension() {
+            return extension;
+        }
+
+        @Override
+        public String getRutaCompleta() {
+            return null;
+        }
+
+        @Override
+        public Categoria getCategoria() {
+            return null;
+        }
+    }
+
+    private static String rutaSintetica(int i) {
+        return DIRECTORIO_SINTETICO + "/d" + (i % 1_000) + "/archivo" + i + "." + EXTENSIONES[i % EXTENSIONES.length];
+    }
+
+    private static Archivo archivoSintetico(int i) {
+        String extension = EXTENSIONES[i % EXTENSIONES.length];
+        return new Archivo("archivo" + i, i % 10_000, LocalDateTime.of(2024, 1, 1, 0, 0), rutaSintetica(i),
+                extension, "OTRO");
+    }
+}
@@ -0,0 +1,406 @@
+package koolfileindexer.db;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AlmacenEmbebidoTest {
+
+    @TempDir
+    Path directorio;
+
+    private final List<AlmacenEmbebido> abiertos = new ArrayList<>();
+
+    @AfterEach
+    void cerrar() {
+        abiertos.forEach(AlmacenEmbebido::cerrar);
+    }
+
+    private AlmacenEmbebido abrir() {
+        AlmacenEmbebido almacen = new AlmacenEmbebido(directorio);
+        abiertos.add(almacen);
+        return almacen;
+    }
+
+    private static Archivo archivo(String ruta, long tamano) {
+        String nombreCompleto = ruta.substring(ruta.lastIndexOf('/') + 1);
+        int punto = nombreCompleto.lastIndexOf('.');
+        return new Archivo(nombreCompleto.substring(0, punto), tamano, LocalDateTime.of(2024, 5, 1, 10, 30), ruta,
+                nombreCompleto.substring(punto + 1), "DOCUMENTO");
+    }
+
+    /** Filtro con sólo los criterios dados; los demás en null. */
+    private static final class Filtro extends Archivo {
+        String nombre;
+        String ruta;
+        String extension;
+        Set<String> palabrasClave;
+
+        @Override
+        public String getNombre() {
+            return nombre;
+        }
+
+        @Override
+        public String getRutaCompleta() {
+            return ruta;
+        }
+
+        @Override
+        public String getExtension() {
+            return extension;
+        }
+
+        @Override
+        public Categoria getCategoria() {
+            return null;
+        }
+
+        @Override
+        public Set<String> getPalabrasClave() {
+            return palabrasClave;
+        }
+    }
+
+    private static List<String> rutas(ResultSet rs) throws SQLException {
+        List<String> rutas = new ArrayList<>();
+        while (rs.next()) {
+            rutas.add(rs.getString("path"));
+        }
+        return rutas;
+    }
+
+    private static List<String> bajo(AlmacenEmbebido almacen, String directorio) throws SQLException {
+        List<String> rutas = new ArrayList<>();
+        almacen.recorrerArchivosBajo(directorio, (ruta, tamano, fecha) -> rutas.add(ruta));
+        return rutas;
+    }
+
+    @Test
+    void ingestarYBuscar_mismasColumnasQueLasFunciones() throws Exception {
+        AlmacenEmbebido almacen = abrir();
+        almacen.ingestarLoteArchivos(List.of(
+                archivo("/home/u/informe_2024.pdf", 1_000),
+                archivo("/home/u/Informe-viejo.txt", 50),
+                archivo("/home/u/foto.jpg", 5_000)), 1);
+
+        Filtro filtro = new Filtro();
+        filtro.nombre = "INFORME";
+        assertEquals(List.of("/home/u/informe_2024.pdf", "/home/u/Informe-viejo.txt"),
+                rutas(almacen.buscarArchivosPorFiltroVariasPalabrasClaveMismoArchivo(filtro, -1, -1)));
+
+        filtro.extension = "pdf";
+        ResultSet rs = almacen.buscarArchivosPorFiltroVariasPalabrasClaveMismoArchivo(filtro, 500, 2_000);
+        assertTrue(rs.next());
+        assertEquals("informe_2024", rs.getString("nombre"));
+        assertEquals("pdf", rs.getString("extension"));
+        assertEquals(1_000, rs.getLong("tamano"));
+        assertEquals(LocalDateTime.of(2024, 5, 1, 0, 0), rs.getTimestamp("fecha_modificacion").toLocalDateTime());
+        assertEquals("DOCUMENTO", rs.getString("categoria"));
+        assertTrue(rs.getLong("id") > 0);
+        assertFalse(rs.next());
+
+        assertEquals(List.of("/home/u/informe_2024.pdf"), rutas(almacen.buscarArchivosPorTokens("inf 2024", 10)));
+        assertEquals(List.of(), rutas(almacen.buscarArchivosPorTokens("forme", 10)), "Los tokens son prefijos");
+    }
+
+    @Test
+    void ingestar_cuentaSoloLoQueCambiaYLaGeneracionNoBaja() throws Exception {
+        AlmacenEmbebido almacen = abrir();
+        List<Archivo> lote = List.of(archivo("/r/a.txt", 1), archivo("/r/b.txt", 2));
+
+        assertEquals(2, almacen.ingestarLoteArchivos(lote, 10));
+        assertEquals(0, almacen.ingestarLoteArchivos(lote, 10), "Sin cambios no se escribe nada");
+        assertEquals(0, almacen.ingestarLoteArchivos(lote, 5));
+        assertEquals(1, almacen.ingestarLoteArchivos(List.of(archivo("/r/a.txt", 3)), 5));
+        assertEquals(2, almacen.getCantidad());
+
+        // b se vio en la generación 20, a sigue en la 10
+        almacen.ingestarLoteArchivos(List.of(archivo("/r/b.txt", 2)), 20);
+        assertEquals(List.of("/r/a.txt"), almacen.barrerArchivosNoVistos("/r", 20, List.of()));
+        assertEquals(List.of("/r/b.txt"), bajo(almacen, "/r"));
+    }
+
+    @Test
+    void eliminarBajoDirectorioYBarrido_respetanLosLimitesDelSubarbol() throws Exception {
+        AlmacenEmbebido almacen = abrir();
+        almacen.ingestarLoteArchivos(List.of(
+                archivo("/datos/a/x.txt", 1),
+                archivo("/datos/a/sub/y.txt", 1),
+                archivo("/datos/ab/z.txt", 1),
+                archivo("/datos/a.txt", 1)), 1);
+
+        assertEquals(List.of("/datos/a/sub/y.txt", "/datos/a/x.txt"),
+                almacen.eliminarArchivosBajoDirectorio("/datos/a"));
+        assertEquals(List.of("/datos/a.txt", "/datos/ab/z.txt"), bajo(almacen, "/datos"));
+
+        almacen.ingestarLoteArchivos(List.of(archivo("/datos/ab/w.txt", 1)), 1);
+        assertEquals(List.of("/datos/a.txt"), almacen.barrerArchivosNoVistos("/datos", 5, List.of("/datos/ab")),
+                "No se barre debajo de un directorio incompleto");
+    }
+
+    @Test
+    void recorrerEnDirectorios_soloLosHijosDirectos() throws Exception {
+        AlmacenEmbebido almacen = abrir();
+        almacen.ingestarLoteArchivos(List.of(
+                archivo("/a/uno.txt", 1),
+                archivo("/a/b/dos.txt", 1),
+                archivo("/a/b/c/tres.txt", 1),
+                archivo("/a/z.txt", 1),
+                archivo("/raiz.txt", 1)), 1);
+
+        List<String> vistos = new ArrayList<>();
+        almacen.recorrerArchivosEnDirectorios(List.of("/a", "/"), (ruta, tamano, fecha) -> vistos.add(ruta));
+
+        assertEquals(List.of("/a/uno.txt", "/a/z.txt", "/raiz.txt"), vistos);
+    }
+
+    @Test
+    void palabrasClaveYEtiquetas_todasAlgunaYBorrado() throws Exception {
+        AlmacenEmbebido almacen = abrir();
+        Archivo a = archivo("/p/a.txt", 1);
+        Archivo b = archivo("/p/b.txt", 1);
+        almacen.ingestarLoteArchivos(List.of(a, b), 1);
+        almacen.asociarPalabraClaveArchivo(a, "rojo");
+        almacen.asociarPalabraClaveArchivo(a, "azul");
+        almacen.asociarPalabraClaveArchivo(b, "azul");
+        almacen.asociarEtiquetaArchivo(b, "trabajo");
+
+        Filtro filtro = new Filtro();
+        filtro.palabrasClave = Set.of("rojo", "azul");
+        assertEquals(List.of("/p/a.txt"),
+                rutas(almacen.buscarArchivosPorFiltroVariasPalabrasClaveMismoArchivo(filtro, -1, -1)));
+        assertEquals(List.of("/p/a.txt", "/p/b.txt"),
+                rutas(almacen.buscarArchivosPorFiltroMinimoUnaPalabraClave(filtro, -1, -1)));
+
+        almacen.desasociarPalabraClaveArchivo(a, "rojo");
+        assertEquals(List.of(), rutas(almacen.buscarArchivosPorFiltroVariasPalabrasClaveMismoArchivo(filtro, -1, -1)));
+
+        almacen.eliminarEtiqueta("trabajo");
+        almacen.eliminarArchivo(b);
+        filtro.palabrasClave = Set.of("azul");
+        assertEquals(List.of("/p/a.txt"),
+                rutas(almacen.buscarArchivosPorFiltroVariasPalabrasClaveMismoArchivo(filtro, -1, -1)));
+    }
+
+    @Test
+    void paginada_ordenPorIdDesdeElCursor() throws Exception {
+        AlmacenEmbebido almacen = abrir();
+        List<Archivo> lote = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            lote.add(archivo("/pag/f" + i + ".txt", i));
+        }
+        almacen.ingestarLoteArchivos(lote, 1);
+
+        Filtro filtro = new Filtro();
+        filtro.extension = "txt";
+        List<Long> ids = new ArrayList<>();
+        int entregadas = almacen.recorrerBusquedaPaginada(filtro, -1, -1,
+                CompiladorConsultaBusqueda.ModoPalabrasClave.TODAS, -1, 10, fila -> ids.add(fila.getLong("id")));
+        assertEquals(10, entregadas);
+
+        List<Long> siguientes = new ArrayList<>();
+        almacen.recorrerBusquedaPaginada(filtro, -1, -1, CompiladorConsultaBusqueda.ModoPalabrasClave.TODAS,
+                ids.get(9), 0, fila -> siguientes.add(fila.getLong("id")));
+        assertEquals(15, siguientes.size());
+        assertTrue(siguientes.get(0) > ids.get(9));
+        assertEquals(siguientes.stream().sorted().toList(), siguientes);
+    }
+
+    @Test
+    void bajoDirectorio_todoElSubarbolYNadaDeLosHermanos() throws Exception {
+        AlmacenEmbebido almacen = abrir();
+        almacen.ingestarLoteArchivos(List.of(archivo("/var/app/a.log", 1), archivo("/var/app/sub/b.log", 2),
+                archivo("/var/app/sub/c.txt", 3), archivo("/var/app2/d.log", 4), archivo("/var/e.log", 5)), 1);
+
+        Filtro filtro = new Filtro();
+        filtro.extension = "log";
+        filtro.setDirectorioBase("/var/app");
+        assertEquals(List.of("/var/app/a.log", "/var/app/sub/b.log"),
+                rutas(almacen.buscarArchivosPorFiltroVariasPalabrasClaveMismoArchivo(filtro, -1, -1)));
+
+        filtro.setDirectorioBase("/var/app/");
+        List<String> paginada = new ArrayList<>();
+        almacen.recorrerBusquedaPaginada(filtro, -1, -1, CompiladorConsultaBusqueda.ModoPalabrasClave.TODAS, -1, 0,
+                fila -> paginada.add(fila.getString("path")));
+        assertEquals(List.of("/var/app/a.log", "/var/app/sub/b.log"), paginada, "La '/' final no cambia nada");
+
+        filtro.setDirectorioBase("/");
+        assertEquals(4, rutas(almacen.buscarArchivosPorFiltroVariasPalabrasClaveMismoArchivo(filtro, -1, -1)).size());
+    }
+
+    @Test
+    void renombrarYMover_actualizanLosIndices() throws Exception {
+        AlmacenEmbebido almacen = abrir();
+        Archivo original = archivo("/m/viejo/a.txt", 1);
+        almacen.ingestarLoteArchivos(List.of(original, archivo("/m/nuevo/a.txt", 1)), 1);
+
+        Archivo movido = archivo("/m/otro/a.txt", 1);
+        almacen.actualizarUbicacionArchivo(movido, "/m/viejo/a.txt");
+        assertEquals(List.of("/m/nuevo/a.txt", "/m/otro/a.txt"), bajo(almacen, "/m"));
+
+        assertThrows(SQLException.class,
+                () -> almacen.actualizarUbicacionConNombreNuevo("/m/otro/a.txt", "/m/nuevo/a.txt"),
+                "Como la restricción única de Archivo");
+    }
+
+    @Test
+    void moverDirectorio_llevaTodoElSubarbol() throws Exception {
+        AlmacenEmbebido almacen = abrir();
+        almacen.ingestarLoteArchivos(List.of(archivo("/p/viejo/a.txt", 1), archivo("/p/viejo/sub/b.txt", 2),
+                archivo("/p/viejo2/c.txt", 3)), 1);
+
+        almacen.actualizarUbicacionConNombreNuevo("/p/viejo", "/p/nuevo");
+
+        assertEquals(List.of("/p/nuevo/a.txt", "/p/nuevo/sub/b.txt", "/p/viejo2/c.txt"), bajo(almacen, "/p"));
+        Filtro filtro = new Filtro();
+        filtro.ruta = "/p/nuevo/sub/b.txt";
+        assertEquals(List.of("/p/nuevo/sub/b.txt"),
+                rutas(almacen.buscarArchivosPorFiltroVariasPalabrasClaveMismoArchivo(filtro, -1, -1)));
+        assertThrows(SQLException.class, () -> almacen.actualizarUbicacionConNombreNuevo("/p/nuevo", "/p/nuevo/x"));
+    }
+
+    @Test
+    void moverDirectorioAUnDestinoExistente_seFusionaComoEnLaFuncion() throws Exception {
+        AlmacenEmbebido almacen = abrir();
+        almacen.ingestarLoteArchivos(List.of(archivo("/f/viejo/a.txt", 1), archivo("/f/viejo/sub/b.txt", 2),
+                archivo("/f/nuevo/c.txt", 3), archivo("/f/nuevo/sub/d.txt", 4), archivo("/f/otro/c.txt", 5),
+                archivo("/f/otro/e.txt", 6)), 1);
+
+        almacen.actualizarUbicacionConNombreNuevo("/f/viejo", "/f/nuevo");
+        assertEquals(List.of("/f/nuevo/a.txt", "/f/nuevo/c.txt", "/f/nuevo/sub/b.txt", "/f/nuevo/sub/d.txt"),
+                bajo(almacen, "/f/nuevo"));
+
+        // Un archivo sin subárbol sí puede quedar debajo de su ruta vieja
+        almacen.actualizarUbicacionConNombreNuevo("/f/otro/e.txt", "/f/otro/e.txt/e.txt");
+        assertEquals(List.of("/f/otro/c.txt", "/f/otro/e.txt/e.txt"), bajo(almacen, "/f/otro"));
+
+        // c.txt ya está en el destino: queda la fila del destino y se borra la del origen
+        almacen.actualizarUbicacionConNombreNuevo("/f/otro", "/f/nuevo");
+        assertEquals(List.of(), bajo(almacen, "/f/otro"));
+        List<String> destino = new ArrayList<>();
+        almacen.recorrerArchivosBajo("/f/nuevo", (ruta, tamano, fecha) -> destino.add(ruta + " " + tamano));
+        assertEquals(List.of("/f/nuevo/a.txt 1", "/f/nuevo/c.txt 3", "/f/nuevo/e.txt/e.txt 6",
+                "/f/nuevo/sub/b.txt 2", "/f/nuevo/sub/d.txt 4"), destino);
+    }
+
+    @Test
+    void moverArchivoPorClave_conservaIdYSobreviveAlReabrir() throws Exception {
+        AlmacenEmbebido almacen = abrir();
+        Archivo a = archivo("/k/a.txt", 1);
+        a.setClaveArchivo("(dev=1,ino=10)");
+        Archivo b = archivo("/k/b.txt", 2);
+        b.setClaveArchivo("(dev=1,ino=11)");
+        almacen.ingestarLoteArchivos(List.of(a, b), 1);
+        Filtro filtro = new Filtro();
+        filtro.ruta = "/k/a.txt";
+        ResultSet rs = almacen.buscarArchivosPorFiltroVariasPalabrasClaveMismoArchivo(filtro, -1, -1);
+        assertTrue(rs.next());
+        long id = rs.getLong("id");
+        // En la instantánea; lo que sigue queda sólo en el registro
+        almacen.cerrar();
+
+        Archivo renombrado = archivo("/k/sub/c.md", 1);
+        assertEquals(1, almacen.moverArchivo("/k/a.txt", renombrado));
+        assertEquals(0, almacen.moverArchivo("/k/no-existe.txt", renombrado));
+        almacen.cerrarSinInstantanea();
+
+        AlmacenEmbebido reabierto = abrir();
+        List<String> claves = new ArrayList<>();
+        reabierto.recorrerClavesBajo("/k", (clave, ruta) -> claves.add(clave + " " + ruta));
+        assertEquals(List.of("(dev=1,ino=11) /k/b.txt", "(dev=1,ino=10) /k/sub/c.md"), claves);
+        filtro.ruta = "/k/sub/c.md";
+        rs = reabierto.buscarArchivosPorFiltroVariasPalabrasClaveMismoArchivo(filtro, -1, -1);
+        assertTrue(rs.next());
+        assertEquals(id, rs.getLong("id"));
+        assertEquals("c", rs.getString("nombre"));
+    }
+
+    @Test
+    void moverArchivoSobreOtro_reemplazaLaFilaDelDestino() throws Exception {
+        AlmacenEmbebido almacen = abrir();
+        Archivo a = archivo("/r/a.txt", 1);
+        a.setClaveArchivo("(dev=1,ino=20)");
+        Archivo b = archivo("/r/b.txt", 2);
+        b.setClaveArchivo("(dev=1,ino=21)");
+        almacen.ingestarLoteArchivos(List.of(a, b), 1);
+
+        // mv a.txt b.txt
+        assertEquals(1, almacen.moverArchivo("/r/a.txt", archivo("/r/b.txt", 1)));
+        almacen.cerrarSinInstantanea();
+
+        List<String> claves = new ArrayList<>();
+        abrir().recorrerClavesBajo("/r", (clave, ruta) -> claves.add(clave + " " + ruta));
+        assertEquals(List.of("(dev=1,ino=20) /r/b.txt"), claves);
+    }
+
+    @Test
+    void reabrir_recuperaDeLaInstantaneaYDelRegistro() throws Exception {
+        AlmacenEmbebido almacen = abrir();
+        almacen.ingestarLoteArchivos(List.of(archivo("/s/a.txt", 1), archivo("/s/b.txt", 2)), 1);
+        almacen.asociarEtiquetaArchivo(archivo("/s/a.txt", 1), "importante");
+        // Al cerrar se escribe la instantánea
+        almacen.cerrar();
+        assertTrue(Files.exists(directorio.resolve(AlmacenEmbebido.ARCHIVO_INSTANTANEA)));
+
+        // Cambios que quedan sólo en el registro: al abrir se reproducen
+        almacen.eliminarArchivo(archivo("/s/b.txt", 2));
+        almacen.ingestarLoteArchivos(List.of(archivo("/s/c.txt", 3)), 2);
+        almacen.cerrarSinInstantanea();
+        AlmacenEmbebido reabierto = abrir();
+
+        assertEquals(List.of("/s/a.txt", "/s/c.txt"), bajo(reabierto, "/s"));
+        Filtro filtro = new Filtro();
+        filtro.nombre = "a";
+        ResultSet rs = reabierto.buscarArchivosPorFiltroVariasPalabrasClaveMismoArchivo(filtro, -1, -1);
+        assertTrue(rs.next());
+        long idA = rs.getLong("id");
+        reabierto.ingestarLoteArchivos(List.of(archivo("/s/d.txt", 4)), 2);
+        filtro.nombre = "d";
+        rs = reabierto.buscarArchivosPorFiltroVariasPalabrasClaveMismoArchivo(filtro, -1, -1);
+        assertTrue(rs.next());
+        assertTrue(rs.getLong("id") > idA, "Los ids no se reutilizan");
+    }
+
+    @Test
+    void registroCortado_seDescartaLaColaIncompleta() throws Exception {
+        AlmacenEmbebido almacen = abrir();
+        almacen.ingestarLoteArchivos(List.of(archivo("/t/a.txt", 1)), 1);
+        almacen.ingestarLoteArchivos(List.of(archivo("/t/b.txt", 1)), 1);
+        almacen.cerrarSinInstantanea();
+
+        // Un registro a medio escribir: largo y CRC sin los datos
+        try (FileChannel canal = FileChannel.open(directorio.resolve(AlmacenEmbebido.ARCHIVO_REGISTRO),
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            canal.write(ByteBuffer.allocate(12).putInt(500).putInt(123).putInt(7).flip());
+        }
+        AlmacenEmbebido reabierto = abrir();
+        assertEquals(List.of("/t/a.txt", "/t/b.txt"), bajo(reabierto, "/t"));
+
+        // Lo que se escribe después no queda detrás de la basura
+        reabierto.ingestarLoteArchivos(List.of(archivo("/t/c.txt", 1)), 1);
+        reabierto.cerrarSinInstantanea();
+        assertEquals(3, abrir().getCantidad());
+    }
+
+    @Test
+    void abrirDosVeces_elSegundoFalla() throws Exception {
+        abrir().verificar();
+
+        assertThrows(SQLException.class, () -> new AlmacenEmbebido(directorio).verificar());
+    }
+}
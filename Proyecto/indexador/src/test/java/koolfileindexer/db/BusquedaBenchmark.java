@@ -0,0 +1,118 @@
+package koolfileindexer.db;
+
+import java.sql.ResultSet;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Benchmark manual (no se ejecuta con los tests; necesita la BD local):
+ * carga archivos sintéticos y compara la latencia de la búsqueda compilada
+ * en una sola sentencia contra la cadena INTERSECT de funciones sp_buscar_*.
+ *
+ * Uso: java ... koolfileindexer.db.BusquedaBenchmark [filas] [repeticiones]
+ * Las filas sintéticas quedan bajo /kfi-bench y se borran al terminar.
+ */
+public class BusquedaBenchmark {
+    private static final String DIRECTORIO_SINTETICO = "/kfi-bench";
+    private static final String[] EXTENSIONES = { "txt", "pdf", "jpg", "java", "mp3", "png", "doc", "csv" };
+    private static final int TAMANO_LOTE = 1_000;
+
+    private interface Busqueda {
+        ResultSet ejecutar(ConectorBasedeDatos conector) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int filas = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int repeticiones = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        ConectorBasedeDatos conector = ConectorBasedeDatos.obtenerInstancia();
+
+        try {
+            cargar(conector, filas);
+
+            medir(conector, "nombre + extensión", repeticiones, c -> {
+                Archivo filtro = new FiltroSinRuta("archivo12345", "pdf");
+                return c.buscarArchivosPorFiltroVariasPalabrasClaveMismoArchivo(filtro, -1, -1);
+            });
+            medir(conector, "extensión + tamaño", repeticiones, c -> {
+                Archivo filtro = new Archivo(null, 0, LocalDateTime.now(), null, "csv", "OTRO");
+                return c.buscarArchivosPorFiltroVariasPalabrasClaveMismoArchivo(filtro, 5_000, 5_100);
+            });
+            medir(conector, "ruta exacta", repeticiones, c -> {
+                Archivo filtro = new Archivo();
+                filtro.setRutaCompleta(rutaSintetica(777));
+                return c.buscarArchivosPorFiltroVariasPalabrasClaveMismoArchivo(filtro, -1, -1);
+            });
+        } finally {
+            for (int i = 0; i < filas; i++) {
+                conector.eliminarArchivo(archivoSintetico(i));
+            }
+            conector.terminarConexion();
+        }
+    }
+
+    private static void cargar(ConectorBasedeDatos conector, int filas) throws Exception {
+        long inicio = System.nanoTime();
+        List<Archivo> lote = new ArrayList<>(TAMANO_LOTE);
+        for (int i = 0; i < filas; i++) {
+            lote.add(archivoSintetico(i));
+            if (lote.size() == TAMANO_LOTE || i == filas - 1) {
+                conector.ingestarLoteArchivos(lote);
+                lote.clear();
+            }
+        }
+        System.out.printf("Cargadas %,d filas en %.1f s%n", filas, (System.nanoTime() - inicio) / 1e9);
+    }
+
+    private static void medir(ConectorBasedeDatos conector, String nombre, int repeticiones, Busqueda busqueda)
+            throws Exception {
+        for (boolean compilada : new boolean[] { true, false }) {
+            conector.setUsarConsultaCompilada(compilada);
+            busqueda.ejecutar(conector).close(); // calentamiento
+            long[] tiempos = new long[repeticiones];
+            int resultados = 0;
+            for (int i = 0; i < repeticiones; i++) {
+                long inicio = System.nanoTime();
+                try (ResultSet rs = busqueda.ejecutar(conector)) {
+                    resultados = 0;
+                    while (rs.next()) {
+                        resultados++;
+                    }
+                }
+                tiempos[i] = System.nanoTime() - inicio;
+            }
+            Arrays.sort(tiempos);
+            System.out.printf("%-20s %-10s p50=%8.2f ms  p95=%8.2f ms  (%d resultados)%n",
+                    nombre, compilada ? "compilada" : "INTERSECT",
+                    tiempos[repeticiones / 2] / 1e6,
+                    tiempos[Math.min(repeticiones - 1, repeticiones * 95 / 100)] / 1e6,
+                    resultados);
+        }
+        conector.setUsarConsultaCompilada(true);
+    }
+
+    /**
+     * El constructor de Archivo convierte una ruta nula en una absoluta, así
+     * que el filtro sin ruta la anula aquí (igual que ArchivoAdapter).
+     */
+    private static final class FiltroSinRuta extends Archivo {
+        FiltroSinRuta(String nombre, String extension) {
+            super(nombre, 0, LocalDateTime.now(), null, extension, "OTRO");
+        }
+
+        @Override
+        public String getRutaCompleta() {
+            return null;
+        }
+    }
+
+    private static String rutaSintetica(int i) {
+        return DIRECTORIO_SINTETICO + "/d" + (i % 1_000) + "/archivo" + i + "." + EXTENSIONES[i % EXTENSIONES.length];
+    }
+
+    private static Archivo archivoSintetico(int i) {
+        String extension = EXTENSIONES[i % EXTENSIONES.length];
+        return new Archivo("archivo" + i, i % 10_000, LocalDateTime.now(), rutaSintetica(i), extension, "OTRO");
+    }
+}
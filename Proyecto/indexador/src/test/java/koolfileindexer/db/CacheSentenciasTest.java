@@ -0,0 +1,137 @@
+package koolfileindexer.db;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheSentenciasTest {
+
+    /** Estado de una sentencia física falsa. */
+    private static final class Fisica {
+        final String sql;
+        boolean cerrada;
+        int limpiezas;
+
+        Fisica(String sql) {
+            this.sql = sql;
+        }
+    }
+
+    private final List<Fisica> preparadas = new ArrayList<>();
+
+    private final Connection conexion = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] { Connection.class }, (proxy, metodo, args) -> {
+                if (metodo.getName().equals("prepareCall")) {
+                    return crearSentencia((String) args[0]);
+                }
+                return null;
+            });
+
+    private CallableStatement crearSentencia(String sql) {
+        Fisica estado = new Fisica(sql);
+        preparadas.add(estado);
+        return (CallableStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { CallableStatement.class }, (proxy, metodo, args) -> {
+                    switch (metodo.getName()) {
+                        case "close":
+                            estado.cerrada = true;
+                            return null;
+                        case "isClosed":
+                            return estado.cerrada;
+                        case "clearParameters":
+                            estado.limpiezas++;
+                            return null;
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    private CallableStatement preparar(CacheSentencias cache, String sql) throws SQLException {
+        return cache.prepararLlamada(conexion, sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+    }
+
+    @Test
+    void mismoSql_reutilizaLaSentenciaPreparada() throws Exception {
+        CacheSentencias cache = new CacheSentencias(4);
+
+        for (int i = 0; i < 100; i++) {
+            try (CallableStatement s = preparar(cache, "{CALL sp_crear_archivo(?, ?)}")) {
+                assertFalse(s.isClosed());
+            }
+        }
+
+        assertEquals(1, preparadas.size(), "Debe prepararse una sola vez");
+        assertFalse(preparadas.get(0).cerrada, "Cerrar la sentencia cacheada no la cierra físicamente");
+        assertEquals(100, preparadas.get(0).limpiezas);
+        assertEquals(99, cache.getAciertos());
+    }
+
+    @Test
+    void superarCapacidad_cierraLaMenosUsada() throws Exception {
+        CacheSentencias cache = new CacheSentencias(2);
+
+        preparar(cache, "A").close();
+        preparar(cache, "B").close();
+        preparar(cache, "A").close(); // A pasa a ser la más reciente
+        preparar(cache, "C").close();
+
+        assertEquals(2, cache.tamano());
+        assertTrue(preparadas.get(1).cerrada, "B era la menos usada y debe cerrarse");
+        assertFalse(preparadas.get(0).cerrada);
+        assertFalse(preparadas.get(2).cerrada);
+    }
+
+    @Test
+    void sentenciaEnUso_creaUnaAparteQueSeCierraDeVerdad() throws Exception {
+        CacheSentencias cache = new CacheSentencias(4);
+
+        try (CallableStatement externa = preparar(cache, "A")) {
+            try (CallableStatement interna = preparar(cache, "A")) {
+                assertNotSame(externa, interna);
+            }
+            assertTrue(preparadas.get(1).cerrada, "La duplicada no se cachea");
+            assertFalse(preparadas.get(0).cerrada);
+        }
+        assertEquals(1, cache.tamano());
+    }
+
+    @Test
+    void usarTrasCerrar_lanzaExcepcion() throws Exception {
+        CacheSentencias cache = new CacheSentencias(4);
+        CallableStatement s = preparar(cache, "A");
+        s.close();
+
+        assertThrows(SQLException.class, () -> s.setString(1, "x"));
+    }
+
+    @Test
+    void cerrarTodas_cierraFisicamenteTodo() throws Exception {
+        CacheSentencias cache = new CacheSentencias(4);
+        preparar(cache, "A").close();
+        preparar(cache, "B").close();
+
+        cache.cerrarTodas();
+
+        assertEquals(0, cache.tamano());
+        assertTrue(preparadas.stream().allMatch(f -> f.cerrada));
+    }
+
+    @Test
+    void capacidadCero_noCachea() throws Exception {
+        CacheSentencias cache = new CacheSentencias(0);
+        preparar(cache, "A").close();
+        preparar(cache, "A").close();
+
+        assertEquals(2, preparadas.size());
+        assertTrue(preparadas.stream().allMatch(f -> f.cerrada));
+    }
+}
@@ -0,0 +1,161 @@
+package koolfileindexer.db;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import koolfileindexer.db.CompiladorConsultaBusqueda.ConsultaCompilada;
+import koolfileindexer.db.CompiladorConsultaBusqueda.ModoPalabrasClave;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompiladorConsultaBusquedaTest {
+
+    private static Archivo filtroVacio() {
+        return new Archivo();
+    }
+
+    /** Filtro sin más criterio que la extensión. */
+    static Archivo soloExtension(String extension) {
+        return new Archivo() {
+            @Override
+            public String getExtension() {
+                return extension;
+            }
+        };
+    }
+
+    @Test
+    void filtroCompleto_generaUnaSolaSentenciaSinFunciones() {
+        Archivo filtro = new Archivo("informe", 0, LocalDateTime.now(), "/home/docs", "pdf", "DOCUMENTO");
+
+        ConsultaCompilada consulta = CompiladorConsultaBusqueda.compilar(filtro, -1, -1, ModoPalabrasClave.TODAS);
+
+        assertFalse(consulta.sql().contains("INTERSECT"));
+        assertFalse(consulta.sql().contains("sp_buscar"));
+        assertTrue(consulta.sql().contains("ext_extension = ?"));
+        assertTrue(consulta.sql().contains("LOWER(arc_nombre) LIKE"));
+        assertFalse(consulta.sql().contains("BETWEEN"), "Tamaños negativos desactivan el filtro");
+        assertEquals(List.of("pdf", "/home/", "docs", "DOCUMENTO", "%informe%"), consulta.parametros());
+    }
+
+    @Test
+    void rutaExacta_seParteEnDirectorioYUltimoComponente() {
+        Archivo filtro = filtroVacio();
+        filtro.setRutaCompleta("/home/u/informe.pdf");
+
+        ConsultaCompilada consulta = CompiladorConsultaBusqueda.compilar(filtro, -1, -1, ModoPalabrasClave.TODAS);
+
+        assertTrue(consulta.sql().contains(" WHERE dir_ruta = ? AND arc_base = ?"));
+        assertEquals(List.of("/home/u/", "informe.pdf"), consulta.parametros().subList(0, 2));
+        assertEquals("/", CompiladorConsultaBusqueda.directorioDe("/raiz.txt"));
+        assertEquals("", CompiladorConsultaBusqueda.directorioDe("sin_barra"));
+        assertEquals("sin_barra", CompiladorConsultaBusqueda.baseDe("sin_barra"));
+    }
+
+    @Test
+    void subarbol_esUnRangoSobreDirRuta() {
+        Archivo filtro = soloExtension("log");
+        filtro.setDirectorioBase("/var/app");
+
+        ConsultaCompilada consulta = CompiladorConsultaBusqueda.compilar(filtro, -1, -1, ModoPalabrasClave.TODAS);
+
+        assertTrue(consulta.sql().endsWith(" WHERE ext_extension = ? AND dir_ruta ~>=~ ? AND dir_ruta ~<~ ?"));
+        assertEquals(List.of("log", "/var/app/", "/var/app0"), consulta.parametros());
+        assertEquals("/var/app/", CompiladorConsultaBusqueda.inicioSubarbol("/var/app/"));
+        assertEquals("/", CompiladorConsultaBusqueda.inicioSubarbol("/"));
+        assertEquals("0", CompiladorConsultaBusqueda.finSubarbol("/"));
+    }
+
+    @Test
+    void rangoDeTamano_agregaDosParametros() {
+        ConsultaCompilada consulta = CompiladorConsultaBusqueda.compilar(filtroVacio(), 10, 20,
+                ModoPalabrasClave.TODAS);
+
+        assertTrue(consulta.sql().endsWith(" WHERE arc_tamano BETWEEN ? AND ?"));
+        assertEquals(List.of(10L, 20L), consulta.parametros());
+    }
+
+    @Test
+    void todasLasPalabrasClave_unExistsPorPalabra() {
+        Archivo filtro = filtroVacio();
+        filtro.setPalabrasClave(Set.of("uno", "dos"));
+
+        ConsultaCompilada consulta = CompiladorConsultaBusqueda.compilar(filtro, -1, -1, ModoPalabrasClave.TODAS);
+
+        assertEquals(2, contar(consulta.sql(), "EXISTS (SELECT 1 FROM Archivo_Palabra_clave"));
+        assertEquals(2, consulta.parametros().size());
+    }
+
+    @Test
+    void algunaPalabraClave_unSoloExistsConArreglo() {
+        Archivo filtro = filtroVacio();
+        filtro.setPalabrasClave(Set.of("uno", "dos"));
+
+        ConsultaCompilada consulta = CompiladorConsultaBusqueda.compilar(filtro, -1, -1, ModoPalabrasClave.ALGUNA);
+
+        assertEquals(1, contar(consulta.sql(), "EXISTS (SELECT 1 FROM Archivo_Palabra_clave"));
+        assertTrue(consulta.sql().contains("pal_palabra = ANY(?)"));
+        assertEquals(1, consulta.parametros().size());
+        assertTrue(consulta.parametros().get(0) instanceof String[]);
+    }
+
+    @Test
+    void etiquetasVacias_noAgreganFiltro() {
+        ConsultaCompilada consulta = CompiladorConsultaBusqueda.compilar(filtroVacio(), -1, -1,
+                ModoPalabrasClave.TODAS);
+
+        assertFalse(consulta.sql().contains("Etiqueta_Archivo"));
+        assertTrue(consulta.sql().startsWith(CompiladorConsultaBusqueda.SELECCION));
+    }
+
+    @Test
+    void patronDeNombre_pasaAMinusculasYConservaComodines() {
+        assertEquals("%informe_100%", CompiladorConsultaBusqueda.patronSubcadena("Informe_100"));
+        assertEquals("%%%", CompiladorConsultaBusqueda.patronSubcadena("%"));
+    }
+
+    @Test
+    void tokens_seBuscanComoPrefijos() {
+        ConsultaCompilada consulta = CompiladorConsultaBusqueda.compilarPorTokens("Inf 2024/pdf", 50);
+
+        assertTrue(consulta.sql().contains("arc_busqueda @@ to_tsquery('simple', ?)"));
+        assertTrue(consulta.sql().contains("dir_busqueda @@ to_tsquery('simple', ?)"));
+        // Candidatos con cualquier token en nombre o directorio; después todos sobre ambos
+        assertEquals(List.of("inf:* | 2024:* | pdf:*", "inf:* | 2024:* | pdf:*", "inf:* & 2024:* & pdf:*", 50L),
+                consulta.parametros());
+    }
+
+    @Test
+    void textoSinTokens_noCompila() {
+        assertNull(CompiladorConsultaBusqueda.compilarPorTokens(" ./- ", 50));
+    }
+
+    @Test
+    void pagina_ordenaPorIdYContinuaDespuesDelUltimo() {
+        ConsultaCompilada consulta = CompiladorConsultaBusqueda.compilarPagina(filtroVacio(), 10, 20,
+                ModoPalabrasClave.TODAS, 500, 100);
+
+        assertTrue(consulta.sql().endsWith(" WHERE arc_tamano BETWEEN ? AND ? AND arc_id > ? ORDER BY arc_id LIMIT ?"));
+        assertEquals(List.of(10L, 20L, 500L, 100L), consulta.parametros());
+    }
+
+    @Test
+    void primeraPaginaSinLimite_soloOrdena() {
+        ConsultaCompilada consulta = CompiladorConsultaBusqueda.compilarPagina(filtroVacio(), -1, -1,
+                ModoPalabrasClave.TODAS, -1, 0);
+
+        assertEquals(CompiladorConsultaBusqueda.SELECCION + " ORDER BY arc_id", consulta.sql());
+        assertTrue(consulta.parametros().isEmpty());
+    }
+
+    private static int contar(String texto, String fragmento) {
+        int cantidad = 0;
+        for (int i = texto.indexOf(fragmento); i >= 0; i = texto.indexOf(fragmento, i + 1)) {
+            cantidad++;
+        }
+        return cantidad;
+    }
+}
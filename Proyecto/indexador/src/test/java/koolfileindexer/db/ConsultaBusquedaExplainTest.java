@@ -0,0 +1,124 @@
+package koolfileindexer.db;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.Set;
+
+import koolfileindexer.db.CompiladorConsultaBusqueda.ConsultaCompilada;
+import koolfileindexer.db.CompiladorConsultaBusqueda.ModoPalabrasClave;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Regresión sobre el plan de la búsqueda compilada: debe ser una sola
+ * sentencia sin llamadas a funciones ni operaciones de conjuntos.
+ * Necesita la BD local; si no está disponible el test se omite.
+ */
+class ConsultaBusquedaExplainTest {
+
+    private static String explicar(ConsultaCompilada consulta) throws SQLException {
+        return explicar(consulta, false);
+    }
+
+    /**
+     * @param sinSeqScan desactiva el seq scan en la sesión para comprobar que
+     *                   los predicados pueden resolverse con índices aunque la
+     *                   tabla de prueba esté casi vacía
+     */
+    private static String explicar(ConsultaCompilada consulta, boolean sinSeqScan) throws SQLException {
+        ConectorBasedeDatos conector = ConectorBasedeDatos.obtenerInstancia();
+        Connection conexion;
+        try {
+            conexion = conector.obtenerConexion();
+        } catch (SQLException e) {
+            assumeTrue(false, "BD no disponible: " + e.getMessage());
+            return null;
+        }
+
+        StringBuilder plan = new StringBuilder();
+        try (conexion) {
+            try (Statement ajuste = conexion.createStatement()) {
+                ajuste.execute(sinSeqScan ? "SET enable_seqscan = off" : "RESET enable_seqscan");
+            }
+            try (PreparedStatement sentencia = conexion.prepareStatement(
+                    "EXPLAIN " + consulta.sql(),
+                    ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY)) {
+                consulta.asignarParametros(conexion, sentencia);
+                try (ResultSet rs = sentencia.executeQuery()) {
+                    while (rs.next()) {
+                        plan.append(rs.getString(1)).append('\n');
+                    }
+                }
+            } finally {
+                try (Statement ajuste = conexion.createStatement()) {
+                    ajuste.execute("RESET enable_seqscan");
+                }
+            }
+        }
+        return plan.toString();
+    }
+
+    private static void assertSinFuncionesNiConjuntos(String plan) {
+        assertFalse(plan.contains("Function Scan"), "El plan no debe materializar funciones:\n" + plan);
+        assertFalse(plan.contains("SetOp"), "El plan no debe tener INTERSECT:\n" + plan);
+    }
+
+    @Test
+    void nombreYExtension_unSoloPlanSinIntersect() throws Exception {
+        Archivo filtro = new Archivo("informe", 0, LocalDateTime.now(), "/home/docs", "pdf", "DOCUMENTO");
+
+        String plan = explicar(CompiladorConsultaBusqueda.compilar(filtro, -1, -1, ModoPalabrasClave.TODAS));
+
+        assertSinFuncionesNiConjuntos(plan);
+    }
+
+    @Test
+    void palabrasClaveYTamano_sinIntersect() throws Exception {
+        Archivo filtro = new Archivo();
+        filtro.setPalabrasClave(Set.of("uno", "dos"));
+
+        String plan = explicar(CompiladorConsultaBusqueda.compilar(filtro, 0, 1_000, ModoPalabrasClave.TODAS));
+
+        assertSinFuncionesNiConjuntos(plan);
+    }
+
+    @Test
+    void rutaExacta_puedeUsarElIndiceUnico() throws Exception {
+        Archivo filtro = new Archivo();
+        filtro.setRutaCompleta("/home/docs/informe.pdf");
+
+        String plan = explicar(CompiladorConsultaBusqueda.compilar(filtro, -1, -1, ModoPalabrasClave.TODAS), true);
+
+        assertTrue(plan.contains("idx_arc_nombre_completo"),
+                "El filtro por ruta debe poder resolverse con el índice (arc_dir_id, arc_base, ...):\n" + plan);
+        assertSinFuncionesNiConjuntos(plan);
+    }
+
+    @Test
+    void subarbol_usaElRangoDeIdxDirRuta() throws Exception {
+        Archivo filtro = CompiladorConsultaBusquedaTest.soloExtension("log");
+        filtro.setDirectorioBase("/var/app");
+
+        String plan = explicar(CompiladorConsultaBusqueda.compilar(filtro, -1, -1, ModoPalabrasClave.TODAS), true);
+
+        assertTrue(plan.contains("idx_dir_ruta"),
+                "El subárbol debe resolverse con un rango sobre idx_dir_ruta:\n" + plan);
+        assertSinFuncionesNiConjuntos(plan);
+    }
+
+    @Test
+    void subcadenaDelNombre_puedeUsarElIndiceTrigram() throws Exception {
+        String plan = explicar(CompiladorConsultaBusqueda.compilarPorNombre("nforme", 100), true);
+
+        assertTrue(plan.contains("idx_arc_nombre_trgm"),
+                "El LIKE '%...%' sobre el nombre debe poder usar el índice trigram:\n" + plan);
+    }
+}
@@ -0,0 +1,196 @@
+package koolfileindexer.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Benchmark manual (necesita la BD local con init_schema.sql y
+ * function_initialization.sql aplicados): compara el esquema con la ruta
+ * completa en cada fila (arc_path, como antes de Directorio) contra el
+ * normalizado. Carga un árbol sintético con prefijos largos y repetidos y
+ * copia esas filas a dos tablas temporales, una por esquema, con sus
+ * índices. Informa tamaño de tabla e índices, el recorrido de un subárbol y
+ * cuántas filas toca renombrar un directorio.
+ *
+ * Uso: java ... koolfileindexer.db.DirectorioBenchmark [archivos=500000] [repeticiones=20]
+ * Las filas sintéticas quedan bajo /kfi-bench y se borran al terminar.
+ */
+public class DirectorioBenchmark {
+    private static final String DIRECTORIO_SINTETICO = "/kfi-bench";
+    private static final String[] EXTENSIONES = { "java", "class", "xml", "md", "png", "json" };
+    private static final int ARCHIVOS_POR_DIRECTORIO = 20;
+    private static final int TAMANO_LOTE = 1_000;
+
+    private static final String[] ESQUEMA_PLANO = {
+            "CREATE TEMP TABLE plano AS "
+                    + "SELECT arc_id, arc_nombre, arc_tamano, arc_fecha_modificacion, "
+                    + "(dir_ruta || arc_base)::VARCHAR(200) AS arc_path, arc_ext_id, arc_cat_id, arc_generacion "
+                    + "FROM Archivo JOIN Directorio ON arc_dir_id = dir_id "
+                    + "WHERE dir_ruta ~>=~ '" + DIRECTORIO_SINTETICO + "/' AND dir_ruta ~<~ '" + DIRECTORIO_SINTETICO + "0'",
+            "CREATE UNIQUE INDEX plano_nombre_completo ON plano (arc_path, arc_nombre, arc_ext_id)",
+            "CREATE INDEX plano_path_prefijo ON plano (arc_path varchar_pattern_ops)",
+            "ANALYZE plano" };
+
+    private static final String[] ESQUEMA_NORMALIZADO = {
+            "CREATE TEMP TABLE directorio_n AS SELECT dir_id, dir_padre_id, dir_nombre, dir_profundidad, dir_ruta "
+                    + "FROM Directorio "
+                    + "WHERE dir_ruta ~>=~ '" + DIRECTORIO_SINTETICO + "/' AND dir_ruta ~<~ '" + DIRECTORIO_SINTETICO + "0'",
+            "CREATE UNIQUE INDEX directorio_n_ruta ON directorio_n (dir_ruta varchar_pattern_ops)",
+            "CREATE INDEX directorio_n_padre ON directorio_n (dir_padre_id)",
+            "CREATE TEMP TABLE normalizado AS "
+                    + "SELECT arc_id, arc_nombre, arc_tamano, arc_fecha_modificacion, arc_dir_id, arc_base, "
+                    + "arc_ext_id, arc_cat_id, arc_generacion "
+                    + "FROM Archivo JOIN directorio_n ON arc_dir_id = dir_id",
+            "CREATE UNIQUE INDEX normalizado_nombre_completo ON normalizado (arc_dir_id, arc_base, arc_nombre, arc_ext_id)",
+            "ANALYZE directorio_n",
+            "ANALYZE normalizado" };
+
+    public static void main(String[] args) throws Exception {
+        int archivos = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int repeticiones = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        ConectorBasedeDatos conector = ConectorBasedeDatos.obtenerInstancia();
+
+        try {
+            cargar(conector, archivos);
+            try (Connection conexion = conector.obtenerConexion()) {
+                ejecutar(conexion, ESQUEMA_PLANO);
+                ejecutar(conexion, ESQUEMA_NORMALIZADO);
+
+                System.out.printf("%n%-14s %12s %12s %12s%n", "esquema", "tabla", "índices", "total");
+                long tablaPlano = tamano(conexion, "pg_table_size('plano')");
+                long indicesPlano = tamano(conexion, "pg_indexes_size('plano')");
+                imprimirTamanos("arc_path", tablaPlano, indicesPlano);
+                long tablaNormalizado = tamano(conexion, "pg_table_size('normalizado') + pg_table_size('directorio_n')");
+                long indicesNormalizado = tamano(conexion,
+                        "pg_indexes_size('normalizado') + pg_indexes_size('directorio_n')");
+                imprimirTamanos("Directorio", tablaNormalizado, indicesNormalizado);
+                System.out.printf("índice único: %,d KB -> %,d KB%n",
+                        tamano(conexion, "pg_relation_size('plano_nombre_completo')") / 1024,
+                        tamano(conexion, "pg_relation_size('normalizado_nombre_completo')") / 1024);
+
+                // Un subárbol con ~1/10 de los archivos
+                String subarbol = DIRECTORIO_SINTETICO + "/proyecto3";
+                System.out.println();
+                medir(conexion, "subárbol arc_path",
+                        "SELECT arc_path FROM plano WHERE arc_path ~>=~ ? AND arc_path ~<~ ?",
+                        subarbol, repeticiones);
+                medir(conexion, "subárbol Directorio",
+                        "SELECT dir_ruta || arc_base FROM directorio_n JOIN normalizado ON arc_dir_id = dir_id "
+                                + "WHERE dir_ruta ~>=~ ? AND dir_ruta ~<~ ?",
+                        subarbol, repeticiones);
+
+                System.out.println();
+                renombrar(conexion, "renombrar arc_path",
+                        "UPDATE plano SET arc_path = ? || substr(arc_path, length(?) + 1) "
+                                + "WHERE arc_path ~>=~ ? AND arc_path ~<~ ?",
+                        subarbol);
+                renombrar(conexion, "renombrar Directorio",
+                        "UPDATE directorio_n SET dir_ruta = ? || substr(dir_ruta, length(?) + 1) "
+                                + "WHERE dir_ruta ~>=~ ? AND dir_ruta ~<~ ?",
+                        subarbol);
+            }
+        } finally {
+            int borradas = conector.eliminarArchivosBajoDirectorio(DIRECTORIO_SINTETICO).size();
+            System.out.printf("%nBorradas %,d filas sintéticas%n", borradas);
+            conector.terminarConexion();
+        }
+    }
+
+    private static void cargar(ConectorBasedeDatos conector, int archivos) throws SQLException {
+        long inicio = System.nanoTime();
+        List<Archivo> lote = new ArrayList<>(TAMANO_LOTE);
+        for (int i = 0; i < archivos; i++) {
+            lote.add(archivoSintetico(i));
+            if (lote.size() == TAMANO_LOTE || i == archivos - 1) {
+                conector.ingestarLoteArchivos(lote);
+                lote.clear();
+            }
+        }
+        System.out.printf("Cargados %,d archivos en %,d directorios en %.1f s%n", archivos,
+                (archivos + ARCHIVOS_POR_DIRECTORIO - 1) / ARCHIVOS_POR_DIRECTORIO,
+                (System.nanoTime() - inicio) / 1e9);
+    }
+
+    private static void ejecutar(Connection conexion, String[] sentencias) throws SQLException {
+        try (Statement sentencia = conexion.createStatement()) {
+            for (String sql : sentencias) {
+                sentencia.execute(sql);
+            }
+        }
+    }
+
+    private static long tamano(Connection conexion, String expresion) throws SQLException {
+        try (Statement sentencia = conexion.createStatement();
+                ResultSet rs = sentencia.executeQuery("SELECT " + expresion)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private static void imprimirTamanos(String esquema, long tabla, long indices) {
+        System.out.printf("%-14s %,9d KB %,9d KB %,9d KB%n", esquema, tabla / 1024, indices / 1024,
+                (tabla + indices) / 1024);
+    }
+
+    private static void medir(Connection conexion, String nombre, String sql, String directorio,
+            int repeticiones) throws SQLException {
+        long[] tiempos = new long[repeticiones];
+        int resultados = 0;
+        try (PreparedStatement sentencia = conexion.prepareStatement(sql)) {
+            sentencia.setString(1, directorio + "/");
+            sentencia.setString(2, directorio + "0");
+            for (int i = -1; i < repeticiones; i++) { // la primera es de calentamiento
+                long inicio = System.nanoTime();
+                try (ResultSet rs = sentencia.executeQuery()) {
+                    resultados = 0;
+                    while (rs.next()) {
+                        resultados++;
+                    }
+                }
+                if (i >= 0) {
+                    tiempos[i] = System.nanoTime() - inicio;
+                }
+            }
+        }
+        Arrays.sort(tiempos);
+        System.out.printf("%-22s p50=%8.2f ms  p95=%8.2f ms  (%,d archivos)%n", nombre,
+                tiempos[repeticiones / 2] / 1e6, tiempos[repeticiones * 95 / 100] / 1e6, resultados);
+    }
+
+    /** Mueve el subárbol dentro de una transacción que se deshace: sólo cuenta filas y tiempo. */
+    private static void renombrar(Connection conexion, String nombre, String sql, String directorio)
+            throws SQLException {
+        boolean autoCommit = conexion.getAutoCommit();
+        conexion.setAutoCommit(false);
+        try (PreparedStatement sentencia = conexion.prepareStatement(sql)) {
+            sentencia.setString(1, directorio + "-renombrado/");
+            sentencia.setString(2, directorio + "/");
+            sentencia.setString(3, directorio + "/");
+            sentencia.setString(4, directorio + "0");
+            long inicio = System.nanoTime();
+            int filas = sentencia.executeUpdate();
+            System.out.printf("%-22s %8.2f ms  (%,d filas)%n", nombre, (System.nanoTime() - inicio) / 1e6, filas);
+        } finally {
+            conexion.rollback();
+            conexion.setAutoCommit(autoCommit);
+        }
+    }
+
+    /** /kfi-bench/proyectoP/modulos/moduloM/src/main/java/org/ejemplo/paqueteK/ArchivoI.ext */
+    private static Archivo archivoSintetico(int i) {
+        int directorio = i / ARCHIVOS_POR_DIRECTORIO;
+        String extension = EXTENSIONES[i % EXTENSIONES.length];
+        String nombre = "Archivo" + i;
+        String ruta = DIRECTORIO_SINTETICO + "/proyecto" + (directorio % 10) + "/modulos/modulo" + (directorio / 10 % 50)
+                + "/src/main/java/org/ejemplo/paquete" + directorio + "/" + nombre + "." + extension;
+        return new Archivo(nombre + "." + extension, i % 100_000, LocalDateTime.of(2024, 1, 1, 0, 0), ruta,
+                extension, "OTRO");
+    }
+}
@@ -0,0 +1,88 @@
+package koolfileindexer.db;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Movimientos que chocan con idx_arc_nombre_completo en las funciones de
+ * PostgreSQL. Necesita la BD local; si no está disponible el test se omite.
+ */
+class FuncionesUbicacionTest {
+
+    private ConectorBasedeDatos conector;
+    // Cada ejecución trabaja bajo su propio directorio
+    private String base;
+
+    @BeforeEach
+    void conectar() {
+        conector = ConectorBasedeDatos.obtenerInstancia();
+        try {
+            conector.verificar();
+        } catch (SQLException e) {
+            assumeTrue(false, "BD no disponible: " + e.getMessage());
+        }
+        base = "/kool-test-" + System.nanoTime();
+    }
+
+    @AfterEach
+    void limpiar() throws SQLException {
+        if (base != null) {
+            conector.eliminarArchivosBajoDirectorio(base);
+        }
+    }
+
+    private Archivo archivo(String ruta, long tamano, String clave) {
+        String completa = base + ruta;
+        String nombreCompleto = completa.substring(completa.lastIndexOf('/') + 1);
+        int punto = nombreCompleto.lastIndexOf('.');
+        Archivo archivo = new Archivo(nombreCompleto.substring(0, punto), tamano, LocalDateTime.of(2024, 5, 1, 10, 30),
+                completa, nombreCompleto.substring(punto + 1), "DOCUMENTO");
+        archivo.setClaveArchivo(clave);
+        return archivo;
+    }
+
+    /** "clave ruta" de cada archivo bajo el directorio, relativo a base. */
+    private List<String> clavesBajo(String directorio) throws SQLException {
+        List<String> claves = new ArrayList<>();
+        conector.recorrerClavesBajo(base + directorio,
+                (clave, ruta) -> claves.add(clave + " " + ruta.substring(base.length())));
+        claves.sort(null);
+        return claves;
+    }
+
+    @Test
+    void fusionarDirectorio_losRepetidosDelOrigenSeBorran() throws Exception {
+        conector.ingestarLoteArchivos(List.of(
+                archivo("/viejo/a.txt", 1, "v-a"),
+                archivo("/viejo/c.txt", 2, "v-c"),
+                archivo("/viejo/sub/d.txt", 3, "v-d"),
+                archivo("/nuevo/c.txt", 4, "n-c"),
+                archivo("/nuevo/sub/d.txt", 5, "n-d")), 1);
+
+        conector.actualizarUbicacionConNombreNuevo(base + "/viejo", base + "/nuevo");
+
+        assertEquals(List.of(), clavesBajo("/viejo"));
+        assertEquals(List.of("n-c /nuevo/c.txt", "n-d /nuevo/sub/d.txt", "v-a /nuevo/a.txt"),
+                clavesBajo("/nuevo"), "Como AlmacenEmbebido: queda la fila del destino");
+    }
+
+    @Test
+    void moverArchivoSobreOtro_reemplazaLaFilaDelDestino() throws Exception {
+        conector.ingestarLoteArchivos(List.of(
+                archivo("/r/a.txt", 1, "a"),
+                archivo("/r/b.txt", 2, "b")), 1);
+
+        assertEquals(1, conector.moverArchivo(base + "/r/a.txt", archivo("/r/b.txt", 1, "a")));
+
+        assertEquals(List.of("a /r/b.txt"), clavesBajo("/r"), "El movimiento no se pierde por la restricción única");
+    }
+}
@@ -0,0 +1,130 @@
+package koolfileindexer.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import koolfileindexer.db.CompiladorConsultaBusqueda.ConsultaCompilada;
+
+/**
+ * Benchmark manual (necesita la BD local con search_indexes.sql aplicado):
+ * mide la búsqueda por subcadena del nombre con el índice trigram contra un
+ * recorrido secuencial, y la búsqueda por tokens sobre arc_busqueda, a 100k,
+ * 1M y 5M filas.
+ *
+ * Uso: java ... koolfileindexer.db.NombreBusquedaBenchmark [repeticiones] [escalas...]
+ * Las filas sintéticas quedan bajo /kfi-bench y se borran al terminar.
+ */
+public class NombreBusquedaBenchmark {
+    private static final String DIRECTORIO_SINTETICO = "/kfi-bench";
+    private static final String[] EXTENSIONES = { "txt", "pdf", "jpg", "java", "mp3", "png", "doc", "csv" };
+    private static final String[] PALABRAS = { "informe", "factura", "foto", "notas", "backup", "proyecto" };
+    private static final int TAMANO_LOTE = 1_000;
+    private static final int LIMITE = 100;
+
+    public static void main(String[] args) throws Exception {
+        int repeticiones = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int[] escalas = args.length > 1
+                ? Arrays.stream(args, 1, args.length).mapToInt(Integer::parseInt).toArray()
+                : new int[] { 100_000, 1_000_000, 5_000_000 };
+        ConectorBasedeDatos conector = ConectorBasedeDatos.obtenerInstancia();
+
+        try {
+            int cargadas = 0;
+            for (int escala : escalas) {
+                cargadas = cargar(conector, cargadas, escala);
+                analizar(conector);
+                System.out.printf("== %,d filas ==%n", escala);
+
+                ConsultaCompilada porNombre = CompiladorConsultaBusqueda.compilarPorNombre("ctura_12", LIMITE);
+                medir(conector, "LIKE trigram", porNombre, false, repeticiones);
+                medir(conector, "LIKE seq scan", porNombre, true, repeticiones);
+                medir(conector, "tsvector prefijo",
+                        CompiladorConsultaBusqueda.compilarPorTokens("factura 12", LIMITE), false, repeticiones);
+            }
+        } finally {
+            int borradas = conector.eliminarArchivosBajoDirectorio(DIRECTORIO_SINTETICO).size();
+            System.out.printf("Borradas %,d filas sintéticas%n", borradas);
+            conector.terminarConexion();
+        }
+    }
+
+    private static int cargar(ConectorBasedeDatos conector, int desde, int hasta) throws Exception {
+        long inicio = System.nanoTime();
+        List<Archivo> lote = new ArrayList<>(TAMANO_LOTE);
+        for (int i = desde; i < hasta; i++) {
+            lote.add(archivoSintetico(i));
+            if (lote.size() == TAMANO_LOTE || i == hasta - 1) {
+                conector.ingestarLoteArchivos(lote);
+                lote.clear();
+            }
+        }
+        System.out.printf("Cargadas %,d filas en %.1f s%n", hasta - desde, (System.nanoTime() - inicio) / 1e9);
+        return Math.max(desde, hasta);
+    }
+
+    private static void analizar(ConectorBasedeDatos conector) throws Exception {
+        try (Connection conexion = conector.obtenerConexion();
+                Statement sentencia = conexion.createStatement()) {
+            sentencia.execute("ANALYZE Archivo, Directorio");
+        }
+    }
+
+    /**
+     * Todas las repeticiones usan la misma conexión prestada para que el
+     * ajuste de la sesión (sin índices) aplique a cada una.
+     */
+    private static void medir(ConectorBasedeDatos conector, String nombre, ConsultaCompilada consulta,
+            boolean sinIndices, int repeticiones) throws Exception {
+        long[] tiempos = new long[repeticiones];
+        int resultados = 0;
+        try (Connection conexion = conector.obtenerConexion()) {
+            try (Statement ajuste = conexion.createStatement()) {
+                String valor = sinIndices ? "off" : "on";
+                ajuste.execute("SET enable_bitmapscan = " + valor);
+                ajuste.execute("SET enable_indexscan = " + valor);
+            }
+            try {
+                for (int i = -1; i < repeticiones; i++) { // la primera es de calentamiento
+                    long inicio = System.nanoTime();
+                    try (PreparedStatement sentencia = conexion.prepareStatement(consulta.sql(),
+                            ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                        consulta.asignarParametros(conexion, sentencia);
+                        try (ResultSet rs = sentencia.executeQuery()) {
+                            resultados = 0;
+                            while (rs.next()) {
+                                resultados++;
+                            }
+                        }
+                    }
+                    if (i >= 0) {
+                        tiempos[i] = System.nanoTime() - inicio;
+                    }
+                }
+            } finally {
+                try (Statement ajuste = conexion.createStatement()) {
+                    ajuste.execute("RESET enable_bitmapscan");
+                    ajuste.execute("RESET enable_indexscan");
+                }
+            }
+        }
+        Arrays.sort(tiempos);
+        System.out.printf("%-18s p50=%8.2f ms  p99=%8.2f ms  (%d resultados)%n",
+                nombre,
+                tiempos[repeticiones / 2] / 1e6,
+                tiempos[Math.min(repeticiones - 1, repeticiones * 99 / 100)] / 1e6,
+                resultados);
+    }
+
+    private static Archivo archivoSintetico(int i) {
+        String extension = EXTENSIONES[i % EXTENSIONES.length];
+        String nombre = PALABRAS[i % PALABRAS.length] + "_" + i;
+        String ruta = DIRECTORIO_SINTETICO + "/d" + (i % 1_000) + "/" + nombre + "." + extension;
+        return new Archivo(nombre, i % 10_000, LocalDateTime.now(), ruta, extension, "OTRO");
+    }
+}
@@ -0,0 +1,182 @@
+package koolfileindexer.db;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PoolConexionesTest {
+
+    /** Estado de una conexión física falsa, sin BD real. */
+    private static final class Fisica {
+        boolean cerrada;
+        boolean autoCommit = true;
+        int rollbacks;
+    }
+
+    private final List<Fisica> fisicas = new ArrayList<>();
+    private PoolConexiones pool;
+
+    private synchronized Connection crearFalsa() {
+        Fisica estado = new Fisica();
+        fisicas.add(estado);
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { Connection.class }, (proxy, metodo, args) -> {
+                    switch (metodo.getName()) {
+                        case "close":
+                            estado.cerrada = true;
+                            return null;
+                        case "isClosed":
+                            return estado.cerrada;
+                        case "isValid":
+                            return !estado.cerrada;
+                        case "getAutoCommit":
+                            return estado.autoCommit;
+                        case "setAutoCommit":
+                            estado.autoCommit = (Boolean) args[0];
+                            return null;
+                        case "rollback":
+                            estado.rollbacks++;
+                            return null;
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    private PoolConexiones crearPool(int minimo, int maximo, Duration espera, Duration inactividad) {
+        pool = PoolConexiones.abrir(this::crearFalsa, minimo, maximo, espera, inactividad, Duration.ZERO, 8);
+        return pool;
+    }
+
+    @AfterEach
+    void cerrarPool() {
+        if (pool != null) {
+            pool.cerrar();
+        }
+    }
+
+    @Test
+    void devolverYObtener_reutilizaLaConexionFisica() throws Exception {
+        crearPool(0, 4, Duration.ofSeconds(1), Duration.ofMinutes(5));
+
+        try (Connection c = pool.obtener()) {
+            assertFalse(c.isClosed());
+        }
+        try (Connection c = pool.obtener()) {
+            assertFalse(c.isClosed());
+        }
+
+        assertEquals(1, fisicas.size(), "La segunda operación debe reutilizar la conexión devuelta");
+        assertFalse(fisicas.get(0).cerrada, "Cerrar la conexión prestada no cierra la física");
+        PoolConexiones.Metricas metricas = pool.getMetricas();
+        assertEquals(0, metricas.activas());
+        assertEquals(1, metricas.inactivas());
+        assertEquals(2, metricas.prestamos());
+    }
+
+    @Test
+    void conexionDevuelta_noSePuedeSeguirUsando() throws Exception {
+        crearPool(0, 1, Duration.ofSeconds(1), Duration.ofMinutes(5));
+
+        Connection c = pool.obtener();
+        c.close();
+        c.close(); // idempotente
+
+        assertTrue(c.isClosed());
+        assertThrows(SQLException.class, () -> c.prepareStatement("SELECT 1"));
+        assertEquals(1, pool.getMetricas().inactivas());
+    }
+
+    @Test
+    void poolAgotado_fallaTrasLaEsperaMaxima() throws Exception {
+        crearPool(0, 2, Duration.ofMillis(50), Duration.ofMinutes(5));
+
+        Connection a = pool.obtener();
+        Connection b = pool.obtener();
+        assertThrows(SQLException.class, () -> pool.obtener());
+
+        PoolConexiones.Metricas metricas = pool.getMetricas();
+        assertEquals(2, metricas.activas());
+        assertEquals(2, fisicas.size(), "Nunca se deben abrir más conexiones que el máximo");
+        a.close();
+        b.close();
+    }
+
+    @Test
+    void esperaHastaQueSeLibereUnaConexion() throws Exception {
+        crearPool(0, 1, Duration.ofSeconds(5), Duration.ofMinutes(5));
+
+        Connection prestada = pool.obtener();
+        CompletableFuture<Connection> enEspera = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.obtener();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        Thread.sleep(100);
+        assertFalse(enEspera.isDone());
+        prestada.close();
+
+        try (Connection c = enEspera.get(2, TimeUnit.SECONDS)) {
+            assertFalse(c.isClosed());
+        }
+        PoolConexiones.Metricas metricas = pool.getMetricas();
+        assertEquals(1, metricas.esperas());
+        assertTrue(metricas.tiempoEsperaMaximoNanos() >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    void devolverConTransaccionAbierta_haceRollback() throws Exception {
+        crearPool(0, 1, Duration.ofSeconds(1), Duration.ofMinutes(5));
+
+        try (Connection c = pool.obtener()) {
+            c.setAutoCommit(false);
+        }
+
+        assertEquals(1, fisicas.get(0).rollbacks);
+        assertTrue(fisicas.get(0).autoCommit, "El siguiente préstamo no debe heredar la transacción");
+    }
+
+    @Test
+    void mantener_desalojaInactivasHastaElMinimo() throws Exception {
+        crearPool(1, 4, Duration.ofSeconds(1), Duration.ofMillis(1));
+
+        List<Connection> prestadas = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            prestadas.add(pool.obtener());
+        }
+        for (Connection c : prestadas) {
+            c.close();
+        }
+        Thread.sleep(5);
+        pool.mantener();
+
+        AtomicInteger abiertas = new AtomicInteger();
+        fisicas.forEach(f -> {
+            if (!f.cerrada) {
+                abiertas.incrementAndGet();
+            }
+        });
+        assertEquals(1, abiertas.get());
+        assertEquals(1, pool.getMetricas().inactivas());
+    }
+
+    @Test
+    void tamanosInvalidos_lanzaExcepcion() {
+        assertThrows(IllegalArgumentException.class,
+                () -> PoolConexiones.abrir(this::crearFalsa, 3, 2, Duration.ZERO, Duration.ZERO, Duration.ZERO, 0));
+    }
+}
@@ -0,0 +1,101 @@
+package koolfileindexer.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Prueba de resistencia manual (no se ejecuta con los tests; necesita la BD
+ * local levantada): indexa archivos sintéticos por ConectorBasedeDatos y
+ * muestrea el heap usado y pg_prepared_statements. Con la caché de sentencias
+ * ambas cifras deben quedar planas tras el calentamiento.
+ *
+ * Se fuerza un pool de una conexión para que pg_prepared_statements, que es
+ * por sesión, muestre las sentencias de la misma sesión que hace el trabajo.
+ *
+ * Uso: java ... koolfileindexer.db.SentenciasSoak [archivos] [tamanoLote]
+ */
+public class SentenciasSoak {
+    private static final int MUESTRAS = 10;
+    private static final String DIRECTORIO_SINTETICO = "/kfi-soak";
+    private static final String[] EXTENSIONES = { "txt", "pdf", "jpg", "java", "mp3" };
+
+    public static void main(String[] args) throws Exception {
+        int total = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int tamanoLote = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+
+        System.setProperty("koolfileindexer.pool.minimo", "1");
+        System.setProperty("koolfileindexer.pool.maximo", "1");
+        ConectorBasedeDatos conector = ConectorBasedeDatos.obtenerInstancia();
+
+        int porMuestra = Math.max(tamanoLote, total / MUESTRAS);
+        List<long[]> muestras = new ArrayList<>();
+        try {
+            List<Archivo> lote = new ArrayList<>(tamanoLote);
+            for (int i = 0; i < total; i++) {
+                lote.add(archivoSintetico(i));
+                if (lote.size() == tamanoLote) {
+                    conector.ingestarLoteArchivos(lote);
+                    // Camino archivo por archivo, como el respaldo de la ingesta
+                    conector.actualizarTamanoFechaModificacionArchivo(lote.get(0));
+                    conector.actualizarCategoriaArchivo(lote.get(0));
+                    lote.clear();
+                }
+                if ((i + 1) % porMuestra == 0) {
+                    muestras.add(muestrear(conector, i + 1));
+                }
+            }
+            if (!lote.isEmpty()) {
+                conector.ingestarLoteArchivos(lote);
+            }
+        } finally {
+            // Limpieza archivo por archivo: también ejercita una sentencia cacheada
+            for (int i = 0; i < total; i++) {
+                conector.eliminarArchivo(archivoSintetico(i));
+            }
+            System.out.println("Pool: " + conector.obtenerMetricasPool());
+            conector.terminarConexion();
+        }
+
+        // Se compara contra la segunda muestra para descontar el calentamiento
+        if (muestras.size() >= 3) {
+            long[] base = muestras.get(1);
+            long[] ultima = muestras.get(muestras.size() - 1);
+            System.out.printf("Heap: %,d -> %,d bytes; sentencias preparadas: %d -> %d%n",
+                    base[1], ultima[1], base[2], ultima[2]);
+            if (ultima[2] > base[2]) {
+                System.err.println("FALLO: pg_prepared_statements siguió creciendo");
+                System.exit(1);
+            }
+        }
+    }
+
+    private static Archivo archivoSintetico(int i) {
+        String extension = EXTENSIONES[i % EXTENSIONES.length];
+        return new Archivo("archivo" + i, 1_000L + i, LocalDateTime.now(),
+                DIRECTORIO_SINTETICO + "/d" + (i % 100) + "/archivo" + i + "." + extension,
+                extension, "OTRO");
+    }
+
+    private static long[] muestrear(ConectorBasedeDatos conector, long procesados) throws SQLException {
+        System.gc();
+        Runtime rt = Runtime.getRuntime();
+        long heap = rt.totalMemory() - rt.freeMemory();
+
+        long preparadas;
+        try (Connection conexion = conector.obtenerConexion();
+                PreparedStatement consulta = conexion.prepareStatement(
+                        "SELECT count(*) FROM pg_prepared_statements");
+                ResultSet rs = consulta.executeQuery()) {
+            rs.next();
+            preparadas = rs.getLong(1);
+        }
+        System.out.printf("%,12d archivos  heap=%,14d bytes  pg_prepared_statements=%d%n",
+                procesados, heap, preparadas);
+        return new long[] { procesados, heap, preparadas };
+    }
+}
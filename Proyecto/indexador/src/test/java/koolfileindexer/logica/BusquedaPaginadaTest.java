@@ -0,0 +1,116 @@
+package koolfileindexer.logica;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import koolfileindexer.db.AlmacenEmbebido;
+import koolfileindexer.modelo.Archivo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BusquedaPaginadaTest {
+
+    @TempDir
+    Path directorio;
+
+    private static BusquedaPaginada conIndice(int archivos) {
+        IndiceNombres indice = new IndiceNombres();
+        for (int i = 0; i < archivos; i++) {
+            indice.registrar("/datos/reporte_" + i + ".txt", i, LocalDateTime.of(2024, 1, 1, 0, 0));
+        }
+        indice.marcarListo();
+        // Sin conector: con resultados en memoria no se consulta la BD
+        return new BusquedaPaginada(null, indice);
+    }
+
+    @Test
+    void paginasEnMemoria_recorrenTodoSinRepetir() throws Exception {
+        BusquedaPaginada busqueda = conIndice(25);
+        Set<String> vistos = new HashSet<>();
+        List<Integer> tamanos = new ArrayList<>();
+
+        String cursor = null;
+        do {
+            List<Archivo> pagina = new ArrayList<>();
+            cursor = busqueda.buscar(new String[] { "reporte" }, false, cursor, 10, pagina::add);
+            tamanos.add(pagina.size());
+            pagina.forEach(a -> assertTrue(vistos.add(a.getRutaCompleta()), "Repetido: " + a.getRutaCompleta()));
+        } while (cursor != null);
+
+        assertEquals(List.of(10, 10, 5), tamanos);
+        assertEquals(25, vistos.size());
+    }
+
+    @Test
+    void paginaExacta_noDejaUnaPaginaVaciaAlFinal() throws Exception {
+        BusquedaPaginada busqueda = conIndice(10);
+        List<Archivo> pagina = new ArrayList<>();
+
+        String cursor = busqueda.buscar(new String[] { "reporte" }, false, null, 10, pagina::add);
+
+        assertEquals(10, pagina.size());
+        assertNull(cursor);
+    }
+
+    @Test
+    void sinLimite_entregaTodoEnUnaPasada() throws Exception {
+        BusquedaPaginada busqueda = conIndice(30);
+        List<Archivo> todo = new ArrayList<>();
+
+        assertNull(busqueda.buscar(new String[] { "reporte" }, false, null, 0, todo::add));
+        assertEquals(30, todo.size());
+    }
+
+    @Test
+    void bajoDirectorio_comodinDeExtensionPorPaginas() throws Exception {
+        AlmacenEmbebido almacen = new AlmacenEmbebido(directorio);
+        try {
+            List<koolfileindexer.db.Archivo> lote = new ArrayList<>();
+            for (int i = 0; i < 15; i++) {
+                lote.add(new koolfileindexer.db.Archivo("app" + i, i, LocalDateTime.of(2024, 1, 1, 0, 0),
+                        "/var/app/" + (i % 3) + "/app" + i + ".log", "log", "OTRO"));
+            }
+            lote.add(new koolfileindexer.db.Archivo("otra", 1, LocalDateTime.of(2024, 1, 1, 0, 0),
+                    "/var/otra/otra.log", "log", "OTRO"));
+            lote.add(new koolfileindexer.db.Archivo("notas", 1, LocalDateTime.of(2024, 1, 1, 0, 0),
+                    "/var/app/notas.txt", "txt", "OTRO"));
+            almacen.ingestarLoteArchivos(lote, 1);
+
+            // El índice en memoria no conoce los directorios: aunque esté listo se va al almacén
+            IndiceNombres indice = new IndiceNombres();
+            indice.registrar("/otro/app.log", 1, LocalDateTime.of(2024, 1, 1, 0, 0));
+            indice.marcarListo();
+            BusquedaPaginada busqueda = new BusquedaPaginada(almacen, indice);
+            Set<String> vistos = new HashSet<>();
+            String cursor = null;
+            do {
+                List<Archivo> pagina = new ArrayList<>();
+                cursor = busqueda.buscar(new String[] { "*.log" }, false, "/var/app", cursor, 10, pagina::add);
+                pagina.forEach(a -> assertTrue(vistos.add(a.getRutaCompleta()), "Repetido: " + a.getRutaCompleta()));
+            } while (cursor != null);
+
+            assertEquals(15, vistos.size());
+            assertTrue(vistos.stream().allMatch(r -> r.startsWith("/var/app/") && r.endsWith(".log")));
+        } finally {
+            almacen.cerrar();
+        }
+    }
+
+    @Test
+    void cursor_seCodificaYDecodifica() {
+        BusquedaPaginada.Cursor cursor = new BusquedaPaginada.Cursor(BusquedaPaginada.Fase.NOMBRE, 1234);
+
+        assertEquals("n:1234", cursor.codificar());
+        assertEquals(cursor, BusquedaPaginada.Cursor.decodificar("n:1234"));
+        assertNull(BusquedaPaginada.Cursor.decodificar(""));
+        assertThrows(IllegalArgumentException.class, () -> BusquedaPaginada.Cursor.decodificar("x:1"));
+        assertThrows(IllegalArgumentException.class, () -> BusquedaPaginada.Cursor.decodificar("n:abc"));
+    }
+}
@@ -0,0 +1,153 @@
+package koolfileindexer.logica;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jnr.unixsocket.UnixSocketAddress;
+import jnr.unixsocket.UnixSocketChannel;
+import koolfileindexer.common.model.GenericList;
+import koolfileindexer.common.model.Search;
+import koolfileindexer.common.protocol.Request;
+import koolfileindexer.common.protocol.Response;
+import koolfileindexer.common.protocol.v1.SocketServer;
+import koolfileindexer.common.protocol.v2.Codec;
+import koolfileindexer.common.protocol.v2.Connection;
+
+/**
+ * Generador de carga manual (no se ejecuta con los tests): levanta un
+ * SocketServer en cada modo sobre un socket temporal, abre muchos clientes a
+ * la vez (cada uno con su Connection) y mide requests por segundo y la
+ * latencia p50/p99 de cada request.
+ *
+ * Con "lentos" > 0 además se abren conexiones que no mandan nada, como un
+ * cliente colgado: en modo BLOCKING cada una ocupa un hilo del pool mientras
+ * se espera su header; en EVENT_LOOP no ocupan ninguno.
+ *
+ * Uso: java ... koolfileindexer.logica.CargaServidorBenchmark [clientes]
+ * [requestsPorCliente] [lentos] [hilos]
+ */
+public class CargaServidorBenchmark {
+
+    private static final long TIMEOUT_SEGUNDOS = 10;
+
+    public static void main(String[] args) throws Exception {
+        int clientes = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int lentos = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+        int hilos = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        GenericList<koolfileindexer.common.model.File> resultado = new GenericList<>();
+        for (int i = 0; i < 20; i++) {
+            resultado.add(new koolfileindexer.common.model.File("informe_" + i, "pdf",
+                    "/home/usuario/informe_" + i + ".pdf", "2024-01-01T10:00", i, new String[0]));
+        }
+
+        System.out.printf("%,d clientes x %d requests, %d lentos, %d hilos en el pool%n", clientes, requests,
+                lentos, hilos);
+        for (SocketServer.Mode modo : SocketServer.Mode.values()) {
+            Path socketPath = Files.createTempDirectory("kfi-carga").resolve("kfi.socket");
+            SocketServer server = SocketServer.createServer(socketPath.toString(), hilos, modo);
+            server.registerAction("search", req -> {
+                req.build(Search.stringFactory(), Search.binaryFactory());
+                return Response.ok(resultado);
+            });
+            Thread aceptador = new Thread(() -> {
+                while (true) {
+                    try {
+                        server.accept();
+                    } catch (Exception e) {
+                        return;
+                    }
+                }
+            }, "kfi-carga-accept");
+            aceptador.setDaemon(true);
+            aceptador.start();
+
+            List<UnixSocketChannel> colgados = new ArrayList<>();
+            for (int i = 0; i < lentos; i++) {
+                colgados.add(UnixSocketChannel.open(new UnixSocketAddress(new File(socketPath.toString()))));
+            }
+            medir(modo, socketPath.toString(), clientes, requests);
+
+            for (UnixSocketChannel colgado : colgados) {
+                colgado.close();
+            }
+            server.close();
+            Files.deleteIfExists(socketPath);
+        }
+    }
+
+    private static void medir(SocketServer.Mode modo, String socketPath, int clientes, int requests)
+            throws Exception {
+        long[] latencias = new long[clientes * requests];
+        AtomicInteger medidas = new AtomicInteger();
+        AtomicInteger sinRespuesta = new AtomicInteger();
+        AtomicInteger errores = new AtomicInteger();
+        CountDownLatch conectados = new CountDownLatch(clientes);
+        CountDownLatch largada = new CountDownLatch(1);
+        Request request = new Request("search",
+                new Search(new String[] { "informe" }, new String[0], new String[0]));
+
+        List<Thread> hilos = new ArrayList<>(clientes);
+        for (int i = 0; i < clientes; i++) {
+            Thread cliente = new Thread(() -> {
+                Connection conexion = null;
+                try {
+                    conexion = Connection.connect(socketPath, Codec.BINARY);
+                    conectados.countDown();
+                    largada.await();
+                    for (int j = 0; j < requests; j++) {
+                        long inicio = System.nanoTime();
+                        try {
+                            conexion.send(request).get(TIMEOUT_SEGUNDOS, TimeUnit.SECONDS);
+                            latencias[medidas.getAndIncrement()] = System.nanoTime() - inicio;
+                        } catch (TimeoutException e) {
+                            sinRespuesta.incrementAndGet();
+                            return;
+                        }
+                    }
+                } catch (Exception e) {
+                    errores.incrementAndGet();
+                    conectados.countDown();
+                } finally {
+                    if (conexion != null) {
+                        try {
+                            conexion.close();
+                        } catch (Exception ignored) {
+                        }
+                    }
+                }
+            }, "kfi-carga-cliente");
+            cliente.setDaemon(true);
+            hilos.add(cliente);
+            cliente.start();
+        }
+        conectados.await();
+
+        long inicio = System.nanoTime();
+        largada.countDown();
+        for (Thread cliente : hilos) {
+            cliente.join();
+        }
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+
+        long[] tiempos = Arrays.copyOf(latencias, medidas.get());
+        Arrays.sort(tiempos);
+        if (tiempos.length == 0) {
+            System.out.printf("%-10s sin respuestas (%d clientes sin respuesta, %d errores)%n", modo,
+                    sinRespuesta.get(), errores.get());
+            return;
+        }
+        System.out.printf("%-10s %8.0f requests/s  p50=%7.2f ms  p99=%7.2f ms  sin respuesta=%d  errores=%d%n",
+                modo, tiempos.length / segundos, tiempos[tiempos.length / 2] / 1e6,
+                tiempos[tiempos.length * 99 / 100] / 1e6, sinRespuesta.get(), errores.get());
+    }
+}
@@ -0,0 +1,171 @@
+package koolfileindexer.logica;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CursorRecorridoTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void cursorNuevo_empiezaEnLaRaiz() {
+        Path raiz = tempDir.resolve("raiz");
+        CursorRecorrido cursor = CursorRecorrido.cargar(raiz, tempDir.resolve("estado"));
+
+        assertFalse(cursor.pasadaTerminada());
+        assertEquals(raiz.toAbsolutePath().normalize(), cursor.siguienteDirectorio());
+        assertTrue(cursor.pasadaTerminada(), "Tras sacar la raíz la frontera debe quedar vacía");
+    }
+
+    @Test
+    void subdirectorios_seRecorrenEnProfundidadConservandoOrden() {
+        Path raiz = tempDir.resolve("raiz");
+        CursorRecorrido cursor = CursorRecorrido.cargar(raiz, null);
+        cursor.siguienteDirectorio();
+
+        cursor.agregarSubdirectorios(List.of(raiz.resolve("a"), raiz.resolve("b")));
+        assertEquals(raiz.resolve("a"), cursor.siguienteDirectorio());
+
+        cursor.agregarSubdirectorios(List.of(raiz.resolve("a/x")));
+        assertEquals(raiz.resolve("a/x"), cursor.siguienteDirectorio(), "Debe descender antes de pasar al hermano");
+        assertEquals(raiz.resolve("b"), cursor.siguienteDirectorio());
+        assertNull(cursor.siguienteDirectorio());
+    }
+
+    @Test
+    void guardarYCargar_reanudaDesdeLaFronteraPersistida() throws Exception {
+        Path raiz = tempDir.resolve("raiz");
+        Path estado = tempDir.resolve("estado");
+
+        CursorRecorrido cursor = CursorRecorrido.cargar(raiz, estado);
+        cursor.siguienteDirectorio();
+        cursor.agregarSubdirectorios(List.of(raiz.resolve("a"), raiz.resolve("b")));
+        cursor.siguienteDirectorio();
+        cursor.guardar();
+
+        assertTrue(Files.exists(estado.resolve(CursorRecorrido.nombreArchivoEstado(cursor.getRaiz()))));
+
+        CursorRecorrido reanudado = CursorRecorrido.cargar(raiz, estado);
+        assertEquals(1, reanudado.pendientes());
+        assertEquals(raiz.resolve("b"), reanudado.siguienteDirectorio());
+    }
+
+    @Test
+    void iniciarPasada_cuentaPasadasCompletasYResiembraLaRaiz() {
+        Path raiz = tempDir.resolve("raiz");
+        CursorRecorrido cursor = CursorRecorrido.cargar(raiz, tempDir.resolve("estado"));
+        cursor.siguienteDirectorio();
+
+        assertTrue(cursor.pasadaTerminada());
+        cursor.iniciarPasada();
+
+        assertEquals(1, cursor.getPasadasCompletas());
+        assertEquals(cursor.getRaiz(), cursor.siguienteDirectorio());
+    }
+
+    @Test
+    void checkpointDeOtraRaiz_seIgnora() throws Exception {
+        Path estado = tempDir.resolve("estado");
+        Path raiz = tempDir.resolve("raiz");
+        Files.createDirectories(estado);
+        Files.write(estado.resolve(CursorRecorrido.nombreArchivoEstado(raiz.toAbsolutePath().normalize())),
+                List.of("raiz: /otra", "pasadas: 3", "/otra/dir"));
+
+        CursorRecorrido cursor = CursorRecorrido.cargar(raiz, estado);
+
+        assertEquals(0, cursor.getPasadasCompletas());
+        assertEquals(cursor.getRaiz(), cursor.siguienteDirectorio());
+    }
+
+    @Test
+    void iniciarPasada_generacionSiempreCrece() {
+        CursorRecorrido cursor = CursorRecorrido.cargar(tempDir.resolve("raiz"), null);
+        long primera = cursor.getInicioPasada();
+        cursor.siguienteDirectorio();
+        cursor.iniciarPasada();
+        long segunda = cursor.getInicioPasada();
+        cursor.siguienteDirectorio();
+        cursor.iniciarPasada();
+
+        assertTrue(primera > 0);
+        assertTrue(segunda > primera);
+        assertTrue(cursor.getInicioPasada() > segunda);
+    }
+
+    @Test
+    void barrido_seDescartaHastaLaPasadaSiguiente() {
+        Path raiz = tempDir.resolve("raiz");
+        CursorRecorrido cursor = CursorRecorrido.cargar(raiz, null);
+        assertTrue(cursor.admiteBarrido());
+
+        cursor.marcarIncompleto(raiz.resolve("sin-permiso"));
+        cursor.descartarBarrido();
+        assertFalse(cursor.admiteBarrido());
+        assertEquals(List.of(cursor.getRaiz().resolve("sin-permiso")), cursor.getIncompletos());
+
+        cursor.siguienteDirectorio();
+        cursor.iniciarPasada();
+        assertTrue(cursor.admiteBarrido());
+        assertTrue(cursor.getIncompletos().isEmpty());
+    }
+
+    @Test
+    void guardarYCargar_conservaElEstadoDelBarrido() {
+        Path raiz = tempDir.resolve("raiz");
+        Path estado = tempDir.resolve("estado");
+        CursorRecorrido cursor = CursorRecorrido.cargar(raiz, estado);
+        cursor.siguienteDirectorio();
+        cursor.agregarSubdirectorios(List.of(raiz.resolve("a")));
+        cursor.marcarIncompleto(raiz.resolve("b"));
+        cursor.guardar();
+
+        CursorRecorrido reanudado = CursorRecorrido.cargar(raiz, estado);
+        assertEquals(cursor.getInicioPasada(), reanudado.getInicioPasada());
+        assertEquals(List.of(cursor.getRaiz().resolve("b")), reanudado.getIncompletos());
+        assertTrue(reanudado.admiteBarrido());
+        assertEquals(1, reanudado.pendientes());
+        assertEquals(raiz.resolve("a"), reanudado.siguienteDirectorio());
+    }
+
+    @Test
+    void guardarConLaPasadaTerminada_alCargarEmpiezaLaSiguiente() {
+        Path raiz = tempDir.resolve("raiz");
+        Path estado = tempDir.resolve("estado");
+        CursorRecorrido cursor = CursorRecorrido.cargar(raiz, estado);
+        cursor.marcarIncompleto(raiz.resolve("sin-permiso"));
+        cursor.descartarBarrido();
+        cursor.siguienteDirectorio();
+        assertTrue(cursor.pasadaTerminada());
+        cursor.guardar();
+
+        CursorRecorrido reanudado = CursorRecorrido.cargar(raiz, estado);
+
+        assertEquals(1, reanudado.getPasadasCompletas());
+        assertTrue(reanudado.getInicioPasada() > cursor.getInicioPasada());
+        assertTrue(reanudado.getIncompletos().isEmpty());
+        assertTrue(reanudado.admiteBarrido());
+        assertFalse(reanudado.pasadaTerminada(), "El Indexador no debe volver a iniciarla");
+        assertEquals(cursor.getRaiz(), reanudado.siguienteDirectorio());
+    }
+
+    @Test
+    void checkpointSinInicio_noSeBarre() throws Exception {
+        Path estado = tempDir.resolve("estado");
+        Path raiz = tempDir.resolve("raiz").toAbsolutePath().normalize();
+        Files.createDirectories(estado);
+        Files.write(estado.resolve(CursorRecorrido.nombreArchivoEstado(raiz)),
+                List.of("raiz: " + raiz, "pasadas: 3", raiz.resolve("dir").toString()));
+
+        CursorRecorrido cursor = CursorRecorrido.cargar(raiz, estado);
+
+        assertFalse(cursor.admiteBarrido(), "Sin inicio de pasada no se sabe qué se marcó en ella");
+        assertEquals(raiz.resolve("dir"), cursor.siguienteDirectorio());
+    }
+}
@@ -0,0 +1,65 @@
+package koolfileindexer.logica;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import koolfileindexer.common.model.File;
+import koolfileindexer.common.model.GenericList;
+import koolfileindexer.common.utils.FromStr;
+
+/**
+ * Benchmark manual (no se ejecuta con los tests): mide cuánto tarda
+ * GenericList.stringFactory en decodificar listas de File con el formato
+ * actual (líneas por ítem) y con el formato anterior, que se sigue leyendo
+ * por compatibilidad.
+ *
+ * Uso: java ... koolfileindexer.logica.DecodificacionListaBenchmark [tamaños...]
+ */
+public class DecodificacionListaBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int[] tamanos = { 10_000, 100_000, 1_000_000 };
+        if (args.length > 0) {
+            tamanos = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                tamanos[i] = Integer.parseInt(args[i]);
+            }
+        }
+        FromStr<GenericList<File>> factory = GenericList.stringFactory(File.stringFactory());
+        // File.stringFactory imprime cada intento fallido del formato anterior
+        PrintStream err = System.err;
+        System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+
+        for (int tamano : tamanos) {
+            GenericList<File> lista = new GenericList<>();
+            for (int i = 0; i < tamano; i++) {
+                String[] etiquetas = i % 10 == 0 ? new String[] { "trabajo", "2024" } : new String[0];
+                lista.add(new File("informe_" + i, "pdf", "/home/usuario/d" + (i % 500) + "/informe_" + i + ".pdf",
+                        "2024-01-01T10:00", i, etiquetas));
+            }
+            String actual = lista.intoString();
+            StringBuilder anterior = new StringBuilder("items: " + tamano + "\r\n");
+            for (File archivo : lista) {
+                anterior.append(archivo.intoString());
+            }
+
+            medir("actual", tamano, factory, actual);
+            medir("anterior", tamano, factory, anterior.toString());
+        }
+        System.setErr(err);
+    }
+
+    private static void medir(String formato, int tamano, FromStr<GenericList<File>> factory, String texto)
+            throws Exception {
+        factory.from(texto); // calentamiento del JIT
+        int repeticiones = Math.max(1, 1_000_000 / tamano);
+        long inicio = System.nanoTime();
+        for (int i = 0; i < repeticiones; i++) {
+            if (factory.from(texto).size() != tamano) {
+                throw new IllegalStateException("Se decodificaron mal " + tamano + " ítems");
+            }
+        }
+        double ms = (System.nanoTime() - inicio) / 1e6 / repeticiones;
+        System.out.printf("%-9s %,10d ítems  %9.1f ms  %6.0f ns/ítem%n", formato, tamano, ms, ms * 1e6 / tamano);
+    }
+}
@@ -0,0 +1,99 @@
+package koolfileindexer.logica;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import koolfileindexer.logica.DeteccionMovimientos.Movimiento;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeteccionMovimientosTest {
+
+    // Lo que existe en disco en cada prueba
+    private final Set<String> existentes = new HashSet<>();
+
+    private DeteccionMovimientos conocidas(String... clavesYRutas) {
+        DeteccionMovimientos deteccion = new DeteccionMovimientos(existentes::contains);
+        for (int i = 0; i < clavesYRutas.length; i += 2) {
+            deteccion.conocer(clavesYRutas[i], clavesYRutas[i + 1]);
+        }
+        return deteccion;
+    }
+
+    @Test
+    void sinClaveDesconocidaOMismaRuta_noHayMovimiento() {
+        DeteccionMovimientos deteccion = conocidas("1", "/r/a.txt");
+
+        assertNull(deteccion.detectar(null, "/r/b.txt"));
+        assertNull(deteccion.detectar("2", "/r/b.txt"));
+        assertNull(deteccion.detectar("1", "/r/a.txt"));
+    }
+
+    @Test
+    void laRutaViejaSigueExistiendo_esUnEnlaceDuro() {
+        existentes.addAll(List.of("/r", "/r/a.txt"));
+        DeteccionMovimientos deteccion = conocidas("1", "/r/a.txt");
+
+        assertNull(deteccion.detectar("1", "/r/enlace.txt"));
+    }
+
+    @Test
+    void renombreYMovimientoEntreDirectoriosQueSiguen_sonDeUnArchivo() {
+        existentes.addAll(List.of("/r", "/r/x", "/r/y"));
+        DeteccionMovimientos deteccion = conocidas("1", "/r/x/a.txt", "2", "/r/x/b.txt", "3", "/r/y/c.txt");
+
+        assertEquals(new Movimiento("/r/x/a.txt", "/r/x/nuevo.txt", false), deteccion.detectar("1", "/r/x/nuevo.txt"));
+        assertEquals(new Movimiento("/r/x/b.txt", "/r/y/b.txt", false), deteccion.detectar("2", "/r/y/b.txt"));
+    }
+
+    @Test
+    void directorioRenombrado_seSubeHastaElQueCambioDeNombre() {
+        existentes.addAll(List.of("/r", "/r/otros"));
+        DeteccionMovimientos deteccion = conocidas("1", "/r/viejo/sub/a.txt", "2", "/r/viejo/b.txt",
+                "3", "/r/otros/c.txt");
+
+        Movimiento movimiento = deteccion.detectar("1", "/r/nuevo/sub/a.txt");
+
+        assertEquals(new Movimiento("/r/viejo", "/r/nuevo", true), movimiento);
+        List<String> viejas = deteccion.aplicado(movimiento, "1", "/r/nuevo/sub/a.txt");
+        assertEquals(Set.of("/r/viejo/sub/a.txt", "/r/viejo/b.txt"), Set.copyOf(viejas));
+        // El resto del subárbol ya quedó con la ruta nueva
+        assertNull(deteccion.detectar("2", "/r/nuevo/b.txt"));
+        assertNull(deteccion.detectar("1", "/r/nuevo/sub/a.txt"));
+    }
+
+    @Test
+    void directorioMovido_conservaSuNombreYCambiaDePadre() {
+        existentes.addAll(List.of("/r", "/r/docs", "/r/archivo"));
+        DeteccionMovimientos deteccion = conocidas("1", "/r/docs/proyecto/a.txt", "2", "/r/archivo/z.txt");
+
+        assertEquals(new Movimiento("/r/docs/proyecto", "/r/archivo/proyecto", true),
+                deteccion.detectar("1", "/r/archivo/proyecto/a.txt"));
+    }
+
+    @Test
+    void destinoConocido_esSoloElArchivo() {
+        existentes.addAll(List.of("/r"));
+        DeteccionMovimientos deteccion = conocidas("1", "/r/x/a.txt", "2", "/r/y/b.txt");
+
+        // /r/y ya estaba en el almacén: no puede ser /r/x renombrado
+        assertFalse(deteccion.detectar("1", "/r/y/a.txt").directorio());
+        // Nunca se sube hasta la raíz
+        assertFalse(conocidas("3", "/a.txt").detectar("3", "/b/a.txt").directorio());
+    }
+
+    @Test
+    void archivoMovido_seAnotaConSuRutaNueva() {
+        existentes.addAll(List.of("/r", "/r/x"));
+        DeteccionMovimientos deteccion = conocidas("1", "/r/x/a.txt");
+
+        Movimiento movimiento = deteccion.detectar("1", "/r/x/b.txt");
+        assertEquals(List.of("/r/x/a.txt"), deteccion.aplicado(movimiento, "1", "/r/x/b.txt"));
+
+        assertNull(deteccion.detectar("1", "/r/x/b.txt"));
+        assertEquals(1, deteccion.getCantidad());
+    }
+}
@@ -0,0 +1,106 @@
+package koolfileindexer.logica;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Benchmark manual (no se ejecuta con los tests): tiempo de un recorrido
+ * periódico sin cambios en el árbol, listando todo contra salteando los
+ * directorios sin cambios con EstadoDirectorios. Después se crea un archivo
+ * en un directorio y se verifica que el recorrido que saltea lo encuentre.
+ *
+ * Uso: java ... koolfileindexer.logica.DirectoriosSinCambiosBenchmark [directorios=20000] [archivosPorDir=50]
+ * [paralelismo=4]
+ */
+public class DirectoriosSinCambiosBenchmark {
+    private static final int REPETICIONES = 5;
+
+    public static void main(String[] args) throws Exception {
+        int directorios = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int archivosPorDir = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int paralelismo = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+
+        Path raiz = Files.createTempDirectory("kfi-sin-cambios");
+        try {
+            List<Path> hojas = crearArbolSintetico(raiz, directorios, archivosPorDir);
+            System.out.printf("Árbol: %s (%,d dirs x %d archivos)%n", raiz, directorios, archivosPorDir);
+
+            RecorredorParalelo completo = new RecorredorParalelo(paralelismo, p -> false, (p, attrs) -> {
+            });
+            medir("listando todo", raiz, completo);
+            completo.cerrar();
+
+            EstadoDirectorios estado = EstadoDirectorios.cargar(null, p -> {
+            });
+            RecorredorParalelo salteando = new RecorredorParalelo(paralelismo, p -> false, (p, attrs) -> {
+            }, (dir, listar) -> estado.visitar(dir, listar, true));
+            medir("salteando sin cambios", raiz, salteando);
+            System.out.printf("(%,d directorios listados, %,d salteados)%n", estado.getListados(),
+                    estado.getSaltados());
+
+            Path hoja = hojas.get(hojas.size() / 2);
+            Files.createFile(hoja.resolve("nuevo.txt"));
+            Files.setLastModifiedTime(hoja, FileTime.fromMillis(System.currentTimeMillis() - 30_000));
+            AtomicInteger procesados = new AtomicInteger();
+            salteando.recorrer(List.of(raiz), Integer.MAX_VALUE, procesados);
+            System.out.printf("Tras crear un archivo: %d archivos procesados, %d directorios con cambios%n",
+                    procesados.get(), estado.tomarCambiados().size());
+            salteando.cerrar();
+        } finally {
+            borrar(raiz);
+        }
+    }
+
+    private static void medir(String nombre, Path raiz, RecorredorParalelo recorredor) throws IOException {
+        // La primera vuelta carga la caché de inodos (y el estado, si hay)
+        recorredor.recorrer(List.of(raiz), Integer.MAX_VALUE, new AtomicInteger());
+        double mejor = Double.MAX_VALUE;
+        int archivos = 0;
+        for (int i = 0; i < REPETICIONES; i++) {
+            AtomicInteger procesados = new AtomicInteger();
+            long inicio = System.nanoTime();
+            recorredor.recorrer(List.of(raiz), Integer.MAX_VALUE, procesados);
+            mejor = Math.min(mejor, (System.nanoTime() - inicio) / 1e6);
+            archivos = procesados.get();
+        }
+        System.out.printf("%-24s %,10d archivos procesados  %,10.1f ms%n", nombre, archivos, mejor);
+    }
+
+    private static List<Path> crearArbolSintetico(Path raiz, int directorios, int archivosPorDir)
+            throws IOException {
+        List<Path> hojas = new ArrayList<>(directorios);
+        // Árbol de fan-out 10 para que haya varios niveles de profundidad
+        for (int d = 0; d < directorios; d++) {
+            Path dir = raiz;
+            for (int n = d; n > 0; n /= 10) {
+                dir = dir.resolve("d" + (n % 10));
+            }
+            dir = Files.createDirectories(dir.resolve("hoja" + d));
+            hojas.add(dir);
+            for (int f = 0; f < archivosPorDir; f++) {
+                Files.createFile(dir.resolve("archivo" + f + ".txt"));
+            }
+        }
+        // Los directorios recién creados no se saltean (ver EstadoDirectorios)
+        FileTime vieja = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+        try (Stream<Path> rutas = Files.walk(raiz)) {
+            for (Path ruta : (Iterable<Path>) rutas.filter(Files::isDirectory)::iterator) {
+                Files.setLastModifiedTime(ruta, vieja);
+            }
+        }
+        return hojas;
+    }
+
+    private static void borrar(Path raiz) throws IOException {
+        try (Stream<Path> rutas = Files.walk(raiz)) {
+            rutas.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
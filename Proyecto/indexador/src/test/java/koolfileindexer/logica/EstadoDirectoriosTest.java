@@ -0,0 +1,142 @@
+package koolfileindexer.logica;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EstadoDirectoriosTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final AtomicInteger listados = new AtomicInteger();
+    private final List<Path> desaparecidos = new ArrayList<>();
+
+    /** Listado real de dir que cuenta las veces que se llamó. */
+    private Supplier<List<Path>> listar(Path dir) {
+        return () -> {
+            listados.incrementAndGet();
+            try (Stream<Path> entradas = Files.list(dir)) {
+                return entradas.filter(Files::isDirectory).toList();
+            } catch (IOException e) {
+                return null;
+            }
+        };
+    }
+
+    /** Deja la fecha de modificación lejos del momento del listado. */
+    private static void envejecer(Path dir) throws IOException {
+        Files.setLastModifiedTime(dir, FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+    }
+
+    @Test
+    void directorioSinCambios_noSeVuelveAListar() throws Exception {
+        Path dir = Files.createDirectories(tempDir.resolve("raiz/sub"));
+        Path raiz = tempDir.resolve("raiz");
+        envejecer(raiz);
+        EstadoDirectorios estado = EstadoDirectorios.cargar(null, desaparecidos::add);
+
+        assertEquals(List.of(dir), estado.visitar(raiz, listar(raiz), true));
+        assertEquals(List.of(dir), estado.visitar(raiz, listar(raiz), true),
+                "Sin cambios debe seguir por los subdirectorios guardados");
+        assertEquals(1, listados.get());
+        assertEquals(1, estado.getSaltados());
+        assertTrue(estado.tomarCambiados().isEmpty());
+    }
+
+    @Test
+    void sinSaltar_seListaAunqueNoHayaCambiado() throws Exception {
+        Path raiz = Files.createDirectories(tempDir.resolve("raiz"));
+        envejecer(raiz);
+        EstadoDirectorios estado = EstadoDirectorios.cargar(null, desaparecidos::add);
+
+        estado.visitar(raiz, listar(raiz), true);
+        estado.visitar(raiz, listar(raiz), false);
+        assertEquals(2, listados.get());
+    }
+
+    @Test
+    void listadoMuyCercaDeLaModificacion_noSeConfia() throws Exception {
+        Path raiz = Files.createDirectories(tempDir.resolve("raiz"));
+        EstadoDirectorios estado = EstadoDirectorios.cargar(null, desaparecidos::add);
+
+        estado.visitar(raiz, listar(raiz), true);
+        estado.visitar(raiz, listar(raiz), true);
+        assertEquals(2, listados.get(), "Un cambio en el mismo instante podría no mover la fecha");
+    }
+
+    @Test
+    void subdirectorioBorrado_seRelistaYSeAvisa() throws Exception {
+        Path raiz = Files.createDirectories(tempDir.resolve("raiz"));
+        Path a = Files.createDirectories(raiz.resolve("a"));
+        Path b = Files.createDirectories(raiz.resolve("b"));
+        envejecer(raiz);
+        EstadoDirectorios estado = EstadoDirectorios.cargar(null, desaparecidos::add);
+        estado.visitar(raiz, listar(raiz), true);
+
+        Files.delete(b);
+        // Otra fecha, también vieja, para que el listado nuevo sea confiable
+        Files.setLastModifiedTime(raiz, FileTime.fromMillis(System.currentTimeMillis() - 30_000));
+
+        assertEquals(List.of(a), estado.visitar(raiz, listar(raiz), true));
+        assertEquals(2, listados.get());
+        assertEquals(List.of(b), desaparecidos);
+        assertEquals(Set.of(raiz), estado.tomarCambiados());
+        assertTrue(estado.tomarCambiados().isEmpty(), "tomarCambiados debe vaciar el conjunto");
+    }
+
+    @Test
+    void guardarYCargar_conservaElEstado() throws Exception {
+        Path raiz = Files.createDirectories(tempDir.resolve("raiz con espacios"));
+        Path sub = Files.createDirectories(raiz.resolve("sub dir"));
+        envejecer(raiz);
+        Path archivo = tempDir.resolve("estado/directorios.txt");
+
+        EstadoDirectorios estado = EstadoDirectorios.cargar(archivo, desaparecidos::add);
+        estado.visitar(raiz, listar(raiz), true);
+        estado.guardar();
+        assertTrue(Files.exists(archivo));
+
+        EstadoDirectorios cargado = EstadoDirectorios.cargar(archivo, desaparecidos::add);
+        assertEquals(1, cargado.getDirectorios());
+        assertEquals(List.of(sub), cargado.visitar(raiz, listar(raiz), true));
+        assertEquals(1, listados.get());
+    }
+
+    @Test
+    void olvidar_obligaAListarElSubarbolDeNuevo() throws Exception {
+        Path sub = Files.createDirectories(tempDir.resolve("raiz/sub"));
+        Path raiz = tempDir.resolve("raiz");
+        envejecer(raiz);
+        envejecer(sub);
+        EstadoDirectorios estado = EstadoDirectorios.cargar(null, desaparecidos::add);
+        estado.visitar(raiz, listar(raiz), true);
+        estado.visitar(sub, listar(sub), true);
+
+        estado.olvidar(sub);
+        estado.visitar(raiz, listar(raiz), true);
+        estado.visitar(sub, listar(sub), true);
+        assertEquals(3, listados.get(), "Sólo el subárbol olvidado se vuelve a listar");
+        assertTrue(desaparecidos.isEmpty());
+    }
+
+    @Test
+    void estadoCorrupto_empiezaVacio() throws Exception {
+        Path archivo = tempDir.resolve("directorios.txt");
+        Files.writeString(archivo, "otra cosa\n");
+
+        assertEquals(0, EstadoDirectorios.cargar(archivo, desaparecidos::add).getDirectorios());
+    }
+}
@@ -0,0 +1,118 @@
+package koolfileindexer.logica;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+
+/**
+ * Benchmark manual (no se ejecuta con los tests): costo por ruta de decidir
+ * la exclusión con N rutas excluidas, comparando el recorrido lineal que
+ * hacía Indexador.excluirArchivo (copiado abajo) contra ReglasExclusion.
+ * Mide ns y bytes asignados por ruta en el hilo actual.
+ *
+ * Uso: java ... koolfileindexer.logica.ExclusionesBenchmark [reglas=1000] [rutas=200000]
+ */
+public class ExclusionesBenchmark {
+    private static final int REPETICIONES = 5;
+    private static final Set<String> EXT_PROHIBIDAS = Set.of("exe", "dll");
+
+    public static void main(String[] args) {
+        int cantidadReglas = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        int cantidadRutas = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+
+        List<Path> reglas = new ArrayList<>(cantidadReglas);
+        for (int i = 0; i < cantidadReglas; i++) {
+            reglas.add(Path.of("/home/usuario/proyectos/p" + i + "/build"));
+        }
+        List<String> patrones = List.of("glob:*.tmp", "glob:node_modules", "glob:~$*.{doc,docx}");
+
+        Path[] rutas = new Path[cantidadRutas];
+        ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+        for (int i = 0; i < cantidadRutas; i++) {
+            int proyecto = aleatorio.nextInt(cantidadReglas * 2);
+            String carpeta = aleatorio.nextInt(10) == 0 ? "build" : "src/main/java/paquete";
+            rutas[i] = Path.of("/home/usuario/proyectos/p" + proyecto + "/" + carpeta + "/Archivo" + i + ".java");
+            // Path guarda su String: los dos caminos lo usan
+            rutas[i].toString();
+        }
+        System.out.printf("%,d rutas excluidas, %,d rutas de ejemplo%n", cantidadReglas, cantidadRutas);
+
+        Set<Path> rutasExcluidas = Set.copyOf(reglas);
+        medir("recorrido lineal", rutas, p -> excluirLineal(rutasExcluidas, p));
+        ReglasExclusion soloRutas = ReglasExclusion.compilar(reglas, List.of());
+        medir("ReglasExclusion", rutas, soloRutas::excluye);
+        ReglasExclusion conPatrones = ReglasExclusion.compilar(reglas, patrones);
+        medir("  + " + patrones.size() + " globs", rutas, conPatrones::excluye);
+    }
+
+    private static void medir(String nombre, Path[] rutas, Predicate<Path> excluir) {
+        com.sun.management.ThreadMXBean hilos = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        int excluidas = 0;
+        // Calentamiento para el JIT
+        for (int i = 0; i < 3; i++) {
+            for (Path ruta : rutas) {
+                excluir.test(ruta);
+            }
+        }
+        double mejorNs = Double.MAX_VALUE;
+        double bytes = 0;
+        for (int r = 0; r < REPETICIONES; r++) {
+            excluidas = 0;
+            long bytesAntes = hilos.getThreadAllocatedBytes(id);
+            long inicio = System.nanoTime();
+            for (Path ruta : rutas) {
+                if (excluir.test(ruta)) {
+                    excluidas++;
+                }
+            }
+            mejorNs = Math.min(mejorNs, (double) (System.nanoTime() - inicio) / rutas.length);
+            bytes = (double) (hilos.getThreadAllocatedBytes(id) - bytesAntes) / rutas.length;
+        }
+        System.out.printf("%-20s %,10.1f ns/ruta  %,8.1f bytes/ruta  (%,d excluidas)%n", nombre, mejorNs, bytes,
+                excluidas);
+    }
+
+    /** Indexador.excluirArchivo antes de ReglasExclusion (sin la rama de raíz). */
+    private static boolean excluirLineal(Set<Path> rutasExcluidas, Path p) {
+        Path norm = p.toAbsolutePath().normalize();
+        for (Path excl : rutasExcluidas) {
+            if (norm.startsWith(excl)) {
+                return true;
+            }
+        }
+        String nombre = norm.getFileName().toString().toLowerCase();
+        String rutaMin = norm.toString().toLowerCase();
+        try {
+            if (Files.isHidden(norm)) {
+                return true;
+            }
+        } catch (IOException ignored) {
+        }
+        if (nombre.startsWith(".")) {
+            return true;
+        }
+        int idx = nombre.lastIndexOf('.');
+        if (idx >= 0 && EXT_PROHIBIDAS.contains(nombre.substring(idx + 1))) {
+            return true;
+        }
+        if (System.getProperty("os.name").toLowerCase().contains("windows")) {
+            if (rutaMin.contains("\\windows\\") || rutaMin.contains("\\program files\\")
+                    || rutaMin.contains("\\archivos de programa\\")) {
+                return true;
+            }
+        } else if (System.getProperty("os.name").toLowerCase().contains("linux")) {
+            if (rutaMin.startsWith("/proc/") || rutaMin.startsWith("/sys/") || rutaMin.startsWith("/dev/")) {
+                return true;
+            }
+        }
+        return nombre.equals("thumbs.db");
+    }
+}
@@ -0,0 +1,151 @@
+package koolfileindexer.logica;
+
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import koolfileindexer.common.model.File;
+import koolfileindexer.common.model.GenericList;
+import koolfileindexer.common.model.Search;
+import koolfileindexer.common.protocol.Request;
+import koolfileindexer.common.protocol.Response;
+import koolfileindexer.common.protocol.v1.SocketServer;
+import koolfileindexer.common.protocol.v2.Codec;
+import koolfileindexer.common.protocol.v2.Connection;
+import koolfileindexer.db.PoolConexiones;
+
+/**
+ * Benchmark manual (no se ejecuta con los tests): búsquedas concurrentes
+ * contra un SocketServer (EVENT_LOOP) con un pool fijo de 10 hilos y con un
+ * hilo virtual por request acotado por la capacidad del pool de la BD.
+ *
+ * No necesita la BD: cada búsqueda toma una conexión de un PoolConexiones con
+ * conexiones simuladas y la retiene latenciaMs, como un request que espera
+ * a JDBC. Con los hilos de plataforma la concurrencia queda en 10 aunque el
+ * pool tenga más conexiones libres.
+ *
+ * Uso: java ... koolfileindexer.logica.HilosVirtualesBenchmark [clientes]
+ * [busquedasPorCliente] [latenciaMs] [conexionesBD]
+ */
+public class HilosVirtualesBenchmark {
+
+    private static final int HILOS_PLATAFORMA = 10;
+
+    public static void main(String[] args) throws Exception {
+        int clientes = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int busquedas = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        long latenciaMs = args.length > 2 ? Long.parseLong(args[2]) : 20;
+        int conexionesBD = args.length > 3 ? Integer.parseInt(args[3]) : 40;
+
+        GenericList<File> resultado = new GenericList<>();
+        for (int i = 0; i < 20; i++) {
+            resultado.add(new File("informe_" + i, "pdf", "/home/usuario/informe_" + i + ".pdf",
+                    "2024-01-01T10:00", i, new String[0]));
+        }
+        System.out.printf("%d clientes x %d búsquedas, %d ms en la BD por búsqueda, %d conexiones%n", clientes,
+                busquedas, latenciaMs, conexionesBD);
+
+        for (SocketServer.Threads hilos : SocketServer.Threads.values()) {
+            PoolConexiones pool = PoolConexiones.abrir(HilosVirtualesBenchmark::conexionSimulada, 0, conexionesBD,
+                    Duration.ofSeconds(30), Duration.ofMinutes(5), Duration.ofMinutes(5), 0);
+            int tamano = hilos == SocketServer.Threads.VIRTUAL ? pool.getMaximo() : HILOS_PLATAFORMA;
+            Path socketPath = Files.createTempDirectory("kfi-virtuales").resolve("kfi.socket");
+            SocketServer server = SocketServer.createServer(socketPath.toString(), tamano,
+                    SocketServer.Mode.EVENT_LOOP, hilos);
+            server.registerAction("search", req -> {
+                req.build(Search.stringFactory(), Search.binaryFactory());
+                try (java.sql.Connection conexion = pool.obtener()) {
+                    Thread.sleep(latenciaMs);
+                }
+                return Response.ok(resultado);
+            });
+            Thread aceptador = new Thread(() -> {
+                while (true) {
+                    try {
+                        server.accept();
+                    } catch (Exception e) {
+                        return;
+                    }
+                }
+            }, "kfi-virtuales-accept");
+            aceptador.setDaemon(true);
+            aceptador.start();
+
+            medir(hilos + " (" + tamano + ")", socketPath.toString(), clientes, busquedas);
+            System.out.println("           pool: " + pool.getMetricas());
+
+            server.close();
+            pool.cerrar();
+            Files.deleteIfExists(socketPath);
+        }
+    }
+
+    private static void medir(String nombre, String socketPath, int clientes, int busquedas) throws Exception {
+        long[] latencias = new long[clientes * busquedas];
+        AtomicInteger medidas = new AtomicInteger();
+        AtomicInteger errores = new AtomicInteger();
+        CountDownLatch conectados = new CountDownLatch(clientes);
+        CountDownLatch largada = new CountDownLatch(1);
+        Request request = new Request("search",
+                new Search(new String[] { "informe" }, new String[0], new String[0]));
+
+        List<Thread> hilos = new ArrayList<>(clientes);
+        for (int i = 0; i < clientes; i++) {
+            Thread cliente = new Thread(() -> {
+                try (Connection conexion = Connection.connect(socketPath, Codec.BINARY)) {
+                    conectados.countDown();
+                    largada.await();
+                    for (int j = 0; j < busquedas; j++) {
+                        long inicio = System.nanoTime();
+                        if (conexion.send(request).get().isError()) {
+                            errores.incrementAndGet();
+                        }
+                        latencias[medidas.getAndIncrement()] = System.nanoTime() - inicio;
+                    }
+                } catch (Exception e) {
+                    errores.incrementAndGet();
+                    conectados.countDown();
+                }
+            }, "kfi-virtuales-cliente");
+            cliente.setDaemon(true);
+            hilos.add(cliente);
+            cliente.start();
+        }
+        conectados.await();
+
+        long inicio = System.nanoTime();
+        largada.countDown();
+        for (Thread cliente : hilos) {
+            cliente.join();
+        }
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+
+        long[] tiempos = Arrays.copyOf(latencias, medidas.get());
+        Arrays.sort(tiempos);
+        if (tiempos.length == 0) {
+            System.out.printf("%-14s sin respuestas (%d errores)%n", nombre, errores.get());
+            return;
+        }
+        System.out.printf("%-14s %8.0f búsquedas/s  p50=%7.2f ms  p99=%7.2f ms  errores=%d%n", nombre,
+                tiempos.length / segundos, tiempos[tiempos.length / 2] / 1e6,
+                tiempos[tiempos.length * 99 / 100] / 1e6, errores.get());
+    }
+
+    /** Conexión que no habla con ninguna BD: solo lo que usa el pool. */
+    private static java.sql.Connection conexionSimulada() {
+        return (java.sql.Connection) Proxy.newProxyInstance(HilosVirtualesBenchmark.class.getClassLoader(),
+                new Class<?>[] { java.sql.Connection.class }, (proxy, metodo, args) -> switch (metodo.getName()) {
+                    case "isValid", "getAutoCommit" -> true;
+                    case "isClosed" -> false;
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> null;
+                });
+    }
+}
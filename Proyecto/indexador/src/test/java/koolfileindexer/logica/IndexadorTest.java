@@ -1,7 +1,9 @@
 package koolfileindexer.logica;
 
+import koolfileindexer.db.AlmacenEmbebido;
 import koolfileindexer.modelo.Archivo;
 import koolfileindexer.modelo.Categoria;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -13,6 +15,9 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
@@ -30,6 +35,7 @@ class IndexadorTest {
     Path tempDir;
 
     private Indexador indexador;
+    private AlmacenEmbebido almacen;
 
     // Modificar el método setUp() para usar la versión correcta de getInstance
     @BeforeEach
@@ -52,6 +58,107 @@ class IndexadorTest {
         indexador = Indexador.getInstance(null);
     }
 
+    @AfterEach
+    void cerrarAlmacen() {
+        if (almacen != null) {
+            almacen.cerrar();
+        }
+    }
+
+    /**
+     * Indexador sobre raiz que escribe en un almacén embebido y guarda los
+     * cursores en tempDir, en lugar de PostgreSQL y ~/.config.
+     */
+    private Indexador indexadorEmbebido(Path raiz) throws Exception {
+        Field instance = Indexador.class.getDeclaredField("INSTANCIA");
+        instance.setAccessible(true);
+        ((AtomicReference<?>) instance.get(null)).set(null);
+        Indexador idx = Indexador.getInstance(null, List.of(raiz), 100, Duration.ofMinutes(5));
+
+        almacen = new AlmacenEmbebido(tempDir.resolve("almacen"));
+        Field connector = Indexador.class.getDeclaredField("connector");
+        connector.setAccessible(true);
+        connector.set(idx, almacen);
+        Field directorioCursores = Indexador.class.getDeclaredField("directorioCursores");
+        directorioCursores.setAccessible(true);
+        directorioCursores.set(idx, tempDir.resolve("cursores"));
+        return idx;
+    }
+
+    private static CursorRecorrido cursor(Indexador idx, Path raiz) throws Exception {
+        Method m = Indexador.class.getDeclaredMethod("obtenerCursor", Path.class);
+        m.setAccessible(true);
+        return (CursorRecorrido) m.invoke(idx, raiz);
+    }
+
+    private static koolfileindexer.db.Archivo archivoBD(Path ruta) {
+        String nombreCompleto = ruta.getFileName().toString();
+        int punto = nombreCompleto.lastIndexOf('.');
+        return new koolfileindexer.db.Archivo(nombreCompleto.substring(0, punto), 10,
+                LocalDateTime.of(2024, 5, 1, 10, 30), ruta.toString(), nombreCompleto.substring(punto + 1),
+                "DOCUMENTO");
+    }
+
+    private List<String> enAlmacenBajo(Path dir) throws Exception {
+        List<String> rutas = new ArrayList<>();
+        almacen.recorrerArchivosBajo(dir.toString(), (ruta, tamano, fecha) -> rutas.add(ruta));
+        return rutas;
+    }
+
+    @Test
+    void recargarExclusiones_nuevaExclusionPurgaElSubarbolYLoSacaDeLaFrontera() throws Exception {
+        Path raiz = Files.createDirectories(tempDir.resolve("raiz"));
+        Path a = Files.createDirectories(raiz.resolve("a"));
+        Path sub = Files.createDirectories(a.resolve("sub"));
+        Path b = Files.createDirectories(raiz.resolve("b"));
+        Path exclusiones = Files.writeString(tempDir.resolve("exclusiones.txt"), "# nada" + System.lineSeparator());
+        Indexador idx = indexadorEmbebido(raiz);
+        idx.cargarExclusiones(exclusiones.toString());
+
+        almacen.ingestarLoteArchivos(List.of(
+                archivoBD(a.resolve("uno.txt")),
+                archivoBD(sub.resolve("dos.txt")),
+                archivoBD(b.resolve("tres.txt"))), 1);
+        CursorRecorrido cursor = cursor(idx, raiz);
+        cursor.iniciarPasada();
+        assertEquals(raiz, cursor.siguienteDirectorio());
+        cursor.agregarSubdirectorios(List.of(a, b));
+        assertEquals(a, cursor.siguienteDirectorio());
+        cursor.agregarSubdirectorios(List.of(sub));
+
+        Files.writeString(exclusiones, a + System.lineSeparator());
+        idx.recargarExclusiones(exclusiones.toString());
+
+        assertEquals(List.of(b.resolve("tres.txt").toString()), enAlmacenBajo(raiz),
+                "Lo que estaba bajo la nueva exclusión se borra del almacén");
+        assertEquals(List.of(b), cursor.tomarPendientes(), "La frontera ya no recorre el subárbol excluido");
+    }
+
+    @Test
+    void recargarExclusiones_exclusionQuitadaPasaAlFrenteDeLaFrontera() throws Exception {
+        Path raiz = Files.createDirectories(tempDir.resolve("raiz"));
+        Path a = Files.createDirectories(raiz.resolve("a"));
+        Path b = Files.createDirectories(raiz.resolve("b"));
+        Path exclusiones = Files.writeString(tempDir.resolve("exclusiones.txt"), a + System.lineSeparator());
+        Indexador idx = indexadorEmbebido(raiz);
+        idx.cargarExclusiones(exclusiones.toString());
+
+        // Pasada terminada: a no se listó por estar excluido
+        CursorRecorrido cursor = cursor(idx, raiz);
+        cursor.iniciarPasada();
+        cursor.siguienteDirectorio();
+        cursor.agregarSubdirectorios(List.of(b));
+        cursor.siguienteDirectorio();
+        assertTrue(cursor.pasadaTerminada());
+
+        Files.writeString(exclusiones, "# ya nada" + System.lineSeparator());
+        idx.recargarExclusiones(exclusiones.toString());
+
+        assertTrue(idx.getRutasExcluidas().isEmpty());
+        assertEquals(List.of(a), cursor.tomarPendientes(), "Sólo se recorre el subárbol que volvió");
+        assertFalse(cursor.admiteBarrido(), "Terminarlo no debe barrer el resto de la raíz");
+    }
+
     @Test
     void getInstance_esSingleton() {
         Indexador i1 = Indexador.getInstance(null);
@@ -0,0 +1,147 @@
+package koolfileindexer.logica;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Benchmark manual (no se ejecuta con los tests): carga nombres sintéticos en
+ * un IndiceNombres y mide p50/p99 de búsquedas por prefijo y subcadena, junto
+ * con la memoria usada por archivo. Después, sobre un árbol tipo
+ * node_modules (pocos nombres repetidos en muchos directorios), mide volver a
+ * registrar todo, como hace cada lote del recorrido, mientras un lector busca.
+ *
+ * Uso: java -Xmx4g ... koolfileindexer.logica.IndiceNombresBenchmark [archivos] [consultas]
+ */
+public class IndiceNombresBenchmark {
+    private static final String[] PALABRAS = { "informe", "factura", "foto", "notas", "backup", "proyecto",
+            "presupuesto", "contrato", "captura", "video", "cancion", "tesis" };
+    private static final String[] EXTENSIONES = { "txt", "pdf", "jpg", "java", "mp3", "png", "doc", "csv" };
+    private static final String[] NOMBRES_REPETIDOS = { "index.js", "package.json", "README.md", "LICENSE",
+            "index.d.ts" };
+    private static final int LIMITE = 100;
+
+    private interface Consulta {
+        int ejecutar(IndiceNombres indice, int i);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int archivos = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        int consultas = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        LocalDateTime ahora = LocalDateTime.now();
+        Random azar = new Random(42);
+
+        long memoriaAntes = memoriaUsada();
+        long inicio = System.nanoTime();
+        IndiceNombres indice = new IndiceNombres();
+        for (int i = 0; i < archivos; i++) {
+            indice.registrar(rutaSintetica(i), i % 100_000, ahora);
+        }
+        long memoriaDespues = memoriaUsada();
+        System.out.printf("Cargados %,d archivos en %.1f s%n", archivos, (System.nanoTime() - inicio) / 1e9);
+        System.out.printf("Memoria: %,d bytes/archivo medidos en heap, %,d estimados por el índice%n",
+                (memoriaDespues - memoriaAntes) / archivos, indice.memoriaEstimadaBytes() / archivos);
+
+        medir(indice, "prefijo común", consultas, (idx, i) -> idx.buscarPrefijo("inf", LIMITE).size());
+        medir(indice, "prefijo selectivo", consultas,
+                (idx, i) -> idx.buscarPrefijo(nombreSintetico(azar.nextInt(archivos)), LIMITE).size());
+        medir(indice, "subcadena común", consultas, (idx, i) -> idx.buscarSubcadena("tura_1", LIMITE).size());
+        medir(indice, "subcadena selectiva", consultas,
+                (idx, i) -> idx.buscarSubcadena("_" + azar.nextInt(archivos) + ".", LIMITE).size());
+        medir(indice, "sin resultados", consultas, (idx, i) -> idx.buscarSubcadena("zzqx", LIMITE).size());
+
+        indice = null;
+        medirNombresRepetidos(Math.min(archivos, 1_000_000));
+    }
+
+    private static void medirNombresRepetidos(int archivos) throws InterruptedException {
+        LocalDateTime ahora = LocalDateTime.now();
+        IndiceNombres indice = new IndiceNombres();
+        long inicio = System.nanoTime();
+        for (int i = 0; i < archivos; i++) {
+            indice.registrar(rutaRepetida(i), i, ahora);
+        }
+        System.out.printf("%nNombres repetidos: %,d archivos con %d nombres cargados en %.1f s%n", archivos,
+                NOMBRES_REPETIDOS.length, (System.nanoTime() - inicio) / 1e9);
+
+        // Lector concurrente mientras otro hilo vuelve a registrar todo
+        AtomicBoolean escribiendo = new AtomicBoolean(true);
+        long[][] tiempos = { new long[1_024] };
+        int[] consultas = { 0 };
+        Thread lector = new Thread(() -> {
+            while (escribiendo.get()) {
+                int i = consultas[0];
+                long inicioConsulta = System.nanoTime();
+                if (i % 2 == 0) {
+                    indice.buscarPrefijo("index", LIMITE);
+                } else {
+                    indice.buscarSubcadena("ackage", LIMITE);
+                }
+                if (i == tiempos[0].length) {
+                    tiempos[0] = Arrays.copyOf(tiempos[0], i * 2);
+                }
+                tiempos[0][i] = System.nanoTime() - inicioConsulta;
+                consultas[0] = i + 1;
+            }
+        });
+        lector.start();
+        inicio = System.nanoTime();
+        for (int i = 0; i < archivos; i++) {
+            indice.registrar(rutaRepetida(i), i + 1, ahora);
+        }
+        long escritura = System.nanoTime() - inicio;
+        escribiendo.set(false);
+        lector.join();
+
+        System.out.printf("re-registro          %8.2f µs/archivo bajo el cerrojo de escritura%n",
+                escritura / 1e3 / archivos);
+        int cantidad = consultas[0];
+        if (cantidad > 0) {
+            long[] ordenados = Arrays.copyOf(tiempos[0], cantidad);
+            Arrays.sort(ordenados);
+            System.out.printf("lector concurrente   p50=%8.1f µs  p99=%8.1f µs  (%,d consultas)%n",
+                    ordenados[cantidad / 2] / 1e3, ordenados[cantidad * 99 / 100] / 1e3, cantidad);
+        }
+    }
+
+    /** /proyecto/node_modules/paqueteP/[lib/]nombre: cada nombre en archivos/5 directorios. */
+    private static String rutaRepetida(int i) {
+        int directorio = i / NOMBRES_REPETIDOS.length;
+        return "/proyecto/node_modules/paquete" + (directorio / 2) + (directorio % 2 == 0 ? "/" : "/lib/")
+                + NOMBRES_REPETIDOS[i % NOMBRES_REPETIDOS.length];
+    }
+
+    private static void medir(IndiceNombres indice, String nombre, int consultas, Consulta consulta) {
+        for (int i = 0; i < consultas; i++) { // calentamiento del JIT
+            consulta.ejecutar(indice, i);
+        }
+        long[] tiempos = new long[consultas];
+        int resultados = 0;
+        for (int i = 0; i < consultas; i++) {
+            long inicio = System.nanoTime();
+            resultados += consulta.ejecutar(indice, i);
+            tiempos[i] = System.nanoTime() - inicio;
+        }
+        Arrays.sort(tiempos);
+        System.out.printf("%-20s p50=%8.1f µs  p99=%8.1f µs  (%.1f resultados/consulta)%n",
+                nombre, tiempos[consultas / 2] / 1e3, tiempos[consultas * 99 / 100] / 1e3,
+                (double) resultados / consultas);
+    }
+
+    private static String nombreSintetico(int i) {
+        return PALABRAS[i % PALABRAS.length] + "_" + i + "." + EXTENSIONES[i % EXTENSIONES.length];
+    }
+
+    private static String rutaSintetica(int i) {
+        return "/home/usuario/d" + (i % 5_000) + "/s" + (i % 7) + "/" + nombreSintetico(i);
+    }
+
+    private static long memoriaUsada() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
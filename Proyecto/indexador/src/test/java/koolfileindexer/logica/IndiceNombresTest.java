@@ -0,0 +1,129 @@
+package koolfileindexer.logica;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import koolfileindexer.logica.IndiceNombres.Coincidencia;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndiceNombresTest {
+
+    private static final LocalDateTime FECHA = LocalDateTime.of(2024, 5, 1, 10, 30);
+
+    private static Set<String> rutas(List<Coincidencia> coincidencias) {
+        return coincidencias.stream().map(Coincidencia::ruta).collect(Collectors.toSet());
+    }
+
+    @Test
+    void subcadena_sinDistinguirMayusculas() {
+        IndiceNombres indice = new IndiceNombres();
+        indice.registrar("/home/ana/Informe_Final.PDF", 10, FECHA);
+        indice.registrar("/home/ana/notas.txt", 20, FECHA);
+        indice.registrar("/srv/informes/resumen.pdf", 30, FECHA);
+
+        assertEquals(Set.of("/home/ana/Informe_Final.PDF"), rutas(indice.buscarSubcadena("FORME", 10)));
+        assertEquals(Set.of("/home/ana/Informe_Final.PDF", "/srv/informes/resumen.pdf"),
+                rutas(indice.buscarSubcadena(".pdf", 10)));
+        assertTrue(indice.buscarSubcadena("inexistente", 10).isEmpty());
+    }
+
+    @Test
+    void prefijo_soloCoincideAlInicioDelNombre() {
+        IndiceNombres indice = new IndiceNombres();
+        indice.registrar("/a/informe.pdf", 1, FECHA);
+        indice.registrar("/a/mi_informe.pdf", 1, FECHA);
+
+        assertEquals(Set.of("/a/informe.pdf"), rutas(indice.buscarPrefijo("Inf", 10)));
+        assertEquals(Set.of("/a/informe.pdf"), rutas(indice.buscarPrefijo("i", 10)));
+        assertEquals(2, indice.buscarSubcadena("inf", 10).size());
+    }
+
+    @Test
+    void mismoNombreEnVariosDirectorios_devuelveTodosHastaElLimite() {
+        IndiceNombres indice = new IndiceNombres();
+        for (int i = 0; i < 5; i++) {
+            indice.registrar("/d" + i + "/README.md", i, FECHA);
+        }
+
+        assertEquals(5, indice.buscarSubcadena("readme", 10).size());
+        assertEquals(3, indice.buscarSubcadena("readme", 3).size());
+    }
+
+    @Test
+    void registrarDosVeces_actualizaSinDuplicar() {
+        IndiceNombres indice = new IndiceNombres();
+        indice.registrar("/a/datos.csv", 1, FECHA);
+        indice.registrar("/a/datos.csv", 99, FECHA.plusDays(1));
+
+        List<Coincidencia> resultado = indice.buscarSubcadena("datos", 10);
+        assertEquals(1, resultado.size());
+        assertEquals(99, resultado.get(0).tamano());
+        assertEquals(FECHA.plusDays(1), resultado.get(0).fechaModificacion());
+        assertEquals("csv", resultado.get(0).extension());
+        assertEquals(1, indice.getArchivos());
+    }
+
+    @Test
+    void eliminar_quitaSoloEsaRuta() {
+        IndiceNombres indice = new IndiceNombres();
+        indice.registrar("/a/foto.jpg", 1, FECHA);
+        indice.registrar("/b/foto.jpg", 1, FECHA);
+
+        indice.eliminar("/a/foto.jpg");
+        indice.eliminar("/no/existe.jpg");
+
+        assertEquals(Set.of("/b/foto.jpg"), rutas(indice.buscarSubcadena("foto", 10)));
+        assertEquals(1, indice.getArchivos());
+    }
+
+    @Test
+    void nombresRepetidos_altasYBajasEnCualquierPosicionDeLaCadena() {
+        IndiceNombres indice = new IndiceNombres();
+        // Más que las cubetas iniciales para que la tabla se redimensione
+        for (int i = 0; i < 3_000; i++) {
+            indice.registrar("/p/m" + i + "/package.json", i, FECHA);
+        }
+        indice.eliminar("/p/m2999/package.json"); // primero de la cadena del nombre
+        indice.eliminar("/p/m1500/package.json");
+        indice.eliminar("/p/m0/package.json"); // último
+        indice.registrar("/p/m1/package.json", 77, FECHA);
+        indice.registrar("/p/m1500/package.json", 1, FECHA);
+
+        assertEquals(2_998, indice.getArchivos());
+        assertEquals(2_998, indice.buscarSubcadena("package", 5_000).size());
+        Set<String> encontradas = rutas(indice.buscarSubcadena("package", 5_000));
+        assertTrue(encontradas.contains("/p/m1500/package.json"));
+        assertFalse(encontradas.contains("/p/m0/package.json"));
+        assertFalse(encontradas.contains("/p/m2999/package.json"));
+    }
+
+    @Test
+    void muchasBajas_reconstruyeYSigueRespondiendo() {
+        IndiceNombres indice = new IndiceNombres();
+        for (int i = 0; i < 5_000; i++) {
+            indice.registrar("/datos/archivo" + i + ".bin", i, FECHA);
+        }
+        for (int i = 0; i < 4_990; i++) {
+            indice.eliminar("/datos/archivo" + i + ".bin");
+        }
+        indice.registrar("/datos/archivo7.bin", 7, FECHA);
+
+        assertEquals(11, indice.getArchivos());
+        assertEquals(11, indice.buscarSubcadena("archivo", 100).size());
+        assertEquals(Set.of("/datos/archivo7.bin"), rutas(indice.buscarPrefijo("archivo7.", 100)));
+        assertEquals(Set.of("/datos/archivo4999.bin"), rutas(indice.buscarSubcadena("4999", 100)));
+    }
+
+    @Test
+    void rutaEnLaRaiz_conservaElSeparador() {
+        IndiceNombres indice = new IndiceNombres();
+        indice.registrar("/swapfile", 1, FECHA);
+
+        assertEquals(Set.of("/swapfile"), rutas(indice.buscarSubcadena("swap", 10)));
+    }
+}
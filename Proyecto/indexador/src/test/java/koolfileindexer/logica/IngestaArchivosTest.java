@@ -0,0 +1,83 @@
+package koolfileindexer.logica;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import koolfileindexer.modelo.Archivo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IngestaArchivosTest {
+
+    private static Archivo archivo(int i) {
+        LocalDateTime ahora = LocalDateTime.now();
+        return new Archivo("archivo" + i, "/tmp/archivo" + i + ".txt", "txt", 10L, ahora, ahora);
+    }
+
+    @Test
+    void vaciar_escribeTodoEnLotesDeTamanoAcotado() throws Exception {
+        List<Integer> tamanos = Collections.synchronizedList(new ArrayList<>());
+        IngestaArchivos ingesta = new IngestaArchivos(1_000, 100, Duration.ofMillis(50),
+                lote -> tamanos.add(lote.size()));
+
+        for (int i = 0; i < 1_050; i++) {
+            ingesta.encolar(archivo(i));
+        }
+        ingesta.vaciar();
+
+        assertEquals(1_050, ingesta.getArchivosEscritos());
+        assertEquals(1_050, tamanos.stream().mapToInt(Integer::intValue).sum());
+        assertTrue(tamanos.stream().allMatch(t -> t <= 100), "Ningún lote debe superar el tamaño configurado");
+        assertTrue(tamanos.size() < 1_050, "Los archivos deben agruparse en lotes");
+        ingesta.cerrar();
+    }
+
+    @Test
+    void errorEnLote_noBloqueaVaciar() throws Exception {
+        IngestaArchivos ingesta = new IngestaArchivos(100, 10, Duration.ofMillis(20), lote -> {
+            throw new IllegalStateException("BD caída");
+        });
+
+        for (int i = 0; i < 25; i++) {
+            ingesta.encolar(archivo(i));
+        }
+        ingesta.vaciar();
+
+        assertEquals(0, ingesta.getArchivosEscritos());
+        ingesta.cerrar();
+    }
+
+    @Test
+    void colaLlena_frenaAlProductor() throws Exception {
+        CountDownLatch liberar = new CountDownLatch(1);
+        IngestaArchivos ingesta = new IngestaArchivos(2, 1, Duration.ofMillis(10), lote -> liberar.await());
+
+        CountDownLatch terminado = new CountDownLatch(1);
+        Thread productor = new Thread(() -> {
+            try {
+                for (int i = 0; i < 10; i++) {
+                    ingesta.encolar(archivo(i));
+                }
+                terminado.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        productor.start();
+
+        assertFalse(terminado.await(200, TimeUnit.MILLISECONDS),
+                "Con el escritor detenido y la cola llena el productor debe esperar");
+        liberar.countDown();
+        assertTrue(terminado.await(2, TimeUnit.SECONDS));
+        ingesta.vaciar();
+        assertEquals(10, ingesta.getArchivosEscritos());
+        ingesta.cerrar();
+    }
+}
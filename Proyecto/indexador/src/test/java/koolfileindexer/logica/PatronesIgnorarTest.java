@@ -0,0 +1,89 @@
+package koolfileindexer.logica;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PatronesIgnorarTest {
+
+    private static int evaluar(PatronesIgnorar patrones, String relativa, boolean directorio) {
+        String ruta = "/base/" + relativa;
+        return patrones.evaluar(ruta, "/base/".length(), ruta.lastIndexOf('/') + 1, directorio);
+    }
+
+    private static PatronesIgnorar compilar(String... lineas) {
+        return PatronesIgnorar.compilar(List.of(lineas), ReglasExclusion.Sistema.LINUX);
+    }
+
+    @Test
+    void nombreSinBarra_coincideACualquierProfundidad() {
+        PatronesIgnorar patrones = compilar("node_modules", "*.o");
+
+        assertEquals(PatronesIgnorar.EXCLUYE, evaluar(patrones, "a/b/node_modules", true));
+        assertEquals(PatronesIgnorar.EXCLUYE, evaluar(patrones, "x.o", false));
+        assertEquals(PatronesIgnorar.EXCLUYE, evaluar(patrones, "src/lib/x.o", false));
+        assertEquals(PatronesIgnorar.NINGUNO, evaluar(patrones, "src/x.c", false));
+    }
+
+    @Test
+    void barraFinal_soloDirectorios() {
+        PatronesIgnorar patrones = compilar("**/build/");
+
+        assertEquals(PatronesIgnorar.EXCLUYE, evaluar(patrones, "proyecto/build", true));
+        assertEquals(PatronesIgnorar.NINGUNO, evaluar(patrones, "proyecto/build", false));
+    }
+
+    @Test
+    void conBarra_seAnclaAlDirectorioBase() {
+        PatronesIgnorar patrones = compilar("/salida", "doc/*.tmp", "a/**/z");
+
+        assertEquals(PatronesIgnorar.EXCLUYE, evaluar(patrones, "salida", true));
+        assertEquals(PatronesIgnorar.NINGUNO, evaluar(patrones, "sub/salida", true));
+        assertEquals(PatronesIgnorar.EXCLUYE, evaluar(patrones, "doc/x.tmp", false));
+        assertEquals(PatronesIgnorar.NINGUNO, evaluar(patrones, "doc/sub/x.tmp", false), "* no cruza directorios");
+        assertEquals(PatronesIgnorar.EXCLUYE, evaluar(patrones, "a/z", false));
+        assertEquals(PatronesIgnorar.EXCLUYE, evaluar(patrones, "a/b/c/z", false));
+    }
+
+    @Test
+    void negacion_ganaElUltimoQueCoincide() {
+        PatronesIgnorar patrones = compilar("*.log", "!importante.log", "# comentario", "");
+
+        assertEquals(PatronesIgnorar.EXCLUYE, evaluar(patrones, "x.log", false));
+        assertEquals(PatronesIgnorar.INCLUYE, evaluar(patrones, "importante.log", false));
+        assertEquals(1, compilar("*.log", "!importante.log", "*.log").evaluar("/base/importante.log", 6, 6, false));
+    }
+
+    @Test
+    void escapesYClases() {
+        PatronesIgnorar patrones = compilar("\\#archivo", "\\!raro", "informe[0-9].txt", "x[!a].bin");
+
+        assertEquals(PatronesIgnorar.EXCLUYE, evaluar(patrones, "#archivo", false));
+        assertEquals(PatronesIgnorar.EXCLUYE, evaluar(patrones, "!raro", false));
+        assertEquals(PatronesIgnorar.EXCLUYE, evaluar(patrones, "informe7.txt", false));
+        assertEquals(PatronesIgnorar.NINGUNO, evaluar(patrones, "informeA.txt", false));
+        assertEquals(PatronesIgnorar.EXCLUYE, evaluar(patrones, "xb.bin", false));
+        assertEquals(PatronesIgnorar.NINGUNO, evaluar(patrones, "xa.bin", false));
+    }
+
+    @Test
+    void claseNegada_noCruzaSeparadores() {
+        PatronesIgnorar patrones = compilar("d/a[!x]b", "c[^x]");
+
+        assertEquals(PatronesIgnorar.EXCLUYE, evaluar(patrones, "d/ayb", false));
+        assertEquals(PatronesIgnorar.NINGUNO, evaluar(patrones, "d/axb", false));
+        assertEquals(PatronesIgnorar.NINGUNO, evaluar(patrones, "d/a/b", true));
+        assertEquals(PatronesIgnorar.NINGUNO, evaluar(patrones, "d/a/b/archivo.txt", false));
+        assertEquals(PatronesIgnorar.EXCLUYE, evaluar(patrones, "sub/cy", false));
+    }
+
+    @Test
+    void esSintaxisIgnorar_distingueRutasSimples() {
+        assertTrue(PatronesIgnorar.esSintaxisIgnorar("**/node_modules/"));
+        assertTrue(PatronesIgnorar.esSintaxisIgnorar("*.o"));
+        assertTrue(PatronesIgnorar.esSintaxisIgnorar("!importante.log"));
+        assertFalse(PatronesIgnorar.esSintaxisIgnorar("patron1"));
+    }
+}
@@ -0,0 +1,146 @@
+package koolfileindexer.logica;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import koolfileindexer.common.Constants;
+import koolfileindexer.common.model.File;
+import koolfileindexer.common.model.GenericList;
+import koolfileindexer.common.model.Search;
+import koolfileindexer.common.protocol.Request;
+import koolfileindexer.common.protocol.Response;
+import koolfileindexer.common.protocol.v1.SocketServer;
+import koolfileindexer.common.protocol.v2.Codec;
+import koolfileindexer.common.protocol.v2.Connection;
+import koolfileindexer.common.utils.FromStr;
+
+/**
+ * Benchmark manual (no se ejecuta con los tests): levanta un SocketServer en
+ * un socket temporal cuya acción "search" devuelve archivos sintéticos y mide
+ * cuánto tarda un cliente v1 y uno v2 en recibir la respuesta, completa y en
+ * streaming. "v2 mux" hace todos los requests sobre una sola
+ * {@link Connection}, sin conectar cada vez.
+ *
+ * Uso: java ... koolfileindexer.logica.ProtocoloBenchmark [archivos] [repeticiones]
+ */
+public class ProtocoloBenchmark {
+
+    private interface Cliente {
+        /** @return bytes de payload recibidos (aproximado) */
+        long buscar(String socketPath, boolean stream) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int archivos = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int repeticiones = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        GenericList<File> lista = new GenericList<>();
+        for (int i = 0; i < archivos; i++) {
+            lista.add(new File("informe_" + i, "pdf", "/home/usuario/d" + (i % 500)
+                    + "/informe_" + i + ".pdf", "2024-01-01T10:00", i, new String[0]));
+        }
+        Path socketPath = Files.createTempDirectory("kfi-bench").resolve("kfi.socket");
+        SocketServer server = SocketServer.createServer(socketPath.toString(), 4);
+        server.registerAction("search", req -> {
+            Search search = req.build(Search.stringFactory());
+            if (search.isStream()) {
+                return Response.stream(sink -> {
+                    for (File archivo : lista) {
+                        sink.write(archivo);
+                    }
+                    return null;
+                });
+            }
+            return Response.ok(lista);
+        });
+        Thread aceptador = new Thread(() -> {
+            while (true) {
+                try {
+                    server.accept();
+                } catch (Exception e) {
+                    return;
+                }
+            }
+        }, "kfi-bench-accept");
+        aceptador.setDaemon(true);
+        aceptador.start();
+
+        Cliente v1 = (path, stream) -> {
+            koolfileindexer.common.protocol.v1.Socket socket = koolfileindexer.common.protocol.v1.Socket
+                    .connect(path, Constants.PROTOCOL_HEADER, Constants.PROTOCOL_TRAILER);
+            socket.sendRequest(new Request("search", busqueda(stream)));
+            long bytes = stream ? contarItems(socket::getStreamedItems) : socket.getResponse().intoString().length();
+            socket.close();
+            return bytes;
+        };
+        Cliente v2 = (path, stream) -> {
+            koolfileindexer.common.protocol.v2.Socket socket = koolfileindexer.common.protocol.v2.Socket.connect(path);
+            socket.sendRequest(new Request("search", busqueda(stream)));
+            long bytes = stream ? contarItems(socket::getStreamedItems) : socket.getResponse().intoString().length();
+            socket.close();
+            return bytes;
+        };
+        Connection conexion = Connection.connect(socketPath.toString(), Codec.TEXT);
+        Cliente mux = (path, stream) -> {
+            Request request = new Request("search", busqueda(stream));
+            if (!stream) {
+                return conexion.send(request).get().intoString().length();
+            }
+            long[] bytes = { 0 };
+            conexion.stream(request, item -> item, item -> bytes[0] += item.length()).get();
+            return bytes[0];
+        };
+
+        System.out.printf("%,d archivos por respuesta, %d repeticiones%n", archivos, repeticiones);
+        medir("v1 completa", repeticiones, () -> v1.buscar(socketPath.toString(), false));
+        medir("v2 completa", repeticiones, () -> v2.buscar(socketPath.toString(), false));
+        medir("v2 mux", repeticiones, () -> mux.buscar(socketPath.toString(), false));
+        medir("v1 stream", repeticiones, () -> v1.buscar(socketPath.toString(), true));
+        medir("v2 stream", repeticiones, () -> v2.buscar(socketPath.toString(), true));
+        medir("v2 mux stream", repeticiones, () -> mux.buscar(socketPath.toString(), true));
+
+        conexion.close();
+        server.close();
+        Files.deleteIfExists(socketPath);
+    }
+
+    private interface Medicion {
+        long ejecutar() throws Exception;
+    }
+
+    private static void medir(String nombre, int repeticiones, Medicion medicion) throws Exception {
+        for (int i = 0; i < Math.max(5, repeticiones / 10); i++) { // calentamiento del JIT
+            medicion.ejecutar();
+        }
+        long[] tiempos = new long[repeticiones];
+        long bytes = 0;
+        long inicio = System.nanoTime();
+        for (int i = 0; i < repeticiones; i++) {
+            long t = System.nanoTime();
+            bytes += medicion.ejecutar();
+            tiempos[i] = System.nanoTime() - t;
+        }
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        Arrays.sort(tiempos);
+        System.out.printf("%-14s p50=%7.2f ms  p99=%7.2f ms  %6.1f respuestas/s  %7.1f MB/s%n",
+                nombre, tiempos[repeticiones / 2] / 1e6, tiempos[repeticiones * 99 / 100] / 1e6,
+                repeticiones / segundos, bytes / segundos / 1e6);
+    }
+
+    private interface LectorStream {
+        Object leer(FromStr<String> factory, Consumer<String> consumer) throws Exception;
+    }
+
+    /** Lee los ítems sin convertirlos a File: se mide el transporte. */
+    private static long contarItems(LectorStream lector) throws Exception {
+        long[] bytes = { 0 };
+        lector.leer(item -> item, item -> bytes[0] += item.length());
+        return bytes[0];
+    }
+
+    private static Search busqueda(boolean stream) {
+        return new Search(new String[] { "informe" }, new String[0], new String[0], null, null, stream);
+    }
+}
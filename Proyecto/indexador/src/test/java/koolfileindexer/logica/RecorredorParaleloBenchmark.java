@@ -0,0 +1,106 @@
+package koolfileindexer.logica;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Benchmark manual (no se ejecuta con los tests): compara archivos/segundo del
+ * visitor secuencial de Files.walkFileTree contra RecorredorParalelo sobre un
+ * árbol sintético.
+ *
+ * Uso: java ... koolfileindexer.logica.RecorredorParaleloBenchmark [dir] [directorios] [archivosPorDir]
+ * Si no se pasa dir, se crea un árbol temporal y se borra al terminar.
+ */
+public class RecorredorParaleloBenchmark {
+    private static final int REPETICIONES = 5;
+
+    public static void main(String[] args) throws Exception {
+        int directorios = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+        int archivosPorDir = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        boolean temporal = args.length == 0;
+        Path raiz = temporal ? Files.createTempDirectory("kfi-bench") : Path.of(args[0]);
+
+        try {
+            if (temporal) {
+                crearArbolSintetico(raiz, directorios, archivosPorDir);
+            }
+            System.out.printf("Árbol: %s (%d dirs x %d archivos)%n", raiz, directorios, archivosPorDir);
+
+            medir("walkFileTree secuencial", () -> recorrerConVisitor(raiz));
+            for (int paralelismo : new int[] { 1, 2, 4, 8, 16 }) {
+                RecorredorParalelo recorredor = new RecorredorParalelo(paralelismo, p -> false, (p, attrs) -> {
+                });
+                medir("RecorredorParalelo x" + paralelismo, () -> {
+                    AtomicInteger procesados = new AtomicInteger();
+                    recorredor.recorrer(List.of(raiz), Integer.MAX_VALUE, procesados);
+                    return procesados.get();
+                });
+                recorredor.cerrar();
+            }
+        } finally {
+            if (temporal) {
+                borrar(raiz);
+            }
+        }
+    }
+
+    private interface Recorrido {
+        int ejecutar() throws IOException;
+    }
+
+    private static void medir(String nombre, Recorrido recorrido) throws IOException {
+        // Una vuelta de calentamiento para cargar la caché de inodos y el JIT
+        recorrido.ejecutar();
+        double mejor = 0;
+        int archivos = 0;
+        for (int i = 0; i < REPETICIONES; i++) {
+            long inicio = System.nanoTime();
+            archivos = recorrido.ejecutar();
+            double segundos = (System.nanoTime() - inicio) / 1e9;
+            mejor = Math.max(mejor, archivos / segundos);
+        }
+        System.out.printf("%-28s %,10d archivos  %,14.0f archivos/s%n", nombre, archivos, mejor);
+    }
+
+    private static int recorrerConVisitor(Path raiz) throws IOException {
+        AtomicInteger procesados = new AtomicInteger();
+        Files.walkFileTree(raiz, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) {
+                    procesados.incrementAndGet();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return procesados.get();
+    }
+
+    private static void crearArbolSintetico(Path raiz, int directorios, int archivosPorDir) throws IOException {
+        // Árbol de fan-out 10 para que haya varios niveles de profundidad
+        for (int d = 0; d < directorios; d++) {
+            Path dir = raiz;
+            for (int n = d; n > 0; n /= 10) {
+                dir = dir.resolve("d" + (n % 10));
+            }
+            dir = Files.createDirectories(dir.resolve("hoja" + d));
+            for (int f = 0; f < archivosPorDir; f++) {
+                Files.createFile(dir.resolve("archivo" + f + ".txt"));
+            }
+        }
+    }
+
+    private static void borrar(Path raiz) throws IOException {
+        try (Stream<Path> rutas = Files.walk(raiz)) {
+            rutas.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package koolfileindexer.logica;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecorredorParaleloTest {
+
+    @TempDir
+    Path tempDir;
+
+    private void crearArbol() throws Exception {
+        for (String dir : List.of("a", "a/b", "c", "excluido")) {
+            Path d = Files.createDirectories(tempDir.resolve(dir));
+            Files.createFile(d.resolve("uno.txt"));
+            Files.createFile(d.resolve("dos.txt"));
+            Files.createFile(d.resolve("malo.exe"));
+        }
+    }
+
+    @Test
+    void recorrer_visitaTodosLosArchivosNoExcluidos() throws Exception {
+        crearArbol();
+        Set<Path> vistos = ConcurrentHashMap.newKeySet();
+        RecorredorParalelo recorredor = new RecorredorParalelo(4,
+                p -> p.endsWith("excluido") || p.toString().endsWith(".exe"),
+                (p, attrs) -> vistos.add(p));
+
+        AtomicInteger procesados = new AtomicInteger();
+        List<Path> pendientes = recorredor.recorrer(List.of(tempDir), Integer.MAX_VALUE, procesados);
+        recorredor.cerrar();
+
+        assertTrue(pendientes.isEmpty());
+        assertEquals(6, procesados.get());
+        assertEquals(6, vistos.size());
+        assertTrue(vistos.contains(tempDir.resolve("a/b/uno.txt")));
+        assertFalse(vistos.contains(tempDir.resolve("excluido/uno.txt")), "No debe entrar a directorios excluidos");
+        assertFalse(vistos.contains(tempDir.resolve("a/malo.exe")), "No debe procesar archivos excluidos");
+    }
+
+    @Test
+    void recorrer_conLoteLlenoDevuelveDirectoriosPendientes() throws Exception {
+        crearArbol();
+        RecorredorParalelo recorredor = new RecorredorParalelo(2, p -> false, (p, attrs) -> {
+        });
+
+        AtomicInteger procesados = new AtomicInteger();
+        List<Path> pendientes = recorredor.recorrer(List.of(tempDir), 1, procesados);
+
+        assertTrue(pendientes.stream().allMatch(p -> p.startsWith(tempDir)));
+        assertFalse(pendientes.isEmpty(), "Con el lote lleno deben quedar subdirectorios sin visitar");
+
+        // Retomar los pendientes debe completar el resto del árbol
+        AtomicInteger resto = new AtomicInteger();
+        List<Path> finales = recorredor.recorrer(pendientes, Integer.MAX_VALUE, resto);
+        recorredor.cerrar();
+
+        assertTrue(finales.isEmpty());
+        assertEquals(12, procesados.get() + resto.get());
+    }
+
+    @Test
+    void detener_cortaEnElArchivoSiguienteSinDejarPendientes() throws Exception {
+        crearArbol();
+        RecorredorParalelo[] recorredor = new RecorredorParalelo[1];
+        recorredor[0] = new RecorredorParalelo(1, p -> false, (p, attrs) -> recorredor[0].detener());
+
+        AtomicInteger procesados = new AtomicInteger();
+        List<Path> pendientes = recorredor[0].recorrer(List.of(tempDir), Integer.MAX_VALUE, procesados);
+        recorredor[0].cerrar();
+
+        assertEquals(1, procesados.get());
+        assertTrue(pendientes.isEmpty(), "Lo que quedaba se retoma desde el checkpoint, no como pendiente");
+    }
+
+    @Test
+    void paralelismoInvalido_lanzaExcepcion() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new RecorredorParalelo(0, p -> false, (p, attrs) -> {
+                }));
+    }
+}
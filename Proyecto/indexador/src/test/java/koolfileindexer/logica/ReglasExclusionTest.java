@@ -0,0 +1,157 @@
+package koolfileindexer.logica;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReglasExclusionTest {
+
+    private static ReglasExclusion compilar(List<Path> rutas, List<String> patrones) {
+        return ReglasExclusion.compilar(rutas, patrones, ReglasExclusion.Sistema.LINUX);
+    }
+
+    @Test
+    void rutaExcluida_excluyeSuSubarbolPeroNoLosHermanos() {
+        ReglasExclusion reglas = compilar(List.of(Path.of("/home/u/build")), List.of());
+
+        assertTrue(reglas.excluye(Path.of("/home/u/build")));
+        assertTrue(reglas.excluye(Path.of("/home/u/build/a/b.txt")));
+        assertFalse(reglas.excluye(Path.of("/home/u/builder/b.txt")), "El prefijo es por componente, no por texto");
+        assertFalse(reglas.excluye(Path.of("/home/u")));
+    }
+
+    @Test
+    void rutaSinNormalizar_seNormalizaAntesDeComparar() {
+        ReglasExclusion reglas = compilar(List.of(Path.of("/home/u/build")), List.of());
+
+        assertTrue(reglas.excluye(Path.of("/home/u/otro/../build/x.txt")));
+        assertTrue(reglas.excluye(Path.of("/home/u/./build")));
+        assertFalse(reglas.excluye(Path.of("/home/u/..build/x.txt")));
+    }
+
+    @Test
+    void reglasFijas_ocultosExtensionesYNombres() {
+        ReglasExclusion reglas = compilar(List.of(), List.of());
+
+        assertTrue(reglas.excluye(Path.of("/home/u/.bashrc")));
+        assertTrue(reglas.excluye(Path.of("/home/u/setup.EXE")));
+        assertTrue(reglas.excluye(Path.of("/home/u/lib.dll")));
+        assertTrue(reglas.excluye(Path.of("/home/u/fotos/Thumbs.db")));
+        assertFalse(reglas.excluye(Path.of("/home/u/exe")));
+        assertFalse(reglas.excluye(Path.of("/home/u/notas.txt")));
+        assertFalse(reglas.excluye(Path.of("/")));
+    }
+
+    @Test
+    void directoriosDelSistema_dependenDelSistemaOperativo() {
+        ReglasExclusion linux = compilar(List.of(), List.of());
+        ReglasExclusion otro = ReglasExclusion.compilar(List.of(), List.of(), ReglasExclusion.Sistema.OTRO);
+
+        assertTrue(linux.excluye(Path.of("/proc/1/status")));
+        assertTrue(linux.excluye(Path.of("/sys")));
+        assertFalse(linux.excluye(Path.of("/home/proc/x.txt")));
+        assertFalse(otro.excluye(Path.of("/proc/1/status")));
+    }
+
+    @Test
+    void globs_deNombreYDeRuta() {
+        ReglasExclusion reglas = compilar(List.of(), List.of(
+                "glob:node_modules",
+                "glob:*.tmp",
+                "glob:~$*.{doc,docx}",
+                "glob:/home/*/cache/**"));
+
+        assertTrue(reglas.excluye(Path.of("/home/u/proyecto/node_modules")));
+        assertTrue(reglas.excluye(Path.of("/home/u/a.TMP")));
+        assertTrue(reglas.excluye(Path.of("/home/u/~$informe.docx")));
+        assertFalse(reglas.excluye(Path.of("/home/u/informe.docx")));
+        assertTrue(reglas.excluye(Path.of("/home/u/cache/x/y.txt")));
+        assertFalse(reglas.excluye(Path.of("/home/u/w/cache/y.txt")), "* no cruza separadores");
+    }
+
+    @Test
+    void regex_seAplicaALaRutaCompleta() {
+        ReglasExclusion reglas = compilar(List.of(), List.of("regex:.*/[0-9]+\\.log"));
+
+        assertTrue(reglas.excluye(Path.of("/var/tmp/123.log")));
+        assertFalse(reglas.excluye(Path.of("/var/tmp/a123.log")));
+    }
+
+    @Test
+    void patronInvalido_seIgnoraSinPerderLosDemas() {
+        ReglasExclusion reglas = compilar(List.of(), List.of("regex:[", "glob:{a", "otra:cosa", "glob:*.bak"));
+
+        assertTrue(reglas.excluye(Path.of("/home/u/x.bak")));
+        assertFalse(reglas.excluye(Path.of("/home/u/x.txt")));
+    }
+
+    @Test
+    void muchasRutas_cadaUnaExcluyeSoloLaSuya() {
+        List<Path> rutas = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            rutas.add(Path.of("/datos/proyecto" + i + "/salida"));
+        }
+        ReglasExclusion reglas = compilar(rutas, List.of());
+
+        for (int i = 0; i < 1_000; i++) {
+            assertTrue(reglas.excluye(Path.of("/datos/proyecto" + i + "/salida/x.bin")));
+            assertFalse(reglas.excluye(Path.of("/datos/proyecto" + i + "/fuente/x.c")));
+        }
+    }
+
+    @Test
+    void patronesIgnorar_delArchivoDeExclusiones() {
+        ReglasExclusion reglas = compilar(List.of(), List.of("**/node_modules/", "*.o", "!.config/"));
+
+        assertTrue(reglas.excluye(Path.of("/home/u/web/node_modules"), true));
+        assertFalse(reglas.excluye(Path.of("/home/u/web/node_modules"), false), "Sólo directorios");
+        assertTrue(reglas.excluye(Path.of("/home/u/c/x.o")));
+        assertFalse(reglas.excluye(Path.of("/home/u/.config"), true), "El ! vuelve a incluir un oculto");
+        assertTrue(reglas.excluye(Path.of("/home/u/.bashrc")));
+    }
+
+    @Test
+    void koolignore_seAplicaBajoSuDirectorioYElMasProfundoGana() {
+        Map<Path, PatronesIgnorar> ignorar = Map.of(
+                Path.of("/home/u/proyecto"), PatronesIgnorar.compilar(List.of("*.log", "/salida/"),
+                        ReglasExclusion.Sistema.LINUX),
+                Path.of("/home/u/proyecto/sub"), PatronesIgnorar.compilar(List.of("!importante.log"),
+                        ReglasExclusion.Sistema.LINUX));
+        ReglasExclusion reglas = ReglasExclusion.compilar(List.of(), List.of("*.tmp"), ignorar,
+                ReglasExclusion.Sistema.LINUX);
+
+        assertTrue(reglas.excluye(Path.of("/home/u/proyecto/a/x.log")));
+        assertFalse(reglas.excluye(Path.of("/home/u/otro/x.log")), "Fuera de su directorio no se aplica");
+        assertTrue(reglas.excluye(Path.of("/home/u/proyecto/salida"), true));
+        assertFalse(reglas.excluye(Path.of("/home/u/proyecto/a/salida"), true), "Anclado a su directorio");
+        assertTrue(reglas.excluye(Path.of("/home/u/proyecto/sub/otro.log")));
+        assertFalse(reglas.excluye(Path.of("/home/u/proyecto/sub/importante.log")));
+        assertTrue(reglas.excluye(Path.of("/home/u/proyecto/x.tmp")), "Los del archivo de exclusiones también");
+        assertFalse(reglas.excluye(Path.of("/home/u/proyecto"), true), "No se aplica a su propio directorio");
+    }
+
+    @Test
+    void patronesIgnorar_noVuelvenAIncluirUnaRutaExcluida() {
+        ReglasExclusion reglas = compilar(List.of(Path.of("/home/u/build")), List.of("!*.txt"));
+
+        assertTrue(reglas.excluye(Path.of("/home/u/build/x.txt")));
+        assertFalse(reglas.excluye(Path.of("/home/u/notas.txt")));
+    }
+
+    @Test
+    void esPatron_distingueRutasDePatrones() {
+        for (String patron : Set.of("glob:*.tmp", "regex:.*")) {
+            assertTrue(ReglasExclusion.esPatron(patron));
+        }
+        assertTrue(ReglasExclusion.esPatron("**/node_modules/"));
+        assertFalse(ReglasExclusion.esPatron("/home/u/glob:x"));
+        assertFalse(ReglasExclusion.esPatron("/home/u/build/"), "Una ruta absoluta sigue siendo una ruta");
+        assertFalse(ReglasExclusion.esPatron("patron1"));
+    }
+}
@@ -0,0 +1,223 @@
+package koolfileindexer.logica;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import koolfileindexer.modelo.Archivo;
+
+/**
+ * Benchmark manual (no se ejecuta con los tests): compara la vigilancia con
+ * inotify contra el recorrido periódico en dos cosas:
+ * - latencia desde que se crea un archivo hasta que se encuentra buscando;
+ * - CPU del proceso mientras no cambia nada.
+ *
+ * En los dos casos los archivos pasan por una IngestaArchivos con los mismos
+ * parámetros que el Indexador y el "escritor" los registra en un
+ * IndiceNombres, que hace de BD.
+ *
+ * Uso: java ... koolfileindexer.logica.VigilanciaBenchmark [directorios=2000] [archivosPorDir=50]
+ * [intervaloSegundos=10] [archivosNuevos=20] [segundosOcioso=10]
+ */
+public class VigilanciaBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int directorios = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        int archivosPorDir = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int intervaloSegundos = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int archivosNuevos = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        int segundosOcioso = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+
+        Path raiz = Files.createTempDirectory("kfi-vigilancia");
+        try {
+            List<Path> hojas = crearArbolSintetico(raiz, directorios, archivosPorDir);
+            System.out.printf("Árbol: %s (%d dirs x %d archivos)%n", raiz, directorios, archivosPorDir);
+
+            medirRecorridoPeriodico(raiz, hojas, intervaloSegundos, archivosNuevos, segundosOcioso);
+            medirVigilancia(raiz, hojas, intervaloSegundos, archivosNuevos, segundosOcioso);
+        } finally {
+            borrar(raiz);
+        }
+    }
+
+    private static void medirRecorridoPeriodico(Path raiz, List<Path> hojas, int intervaloSegundos,
+            int archivosNuevos, int segundosOcioso) throws Exception {
+        IndiceNombres indice = new IndiceNombres();
+        IngestaArchivos ingesta = nuevaIngesta(indice);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleAtFixedRate(() -> recorrer(raiz, ingesta), 0, intervaloSegundos, TimeUnit.SECONDS);
+        try {
+            esperarIndexados(indice, hojas.size());
+            reportar("recorrido cada " + intervaloSegundos + " s", indice, hojas, archivosNuevos,
+                    segundosOcioso, intervaloSegundos);
+        } finally {
+            scheduler.shutdownNow();
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+            ingesta.cerrar();
+        }
+    }
+
+    private static void medirVigilancia(Path raiz, List<Path> hojas, int intervaloSegundos, int archivosNuevos,
+            int segundosOcioso) throws Exception {
+        IndiceNombres indice = new IndiceNombres();
+        IngestaArchivos ingesta = nuevaIngesta(indice);
+        VigilanteCambios vigilante = new VigilanteCambios(p -> false, new VigilanteCambios.Destino() {
+            @Override
+            public void actualizar(Path archivo, BasicFileAttributes attrs) {
+                encolar(ingesta, archivo, attrs);
+            }
+
+            @Override
+            public void eliminar(Path ruta, boolean directorio) {
+                indice.eliminar(ruta.toString());
+            }
+
+            @Override
+            public void purgarFaltantes(Path dir) {
+            }
+        }, Duration.ofMillis(100));
+        vigilante.iniciar();
+        try {
+            // El recorrido inicial registra cada directorio antes de listarlo,
+            // igual que Indexador.recorrerUnDirectorio
+            RecorredorParalelo recorredor = new RecorredorParalelo(1, p -> false,
+                    (p, attrs) -> encolar(ingesta, p, attrs), (dir, listar) -> {
+                        vigilante.registrar(dir);
+                        List<Path> subdirectorios = listar.get();
+                        return subdirectorios != null ? subdirectorios : List.of();
+                    });
+            recorredor.recorrer(List.of(raiz), Integer.MAX_VALUE, new AtomicInteger());
+            recorredor.cerrar();
+            esperarIndexados(indice, hojas.size());
+            System.out.printf("(%,d directorios vigilados)%n", vigilante.getDirectoriosVigilados());
+            reportar("vigilancia inotify", indice, hojas, archivosNuevos, segundosOcioso, intervaloSegundos);
+        } finally {
+            vigilante.detener();
+            ingesta.cerrar();
+        }
+    }
+
+    private static void reportar(String modo, IndiceNombres indice, List<Path> hojas, int archivosNuevos,
+            int segundosOcioso, int intervaloSegundos) throws Exception {
+        double cpuMs = cpuOcioso(segundosOcioso);
+
+        long[] latencias = new long[archivosNuevos];
+        for (int i = 0; i < archivosNuevos; i++) {
+            // Para que la creación no quede sincronizada con los ciclos del recorrido
+            Thread.sleep(ThreadLocalRandom.current().nextLong(intervaloSegundos * 1000L));
+            String nombre = "nuevo_" + System.nanoTime();
+            Path dir = hojas.get((i * 7919) % hojas.size());
+            long inicio = System.nanoTime();
+            Files.createFile(dir.resolve(nombre + ".txt"));
+            while (indice.buscarPrefijo(nombre, 1).isEmpty()) {
+                Thread.sleep(1);
+            }
+            latencias[i] = System.nanoTime() - inicio;
+        }
+        Arrays.sort(latencias);
+        System.out.printf("%-24s latencia p50 %,8.0f ms  p99 %,8.0f ms   CPU ociosa %,7.1f ms/s%n", modo,
+                latencias[latencias.length / 2] / 1e6,
+                latencias[Math.min(latencias.length - 1, latencias.length * 99 / 100)] / 1e6,
+                cpuMs / segundosOcioso);
+    }
+
+    /** CPU que usa el proceso durante segundos sin cambios en el árbol. */
+    private static double cpuOcioso(int segundos) throws InterruptedException {
+        com.sun.management.OperatingSystemMXBean os = (com.sun.management.OperatingSystemMXBean) ManagementFactory
+                .getOperatingSystemMXBean();
+        long antes = os.getProcessCpuTime();
+        Thread.sleep(segundos * 1000L);
+        return (os.getProcessCpuTime() - antes) / 1e6;
+    }
+
+    private static IngestaArchivos nuevaIngesta(IndiceNombres indice) {
+        return new IngestaArchivos(10_000, 500, Duration.ofMillis(200), lote -> {
+            for (Archivo archivo : lote) {
+                indice.registrar(archivo.getRutaCompleta(), archivo.getTamanoBytes(),
+                        archivo.getFechaModificacion());
+            }
+        });
+    }
+
+    private static void encolar(IngestaArchivos ingesta, Path p, BasicFileAttributes attrs) {
+        String nombre = p.getFileName().toString();
+        LocalDateTime mod = LocalDateTime.ofInstant(attrs.lastModifiedTime().toInstant(), ZoneId.systemDefault());
+        try {
+            ingesta.encolar(new Archivo(nombre, p.toString(), "txt", attrs.size(), mod, mod));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void recorrer(Path raiz, IngestaArchivos ingesta) {
+        try {
+            Files.walkFileTree(raiz, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile()) {
+                        encolar(ingesta, file, attrs);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            ingesta.vaciar();
+        } catch (IOException e) {
+            System.err.println("Error recorriendo: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void esperarIndexados(IndiceNombres indice, int directorios) throws InterruptedException {
+        // El primer recorrido tiene que terminar antes de medir
+        while (indice.getArchivos() < directorios) {
+            Thread.sleep(50);
+        }
+        int anterior = -1;
+        while (indice.getArchivos() != anterior) {
+            anterior = indice.getArchivos();
+            Thread.sleep(500);
+        }
+    }
+
+    private static List<Path> crearArbolSintetico(Path raiz, int directorios, int archivosPorDir)
+            throws IOException {
+        List<Path> hojas = new ArrayList<>(directorios);
+        // Árbol de fan-out 10 para que haya varios niveles de profundidad
+        for (int d = 0; d < directorios; d++) {
+            Path dir = raiz;
+            for (int n = d; n > 0; n /= 10) {
+                dir = dir.resolve("d" + (n % 10));
+            }
+            dir = Files.createDirectories(dir.resolve("hoja" + d));
+            hojas.add(dir);
+            for (int f = 0; f < archivosPorDir; f++) {
+                Files.createFile(dir.resolve("archivo" + f + ".txt"));
+            }
+        }
+        return hojas;
+    }
+
+    private static void borrar(Path raiz) throws IOException {
+        try (Stream<Path> rutas = Files.walk(raiz)) {
+            rutas.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
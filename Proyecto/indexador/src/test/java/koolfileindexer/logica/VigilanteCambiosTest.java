@@ -0,0 +1,144 @@
+package koolfileindexer.logica;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VigilanteCambiosTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final BlockingQueue<String> cambios = new LinkedBlockingQueue<>();
+    private VigilanteCambios vigilante;
+
+    private VigilanteCambios iniciar() throws Exception {
+        vigilante = new VigilanteCambios(p -> p.toString().endsWith(".exe"), new VigilanteCambios.Destino() {
+            @Override
+            public void actualizar(Path archivo, BasicFileAttributes attrs) {
+                cambios.add("actualizar " + tempDir.relativize(archivo));
+            }
+
+            @Override
+            public void eliminar(Path ruta, boolean directorio) {
+                cambios.add((directorio ? "eliminarDirectorio " : "eliminar ") + tempDir.relativize(ruta));
+            }
+
+            @Override
+            public void purgarFaltantes(Path dir) {
+                cambios.add("purgar " + tempDir.relativize(dir));
+            }
+        }, Duration.ofMillis(50));
+        vigilante.registrar(tempDir);
+        vigilante.iniciar();
+        return vigilante;
+    }
+
+    @AfterEach
+    void detener() {
+        if (vigilante != null) {
+            vigilante.detener();
+        }
+    }
+
+    /** Espera hasta tener n cambios y verifica que no lleguen más. */
+    private List<String> esperar(int n) throws InterruptedException {
+        List<String> recibidos = new ArrayList<>();
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (recibidos.size() < n && System.nanoTime() < limite) {
+            String cambio = cambios.poll(100, TimeUnit.MILLISECONDS);
+            if (cambio != null) {
+                recibidos.add(cambio);
+            }
+        }
+        String extra = cambios.poll(300, TimeUnit.MILLISECONDS);
+        if (extra != null) {
+            recibidos.add(extra);
+        }
+        return recibidos;
+    }
+
+    @Test
+    void archivoNuevo_llegaUnaSolaVezAunqueSeEscribaVariasVeces() throws Exception {
+        iniciar();
+        Path archivo = tempDir.resolve("nuevo.txt");
+        for (int i = 0; i < 20; i++) {
+            Files.writeString(archivo, "versión " + i);
+        }
+        Files.createFile(tempDir.resolve("ignorado.exe"));
+
+        assertEquals(List.of("actualizar nuevo.txt"), esperar(1));
+    }
+
+    @Test
+    void dejarDeVigilar_noInformaNadaDelSubarbol() throws Exception {
+        Path sub = Files.createDirectories(tempDir.resolve("sub/interno"));
+        iniciar();
+        vigilante.registrar(sub.getParent());
+        vigilante.registrar(sub);
+
+        assertEquals(2, vigilante.dejarDeVigilar(sub.getParent()));
+        Files.createFile(sub.resolve("nuevo.txt"));
+        assertEquals(List.of(), esperar(0));
+        assertEquals(1, vigilante.getDirectoriosVigilados());
+    }
+
+    @Test
+    void archivoBorrado_seElimina() throws Exception {
+        Path archivo = Files.createFile(tempDir.resolve("viejo.txt"));
+        iniciar();
+        Files.delete(archivo);
+
+        assertEquals(List.of("eliminar viejo.txt"), esperar(1));
+    }
+
+    @Test
+    void renombrar_eliminaLaRutaViejaYActualizaLaNueva() throws Exception {
+        Path archivo = Files.createFile(tempDir.resolve("antes.txt"));
+        iniciar();
+        Files.move(archivo, tempDir.resolve("despues.txt"));
+
+        assertEquals(List.of("eliminar antes.txt", "actualizar despues.txt"), esperar(2));
+    }
+
+    @Test
+    void directorioNuevo_seVigilaYSeRecorreLoQueYaTenia() throws Exception {
+        iniciar();
+        Path dir = Files.createDirectories(tempDir.resolve("a/b"));
+        Files.createFile(dir.resolve("uno.txt"));
+
+        assertEquals(List.of("actualizar a/b/uno.txt"), esperar(1));
+        assertEquals(3, vigilante.getDirectoriosVigilados());
+
+        Files.createFile(dir.resolve("dos.txt"));
+        assertEquals(List.of("actualizar a/b/dos.txt"), esperar(1));
+    }
+
+    @Test
+    void directorioMovido_eliminaElSubarbolViejoYVigilaElNuevo() throws Exception {
+        Path dir = Files.createDirectories(tempDir.resolve("origen/sub"));
+        Files.createFile(dir.resolve("uno.txt"));
+        iniciar();
+        vigilante.registrar(tempDir.resolve("origen"));
+        vigilante.registrar(dir);
+
+        Files.move(tempDir.resolve("origen"), tempDir.resolve("destino"));
+        assertEquals(List.of("eliminarDirectorio origen", "actualizar destino/sub/uno.txt"), esperar(2));
+        assertEquals(3, vigilante.getDirectoriosVigilados());
+
+        Files.createFile(tempDir.resolve("destino/sub/dos.txt"));
+        assertEquals(List.of("actualizar destino/sub/dos.txt"), esperar(1));
+    }
+}